@@ -0,0 +1,469 @@
+package org.marceloleite.cwitest;
+
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Downloads and parses the quotation CSV files published by Brazilian central
+ * bank.
+ * <p>
+ * Every connection has connect and read timeouts. HTTP responses may be
+ * compressed with gzip, and their streams are always read to the end and
+ * closed (never disconnected), so the JDK keeps the connections alive and
+ * reuses them for the following downloads from the same host. The size of that
+ * pool is defined by the "http.maxConnections" system property.
+ * <p>
+ * The tables of the most recently downloaded dates are kept with their
+ * "ETag" and "Last-Modified" validators. When one of those dates is fetched
+ * again, such as the current date after its cache entry expires, the request is
+ * conditional and a "304 Not Modified" response reuses the kept table instead
+ * of transferring the file again.
+ * <p>
+ * The number of fetches, their total latency and the number of bytes
+ * transferred are exposed as metrics. Objects of this class are thread-safe.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbCsvFetcher {
+
+	/**
+	 * The default time limit to establish a connection.
+	 */
+	public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+	/**
+	 * The default time limit to wait for data on an established connection.
+	 */
+	public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(15);
+
+	/**
+	 * The number of tables kept with their validators for conditional requests.
+	 */
+	static final int MAX_REVALIDATED_TABLES = 8;
+
+	/**
+	 * The extension used to identify a CSV file.
+	 */
+	private static final String CSV_EXTENSION = ".csv";
+
+	/**
+	 * The formatter used to elaborate the quotation CSV file name.
+	 */
+	private static final DateTimeFormatter CSV_FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * The formatter used to describe the quotation date on error messages.
+	 */
+	private static final DateTimeFormatter QUOTATION_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	/**
+	 * The size of the buffer used to discard the body of error responses.
+	 */
+	private static final int DISCARD_BUFFER_SIZE = 4096;
+
+	/**
+	 * The base URL used to retrieve the quotation CSV files.
+	 */
+	private final String baseUrl;
+
+	/**
+	 * The time limit to establish a connection, in milliseconds.
+	 */
+	private final int connectTimeoutMillis;
+
+	/**
+	 * The time limit to wait for data on an established connection, in
+	 * milliseconds.
+	 */
+	private final int readTimeoutMillis;
+
+	/**
+	 * The parser used to read the quotation CSV files.
+	 */
+	private final BcbCsvParser bcbCsvParser = new BcbCsvParser();
+
+	/**
+	 * The most recently downloaded tables with their validators, indexed by
+	 * quotation date and kept on access order.
+	 */
+	private final Map<LocalDate, ValidatedRateTable> validatedRateTables = new LinkedHashMap<LocalDate,
+			ValidatedRateTable>(MAX_REVALIDATED_TABLES * 2, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<LocalDate, ValidatedRateTable> eldest) {
+			return size() > MAX_REVALIDATED_TABLES;
+		}
+	};
+
+	/**
+	 * The number of fetches started.
+	 */
+	private final AtomicLong fetchCount = new AtomicLong();
+
+	/**
+	 * The number of fetches answered with "304 Not Modified".
+	 */
+	private final AtomicLong notModifiedCount = new AtomicLong();
+
+	/**
+	 * The number of fetches which failed.
+	 */
+	private final AtomicLong failureCount = new AtomicLong();
+
+	/**
+	 * The number of bytes received, before decompression.
+	 */
+	private final AtomicLong bytesTransferred = new AtomicLong();
+
+	/**
+	 * The time spent on all fetches, in nanoseconds.
+	 */
+	private final AtomicLong totalFetchNanoseconds = new AtomicLong();
+
+	/**
+	 * Creates a new {@link BcbCsvFetcher} object with the default timeouts.
+	 *
+	 * @param baseUrl
+	 *            The base URL used to retrieve the quotation CSV files. The file
+	 *            name ("yyyyMMdd.csv") is appended to it.
+	 */
+	public BcbCsvFetcher(String baseUrl) {
+		this(baseUrl, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new {@link BcbCsvFetcher} object.
+	 *
+	 * @param baseUrl
+	 *            The base URL used to retrieve the quotation CSV files. The file
+	 *            name ("yyyyMMdd.csv") is appended to it.
+	 * @param connectTimeout
+	 *            The time limit to establish a connection.
+	 * @param readTimeout
+	 *            The time limit to wait for data on an established connection.
+	 */
+	public BcbCsvFetcher(String baseUrl, Duration connectTimeout, Duration readTimeout) {
+		if (null == baseUrl) {
+			throw new InvalidParameterException("Base URL cannot be null.");
+		}
+
+		if (null == connectTimeout || connectTimeout.isNegative() || connectTimeout.toMillis() > Integer.MAX_VALUE) {
+			throw new InvalidParameterException("Connect timeout cannot be null, negative nor too long.");
+		}
+
+		if (null == readTimeout || readTimeout.isNegative() || readTimeout.toMillis() > Integer.MAX_VALUE) {
+			throw new InvalidParameterException("Read timeout cannot be null, negative nor too long.");
+		}
+
+		this.baseUrl = baseUrl;
+		this.connectTimeoutMillis = (int) connectTimeout.toMillis();
+		this.readTimeoutMillis = (int) readTimeout.toMillis();
+	}
+
+	/**
+	 * Returns the base URL used to retrieve the quotation CSV files.
+	 *
+	 * @return The base URL used to retrieve the quotation CSV files.
+	 */
+	public final String getBaseUrl() {
+		return baseUrl;
+	}
+
+	/**
+	 * Downloads and parses the quotation CSV file of a date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The table of the quotation date.
+	 * @throws FileNotFoundException
+	 *             When there is no quotation CSV file for the date.
+	 * @throws IOException
+	 *             When the quotation CSV file could not be retrieved or parsed.
+	 */
+	public RateTable fetch(LocalDate quotationDate) throws IOException {
+		fetchCount.incrementAndGet();
+		QuotationMetrics metrics = Metrics.get();
+		metrics.increment(QuotationMetrics.Counter.DOWNLOADS, 1L);
+		long metricsStartTime = metrics.startTimer();
+		long start = System.nanoTime();
+		try {
+			URLConnection urlConnection = createUrl(quotationDate).openConnection();
+			urlConnection.setConnectTimeout(connectTimeoutMillis);
+			urlConnection.setReadTimeout(readTimeoutMillis);
+			if (urlConnection instanceof HttpURLConnection) {
+				return fetch(quotationDate, (HttpURLConnection) urlConnection);
+			}
+
+			try (InputStream csvInputStream = new CountingInputStream(urlConnection.getInputStream())) {
+				return bcbCsvParser.parseLazily(csvInputStream, quotationDate);
+			}
+		} catch (FileNotFoundException fileNotFoundException) {
+			failureCount.incrementAndGet();
+			metrics.recordFailure(QuotationMetrics.Stage.DOWNLOAD, fileNotFoundException);
+
+			/* Keeps the exception type, so callers know there is no file to retry. */
+			FileNotFoundException notPublishedException = new FileNotFoundException(
+					"Brazilian central bank has not published a quotation CSV file for "
+							+ QUOTATION_DATE_FORMATTER.format(quotationDate) + ".");
+			notPublishedException.initCause(fileNotFoundException);
+			throw notPublishedException;
+		} catch (IOException ioException) {
+			failureCount.incrementAndGet();
+			metrics.recordFailure(QuotationMetrics.Stage.DOWNLOAD, ioException);
+			throw new IOException("Could not retrieve Brazilian central bank quotation CSV file for "
+					+ QUOTATION_DATE_FORMATTER.format(quotationDate) + ".", ioException);
+		} finally {
+			totalFetchNanoseconds.addAndGet(System.nanoTime() - start);
+			metrics.stopTimer(QuotationMetrics.Stage.DOWNLOAD, metricsStartTime);
+		}
+	}
+
+	/**
+	 * Returns the number of fetches started.
+	 *
+	 * @return The number of fetches started.
+	 */
+	public long getFetchCount() {
+		return fetchCount.get();
+	}
+
+	/**
+	 * Returns the number of fetches answered with "304 Not Modified", which
+	 * reused a table downloaded before.
+	 *
+	 * @return The number of fetches answered with "304 Not Modified".
+	 */
+	public long getNotModifiedCount() {
+		return notModifiedCount.get();
+	}
+
+	/**
+	 * Returns the number of fetches which failed.
+	 *
+	 * @return The number of fetches which failed.
+	 */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * Returns the number of bytes received, before decompression.
+	 *
+	 * @return The number of bytes received.
+	 */
+	public long getBytesTransferred() {
+		return bytesTransferred.get();
+	}
+
+	/**
+	 * Returns the time spent on all fetches.
+	 *
+	 * @return The time spent on all fetches.
+	 */
+	public Duration getTotalFetchTime() {
+		return Duration.ofNanos(totalFetchNanoseconds.get());
+	}
+
+	/**
+	 * Downloads and parses the quotation CSV file of a date through HTTP.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @param httpUrlConnection
+	 *            The connection, not connected yet.
+	 * @return The table of the quotation date.
+	 * @throws IOException
+	 *             When the quotation CSV file could not be retrieved or parsed.
+	 */
+	private RateTable fetch(LocalDate quotationDate, HttpURLConnection httpUrlConnection) throws IOException {
+		ValidatedRateTable validatedRateTable;
+		synchronized (validatedRateTables) {
+			validatedRateTable = validatedRateTables.get(quotationDate);
+		}
+
+		httpUrlConnection.setRequestProperty("Accept-Encoding", "gzip");
+		if (null != validatedRateTable) {
+			if (null != validatedRateTable.entityTag) {
+				httpUrlConnection.setRequestProperty("If-None-Match", validatedRateTable.entityTag);
+			}
+			if (validatedRateTable.lastModified != 0) {
+				httpUrlConnection.setIfModifiedSince(validatedRateTable.lastModified);
+			}
+		}
+
+		int responseCode = httpUrlConnection.getResponseCode();
+		if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && null != validatedRateTable) {
+			discard(httpUrlConnection.getErrorStream());
+			notModifiedCount.incrementAndGet();
+			Metrics.get().increment(QuotationMetrics.Counter.NOT_MODIFIED, 1L);
+			return validatedRateTable.rateTable;
+		}
+
+		if (responseCode != HttpURLConnection.HTTP_OK) {
+			discard(httpUrlConnection.getErrorStream());
+			String message = "Server answered with HTTP status " + responseCode + ".";
+			if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_GONE) {
+				throw new FileNotFoundException(message);
+			}
+			throw new IOException(message);
+		}
+
+		RateTable rateTable;
+		try (InputStream responseInputStream = new CountingInputStream(httpUrlConnection.getInputStream())) {
+			InputStream csvInputStream = "gzip".equalsIgnoreCase(httpUrlConnection.getContentEncoding())
+					? new GZIPInputStream(responseInputStream)
+					: responseInputStream;
+			rateTable = bcbCsvParser.parseLazily(csvInputStream, quotationDate);
+
+			/* Reads any remaining byte, so the connection can be reused. */
+			discard(responseInputStream);
+		}
+
+		String entityTag = httpUrlConnection.getHeaderField("ETag");
+		long lastModified = httpUrlConnection.getLastModified();
+		if (null != entityTag || lastModified != 0) {
+			synchronized (validatedRateTables) {
+				validatedRateTables.put(quotationDate, new ValidatedRateTable(rateTable, entityTag, lastModified));
+			}
+		}
+		return rateTable;
+	}
+
+	/**
+	 * Creates the URL of the quotation CSV file of a date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The URL of the quotation CSV file.
+	 */
+	private URL createUrl(LocalDate quotationDate) {
+		String quotationCsvUrlString = baseUrl + CSV_FILE_NAME_FORMATTER.format(quotationDate) + CSV_EXTENSION;
+		try {
+			return new URL(quotationCsvUrlString);
+		} catch (MalformedURLException malformedURLException) {
+			throw new RuntimeException("Could not create an URL based on the string \"" + quotationCsvUrlString + "\".",
+					malformedURLException);
+		}
+	}
+
+	/**
+	 * Reads a stream to the end and closes it.
+	 *
+	 * @param inputStream
+	 *            The stream or {@code null}.
+	 * @throws IOException
+	 *             When the stream could not be read.
+	 */
+	private static void discard(InputStream inputStream) throws IOException {
+		if (null == inputStream) {
+			return;
+		}
+
+		try (InputStream discardedInputStream = inputStream) {
+			byte[] buffer = new byte[DISCARD_BUFFER_SIZE];
+			while (discardedInputStream.read(buffer) != -1) {
+				/* Discards the bytes read. */
+			}
+		}
+	}
+
+	/**
+	 * A table downloaded before with the validators of its response.
+	 */
+	private static final class ValidatedRateTable {
+
+		/**
+		 * The table downloaded.
+		 */
+		private final RateTable rateTable;
+
+		/**
+		 * The "ETag" header of the response or {@code null}.
+		 */
+		private final String entityTag;
+
+		/**
+		 * The "Last-Modified" header of the response, in milliseconds since
+		 * 01/01/1970, or zero.
+		 */
+		private final long lastModified;
+
+		/**
+		 * Creates a new {@link ValidatedRateTable} object.
+		 *
+		 * @param rateTable
+		 *            The table downloaded.
+		 * @param entityTag
+		 *            The "ETag" header of the response.
+		 * @param lastModified
+		 *            The "Last-Modified" header of the response.
+		 */
+		private ValidatedRateTable(RateTable rateTable, String entityTag, long lastModified) {
+			this.rateTable = rateTable;
+			this.entityTag = entityTag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A stream which adds the number of bytes read to
+	 * {@link BcbCsvFetcher#bytesTransferred}.
+	 */
+	private final class CountingInputStream extends FilterInputStream {
+
+		/**
+		 * Creates a new {@link CountingInputStream} object.
+		 *
+		 * @param inputStream
+		 *            The stream counted.
+		 */
+		private CountingInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value != -1) {
+				bytesTransferred.incrementAndGet();
+				Metrics.get().increment(QuotationMetrics.Counter.BYTES_DOWNLOADED, 1L);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int bytesRead = super.read(buffer, offset, length);
+			if (bytesRead > 0) {
+				bytesTransferred.addAndGet(bytesRead);
+				Metrics.get().increment(QuotationMetrics.Counter.BYTES_DOWNLOADED, bytesRead);
+			}
+			return bytesRead;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			long bytesSkipped = super.skip(count);
+			bytesTransferred.addAndGet(bytesSkipped);
+			Metrics.get().increment(QuotationMetrics.Counter.BYTES_DOWNLOADED, bytesSkipped);
+			return bytesSkipped;
+		}
+	}
+}
@@ -0,0 +1,826 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Parses the Brazilian central bank quotation CSV file.
+ * <p>
+ * Each line of the file has eight values separated by semicolons: the
+ * exchanging date on "dd/MM/yyyy" format, the currency identification code, the
+ * currency type, the currency abbreviation, the buying rate, the selling rate,
+ * the buying purchasing power parity and the selling purchasing power parity.
+ * Numbers are written on the Brazilian format (i. e. the decimal separator
+ * character is comma and the grouping separator character is dot).
+ * <p>
+ * The parser works directly on the bytes of the file: dates are decoded into
+ * epoch days, currency abbreviations into {@link CurrencyCodes packed codes}
+ * and numbers into {@code long} values scaled by {@link #RATE_SCALE_FACTOR}, so
+ * no intermediate objects are created for each line. Through
+ * {@link #parseLazily(InputStream, LocalDate)} the values of each line are only
+ * decoded when its currency is requested.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbCsvParser {
+
+	/**
+	 * The number of decimal places kept on the scaled rates.
+	 */
+	public static final int RATE_SCALE = 8;
+
+	/**
+	 * The factor by which rates are multiplied to be stored as {@code long}
+	 * values.
+	 */
+	public static final long RATE_SCALE_FACTOR = 100_000_000L;
+
+	/**
+	 * The number of values on each line of the CSV file.
+	 */
+	private static final int VALUES_PER_LINE = 8;
+
+	/**
+	 * Size of the buffer used to read the CSV file stream.
+	 */
+	private static final int READING_BUFFER_SIZE = 8192;
+
+	/**
+	 * Initial size of the buffer which keeps the line being parsed.
+	 */
+	private static final int INITIAL_LINE_BUFFER_SIZE = 128;
+
+	/**
+	 * The character used to separate values on the CSV file.
+	 */
+	private static final byte SEPARATION_CHARACTER = ';';
+
+	/**
+	 * A word with the separation character on each byte.
+	 */
+	private static final long SEPARATION_CHARACTERS = 0x3B3B3B3B3B3B3B3BL;
+
+	/**
+	 * A word with the line break character on each byte.
+	 */
+	private static final long LINE_BREAK_CHARACTERS = 0x0A0A0A0A0A0A0A0AL;
+
+	/**
+	 * A word with the seven lowest bits of each byte set.
+	 */
+	private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	/**
+	 * The greatest integer part a rate can have without overflowing its scaled
+	 * value.
+	 */
+	private static final long MAX_RATE_INTEGER_PART = Long.MAX_VALUE / RATE_SCALE_FACTOR - 1;
+
+	/**
+	 * The value returned by the decoding methods when a value cannot be parsed.
+	 */
+	private static final long INVALID_VALUE = Long.MIN_VALUE;
+
+	/**
+	 * The formatter used to describe the quotation date on error messages.
+	 */
+	private static final DateTimeFormatter QUOTATION_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	/**
+	 * Parses a quotation CSV file into a {@link RateTable}.
+	 *
+	 * @param csvInputStream
+	 *            The stream with the CSV file contents.
+	 * @param quotationDate
+	 *            The quotation date of the CSV file.
+	 * @return The table with the exchanging information of the CSV file.
+	 * @throws IOException
+	 *             When the stream could not be read or a line could not be
+	 *             parsed.
+	 */
+	public RateTable parse(InputStream csvInputStream, LocalDate quotationDate) throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		try {
+			RateTable.Builder rateTableBuilder = new RateTable.Builder(quotationDate);
+			parse(csvInputStream, QUOTATION_DATE_FORMATTER.format(quotationDate), rateTableBuilder);
+			return rateTableBuilder.build();
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.PARSE, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.PARSE, startTime);
+		}
+	}
+
+	/**
+	 * Reads a quotation CSV file into a {@link RateTable} which keeps the file
+	 * contents and parses the values of a currency only when they are first
+	 * requested.
+	 * <p>
+	 * Only the line positions and the currency abbreviations are read here, so
+	 * a table used for a few conversions costs a fraction of
+	 * {@link #parse(InputStream, LocalDate)}. A line with an invalid date, code,
+	 * type or rate throws an {@link java.io.UncheckedIOException} when its
+	 * currency is requested instead of failing the whole file.
+	 *
+	 * @param csvInputStream
+	 *            The stream with the CSV file contents.
+	 * @param quotationDate
+	 *            The quotation date of the CSV file.
+	 * @return The table with the exchanging information of the CSV file.
+	 * @throws IOException
+	 *             When the stream could not be read or a line does not have all
+	 *             its values or a valid currency abbreviation.
+	 */
+	public RateTable parseLazily(InputStream csvInputStream, LocalDate quotationDate) throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		try {
+			String quotation = QUOTATION_DATE_FORMATTER.format(quotationDate);
+			byte[] contents = readContents(csvInputStream, quotation);
+			RateTable.LazyBuilder lazyBuilder = new RateTable.LazyBuilder(quotationDate, quotation, contents);
+			ByteBuffer words = ByteBuffer.wrap(contents).order(ByteOrder.LITTLE_ENDIAN);
+			int lineStart = 0;
+			int lineNumber = 0;
+			int separatorCount = 0;
+			int abbreviationStart = 0;
+			int abbreviationEnd = 0;
+
+			/*
+			 * Reads eight characters at a time, visiting only the separators and
+			 * the line breaks, so each character is checked once.
+			 */
+			for (int position = 0; position < contents.length; position += Long.BYTES) {
+				long word = position + Long.BYTES <= contents.length ? words.getLong(position)
+						: readLastWord(contents, position);
+				for (long marks = mark(word, SEPARATION_CHARACTERS) | mark(word, LINE_BREAK_CHARACTERS); marks != 0;
+						marks &= marks - 1) {
+					int markPosition = position + (Long.numberOfTrailingZeros(marks) >>> 3);
+					if (contents[markPosition] == '\n') {
+						indexLine(contents, lineStart, markPosition, ++lineNumber, separatorCount, abbreviationStart,
+								abbreviationEnd, quotation, lazyBuilder);
+						lineStart = markPosition + 1;
+						separatorCount = 0;
+					} else if (++separatorCount == 3) {
+						abbreviationStart = markPosition + 1;
+					} else if (separatorCount == 4) {
+						abbreviationEnd = markPosition;
+					}
+				}
+			}
+
+			/* The last line may not end with a line break. */
+			indexLine(contents, lineStart, contents.length, ++lineNumber, separatorCount, abbreviationStart,
+					abbreviationEnd, quotation, lazyBuilder);
+			return lazyBuilder.build();
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.PARSE, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.PARSE, startTime);
+		}
+	}
+
+	/**
+	 * Parses a quotation CSV file, informing each line values to a handler as soon
+	 * as they are read from the stream.
+	 *
+	 * @param csvInputStream
+	 *            The stream with the CSV file contents.
+	 * @param quotation
+	 *            The quotation date of the CSV file on "dd/MM/yyyy" format, used
+	 *            to describe errors.
+	 * @param rowHandler
+	 *            The handler which receives the values of each line.
+	 * @throws IOException
+	 *             When the stream could not be read or a line could not be
+	 *             parsed.
+	 */
+	public void parse(InputStream csvInputStream, String quotation, RowHandler rowHandler) throws IOException {
+		byte[] buffer = new byte[READING_BUFFER_SIZE];
+		byte[] line = new byte[INITIAL_LINE_BUFFER_SIZE];
+		int[] valueLimits = new int[VALUES_PER_LINE + 1];
+		int lineLength = 0;
+		int lineNumber = 0;
+		int rowCount = 0;
+		int bytesRead;
+
+		while (true) {
+			try {
+				bytesRead = csvInputStream.read(buffer, 0, READING_BUFFER_SIZE);
+			} catch (IOException ioException) {
+				throw new IOException("Could not read quotation CSV file of " + quotation + ".", ioException);
+			}
+
+			if (bytesRead == -1) {
+				break;
+			}
+
+			for (int position = 0; position < bytesRead; position++) {
+				byte character = buffer[position];
+				if (character == '\n') {
+					if (parseLine(line, 0, lineLength, ++lineNumber, valueLimits, quotation, rowHandler)) {
+						rowCount++;
+					}
+					lineLength = 0;
+				} else {
+					if (lineLength == line.length) {
+						line = Arrays.copyOf(line, line.length * 2);
+					}
+					line[lineLength++] = character;
+				}
+			}
+		}
+
+		/* The last line may not end with a line break. */
+		if (parseLine(line, 0, lineLength, ++lineNumber, valueLimits, quotation, rowHandler)) {
+			rowCount++;
+		}
+		Metrics.get().increment(QuotationMetrics.Counter.PARSED_ROWS, rowCount);
+	}
+
+	/**
+	 * Reads the whole contents of a quotation CSV file.
+	 *
+	 * @param csvInputStream
+	 *            The stream with the CSV file contents.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @return The file contents, without unused positions.
+	 * @throws IOException
+	 *             When the stream could not be read.
+	 */
+	private static byte[] readContents(InputStream csvInputStream, String quotation) throws IOException {
+		try {
+
+			/* Streams which know their size are read with no copy. */
+			byte[] contents = new byte[Math.max(1, csvInputStream.available())];
+			int length = 0;
+			while (true) {
+				if (length == contents.length) {
+					int character = csvInputStream.read();
+					if (character == -1) {
+						return contents;
+					}
+					contents = Arrays.copyOf(contents, Math.max(READING_BUFFER_SIZE, contents.length * 2));
+					contents[length++] = (byte) character;
+				}
+
+				int bytesRead = csvInputStream.read(contents, length, contents.length - length);
+				if (bytesRead == -1) {
+
+					/* The table keeps the contents, so it should not keep unused positions. */
+					return Arrays.copyOf(contents, length);
+				}
+				length += bytesRead;
+			}
+		} catch (IOException ioException) {
+			throw new IOException("Could not read quotation CSV file of " + quotation + ".", ioException);
+		}
+	}
+
+	/**
+	 * Parses a line of the CSV file.
+	 *
+	 * @param line
+	 *            The buffer with the line contents.
+	 * @param lineStart
+	 *            The position of the first line character.
+	 * @param lineEnd
+	 *            The position after the last line character.
+	 * @param lineNumber
+	 *            The number of the line on the file, used to describe errors.
+	 * @param valueLimits
+	 *            Buffer used to store the position of each value on the line.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @param rowHandler
+	 *            The handler which receives the values of the line.
+	 * @return {@code true} if the line values were informed to the handler or
+	 *         {@code false} if the line is blank.
+	 * @throws IOException
+	 *             When the line values could not be parsed.
+	 */
+	private static boolean parseLine(byte[] line, int lineStart, int lineEnd, int lineNumber, int[] valueLimits,
+			String quotation, RowHandler rowHandler) throws IOException {
+
+		/* Ignores carriage returns of Windows line breaks and blank lines. */
+		if (lineEnd > lineStart && line[lineEnd - 1] == '\r') {
+			lineEnd--;
+		}
+
+		if (lineEnd == lineStart) {
+			return false;
+		}
+
+		splitValues(line, lineStart, lineEnd, lineNumber, valueLimits, quotation);
+
+		long exchangingEpochDay = decodeDate(line, valueLimits[0], valueLimits[1] - 1);
+		if (exchangingEpochDay == INVALID_VALUE) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation, "its date is invalid");
+		}
+
+		long currencyCode = decodeInteger(line, valueLimits[1], valueLimits[2] - 1);
+		if (currencyCode == INVALID_VALUE) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation,
+					"its currency code is invalid");
+		}
+
+		if (valueLimits[3] - valueLimits[2] != 2) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation,
+					"its currency type is invalid");
+		}
+		char type = (char) (line[valueLimits[2]] & 0xff);
+
+		int currencyAbbreviation = decodeAbbreviation(line, valueLimits[3], valueLimits[4] - 1, lineStart, lineEnd,
+				lineNumber, quotation);
+
+		long buyingRate = decodeRate(line, valueLimits[4], valueLimits[5] - 1);
+		long sellingRate = decodeRate(line, valueLimits[5], valueLimits[6] - 1);
+		long buyingPpp = decodeRate(line, valueLimits[6], valueLimits[7] - 1);
+		long sellingPpp = decodeRate(line, valueLimits[7], valueLimits[8] - 1);
+		if (buyingRate == INVALID_VALUE || sellingRate == INVALID_VALUE || buyingPpp == INVALID_VALUE
+				|| sellingPpp == INVALID_VALUE) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation,
+					"one of its rates is invalid");
+		}
+
+		rowHandler.handleRow((int) exchangingEpochDay, (int) currencyCode, type, currencyAbbreviation, buyingRate,
+				sellingRate, buyingPpp, sellingPpp);
+		return true;
+	}
+
+	/**
+	 * Parses a line indexed by {@link #parseLazily(InputStream, LocalDate)}.
+	 *
+	 * @param contents
+	 *            The buffer with the file contents.
+	 * @param lineStart
+	 *            The position of the first line character.
+	 * @param lineEnd
+	 *            The position after the last line character.
+	 * @param lineNumber
+	 *            The number of the line on the file, used to describe errors.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @param rowHandler
+	 *            The handler which receives the values of the line.
+	 * @throws IOException
+	 *             When the line values could not be parsed.
+	 */
+	static void parseIndexedLine(byte[] contents, int lineStart, int lineEnd, int lineNumber, String quotation,
+			RowHandler rowHandler) throws IOException {
+		parseLine(contents, lineStart, lineEnd, lineNumber, new int[VALUES_PER_LINE + 1], quotation, rowHandler);
+	}
+
+	/**
+	 * Indexes a line of the CSV file, checking only that it has all its values
+	 * and a valid currency abbreviation. The other values are parsed by
+	 * {@link #parseLine} when the currency is requested.
+	 *
+	 * @param contents
+	 *            The buffer with the file contents.
+	 * @param lineStart
+	 *            The position of the first line character.
+	 * @param lineEnd
+	 *            The position after the last line character.
+	 * @param lineNumber
+	 *            The number of the line on the file, used to describe errors.
+	 * @param separatorCount
+	 *            The number of separation characters on the line.
+	 * @param abbreviationStart
+	 *            The position of the first currency abbreviation character.
+	 * @param abbreviationEnd
+	 *            The position after the last currency abbreviation character.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @param lazyBuilder
+	 *            The builder which receives the line position.
+	 * @throws IOException
+	 *             When the line does not have all its values or its currency
+	 *             abbreviation is invalid.
+	 */
+	private static void indexLine(byte[] contents, int lineStart, int lineEnd, int lineNumber, int separatorCount,
+			int abbreviationStart, int abbreviationEnd, String quotation, RateTable.LazyBuilder lazyBuilder)
+			throws IOException {
+		int contentEnd = lineEnd;
+		if (contentEnd > lineStart && contents[contentEnd - 1] == '\r') {
+			contentEnd--;
+		}
+
+		if (contentEnd == lineStart) {
+			return;
+		}
+
+		if (separatorCount < VALUES_PER_LINE - 1) {
+			throw createParseException(contents, lineStart, contentEnd, lineNumber, quotation,
+					"it has " + (separatorCount + 1) + " values instead of " + VALUES_PER_LINE);
+		}
+
+		lazyBuilder.addRow(decodeAbbreviation(contents, abbreviationStart, abbreviationEnd, lineStart, contentEnd,
+				lineNumber, quotation), lineStart, lineEnd, lineNumber);
+	}
+
+	/**
+	 * Marks the characters of a word which are equal to the character repeated
+	 * on a pattern. Unlike the usual zero byte test, no carry crosses the
+	 * bytes, so there are no false marks.
+	 *
+	 * @param word
+	 *            Eight characters, the first one on the lowest byte.
+	 * @param pattern
+	 *            A word with the searched character on each byte.
+	 * @return A word with the highest bit set on each byte which is equal to
+	 *         the searched character.
+	 */
+	private static long mark(long word, long pattern) {
+		long difference = word ^ pattern;
+		return ~(((difference & LOW_SEVEN_BITS) + LOW_SEVEN_BITS) | difference | LOW_SEVEN_BITS);
+	}
+
+	/**
+	 * Reads the last characters of a buffer which do not fill a word.
+	 *
+	 * @param contents
+	 *            The buffer.
+	 * @param position
+	 *            The position of the first character.
+	 * @return The characters, the first one on the lowest byte and zeros after
+	 *         the last one.
+	 */
+	private static long readLastWord(byte[] contents, int position) {
+		long word = 0;
+		for (int index = contents.length - 1; index >= position; index--) {
+			word = word << 8 | (contents[index] & 0xff);
+		}
+		return word;
+	}
+
+	/**
+	 * Finds the position of each value on a line.
+	 *
+	 * @param line
+	 *            The buffer with the line contents.
+	 * @param lineStart
+	 *            The position of the first line character.
+	 * @param lineEnd
+	 *            The position after the last line character.
+	 * @param lineNumber
+	 *            The number of the line on the file, used to describe errors.
+	 * @param valueLimits
+	 *            Buffer which receives the start of each value and, on the last
+	 *            position, the end of the last one plus one.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @throws IOException
+	 *             When the line has less than {@link #VALUES_PER_LINE} values.
+	 */
+	private static void splitValues(byte[] line, int lineStart, int lineEnd, int lineNumber, int[] valueLimits,
+			String quotation) throws IOException {
+
+		/* Each value ends one character before the start of the next. */
+		int valueCount = 1;
+		valueLimits[0] = lineStart;
+		for (int position = lineStart; position < lineEnd && valueCount < VALUES_PER_LINE; position++) {
+			if (line[position] == SEPARATION_CHARACTER) {
+				valueLimits[valueCount++] = position + 1;
+			}
+		}
+
+		if (valueCount < VALUES_PER_LINE) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation,
+					"it has " + valueCount + " values instead of " + VALUES_PER_LINE);
+		}
+
+		/* Values after the eighth one are ignored. */
+		int lastValueEnd = valueLimits[VALUES_PER_LINE - 1];
+		while (lastValueEnd < lineEnd && line[lastValueEnd] != SEPARATION_CHARACTER) {
+			lastValueEnd++;
+		}
+		valueLimits[VALUES_PER_LINE] = lastValueEnd + 1;
+	}
+
+	/**
+	 * Decodes the currency abbreviation of a line.
+	 *
+	 * @param line
+	 *            The buffer with the line contents.
+	 * @param abbreviationStart
+	 *            The position of the first currency abbreviation character.
+	 * @param abbreviationEnd
+	 *            The position after the last currency abbreviation character.
+	 * @param lineStart
+	 *            The position of the first line character, used to describe
+	 *            errors.
+	 * @param lineEnd
+	 *            The position after the last line character, used to describe
+	 *            errors.
+	 * @param lineNumber
+	 *            The number of the line on the file, used to describe errors.
+	 * @param quotation
+	 *            The quotation date of the CSV file, used to describe errors.
+	 * @return The {@link CurrencyCodes packed} currency abbreviation.
+	 * @throws IOException
+	 *             When the currency abbreviation is invalid.
+	 */
+	private static int decodeAbbreviation(byte[] line, int abbreviationStart, int abbreviationEnd, int lineStart,
+			int lineEnd, int lineNumber, String quotation) throws IOException {
+		int currencyAbbreviation = CurrencyCodes.INVALID_CODE;
+		if (abbreviationEnd - abbreviationStart == 3) {
+			currencyAbbreviation = CurrencyCodes.pack(line[abbreviationStart], line[abbreviationStart + 1],
+					line[abbreviationStart + 2]);
+		}
+		if (currencyAbbreviation == CurrencyCodes.INVALID_CODE) {
+			throw createParseException(line, lineStart, lineEnd, lineNumber, quotation,
+					"its currency abbreviation is invalid");
+		}
+		return currencyAbbreviation;
+	}
+
+	/**
+	 * Decodes a date on "dd/MM/yyyy" format.
+	 *
+	 * @param line
+	 *            The buffer with the date characters.
+	 * @param start
+	 *            The position of the first date character.
+	 * @param end
+	 *            The position after the last date character.
+	 * @return The number of days between 01/01/1970 and the date or
+	 *         {@link #INVALID_VALUE} if it is not a valid date.
+	 */
+	static long decodeDate(byte[] line, int start, int end) {
+		int firstSlash = indexOf(line, start, end, '/');
+		if (firstSlash == -1) {
+			return INVALID_VALUE;
+		}
+
+		int secondSlash = indexOf(line, firstSlash + 1, end, '/');
+		if (secondSlash == -1 || firstSlash - start > 2 || secondSlash - firstSlash > 3 || end - secondSlash != 5) {
+			return INVALID_VALUE;
+		}
+
+		long day = decodeInteger(line, start, firstSlash);
+		long month = decodeInteger(line, firstSlash + 1, secondSlash);
+		long year = decodeInteger(line, secondSlash + 1, end);
+		if (day == INVALID_VALUE || month == INVALID_VALUE || year == INVALID_VALUE || month < 1 || month > 12
+				|| day < 1 || day > lengthOfMonth((int) year, (int) month)) {
+			return INVALID_VALUE;
+		}
+
+		return toEpochDay((int) year, (int) month, (int) day);
+	}
+
+	/**
+	 * Decodes a non negative integer.
+	 *
+	 * @param line
+	 *            The buffer with the integer digits.
+	 * @param start
+	 *            The position of the first digit.
+	 * @param end
+	 *            The position after the last digit.
+	 * @return The integer value or {@link #INVALID_VALUE} if the characters are
+	 *         not digits or there are more than nine of them.
+	 */
+	static long decodeInteger(byte[] line, int start, int end) {
+		if (start >= end || end - start > 9) {
+			return INVALID_VALUE;
+		}
+
+		long value = 0;
+		for (int position = start; position < end; position++) {
+			int digit = line[position] - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID_VALUE;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes a non negative number on Brazilian format into a value scaled by
+	 * {@link #RATE_SCALE_FACTOR}. Decimal places beyond {@link #RATE_SCALE} are
+	 * rounded half to even.
+	 *
+	 * @param line
+	 *            The buffer with the number characters.
+	 * @param start
+	 *            The position of the first number character.
+	 * @param end
+	 *            The position after the last number character.
+	 * @return The scaled value or {@link #INVALID_VALUE} if the characters are
+	 *         not a valid number.
+	 */
+	static long decodeRate(byte[] line, int start, int end) {
+		boolean hasDigits = false;
+		long integerPart = 0;
+		int position = start;
+
+		/* Reads the integer part, ignoring the grouping separators. */
+		for (; position < end; position++) {
+			int character = line[position];
+			if (character >= '0' && character <= '9') {
+				integerPart = integerPart * 10 + (character - '0');
+				if (integerPart > MAX_RATE_INTEGER_PART) {
+					return INVALID_VALUE;
+				}
+				hasDigits = true;
+			} else if (character != '.') {
+				break;
+			}
+		}
+
+		long fractionalPart = 0;
+		int fractionalDigits = 0;
+		int firstDiscardedDigit = 0;
+		boolean hasNonZeroDiscardedDigits = false;
+
+		if (position < end) {
+			if (line[position] != ',') {
+				return INVALID_VALUE;
+			}
+
+			for (position++; position < end; position++) {
+				int digit = line[position] - '0';
+				if (digit < 0 || digit > 9) {
+					return INVALID_VALUE;
+				}
+				hasDigits = true;
+
+				if (fractionalDigits < RATE_SCALE) {
+					fractionalPart = fractionalPart * 10 + digit;
+				} else if (fractionalDigits == RATE_SCALE) {
+					firstDiscardedDigit = digit;
+				} else if (digit != 0) {
+					hasNonZeroDiscardedDigits = true;
+				}
+				fractionalDigits++;
+			}
+		}
+
+		if (!hasDigits) {
+			return INVALID_VALUE;
+		}
+
+		for (int digits = fractionalDigits; digits < RATE_SCALE; digits++) {
+			fractionalPart *= 10;
+		}
+
+		long value = integerPart * RATE_SCALE_FACTOR + fractionalPart;
+		if (firstDiscardedDigit > 5
+				|| (firstDiscardedDigit == 5 && (hasNonZeroDiscardedDigits || (value & 1) == 1))) {
+			value++;
+		}
+		return value;
+	}
+
+	/**
+	 * Converts a value scaled by {@link #RATE_SCALE_FACTOR} to {@code double}.
+	 * <p>
+	 * Both operands of the division are exactly represented as {@code double},
+	 * so the result is the same as parsing the number text with
+	 * {@link Double#parseDouble(String)}.
+	 *
+	 * @param scaledValue
+	 *            The scaled value.
+	 * @return The {@code double} value.
+	 */
+	public static double toDouble(long scaledValue) {
+		return (double) scaledValue / RATE_SCALE_FACTOR;
+	}
+
+	/**
+	 * Returns the number of days between 01/01/1970 and a date.
+	 *
+	 * @param year
+	 *            The date year.
+	 * @param month
+	 *            The date month, from 1 to 12.
+	 * @param day
+	 *            The date day of month.
+	 * @return The number of days between 01/01/1970 and the date.
+	 */
+	static long toEpochDay(int year, int month, int day) {
+		/* Counts years from March, so the leap day is the last one of the year. */
+		long adjustedYear = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(adjustedYear, 400);
+		long yearOfEra = adjustedYear - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Returns the number of days of a month.
+	 *
+	 * @param year
+	 *            The month year.
+	 * @param month
+	 *            The month, from 1 to 12.
+	 * @return The number of days of the month.
+	 */
+	private static int lengthOfMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leapYear = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+			return leapYear ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Finds the position of a character on a buffer.
+	 *
+	 * @param line
+	 *            The buffer.
+	 * @param start
+	 *            The position where the search starts.
+	 * @param end
+	 *            The position where the search ends (exclusive).
+	 * @param character
+	 *            The character to be found.
+	 * @return The position of the character or -1 if it was not found.
+	 */
+	private static int indexOf(byte[] line, int start, int end, char character) {
+		for (int position = start; position < end; position++) {
+			if (line[position] == character) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates the exception thrown when a line could not be parsed.
+	 *
+	 * @param line
+	 *            The buffer with the line contents.
+	 * @param lineStart
+	 *            The position of the first line character.
+	 * @param lineEnd
+	 *            The position after the last line character.
+	 * @param lineNumber
+	 *            The number of the line on the file.
+	 * @param quotation
+	 *            The quotation date of the CSV file.
+	 * @param reason
+	 *            Why the line could not be parsed.
+	 * @return The exception to be thrown.
+	 */
+	private static IOException createParseException(byte[] line, int lineStart, int lineEnd, int lineNumber,
+			String quotation, String reason) {
+		String lineText = new String(line, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+		return new IOException("Could not parse line " + lineNumber + " (\"" + lineText
+				+ "\") from quotation CSV file of " + quotation + ": " + reason + ".");
+	}
+
+	/**
+	 * Receives the values of each line of a quotation CSV file.
+	 */
+	@FunctionalInterface
+	public interface RowHandler {
+
+		/**
+		 * Handles the values of a line.
+		 *
+		 * @param exchangingEpochDay
+		 *            The exchanging date as the number of days since 01/01/1970.
+		 * @param currencyCode
+		 *            The currency identification code.
+		 * @param type
+		 *            The currency type.
+		 * @param currencyAbbreviation
+		 *            The {@link CurrencyCodes packed} currency abbreviation.
+		 * @param buyingRate
+		 *            The currency's buying rate, scaled by
+		 *            {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+		 * @param sellingRate
+		 *            The currency's selling rate, scaled by
+		 *            {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+		 * @param buyingPpp
+		 *            The currency's buying purchasing power parity, scaled by
+		 *            {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+		 * @param sellingPpp
+		 *            The currency's selling purchasing power parity, scaled by
+		 *            {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+		 */
+		void handleRow(int exchangingEpochDay, int currencyCode, char type, int currencyAbbreviation,
+				long buyingRate, long sellingRate, long buyingPpp, long sellingPpp);
+	}
+}
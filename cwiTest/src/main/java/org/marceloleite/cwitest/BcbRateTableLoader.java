@@ -0,0 +1,90 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+
+/**
+ * Loads {@link RateTable} objects from the quotation CSV files published by
+ * Brazilian central bank.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbRateTableLoader implements RateTableLoader {
+
+	/**
+	 * The base URL used to retrieve the Brazilian central bank quotation CSV file.
+	 */
+	public static final String BCB_CSV_BASE_URL = "http://www4.bcb.gov.br/Download/fechamento/";
+
+	/**
+	 * The system property which replaces {@link #BCB_CSV_BASE_URL} on the
+	 * loaders created through the default constructor, e.g. to retrieve the
+	 * files from a mirror or a local server.
+	 */
+	public static final String BASE_URL_PROPERTY = "cwitest.bcb.baseUrl";
+
+	/**
+	 * The fetcher which downloads and parses the quotation CSV files.
+	 */
+	private final BcbCsvFetcher bcbCsvFetcher;
+
+	/**
+	 * Creates a new {@link BcbRateTableLoader} object which retrieves the
+	 * quotation CSV files from Brazilian central bank site, or from the base URL
+	 * defined by the {@link #BASE_URL_PROPERTY} system property.
+	 */
+	public BcbRateTableLoader() {
+		this(System.getProperty(BASE_URL_PROPERTY, BCB_CSV_BASE_URL));
+	}
+
+	/**
+	 * Creates a new {@link BcbRateTableLoader} object.
+	 *
+	 * @param baseUrl
+	 *            The base URL used to retrieve the quotation CSV files. The file
+	 *            name ("yyyyMMdd.csv") is appended to it.
+	 */
+	public BcbRateTableLoader(String baseUrl) {
+		this(new BcbCsvFetcher(baseUrl));
+	}
+
+	/**
+	 * Creates a new {@link BcbRateTableLoader} object.
+	 *
+	 * @param bcbCsvFetcher
+	 *            The fetcher which downloads and parses the quotation CSV files.
+	 */
+	public BcbRateTableLoader(BcbCsvFetcher bcbCsvFetcher) {
+		if (null == bcbCsvFetcher) {
+			throw new InvalidParameterException("CSV fetcher cannot be null.");
+		}
+		this.bcbCsvFetcher = bcbCsvFetcher;
+	}
+
+	/**
+	 * Returns the base URL used to retrieve the quotation CSV files.
+	 *
+	 * @return The base URL used to retrieve the quotation CSV files.
+	 */
+	public final String getBaseUrl() {
+		return bcbCsvFetcher.getBaseUrl();
+	}
+
+	/**
+	 * Returns the fetcher which downloads and parses the quotation CSV files.
+	 *
+	 * @return The fetcher which downloads and parses the quotation CSV files.
+	 */
+	public final BcbCsvFetcher getBcbCsvFetcher() {
+		return bcbCsvFetcher;
+	}
+
+	@Override
+	public RateTable load(LocalDate quotationDate) throws IOException {
+
+		/* Parses the quotation CSV file straight from its download stream. */
+		return bcbCsvFetcher.fetch(quotationDate);
+	}
+}
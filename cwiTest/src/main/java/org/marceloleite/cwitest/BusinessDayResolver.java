@@ -0,0 +1,547 @@
+package org.marceloleite.cwitest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps requested quotation dates to the dates on which Brazilian central bank
+ * published the quotations, i. e. the immediately preceding business day when a
+ * weekend day or a bank holiday is requested.
+ * <p>
+ * The holidays are read from a text file which holds one rule per line:
+ * <ul>
+ * <li>"yyyy-MM-dd" for a single date;</li>
+ * <li>"--MM-dd" for the same day on every year;</li>
+ * <li>"EASTER+N" or "EASTER-N" for a day relative to Easter Sunday.</li>
+ * </ul>
+ * A rule may be followed by the first year on which it applies, or by a range
+ * of years separated by a hyphen (e.g. "2024-2030"). Text after a "#"
+ * character is ignored.
+ * <p>
+ * The number of days between each date from {@link #FIRST_YEAR} to
+ * {@link #LAST_YEAR} and its business day is computed once, when the resolver
+ * is created, so those dates are resolved with a single array access. Objects
+ * of this class are immutable and can be shared among threads.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class BusinessDayResolver {
+
+	/**
+	 * The name of the resource which holds the Brazilian national holidays.
+	 */
+	public static final String DEFAULT_HOLIDAYS_RESOURCE = "bcb-holidays.txt";
+
+	/**
+	 * The first year of the precomputed calendar.
+	 */
+	static final int FIRST_YEAR = 1980;
+
+	/**
+	 * The last year of the precomputed calendar.
+	 */
+	static final int LAST_YEAR = 2100;
+
+	/**
+	 * The maximum number of quotation dates kept already parsed.
+	 */
+	private static final int MAX_RESOLVED_QUOTATIONS = 4096;
+
+	/**
+	 * The prefix of the rules relative to Easter Sunday.
+	 */
+	private static final String EASTER_PREFIX = "EASTER";
+
+	/**
+	 * The formatter used to parse the quotation dates.
+	 */
+	private static final DateTimeFormatter QUOTATION_DATE_FORMATTER = DateTimeFormatter.ofPattern("d/M/uuuu")
+			.withResolverStyle(ResolverStyle.STRICT);
+
+	/**
+	 * The holiday rules.
+	 */
+	private final List<HolidayRule> holidayRules;
+
+	/**
+	 * The epoch day of the first date of the precomputed calendar.
+	 */
+	private final long firstEpochDay;
+
+	/**
+	 * The number of days between each date of the precomputed calendar and its
+	 * immediately preceding business day, indexed by the date distance to
+	 * {@link #firstEpochDay}. Business days hold zero.
+	 */
+	private final byte[] daysToBusinessDay;
+
+	/**
+	 * The quotation dates already parsed and resolved, indexed by their text.
+	 */
+	private final Map<String, LocalDate> resolvedQuotations = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new {@link BusinessDayResolver} object.
+	 *
+	 * @param holidayRules
+	 *            The holiday rules.
+	 */
+	private BusinessDayResolver(List<HolidayRule> holidayRules) {
+		this.holidayRules = Collections.unmodifiableList(new ArrayList<>(holidayRules));
+		this.firstEpochDay = LocalDate.of(FIRST_YEAR, 1, 1).toEpochDay();
+		int days = (int) (LocalDate.of(LAST_YEAR + 1, 1, 1).toEpochDay() - firstEpochDay);
+
+		boolean[] holidays = new boolean[days];
+		for (int year = FIRST_YEAR; year <= LAST_YEAR; year++) {
+			LocalDate easterSunday = easterSunday(year);
+			for (HolidayRule holidayRule : holidayRules) {
+				LocalDate holiday = holidayRule.dateOn(year, easterSunday);
+				if (null != holiday && holiday.getYear() >= FIRST_YEAR && holiday.getYear() <= LAST_YEAR) {
+					holidays[(int) (holiday.toEpochDay() - firstEpochDay)] = true;
+				}
+			}
+		}
+
+		/*
+		 * A date which is not a business day has the same business day as the date
+		 * before it, so its distance is one day longer.
+		 */
+		this.daysToBusinessDay = new byte[days];
+		for (int index = 0; index < days; index++) {
+			LocalDate date = LocalDate.ofEpochDay(firstEpochDay + index);
+			if (isWeekend(date) || holidays[index]) {
+				int daysToBusinessDay = (index == 0 ? slowDaysToBusinessDay(date.minusDays(1))
+						: this.daysToBusinessDay[index - 1]) + 1;
+				if (daysToBusinessDay > Byte.MAX_VALUE) {
+					throw new IllegalArgumentException("There is no business day in the " + Byte.MAX_VALUE
+							+ " days before " + date + ".");
+				}
+				this.daysToBusinessDay[index] = (byte) daysToBusinessDay;
+			}
+		}
+	}
+
+	/**
+	 * Returns the resolver of the Brazilian national holidays, read from the
+	 * {@link #DEFAULT_HOLIDAYS_RESOURCE} resource.
+	 *
+	 * @return The resolver of the Brazilian national holidays.
+	 */
+	public static BusinessDayResolver getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Creates a resolver which considers only weekend days as non business days.
+	 *
+	 * @return A resolver without holidays.
+	 */
+	public static BusinessDayResolver withoutHolidays() {
+		return new BusinessDayResolver(Collections.<HolidayRule>emptyList());
+	}
+
+	/**
+	 * Creates a resolver from a holidays file.
+	 *
+	 * @param holidaysInputStream
+	 *            The stream of the holidays file, encoded on UTF-8. It is not
+	 *            closed by this method.
+	 * @return The resolver of the holidays read.
+	 * @throws IOException
+	 *             When the file could not be read or has an invalid rule.
+	 */
+	public static BusinessDayResolver load(InputStream holidaysInputStream) throws IOException {
+		if (null == holidaysInputStream) {
+			throw new InvalidParameterException("Holidays input stream cannot be null.");
+		}
+
+		BufferedReader bufferedReader = new BufferedReader(
+				new InputStreamReader(holidaysInputStream, StandardCharsets.UTF_8));
+		List<HolidayRule> holidayRules = new ArrayList<>();
+		String line;
+		int lineNumber = 0;
+		while ((line = bufferedReader.readLine()) != null) {
+			lineNumber++;
+			int commentStart = line.indexOf('#');
+			String rule = (commentStart == -1 ? line : line.substring(0, commentStart)).trim();
+			if (!rule.isEmpty()) {
+				try {
+					holidayRules.add(HolidayRule.parse(rule));
+				} catch (RuntimeException runtimeException) {
+					throw new IOException("Invalid holiday rule on line " + lineNumber + ": \"" + rule + "\".",
+							runtimeException);
+				}
+			}
+		}
+		return new BusinessDayResolver(holidayRules);
+	}
+
+	/**
+	 * Parses a quotation date and resolves it to the date on which its quotation
+	 * was published.
+	 *
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @return The quotation date, adjusted to its immediately preceding business
+	 *         day if a weekend day or a holiday was informed.
+	 */
+	public LocalDate resolve(String quotation) {
+		if (null == quotation) {
+			throw new InvalidParameterException("Quotation date cannot be null.");
+		}
+
+		LocalDate businessDay = resolvedQuotations.get(quotation);
+		if (null == businessDay) {
+			LocalDate quotationDate;
+			try {
+				quotationDate = LocalDate.parse(quotation, QUOTATION_DATE_FORMATTER);
+			} catch (DateTimeParseException dateTimeParseException) {
+				throw new InvalidParameterException(
+						"Could not parse quotation date \"" + quotation + "\". Is it on \"dd/MM/yyyy\" format?");
+			}
+			businessDay = resolve(quotationDate);
+
+			/* Starts over instead of tracking usage, since parsing again is cheap. */
+			if (resolvedQuotations.size() >= MAX_RESOLVED_QUOTATIONS) {
+				resolvedQuotations.clear();
+			}
+			resolvedQuotations.put(quotation, businessDay);
+		}
+		return businessDay;
+	}
+
+	/**
+	 * Resolves a date to the date on which its quotation was published.
+	 *
+	 * @param date
+	 *            The requested date.
+	 * @return The date itself if it is a business day or its immediately
+	 *         preceding business day otherwise.
+	 */
+	public LocalDate resolve(LocalDate date) {
+		if (null == date) {
+			throw new InvalidParameterException("Date cannot be null.");
+		}
+
+		int daysToBusinessDay = daysToBusinessDay(date);
+		return daysToBusinessDay == 0 ? date : date.minusDays(daysToBusinessDay);
+	}
+
+	/**
+	 * Checks if Brazilian central bank publishes quotations on a date.
+	 *
+	 * @param date
+	 *            The date to be checked.
+	 * @return {@code true} if the date is neither a weekend day nor a holiday.
+	 */
+	public boolean isBusinessDay(LocalDate date) {
+		if (null == date) {
+			throw new InvalidParameterException("Date cannot be null.");
+		}
+		return daysToBusinessDay(date) == 0;
+	}
+
+	/**
+	 * Lists the business days of a period.
+	 *
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive.
+	 * @return The business days of the period, in chronological order.
+	 */
+	public List<LocalDate> getBusinessDays(LocalDate firstDate, LocalDate lastDate) {
+		if (null == firstDate || null == lastDate) {
+			throw new InvalidParameterException("Period dates cannot be null.");
+		}
+
+		if (lastDate.isBefore(firstDate)) {
+			throw new InvalidParameterException("Period last date cannot be before its first date.");
+		}
+
+		List<LocalDate> businessDays = new ArrayList<>();
+		for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+			if (daysToBusinessDay(date) == 0) {
+				businessDays.add(date);
+			}
+		}
+		return businessDays;
+	}
+
+	/**
+	 * Counts the days between a date and its immediately preceding business day.
+	 *
+	 * @param date
+	 *            The requested date.
+	 * @return The number of days to subtract from the date.
+	 */
+	private int daysToBusinessDay(LocalDate date) {
+		long index = date.toEpochDay() - firstEpochDay;
+		if (index >= 0 && index < daysToBusinessDay.length) {
+			return daysToBusinessDay[(int) index];
+		}
+		return slowDaysToBusinessDay(date);
+	}
+
+	/**
+	 * Counts the days between a date and its immediately preceding business day
+	 * without the precomputed calendar.
+	 *
+	 * @param date
+	 *            The requested date.
+	 * @return The number of days to subtract from the date.
+	 */
+	private int slowDaysToBusinessDay(LocalDate date) {
+		int daysToBusinessDay = 0;
+		LocalDate businessDay = date;
+		while (isWeekend(businessDay) || isHoliday(businessDay)) {
+			businessDay = businessDay.minusDays(1);
+			daysToBusinessDay++;
+		}
+		return daysToBusinessDay;
+	}
+
+	/**
+	 * Checks if a date is a holiday without the precomputed calendar.
+	 *
+	 * @param date
+	 *            The date to be checked.
+	 * @return {@code true} if any holiday rule falls on the date.
+	 */
+	private boolean isHoliday(LocalDate date) {
+		LocalDate easterSunday = null;
+		for (HolidayRule holidayRule : holidayRules) {
+			if (holidayRule.easterOffset != null && easterSunday == null) {
+				easterSunday = easterSunday(date.getYear());
+			}
+			if (date.equals(holidayRule.dateOn(date.getYear(), easterSunday))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if a date is a weekend day.
+	 *
+	 * @param date
+	 *            The date to be checked.
+	 * @return {@code true} if the date is a saturday or a sunday.
+	 */
+	private static boolean isWeekend(LocalDate date) {
+		DayOfWeek dayOfWeek = date.getDayOfWeek();
+		return dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+	}
+
+	/**
+	 * Calculates the Easter Sunday of a year on the Gregorian calendar, through
+	 * the anonymous Gregorian algorithm.
+	 *
+	 * @param year
+	 *            The year.
+	 * @return The Easter Sunday of the year.
+	 */
+	static LocalDate easterSunday(int year) {
+		int a = year % 19;
+		int b = year / 100;
+		int c = year % 100;
+		int d = b / 4;
+		int e = b % 4;
+		int f = (b + 8) / 25;
+		int g = (b - f + 1) / 3;
+		int h = (19 * a + b - d - g + 15) % 30;
+		int i = c / 4;
+		int k = c % 4;
+		int l = (32 + 2 * e + 2 * i - h - k) % 7;
+		int m = (a + 11 * h + 22 * l) / 451;
+		int month = (h + l - 7 * m + 114) / 31;
+		int day = ((h + l - 7 * m + 114) % 31) + 1;
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Holds the default resolver, which is created on its first use.
+	 */
+	private static final class DefaultHolder {
+
+		/**
+		 * The resolver of the Brazilian national holidays.
+		 */
+		private static final BusinessDayResolver INSTANCE = loadDefault();
+
+		/**
+		 * Loads the resolver of the Brazilian national holidays.
+		 *
+		 * @return The resolver of the Brazilian national holidays.
+		 */
+		private static BusinessDayResolver loadDefault() {
+			try (InputStream holidaysInputStream = BusinessDayResolver.class
+					.getResourceAsStream(DEFAULT_HOLIDAYS_RESOURCE)) {
+				if (null == holidaysInputStream) {
+					throw new IOException("Could not find resource \"" + DEFAULT_HOLIDAYS_RESOURCE + "\".");
+				}
+				return load(holidaysInputStream);
+			} catch (IOException ioException) {
+				throw new UncheckedIOException("Could not load the Brazilian national holidays.", ioException);
+			}
+		}
+	}
+
+	/**
+	 * A rule which defines a holiday on each year.
+	 */
+	private static final class HolidayRule {
+
+		/**
+		 * The single date of the holiday or {@code null} if it happens on every
+		 * year.
+		 */
+		private final LocalDate date;
+
+		/**
+		 * The month of a holiday which happens on the same day on every year, or
+		 * zero.
+		 */
+		private final int month;
+
+		/**
+		 * The day of a holiday which happens on the same day on every year, or
+		 * zero.
+		 */
+		private final int dayOfMonth;
+
+		/**
+		 * The number of days between the Easter Sunday and the holiday or
+		 * {@code null} if the holiday is not relative to Easter.
+		 */
+		private final Integer easterOffset;
+
+		/**
+		 * The first year on which the holiday happens.
+		 */
+		private final int firstYear;
+
+		/**
+		 * The last year on which the holiday happens.
+		 */
+		private final int lastYear;
+
+		/**
+		 * Creates a new {@link HolidayRule} object.
+		 *
+		 * @param date
+		 *            The single date of the holiday.
+		 * @param month
+		 *            The month of a holiday which happens on the same day on every
+		 *            year.
+		 * @param dayOfMonth
+		 *            The day of a holiday which happens on the same day on every
+		 *            year.
+		 * @param easterOffset
+		 *            The number of days between the Easter Sunday and the holiday.
+		 * @param firstYear
+		 *            The first year on which the holiday happens.
+		 * @param lastYear
+		 *            The last year on which the holiday happens.
+		 */
+		private HolidayRule(LocalDate date, int month, int dayOfMonth, Integer easterOffset, int firstYear,
+				int lastYear) {
+			this.date = date;
+			this.month = month;
+			this.dayOfMonth = dayOfMonth;
+			this.easterOffset = easterOffset;
+			this.firstYear = firstYear;
+			this.lastYear = lastYear;
+		}
+
+		/**
+		 * Parses a rule of the holidays file.
+		 *
+		 * @param rule
+		 *            The rule text, without comments.
+		 * @return The rule parsed.
+		 */
+		private static HolidayRule parse(String rule) {
+			String[] tokens = rule.split("\\s+");
+			if (tokens.length > 2) {
+				throw new IllegalArgumentException("Too many values.");
+			}
+
+			int firstYear = Integer.MIN_VALUE;
+			int lastYear = Integer.MAX_VALUE;
+			if (tokens.length == 2) {
+				int hyphen = tokens[1].indexOf('-');
+				firstYear = Integer.parseInt(hyphen == -1 ? tokens[1] : tokens[1].substring(0, hyphen));
+				if (hyphen != -1) {
+					lastYear = Integer.parseInt(tokens[1].substring(hyphen + 1));
+				}
+			}
+
+			String day = tokens[0];
+			if (day.startsWith(EASTER_PREFIX)) {
+				String offset = day.substring(EASTER_PREFIX.length());
+				int easterOffset = offset.isEmpty() ? 0
+						: Integer.parseInt(offset.startsWith("+") ? offset.substring(1) : offset);
+				return new HolidayRule(null, 0, 0, easterOffset, firstYear, lastYear);
+			} else if (day.startsWith("--")) {
+				int hyphen = day.indexOf('-', 2);
+				if (hyphen == -1) {
+					throw new IllegalArgumentException("Day must be on \"--MM-dd\" format.");
+				}
+				int month = Integer.parseInt(day.substring(2, hyphen));
+				int dayOfMonth = Integer.parseInt(day.substring(hyphen + 1));
+
+				/* Checks the day against a leap year, so 29th of february is accepted. */
+				LocalDate.of(2000, month, dayOfMonth);
+				return new HolidayRule(null, month, dayOfMonth, null, firstYear, lastYear);
+			} else {
+				LocalDate date = LocalDate.parse(day);
+				return new HolidayRule(date, 0, 0, null, firstYear, lastYear);
+			}
+		}
+
+		/**
+		 * Returns the date of the holiday on a year.
+		 *
+		 * @param year
+		 *            The year.
+		 * @param easterSunday
+		 *            The Easter Sunday of the year, required only by rules relative
+		 *            to Easter.
+		 * @return The date of the holiday or {@code null} if it does not happen on
+		 *         the year.
+		 */
+		private LocalDate dateOn(int year, LocalDate easterSunday) {
+			if (year < firstYear || year > lastYear) {
+				return null;
+			}
+
+			if (null != date) {
+				return date.getYear() == year ? date : null;
+			} else if (null != easterOffset) {
+				return easterSunday.plusDays(easterOffset);
+			} else if (month == 2 && dayOfMonth == 29 && !Year.isLeap(year)) {
+				return null;
+			} else {
+				return LocalDate.of(year, month, dayOfMonth);
+			}
+		}
+	}
+}
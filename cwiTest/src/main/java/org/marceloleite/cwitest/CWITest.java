@@ -1,60 +1,268 @@
 package org.marceloleite.cwitest;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.file.Paths;
 import java.security.InvalidParameterException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is the class I created to answer the CWI test.
+ * <p>
+ * Objects of this class are immutable and thread safe, so a single object is
+ * meant to be shared by the whole application: either the one returned by
+ * {@link #getDefault()} or one configured through a {@link Builder}. The
+ * conversions of tables already on cache take no lock.
  * 
  * @author Marcelo Leite
  *
  */
-public class CWITest {
+public final class CWITest {
 
 	/**
-	 * The base URL used to retrieve the Brazilian central bank quotation CSV file.
+	 * The time zone in which Brazilian central bank publishes its quotations.
 	 */
-	private static final String BCB_CSV_BASE_URL = "http://www4.bcb.gov.br/Download/fechamento/";
+	static final ZoneId BCB_TIME_ZONE = ZoneId.of("America/Sao_Paulo");
 
 	/**
-	 * The extension used to identify a CSV file.
+	 * The cache shared by all objects created through the default constructor.
 	 */
-	private static final String CSV_EXTENSION = ".csv";
+	private static final RateTableCache DEFAULT_RATE_TABLE_CACHE = new RateTableCache();
 
 	/**
-	 * Size of the buffer used to read the CSV file.
+	 * The system property which defines the directory of the store used by the
+	 * default constructor to keep the past dates' tables between executions. No
+	 * store is used if it is not defined.
 	 */
-	private static final int FILE_READING_BUFFER_SIZE = 1024;
+	public static final String RATE_TABLE_STORE_DIRECTORY_PROPERTY = "cwitest.rateTableStore.directory";
 
 	/**
-	 * The character used to separate values on the CSV file.
+	 * The system property which defines the comma-separated base URLs of mirrors
+	 * of Brazilian central bank quotation CSV files. If it is defined, the
+	 * default constructor loads each table from the fastest of Brazilian central
+	 * bank site and its mirrors through a {@link RateSourceRouter}.
 	 */
-	private static final String CSV_SEPARATION_CHARACTER = ";";
+	public static final String MIRROR_BASE_URLS_PROPERTY = "cwitest.bcb.mirrorBaseUrls";
+
+	/**
+	 * The loader used by all objects created through the default constructor.
+	 */
+	private static final RateTableLoader DEFAULT_RATE_TABLE_LOADER = createDefaultRateTableLoader();
+
+	/**
+	 * The number of threads of the executor which loads quotation tables for
+	 * asynchronous conversions by default.
+	 */
+	public static final int DEFAULT_ASYNC_LOAD_THREADS = 8;
+
+	/**
+	 * The executor which loads quotation tables for asynchronous conversions by
+	 * default. Its threads only load tables which are not on cache, and each
+	 * table is loaded once however many conversions wait for it.
+	 */
+	private static final Executor DEFAULT_ASYNC_EXECUTOR = Executors.newFixedThreadPool(DEFAULT_ASYNC_LOAD_THREADS,
+			runnable -> {
+				Thread thread = new Thread(runnable, "cwitest-async-load");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * The maximum number of business days whose quotation tables are loaded
+	 * together for a quotation series.
+	 */
+	public static final int SERIES_CHUNK_SIZE = 32;
+
+	/**
+	 * The cache of quotation tables already retrieved.
+	 */
+	private final RateTableCache rateTableCache;
+
+	/**
+	 * The loader used to retrieve the quotation tables which are not on cache.
+	 */
+	private final RateTableLoader rateTableLoader;
+
+	/**
+	 * The resolver which maps the requested dates to the dates on which the
+	 * quotations were published.
+	 */
+	private final BusinessDayResolver businessDayResolver;
+
+	/**
+	 * The executor which loads quotation tables for asynchronous conversions and
+	 * quotation series when no other executor is informed.
+	 */
+	private final Executor asyncExecutor;
+
+	/**
+	 * Creates a new {@link CWITest} object which retrieves quotations from
+	 * Brazilian central bank and shares its quotation tables cache with all other
+	 * objects created through this constructor.
+	 */
+	public CWITest() {
+		this(DEFAULT_RATE_TABLE_CACHE, DEFAULT_RATE_TABLE_LOADER);
+	}
+
+	/**
+	 * Creates a new {@link CWITest} object.
+	 * 
+	 * @param rateTableCache
+	 *            The cache of quotation tables already retrieved.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the quotation tables which are not on
+	 *            cache.
+	 */
+	public CWITest(RateTableCache rateTableCache, RateTableLoader rateTableLoader) {
+		this(rateTableCache, rateTableLoader, BusinessDayResolver.getDefault());
+	}
+
+	/**
+	 * Creates a new {@link CWITest} object.
+	 * 
+	 * @param rateTableCache
+	 *            The cache of quotation tables already retrieved.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the quotation tables which are not on
+	 *            cache.
+	 * @param businessDayResolver
+	 *            The resolver which maps the requested dates to the dates on which
+	 *            the quotations were published.
+	 */
+	public CWITest(RateTableCache rateTableCache, RateTableLoader rateTableLoader,
+			BusinessDayResolver businessDayResolver) {
+		this(rateTableCache, rateTableLoader, businessDayResolver, DEFAULT_ASYNC_EXECUTOR);
+	}
+
+	/**
+	 * Creates a new {@link CWITest} object.
+	 * 
+	 * @param rateTableCache
+	 *            The cache of quotation tables already retrieved.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the quotation tables which are not on
+	 *            cache.
+	 * @param businessDayResolver
+	 *            The resolver which maps the requested dates to the dates on which
+	 *            the quotations were published.
+	 * @param asyncExecutor
+	 *            The executor which loads quotation tables for asynchronous
+	 *            conversions and quotation series when no other executor is
+	 *            informed.
+	 */
+	private CWITest(RateTableCache rateTableCache, RateTableLoader rateTableLoader,
+			BusinessDayResolver businessDayResolver, Executor asyncExecutor) {
+		if (null == rateTableCache) {
+			throw new InvalidParameterException("Rate table cache cannot be null.");
+		}
+
+		if (null == rateTableLoader) {
+			throw new InvalidParameterException("Rate table loader cannot be null.");
+		}
+
+		if (null == businessDayResolver) {
+			throw new InvalidParameterException("Business day resolver cannot be null.");
+		}
+
+		if (null == asyncExecutor) {
+			throw new InvalidParameterException("Asynchronous executor cannot be null.");
+		}
+
+		this.rateTableCache = rateTableCache;
+		this.rateTableLoader = rateTableLoader;
+		this.businessDayResolver = businessDayResolver;
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * Returns the object shared by the whole application, which retrieves
+	 * quotations from Brazilian central bank and shares its quotation tables
+	 * cache with all objects created through the default constructor.
+	 * 
+	 * @return The shared object.
+	 */
+	public static CWITest getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Creates the loader used by all objects created through the default
+	 * constructor, which reads the past dates' tables from a store if the
+	 * {@link #RATE_TABLE_STORE_DIRECTORY_PROPERTY} system property is defined
+	 * and uses the mirrors of the {@link #MIRROR_BASE_URLS_PROPERTY} system
+	 * property if it is defined.
+	 * 
+	 * @return The default loader.
+	 */
+	private static RateTableLoader createDefaultRateTableLoader() {
+		RateTableLoader bcbRateTableLoader = new BcbRateTableLoader();
+		String mirrorBaseUrls = System.getProperty(MIRROR_BASE_URLS_PROPERTY);
+		if (null != mirrorBaseUrls && !mirrorBaseUrls.trim().isEmpty()) {
+			RateSourceRouter.Builder builder = new RateSourceRouter.Builder().addSource("bcb", bcbRateTableLoader);
+			for (String mirrorBaseUrl : mirrorBaseUrls.split(",")) {
+				if (!mirrorBaseUrl.trim().isEmpty()) {
+					builder.addSource(mirrorBaseUrl.trim(), new BcbRateTableLoader(mirrorBaseUrl.trim()));
+				}
+			}
+			bcbRateTableLoader = builder.build();
+		}
+
+		String rateTableStoreDirectory = System.getProperty(RATE_TABLE_STORE_DIRECTORY_PROPERTY);
+		if (null == rateTableStoreDirectory || rateTableStoreDirectory.isEmpty()) {
+			return bcbRateTableLoader;
+		}
+
+		try {
+			return new PersistentRateTableLoader(RateTableStore.open(Paths.get(rateTableStoreDirectory)),
+					bcbRateTableLoader);
+		} catch (IOException ioException) {
+			throw new UncheckedIOException(
+					"Could not open the rate table store on \"" + rateTableStoreDirectory + "\".", ioException);
+		}
+	}
 
 	/**
 	 * The class entry method (used for testing purposes).
 	 * 
 	 * @param args
-	 *            Not used.
+	 *            Empty to print a sample quotation, "backfill" followed by the
+	 *            {@link RateTableBackfill#main backfill command} arguments,
+	 *            "convert" followed by the {@link StreamingConverter#main convert
+	 *            command} arguments or "serve" followed by the
+	 *            {@link ConversionServer#main serve command} arguments.
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && "backfill".equals(args[0])) {
+			RateTableBackfill.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		if (args.length > 0 && "convert".equals(args[0])) {
+			StreamingConverter.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
+		if (args.length > 0 && "serve".equals(args[0])) {
+			ConversionServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		BigDecimal returnValue = null;
 		String from = "USD";
 		String to = "EUR";
@@ -62,7 +270,7 @@ public class CWITest {
 		Number value = 100.00;
 
 		try {
-			returnValue = new CWITest().currencyQuotation(from, to, value, quotation);
+			returnValue = getDefault().currencyQuotation(from, to, value, quotation);
 		} catch (IOException ioException) {
 			System.err.println("Could not retrieve the currency quotation for " + value + " " + from + " to " + to
 					+ " on " + quotation + ".");
@@ -93,247 +301,735 @@ public class CWITest {
 	 *             be parsed.
 	 */
 	public BigDecimal currencyQuotation(String from, String to, Number value, String quotation) throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		try {
+			checkParameters(from, to, value);
 
-		/* Check parameters. */
-		if (null == from || from.length() != 3) {
-			throw new InvalidParameterException(
-					"Currency informed on \"from\" parameter cannot be null and must have three characters.");
+			long resolveStartTime = metrics.startTimer();
+			LocalDate quotationDate = resolveQuotationDate(quotation);
+			metrics.stopTimer(QuotationMetrics.Stage.RESOLVE_DATE, resolveStartTime);
+
+			/*
+			 * Retrieves the currency exchanging information of the quotation date, looking
+			 * for it on cache before downloading its CSV file.
+			 */
+			RateTable rateTable = rateTableCache.get(quotationDate, rateTableLoader);
+
+			long convertStartTime = metrics.startTimer();
+			BigDecimal convertedValue = convert(rateTable, from, to, value);
+			metrics.stopTimer(QuotationMetrics.Stage.CONVERT, convertStartTime);
+			return convertedValue;
+		} catch (UncheckedIOException uncheckedIOException) {
+
+			/* A line of a lazily parsed table could not be decoded. */
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, uncheckedIOException.getCause());
+			throw uncheckedIOException.getCause();
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.QUOTATION, startTime);
 		}
+	}
 
-		if (null == to || to.length() != 3) {
-			throw new InvalidParameterException(
-					"Currency informed on \"to\" parameter cannot be null and must have three characters.");
+	/**
+	 * Converts many amounts in hundredths of a currency to another currency based
+	 * on the Brazilian central bank quotation of a single date, i. e. for the
+	 * revaluation of a whole portfolio.
+	 * <p>
+	 * The quotation table and the rates are looked up once, and the amounts are
+	 * converted by {@link FixedPointConverter#convertAll(long[], long, long, long[])}
+	 * with the same rounding as {@link #currencyQuotation}. Negative amounts are
+	 * converted symmetrically.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param valuesMinor
+	 *            The amounts of base currency to convert, in hundredths.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @param convertedValuesMinor
+	 *            The array where the equivalent amounts on the quote currency, in
+	 *            hundredths, are stored on the same positions. It may be the
+	 *            array of the amounts.
+	 * @throws IOException
+	 *             When the method cannot retrieve the Brazilian central bank
+	 *             quotation CSV file or a value read on from the CSV file could not
+	 *             be parsed.
+	 */
+	public void convertAll(String from, String to, long[] valuesMinor, String quotation, long[] convertedValuesMinor)
+			throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		try {
+			checkCurrencies(from, to);
+			RateTable rateTable = getRateTable(quotation);
+
+			long convertStartTime = metrics.startTimer();
+			CrossRateMatrix matrix = rateTable.getCrossRateMatrix();
+			int pair = matrix.pairOf(CurrencyCodes.pack(from), CurrencyCodes.pack(to));
+			if (pair != CrossRateMatrix.NOT_FOUND) {
+				FixedPointConverter.convertAll(valuesMinor, matrix.getMultiplier(pair), matrix.getDivisor(pair),
+						convertedValuesMinor);
+			} else {
+				FixedPointConverter.convertAll(valuesMinor, getBuyingRate(rateTable, from),
+						getBuyingRate(rateTable, to), convertedValuesMinor);
+			}
+			metrics.stopTimer(QuotationMetrics.Stage.CONVERT, convertStartTime);
+		} catch (UncheckedIOException uncheckedIOException) {
+
+			/* A line of a lazily parsed table could not be decoded. */
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, uncheckedIOException.getCause());
+			throw uncheckedIOException.getCause();
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.QUOTATION, startTime);
 		}
+	}
 
-		if (value.doubleValue() < 0) {
-			throw new InvalidParameterException(
-					"The amount informed on \"value\" parameter must be equal or greater than zero.");
+	/**
+	 * Converts many amounts of a currency to another currency based on the
+	 * Brazilian central bank quotation of a single date, i. e. for the
+	 * revaluation of a whole portfolio.
+	 * <p>
+	 * The quotation table and the rates are looked up once, and the amounts are
+	 * converted by
+	 * {@link FixedPointConverter#convertAll(double[], long, long, double[])}, so
+	 * each converted amount is the {@code double} value of the one returned by
+	 * {@link #currencyQuotation} for the same amount. Negative amounts are
+	 * converted symmetrically.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param values
+	 *            The amounts of base currency to convert.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @param convertedValues
+	 *            The array where the equivalent amounts on the quote currency are
+	 *            stored on the same positions. It may be the array of the
+	 *            amounts.
+	 * @throws IOException
+	 *             When the method cannot retrieve the Brazilian central bank
+	 *             quotation CSV file or a value read on from the CSV file could not
+	 *             be parsed.
+	 */
+	public void convertAll(String from, String to, double[] values, String quotation, double[] convertedValues)
+			throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		try {
+			checkCurrencies(from, to);
+			RateTable rateTable = getRateTable(quotation);
+
+			long convertStartTime = metrics.startTimer();
+			CrossRateMatrix matrix = rateTable.getCrossRateMatrix();
+			int pair = matrix.pairOf(CurrencyCodes.pack(from), CurrencyCodes.pack(to));
+			if (pair != CrossRateMatrix.NOT_FOUND) {
+				FixedPointConverter.convertAll(values, matrix.getMultiplier(pair), matrix.getDivisor(pair),
+						convertedValues);
+			} else {
+				FixedPointConverter.convertAll(values, getBuyingRate(rateTable, from), getBuyingRate(rateTable, to),
+						convertedValues);
+			}
+			metrics.stopTimer(QuotationMetrics.Stage.CONVERT, convertStartTime);
+		} catch (UncheckedIOException uncheckedIOException) {
+
+			/* A line of a lazily parsed table could not be decoded. */
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, uncheckedIOException.getCause());
+			throw uncheckedIOException.getCause();
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.QUOTATION, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.QUOTATION, startTime);
 		}
+	}
 
-		if (null == quotation) {
-			throw new InvalidParameterException("Quotation date cannot be null.");
+	/**
+	 * Returns a future of the value of a currency amount converted to another
+	 * currency based on Brazilian central bank quotation, without blocking the
+	 * calling thread.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @return A future of the equivalent amount on the quote currency.
+	 * @see #currencyQuotationAsync(String, String, Number, String, Executor,
+	 *      Duration)
+	 */
+	public CompletableFuture<BigDecimal> currencyQuotationAsync(String from, String to, Number value,
+			String quotation) {
+		return currencyQuotationAsync(from, to, value, quotation, asyncExecutor, null);
+	}
+
+	/**
+	 * Returns a future of the value of a currency amount converted to another
+	 * currency based on Brazilian central bank quotation, without blocking the
+	 * calling thread.
+	 * <p>
+	 * If the quotation table is on cache, the future is already completed when
+	 * returned. Otherwise the table is loaded by the executor, and all
+	 * conversions of the same date wait for a single load without holding any
+	 * thread, so a few threads serve any number of pending conversions.
+	 * <p>
+	 * The future completes exceptionally with the exception
+	 * {@link #currencyQuotation} would have thrown, or with a
+	 * {@link TimeoutException} if the time limit is exceeded. Cancelling it, or
+	 * its timeout, releases the caller but does not abort the table load, which
+	 * still fills the cache for later conversions.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @param executor
+	 *            The executor which loads the quotation table if it is not on
+	 *            cache.
+	 * @param timeout
+	 *            The time limit of the conversion or {@code null} for no limit.
+	 * @return A future of the equivalent amount on the quote currency.
+	 */
+	public CompletableFuture<BigDecimal> currencyQuotationAsync(String from, String to, Number value,
+			String quotation, Executor executor, Duration timeout) {
+		if (null == executor) {
+			throw new InvalidParameterException("Executor cannot be null.");
 		}
 
-		Date quotationDate;
-		try {
-			quotationDate = new SimpleDateFormat("dd/MM/yyyy").parse(quotation);
-		} catch (ParseException parseException) {
-			throw new InvalidParameterException(
-					"Could not parse quotation date \"" + quotation + "\". Is it on \"dd/MM/yyyy\" format?");
+		if (null != timeout && timeout.isNegative()) {
+			throw new InvalidParameterException("Timeout cannot be negative.");
 		}
 
-		Calendar calendar = Calendar.getInstance();
-		calendar.setTime(quotationDate);
-		int dayOfWeek = calendar.get(Calendar.DAY_OF_WEEK);
+		LocalDate quotationDate;
+		try {
+			checkParameters(from, to, value);
+			quotationDate = resolveQuotationDate(quotation);
+		} catch (RuntimeException runtimeException) {
+			return Futures.failed(runtimeException);
+		}
 
-		/*
-		 * If a weekend day was informed, adjust the quotation date to its immediately
-		 * preceding business day.
-		 */
-		int daysToSubtract = 0;
-		if (dayOfWeek == Calendar.SATURDAY) {
-			daysToSubtract = 1;
-		} else {
-			if (dayOfWeek == Calendar.SUNDAY) {
-				daysToSubtract = 2;
-			}
+		CompletableFuture<BigDecimal> future = rateTableCache.getAsync(quotationDate, rateTableLoader, executor)
+				.thenApply(rateTable -> convert(rateTable, from, to, value));
+		if (null == timeout) {
+			return future;
 		}
+		return Futures.withTimeout(future, timeout, "Could not convert " + value + " " + from + " to " + to
+				+ " on " + quotation + " within " + timeout.toMillis() + " ms.");
+	}
 
-		calendar.add(Calendar.DAY_OF_MONTH, -daysToSubtract);
-		quotationDate = calendar.getTime();
+	/**
+	 * Converts a batch of currency amounts on the calling thread.
+	 * 
+	 * @param conversionRequests
+	 *            The conversions to execute.
+	 * @return The conversion results, on the same order as the requests.
+	 * @see #currencyQuotations(Collection, Executor)
+	 */
+	public List<ConversionResult> currencyQuotations(Collection<ConversionRequest> conversionRequests) {
+		return currencyQuotations(conversionRequests, Runnable::run);
+	}
 
-		/* Retrieves the CSV file for the quotation date. */
-		File csvFile = retrieveQuotationCsvFile(quotationDate);
+	/**
+	 * Converts a batch of currency amounts.
+	 * 
+	 * @param conversionRequests
+	 *            The conversions to execute.
+	 * @param executor
+	 *            The executor which converts the amounts of each quotation date.
+	 * @return The conversion results, on the same order as the requests.
+	 * @see #currencyQuotations(Collection, Executor)
+	 */
+	public List<ConversionResult> currencyQuotations(Stream<ConversionRequest> conversionRequests,
+			Executor executor) {
+		return currencyQuotations(conversionRequests.collect(Collectors.toList()), executor);
+	}
 
-		/*
-		 * Creates a hash map with the currency exchanging information based on the csv
-		 * file retrieved.
-		 */
-		Map<String, CurrencyExchangingInformation> currencyExchangingInformationMap;
-		currencyExchangingInformationMap = createExchangingInformationMap(csvFile);
+	/**
+	 * Converts a batch of currency amounts.
+	 * <p>
+	 * The requests are grouped by quotation date, so the exchanging information of
+	 * each date is retrieved only once for the whole batch, and each date group is
+	 * converted by a task submitted to the executor. A request which cannot be
+	 * converted does not abort the batch: its result holds the exception which
+	 * {@link #currencyQuotation} would have thrown.
+	 * 
+	 * @param conversionRequests
+	 *            The conversions to execute.
+	 * @param executor
+	 *            The executor which converts the amounts of each quotation date.
+	 * @return The conversion results, on the same order as the requests.
+	 */
+	public List<ConversionResult> currencyQuotations(Collection<ConversionRequest> conversionRequests,
+			Executor executor) {
+		if (null == conversionRequests) {
+			throw new InvalidParameterException("Conversion requests cannot be null.");
+		}
 
-		csvFile.delete();
+		if (null == executor) {
+			throw new InvalidParameterException("Executor cannot be null.");
+		}
+
+		ConversionRequest[] requests = conversionRequests.toArray(new ConversionRequest[conversionRequests.size()]);
+		ConversionResult[] results = new ConversionResult[requests.length];
 
-		CurrencyExchangingInformation currencyExchangingInformationFrom = currencyExchangingInformationMap.get(from);
-		if (null == currencyExchangingInformationFrom) {
-			throw new RuntimeException("Could not find exchanging rates for \"" + from + "\" currency.");
+		/* Checks the requests and groups them by quotation date. */
+		Map<LocalDate, RequestIndexes> requestIndexesByDate = new HashMap<>();
+		for (int index = 0; index < requests.length; index++) {
+			ConversionRequest request = requests[index];
+			try {
+				if (null == request) {
+					throw new InvalidParameterException("Conversion request cannot be null.");
+				}
+				checkParameters(request.getFrom(), request.getTo(), request.getValue());
+				LocalDate quotationDate = resolveQuotationDate(request.getQuotation());
+				requestIndexesByDate.computeIfAbsent(quotationDate, date -> new RequestIndexes()).add(index);
+			} catch (RuntimeException runtimeException) {
+				results[index] = ConversionResult.failure(request, runtimeException);
+			}
 		}
 
-		CurrencyExchangingInformation currencyExchangingInformationTo = currencyExchangingInformationMap.get(to);
-		if (null == currencyExchangingInformationTo) {
-			throw new RuntimeException("Could not find exchanging rates for \"" + to + "\" currency.");
+		/* Converts each date group on the executor. */
+		List<CompletableFuture<Void>> futures = new ArrayList<>(requestIndexesByDate.size());
+		for (Map.Entry<LocalDate, RequestIndexes> entry : requestIndexesByDate.entrySet()) {
+			futures.add(CompletableFuture.runAsync(() -> convertGroup(entry.getKey(), entry.getValue(), requests,
+					results), executor));
 		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
 
-		/* Calculates the equivalent amount on the quote currency. */
-		double exchangeRate = (currencyExchangingInformationFrom.getBuyingRate()
-				/ currencyExchangingInformationTo.getBuyingRate());
-		double convertedValue = Math.round((value.doubleValue() * exchangeRate) * 100.0) / 100.0;
-		BigDecimal convertedValueBigDecimal = new BigDecimal(Double.toString(convertedValue));
+		return Arrays.asList(results);
+	}
 
-		return convertedValueBigDecimal;
+	/**
+	 * Starts loading the current date's quotation table ahead of demand, so the
+	 * conversions of the current date find it on cache as soon as Brazilian
+	 * central bank publishes it.
+	 * 
+	 * @return The prefetcher started, which must be closed to stop it.
+	 * @see RateTablePrefetcher
+	 */
+	public RateTablePrefetcher startPrefetching() {
+		RateTablePrefetcher rateTablePrefetcher = new RateTablePrefetcher(rateTableCache, rateTableLoader,
+				businessDayResolver);
+		rateTablePrefetcher.start();
+		return rateTablePrefetcher;
 	}
 
 	/**
-	 * Retrieves the Real quotation CSV file of a specific date from Brazilian
-	 * central bank.
+	 * Returns the daily buying cross rates of a currency pair over a period.
 	 * 
-	 * @param quotationDate
-	 *            Date from which the quotation CSV file should be retrieved.
-	 * @return The specified date's quotation CSV file.
-	 * @throws IOException
-	 *             When the quotation CSV file could not be retrieved.
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive.
+	 * @return A stream of consecutive chunks of the series.
+	 * @see #currencyQuotationSeries(String, String, LocalDate, LocalDate,
+	 *      CrossRateMatrix.Variant, Executor)
 	 */
-	private final File retrieveQuotationCsvFile(Date quotationDate) throws IOException {
+	public Stream<RateSeries> currencyQuotationSeries(String from, String to, LocalDate firstDate,
+			LocalDate lastDate) {
+		return currencyQuotationSeries(from, to, firstDate, lastDate, CrossRateMatrix.Variant.BUYING, asyncExecutor);
+	}
 
-		/* Elaborates the URL to retrieve the CSV quotation. */
-		String quotationCsvUrlString = BCB_CSV_BASE_URL;
-		quotationCsvUrlString += new SimpleDateFormat("yyyyMMdd").format(quotationDate);
-		quotationCsvUrlString += CSV_EXTENSION;
+	/**
+	 * Returns the daily cross rates of a currency pair over a period.
+	 * <p>
+	 * The series is computed lazily as the stream is consumed, in chunks of up to
+	 * {@value #SERIES_CHUNK_SIZE} business days whose tables are loaded together
+	 * by the executor, while the tables of the next chunk are loaded as the
+	 * current one is consumed. Tables already on cache are reused, and those
+	 * loaded are kept on cache for later conversions. Business days without
+	 * quotation, as well as those whose tables lack any of the currencies, have
+	 * no point on the series, and empty chunks are not reported.
+	 * <p>
+	 * Any other failure to load a table is thrown by the stream when its chunk is
+	 * reached, as an {@link UncheckedIOException} if it is an
+	 * {@link IOException}. Closing the stream stops waiting for the chunk being
+	 * loaded.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive.
+	 * @param variant
+	 *            The rates from which the cross rates are computed.
+	 * @param executor
+	 *            The executor which loads the quotation tables which are not on
+	 *            cache.
+	 * @return A stream of consecutive chunks of the series.
+	 */
+	public Stream<RateSeries> currencyQuotationSeries(String from, String to, LocalDate firstDate,
+			LocalDate lastDate, CrossRateMatrix.Variant variant, Executor executor) {
+		checkCurrencies(from, to);
 
-		URL quotationCsvUrl;
-		try {
-			quotationCsvUrl = new URL(quotationCsvUrlString);
-		} catch (MalformedURLException malformedURLException) {
-			throw new RuntimeException("Could not create an URL based on the string \"" + quotationCsvUrlString + "\".",
-					malformedURLException);
+		int fromCurrency = CurrencyCodes.pack(from);
+		if (!CurrencyCodes.isValid(fromCurrency)) {
+			throw new InvalidParameterException("Currency informed on \"from\" parameter must have only letters.");
 		}
 
-		/* Retrieves the CSV file. */
-		URLConnection urlConnection;
-		InputStream urlConnectionInputStream;
-		IOException couldNotRetrieveCsvFileIoException = new IOException(
-				"Could not retrieve Brazilian central bank quotation CSV file for "
-						+ new SimpleDateFormat("dd/MM/yyyy").format(quotationDate) + ".");
+		int toCurrency = CurrencyCodes.pack(to);
+		if (!CurrencyCodes.isValid(toCurrency)) {
+			throw new InvalidParameterException("Currency informed on \"to\" parameter must have only letters.");
+		}
 
-		try {
-			urlConnection = quotationCsvUrl.openConnection();
-			urlConnectionInputStream = urlConnection.getInputStream();
-		} catch (IOException ioException) {
-			couldNotRetrieveCsvFileIoException.initCause(ioException);
-			throw couldNotRetrieveCsvFileIoException;
+		if (null == firstDate || null == lastDate) {
+			throw new InvalidParameterException("Period dates cannot be null.");
 		}
 
-		String csvFileName = new SimpleDateFormat("yyyyMMdd").format(quotationDate);
-		csvFileName += CSV_EXTENSION;
-		File csvFile = new File(csvFileName);
+		if (lastDate.isBefore(firstDate)) {
+			throw new InvalidParameterException("Last date of the period cannot be before its first date.");
+		}
 
-		FileOutputStream fosQuotationCsvFile;
-		try {
-			fosQuotationCsvFile = new FileOutputStream(csvFile);
-		} catch (FileNotFoundException fileNotFoundException) {
-			throw new IOException("Could not open file \"" + csvFile.getAbsolutePath()
-					+ "\" to retrieve Brazilian central bank quotation CSV file.", fileNotFoundException);
+		if (null == variant) {
+			throw new InvalidParameterException("Rate variant cannot be null.");
 		}
 
-		byte[] buffer = new byte[FILE_READING_BUFFER_SIZE];
-		int bytesRead;
+		if (null == executor) {
+			throw new InvalidParameterException("Executor cannot be null.");
+		}
 
+		RateSeriesSpliterator rateSeriesSpliterator = new RateSeriesSpliterator(fromCurrency, toCurrency, variant,
+				firstDate, lastDate, SERIES_CHUNK_SIZE, businessDayResolver,
+				date -> rateTableCache.getAsync(date, rateTableLoader, executor));
+		return StreamSupport.stream(rateSeriesSpliterator, false).onClose(rateSeriesSpliterator::close);
+	}
+
+	/**
+	 * Converts the requests of a quotation date.
+	 * 
+	 * @param quotationDate
+	 *            The quotation date of the requests.
+	 * @param requestIndexes
+	 *            The positions of the requests on the batch.
+	 * @param requests
+	 *            The requests of the batch.
+	 * @param results
+	 *            The results of the batch, where the conversion results are
+	 *            stored.
+	 */
+	private void convertGroup(LocalDate quotationDate, RequestIndexes requestIndexes, ConversionRequest[] requests,
+			ConversionResult[] results) {
+		RateTable rateTable;
 		try {
-			boolean readConcluded = false;
-			while (!readConcluded) {
-				bytesRead = urlConnectionInputStream.read(buffer, 0, FILE_READING_BUFFER_SIZE);
-				if (bytesRead == -1) {
-					readConcluded = true;
-				} else {
-					fosQuotationCsvFile.write(buffer, 0, bytesRead);
-				}
-			}
-			fosQuotationCsvFile.flush();
-		} catch (IOException ioException) {
-			couldNotRetrieveCsvFileIoException.initCause(ioException);
-			throw couldNotRetrieveCsvFileIoException;
-		} finally {
-			try {
-				urlConnectionInputStream.close();
-			} catch (IOException ioException) {
-				throw new IOException("Exception while closing connection with URL \"" + quotationCsvUrlString + "\".",
-						ioException);
+			rateTable = rateTableCache.get(quotationDate, rateTableLoader);
+		} catch (IOException | RuntimeException exception) {
+			for (int position = 0; position < requestIndexes.size; position++) {
+				int index = requestIndexes.indexes[position];
+				results[index] = ConversionResult.failure(requests[index], exception);
 			}
+			return;
+		}
+
+		for (int position = 0; position < requestIndexes.size; position++) {
+			int index = requestIndexes.indexes[position];
+			ConversionRequest request = requests[index];
 			try {
-				fosQuotationCsvFile.close();
-			} catch (IOException ioException) {
-				throw new IOException("Exception while closing CSV file \"" + csvFile.getAbsolutePath() + "\".",
-						ioException);
+				results[index] = ConversionResult.success(request,
+						convert(rateTable, request.getFrom(), request.getTo(), request.getValue()));
+			} catch (UncheckedIOException uncheckedIOException) {
+				results[index] = ConversionResult.failure(request, uncheckedIOException.getCause());
+			} catch (RuntimeException runtimeException) {
+				results[index] = ConversionResult.failure(request, runtimeException);
 			}
 		}
+	}
+
+	/**
+	 * Checks the parameters of a conversion.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 */
+	static void checkParameters(String from, String to, Number value) {
+		checkCurrencies(from, to);
+
+		if (value.doubleValue() < 0) {
+			throw new InvalidParameterException(
+					"The amount informed on \"value\" parameter must be equal or greater than zero.");
+		}
+	}
+
+	/**
+	 * Checks the currencies of a conversion.
+	 * 
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 */
+	private static void checkCurrencies(String from, String to) {
+		if (null == from || from.length() != 3) {
+			throw new InvalidParameterException(
+					"Currency informed on \"from\" parameter cannot be null and must have three characters.");
+		}
 
-		return csvFile;
+		if (null == to || to.length() != 3) {
+			throw new InvalidParameterException(
+					"Currency informed on \"to\" parameter cannot be null and must have three characters.");
+		}
 	}
 
 	/**
-	 * creates a {@link HashMap} with the currencies' exchanging information based
-	 * on the values read from a CSV file.
+	 * Parses a quotation date and adjusts it to the date of the quotation
+	 * published by Brazilian central bank.
 	 * 
-	 * @param csvFile
-	 *            The CSV file from which the currencies' exchanging information
-	 *            will be retrieved.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @return The quotation date, adjusted to its immediately preceding business
+	 *         day if a weekend day or a bank holiday was informed.
+	 */
+	LocalDate resolveQuotationDate(String quotation) {
+		return businessDayResolver.resolve(quotation);
+	}
+
+	/**
+	 * Converts an amount of a currency to another one based on a quotation table.
 	 * 
-	 * @return A {@link HashMap} with the currencies' exchanging information
-	 * @throws IOException
-	 *             When the values retrieved on the CSV file could not be parsed.
+	 * @param rateTable
+	 *            The quotation table.
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 * @return The equivalent amount on the quote currency, rounded half to even
+	 *         with two decimal places.
 	 */
-	private final Map<String, CurrencyExchangingInformation> createExchangingInformationMap(File csvFile)
-			throws IOException {
-		Map<String, CurrencyExchangingInformation> currencyExchangingInformationMap = new HashMap<>();
+	static BigDecimal convert(RateTable rateTable, String from, String to, Number value) {
 
-		/* Opens the CSV file scanner. */
-		Scanner csvFileScanner;
-		try {
-			csvFileScanner = new Scanner(csvFile);
-		} catch (FileNotFoundException fileNotFoundException) {
-			throw new IOException("Could not find quotation CSV file \"" + csvFile + "\".", fileNotFoundException);
-		}
-
-		String lineBuffer;
-		String[] values;
-		Date exchangingDate;
-		String currencyCode;
-		String type;
-		String currencyAbbreviation = null;
-		Double buyingRate;
-		Double sellingRate;
-		Double buyingPpp;
-		Double sellingPpp;
-		CurrencyExchangingInformation currencyExchangingInformation;
+		/* Pairs of hot currencies use their reduced factors, found with a single lookup. */
+		CrossRateMatrix matrix = rateTable.getCrossRateMatrix();
+		int pair = matrix.pairOf(CurrencyCodes.pack(from), CurrencyCodes.pack(to));
+		long fromRate;
+		long toRate;
+		if (pair != CrossRateMatrix.NOT_FOUND) {
+			fromRate = matrix.getMultiplier(pair);
+			toRate = matrix.getDivisor(pair);
+		} else {
+			fromRate = getBuyingRate(rateTable, from);
+			toRate = getBuyingRate(rateTable, to);
+		}
 
 		/*
-		 * Since we're reading values acquired from a Brazilian bank, the number parser
-		 * must read then on the Brazilian format (i. e. the decimal separator character
-		 * is comma and the grouping separator character is dot).
+		 * Calculates the equivalent amount on the quote currency with exact integer
+		 * arithmetic, creating a BigDecimal only for the result.
 		 */
-		DecimalFormatSymbols decimalFormatSymbols = new DecimalFormatSymbols();
-		decimalFormatSymbols.setDecimalSeparator(',');
-		decimalFormatSymbols.setGroupingSeparator('.');
+		long convertedValueMinor = FixedPointConverter.convert(FixedPointConverter.toBigDecimal(value), fromRate,
+				toRate);
 
-		DecimalFormat decimalFormat = new DecimalFormat();
-		decimalFormat.setDecimalFormatSymbols(decimalFormatSymbols);
+		return FixedPointConverter.fromMinorUnits(convertedValueMinor);
+	}
 
-		try {
-			while (csvFileScanner.hasNextLine()) {
-				lineBuffer = csvFileScanner.nextLine();
-				values = lineBuffer.split(CSV_SEPARATION_CHARACTER);
-				currencyAbbreviation = values[3];
-				currencyCode = values[1];
-				type = values[2];
-				buyingRate = decimalFormat.parse(values[4]).doubleValue();
-				sellingRate = decimalFormat.parse(values[5]).doubleValue();
-				buyingPpp = decimalFormat.parse(values[6]).doubleValue();
-				sellingPpp = decimalFormat.parse(values[7]).doubleValue();
-				exchangingDate = new SimpleDateFormat("dd/MM/yyyy").parse(values[0]);
-
-				currencyExchangingInformation = new CurrencyExchangingInformation(exchangingDate, currencyCode, type,
-						currencyAbbreviation, buyingRate, sellingRate, buyingPpp, sellingPpp);
-
-				currencyExchangingInformationMap.put(currencyExchangingInformation.getCurrencyAbbreviation(),
-						currencyExchangingInformation);
+	/**
+	 * Returns the quotation table of a quotation date, looking for it on cache
+	 * before loading it.
+	 * 
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 * @return The quotation table.
+	 * @throws IOException
+	 *             When the quotation table could not be loaded.
+	 */
+	RateTable getRateTable(String quotation) throws IOException {
+		QuotationMetrics metrics = Metrics.get();
+		long resolveStartTime = metrics.startTimer();
+		LocalDate quotationDate = resolveQuotationDate(quotation);
+		metrics.stopTimer(QuotationMetrics.Stage.RESOLVE_DATE, resolveStartTime);
+		return rateTableCache.get(quotationDate, rateTableLoader);
+	}
+
+	/**
+	 * Returns the scaled buying rate of a currency on a quotation table.
+	 * 
+	 * @param rateTable
+	 *            The quotation table.
+	 * @param currency
+	 *            The currency abbreviation.
+	 * @return The scaled buying rate of the currency.
+	 */
+	private static long getBuyingRate(RateTable rateTable, String currency) {
+		int slot = rateTable.slotOf(currency);
+		if (slot == RateTable.NOT_FOUND) {
+			throw new RuntimeException("Could not find exchanging rates for \"" + currency + "\" currency.");
+		}
+		return rateTable.getBuyingRate(slot);
+	}
+
+	/**
+	 * A growable list of request positions on a batch.
+	 */
+	private static final class RequestIndexes {
+
+		/**
+		 * The initial capacity of the list.
+		 */
+		private static final int INITIAL_CAPACITY = 16;
+
+		/**
+		 * The request positions.
+		 */
+		private int[] indexes = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The number of request positions on the list.
+		 */
+		private int size;
+
+		/**
+		 * Adds a request position to the list.
+		 * 
+		 * @param index
+		 *            The request position.
+		 */
+		private void add(int index) {
+			if (size == indexes.length) {
+				indexes = Arrays.copyOf(indexes, size * 2);
 			}
-		} catch (ParseException parseException) {
-			throw new IOException("Could not parse an information for currency \"" + currencyAbbreviation
-					+ "\" from CSV file \"" + csvFile.getAbsolutePath() + "\".", parseException);
-		} finally {
-			csvFileScanner.close();
+			indexes[size++] = index;
 		}
+	}
 
-		return currencyExchangingInformationMap;
+	/**
+	 * Holds the object returned by {@link CWITest#getDefault()}, so it is only
+	 * created when first requested.
+	 */
+	private static final class DefaultHolder {
+
+		/**
+		 * The object shared by the whole application.
+		 */
+		private static final CWITest INSTANCE = new CWITest();
+	}
+
+	/**
+	 * Configures and creates {@link CWITest} objects. Every component not
+	 * informed has its default value, except for the cache: each object built
+	 * has its own cache unless one is informed.
+	 */
+	public static final class Builder {
+
+		/**
+		 * The cache of quotation tables already retrieved.
+		 */
+		private RateTableCache rateTableCache;
+
+		/**
+		 * The loader used to retrieve the quotation tables which are not on cache.
+		 */
+		private RateTableLoader rateTableLoader = DEFAULT_RATE_TABLE_LOADER;
+
+		/**
+		 * The resolver which maps the requested dates to the dates on which the
+		 * quotations were published.
+		 */
+		private BusinessDayResolver businessDayResolver = BusinessDayResolver.getDefault();
+
+		/**
+		 * The executor which loads quotation tables for asynchronous conversions.
+		 */
+		private Executor asyncExecutor = DEFAULT_ASYNC_EXECUTOR;
+
+		/**
+		 * Defines the cache of quotation tables already retrieved.
+		 * 
+		 * @param rateTableCache
+		 *            The cache of quotation tables already retrieved.
+		 * @return This builder.
+		 */
+		public Builder rateTableCache(RateTableCache rateTableCache) {
+			this.rateTableCache = rateTableCache;
+			return this;
+		}
+
+		/**
+		 * Defines the loader used to retrieve the quotation tables which are not
+		 * on cache.
+		 * 
+		 * @param rateTableLoader
+		 *            The loader of the quotation tables.
+		 * @return This builder.
+		 */
+		public Builder rateTableLoader(RateTableLoader rateTableLoader) {
+			this.rateTableLoader = rateTableLoader;
+			return this;
+		}
+
+		/**
+		 * Defines the fetcher which downloads and parses the quotation CSV files
+		 * of the tables which are not on cache, replacing any loader defined
+		 * before.
+		 * 
+		 * @param bcbCsvFetcher
+		 *            The fetcher of the quotation CSV files.
+		 * @return This builder.
+		 */
+		public Builder bcbCsvFetcher(BcbCsvFetcher bcbCsvFetcher) {
+			this.rateTableLoader = new BcbRateTableLoader(bcbCsvFetcher);
+			return this;
+		}
+
+		/**
+		 * Defines the resolver which maps the requested dates to the dates on
+		 * which the quotations were published.
+		 * 
+		 * @param businessDayResolver
+		 *            The business day resolver.
+		 * @return This builder.
+		 */
+		public Builder businessDayResolver(BusinessDayResolver businessDayResolver) {
+			this.businessDayResolver = businessDayResolver;
+			return this;
+		}
+
+		/**
+		 * Defines the executor which loads quotation tables for asynchronous
+		 * conversions and quotation series when no other executor is informed.
+		 * 
+		 * @param asyncExecutor
+		 *            The executor of the asynchronous loads.
+		 * @return This builder.
+		 */
+		public Builder asyncExecutor(Executor asyncExecutor) {
+			this.asyncExecutor = asyncExecutor;
+			return this;
+		}
+
+		/**
+		 * Creates a {@link CWITest} object with the components defined.
+		 * 
+		 * @return The object created.
+		 */
+		public CWITest build() {
+			return new CWITest(null == rateTableCache ? new RateTableCache() : rateTableCache, rateTableLoader,
+					businessDayResolver, asyncExecutor);
+		}
 	}
 }
@@ -0,0 +1,91 @@
+package org.marceloleite.cwitest;
+
+/**
+ * A request to convert an amount of a currency to another one based on
+ * Brazilian central bank quotation of a specific date.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionRequest {
+
+	/**
+	 * The quotation base currency.
+	 */
+	private final String from;
+
+	/**
+	 * The quotation quote currency.
+	 */
+	private final String to;
+
+	/**
+	 * The amount of base currency to convert.
+	 */
+	private final Number value;
+
+	/**
+	 * The quotation date on "dd/MM/yyyy" format.
+	 */
+	private final String quotation;
+
+	/**
+	 * Creates a new {@link ConversionRequest} object.
+	 *
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 * @param quotation
+	 *            The quotation date on "dd/MM/yyyy" format.
+	 */
+	public ConversionRequest(String from, String to, Number value, String quotation) {
+		this.from = from;
+		this.to = to;
+		this.value = value;
+		this.quotation = quotation;
+	}
+
+	/**
+	 * Returns the quotation base currency.
+	 *
+	 * @return The quotation base currency.
+	 */
+	public final String getFrom() {
+		return from;
+	}
+
+	/**
+	 * Returns the quotation quote currency.
+	 *
+	 * @return The quotation quote currency.
+	 */
+	public final String getTo() {
+		return to;
+	}
+
+	/**
+	 * Returns the amount of base currency to convert.
+	 *
+	 * @return The amount of base currency to convert.
+	 */
+	public final Number getValue() {
+		return value;
+	}
+
+	/**
+	 * Returns the quotation date on "dd/MM/yyyy" format.
+	 *
+	 * @return The quotation date on "dd/MM/yyyy" format.
+	 */
+	public final String getQuotation() {
+		return quotation;
+	}
+
+	@Override
+	public String toString() {
+		return value + " " + from + " to " + to + " on " + quotation;
+	}
+}
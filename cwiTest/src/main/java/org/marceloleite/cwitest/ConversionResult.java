@@ -0,0 +1,117 @@
+package org.marceloleite.cwitest;
+
+import java.math.BigDecimal;
+
+/**
+ * The result of a {@link ConversionRequest}: either the converted amount or
+ * the exception which prevented the conversion.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionResult {
+
+	/**
+	 * The request which originated this result.
+	 */
+	private final ConversionRequest conversionRequest;
+
+	/**
+	 * The converted amount, or {@code null} if the conversion failed.
+	 */
+	private final BigDecimal convertedValue;
+
+	/**
+	 * The exception which prevented the conversion, or {@code null} if it
+	 * succeeded.
+	 */
+	private final Exception exception;
+
+	/**
+	 * Creates a new {@link ConversionResult} object.
+	 *
+	 * @param conversionRequest
+	 *            The request which originated this result.
+	 * @param convertedValue
+	 *            The converted amount, or {@code null} if the conversion failed.
+	 * @param exception
+	 *            The exception which prevented the conversion, or {@code null} if
+	 *            it succeeded.
+	 */
+	private ConversionResult(ConversionRequest conversionRequest, BigDecimal convertedValue, Exception exception) {
+		this.conversionRequest = conversionRequest;
+		this.convertedValue = convertedValue;
+		this.exception = exception;
+	}
+
+	/**
+	 * Creates the result of a successful conversion.
+	 *
+	 * @param conversionRequest
+	 *            The request which originated the result.
+	 * @param convertedValue
+	 *            The converted amount.
+	 * @return The result created.
+	 */
+	public static ConversionResult success(ConversionRequest conversionRequest, BigDecimal convertedValue) {
+		return new ConversionResult(conversionRequest, convertedValue, null);
+	}
+
+	/**
+	 * Creates the result of a failed conversion.
+	 *
+	 * @param conversionRequest
+	 *            The request which originated the result.
+	 * @param exception
+	 *            The exception which prevented the conversion.
+	 * @return The result created.
+	 */
+	public static ConversionResult failure(ConversionRequest conversionRequest, Exception exception) {
+		return new ConversionResult(conversionRequest, null, exception);
+	}
+
+	/**
+	 * Returns the request which originated this result.
+	 *
+	 * @return The request which originated this result.
+	 */
+	public final ConversionRequest getConversionRequest() {
+		return conversionRequest;
+	}
+
+	/**
+	 * Returns the converted amount.
+	 *
+	 * @return The converted amount, or {@code null} if the conversion failed.
+	 */
+	public final BigDecimal getConvertedValue() {
+		return convertedValue;
+	}
+
+	/**
+	 * Returns the exception which prevented the conversion.
+	 *
+	 * @return The exception which prevented the conversion, or {@code null} if
+	 *         it succeeded.
+	 */
+	public final Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * Checks if the conversion succeeded.
+	 *
+	 * @return {@code true} if the conversion succeeded.
+	 */
+	public final boolean isSuccessful() {
+		return null == exception;
+	}
+
+	@Override
+	public String toString() {
+		if (isSuccessful()) {
+			return conversionRequest + ": " + convertedValue;
+		}
+		return conversionRequest + ": " + exception.getMessage();
+	}
+}
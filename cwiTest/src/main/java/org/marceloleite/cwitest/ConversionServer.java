@@ -0,0 +1,975 @@
+package org.marceloleite.cwitest;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An HTTP server which converts amounts through a shared {@link CWITest}
+ * object, so every request uses the same cached tables.
+ * <p>
+ * The server answers on the following paths:
+ * <ul>
+ * <li>"GET /convert?from=USD&amp;to=EUR&amp;value=100.00&amp;quotation=20/11/2014"
+ * converts an amount, answering its conversion as a JSON object;</li>
+ * <li>"POST /batch" converts the records of the request body, on the format
+ * read by {@link StreamingConverter}, answering them on the format it
+ * writes;</li>
+ * <li>"GET /health" answers whether the server is up;</li>
+ * <li>"GET /metrics" answers the server counters and, when
+ * {@link RecordingQuotationMetrics} are installed, the quotation metrics.</li>
+ * </ul>
+ * <p>
+ * Concurrent conversions of the same quotation date are micro-batched: the
+ * first one converts at once, and those which arrive while it is converted are
+ * queued and converted together by a single
+ * {@link CWITest#currencyQuotations} call, which looks their table up once.
+ * So an idle server adds no delay to a conversion, while a busy one converts
+ * in batches of up to the maximum batch size. Batches are converted by their
+ * own threads, so every request waits for its conversion up to the same
+ * timeout, even the one which started the batch.
+ * <p>
+ * The JDK HTTP server only disables Nagle's algorithm when the
+ * "sun.net.httpserver.nodelay" system property is "true". Otherwise each
+ * answer may wait for the delayed acknowledgement of its headers (about 40
+ * ms). The serve command defines it; applications which embed the server
+ * should define it before creating their first HTTP server.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionServer implements AutoCloseable {
+
+	/**
+	 * The default port of the server.
+	 */
+	public static final int DEFAULT_PORT = 8080;
+
+	/**
+	 * The default number of threads which handle the requests.
+	 */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+	/**
+	 * The default maximum number of conversions of a micro-batch.
+	 */
+	public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+
+	/**
+	 * The default time a request waits for its conversion.
+	 */
+	public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+	/**
+	 * The HTTP status of a successful request.
+	 */
+	private static final int OK = 200;
+
+	/**
+	 * The HTTP status of a request with invalid parameters.
+	 */
+	private static final int BAD_REQUEST = 400;
+
+	/**
+	 * The HTTP status of a conversion whose quotation was not published.
+	 */
+	private static final int NOT_FOUND = 404;
+
+	/**
+	 * The HTTP status of a request with a method not supported by its path.
+	 */
+	private static final int METHOD_NOT_ALLOWED = 405;
+
+	/**
+	 * The HTTP status of a conversion whose currency has no quotation.
+	 */
+	private static final int UNPROCESSABLE_ENTITY = 422;
+
+	/**
+	 * The HTTP status of a conversion whose quotation could not be loaded.
+	 */
+	private static final int BAD_GATEWAY = 502;
+
+	/**
+	 * The HTTP status of a conversion which took too long.
+	 */
+	private static final int GATEWAY_TIMEOUT = 504;
+
+	/**
+	 * The system property which disables Nagle's algorithm on the connections of
+	 * the JDK HTTP server. It is read when the first HTTP server of the JVM is
+	 * created.
+	 */
+	static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+	/**
+	 * The object which converts the amounts.
+	 */
+	private final CWITest cwiTest;
+
+	/**
+	 * The maximum number of conversions of a micro-batch.
+	 */
+	private final int maxBatchSize;
+
+	/**
+	 * The time a request waits for its conversion, in milliseconds.
+	 */
+	private final long requestTimeoutMillis;
+
+	/**
+	 * The underlying HTTP server.
+	 */
+	private final HttpServer httpServer;
+
+	/**
+	 * The executor of the request handlers.
+	 */
+	private final ExecutorService handlerExecutorService;
+
+	/**
+	 * The executor which converts the micro-batches.
+	 */
+	private final ExecutorService batchExecutorService;
+
+	/**
+	 * The micro-batch queues, indexed by quotation date as informed.
+	 */
+	private final ConcurrentMap<String, BatchQueue> batchQueues = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of requests received.
+	 */
+	private final LongAdder requests = new LongAdder();
+
+	/**
+	 * The number of conversions executed, either single or batched.
+	 */
+	private final LongAdder conversions = new LongAdder();
+
+	/**
+	 * The number of micro-batches converted.
+	 */
+	private final LongAdder batches = new LongAdder();
+
+	/**
+	 * The number of conversions of all micro-batches, used to compute their
+	 * mean size.
+	 */
+	private final LongAdder batchedConversions = new LongAdder();
+
+	/**
+	 * The number of conversions which failed.
+	 */
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * The number of conversions submitted whose results are not ready yet.
+	 */
+	private final AtomicInteger pendingConversions = new AtomicInteger();
+
+	/**
+	 * The time the server was started, as returned by {@link System#nanoTime()}.
+	 */
+	private volatile long startTime;
+
+	/**
+	 * Creates a new {@link ConversionServer} object, bound to its port but not
+	 * started yet.
+	 *
+	 * @param builder
+	 *            The builder with the server settings.
+	 * @throws IOException
+	 *             When the server could not be bound to its port.
+	 */
+	private ConversionServer(Builder builder) throws IOException {
+		this.cwiTest = builder.cwiTest;
+		this.maxBatchSize = builder.maxBatchSize;
+		this.requestTimeoutMillis = builder.requestTimeout.toMillis();
+		this.handlerExecutorService = Executors.newFixedThreadPool(builder.threads,
+				createThreadFactory("cwitest-server"));
+		this.batchExecutorService = Executors.newCachedThreadPool(createThreadFactory("cwitest-server-batch"));
+		this.httpServer = HttpServer.create(new InetSocketAddress(builder.host, builder.port), 0);
+		this.httpServer.setExecutor(handlerExecutorService);
+		this.httpServer.createContext("/convert", createHandler("GET", this::handleConvert));
+		this.httpServer.createContext("/batch", createHandler("POST", this::handleBatch));
+		this.httpServer.createContext("/health", createHandler("GET", this::handleHealth));
+		this.httpServer.createContext("/metrics", createHandler("GET", this::handleMetrics));
+	}
+
+	/**
+	 * The serve command entry method.
+	 *
+	 * @param args
+	 *            Optionally, the port of the server and the number of threads
+	 *            which handle the requests.
+	 */
+	public static void main(String[] args) {
+		if (args.length > 2) {
+			System.err.println("Usage: serve [port] [threads]");
+			System.exit(2);
+			return;
+		}
+
+		Builder builder = new Builder();
+		try {
+			if (args.length > 0) {
+				builder.port(Integer.parseInt(args[0]));
+			}
+			if (args.length > 1) {
+				builder.threads(Integer.parseInt(args[1]));
+			}
+		} catch (NumberFormatException | InvalidParameterException exception) {
+			System.err.println("Invalid argument: " + exception.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		/* The JDK HTTP server writes the headers and the body apart. */
+		if (null == System.getProperty(NO_DELAY_PROPERTY)) {
+			System.setProperty(NO_DELAY_PROPERTY, "true");
+		}
+
+		Metrics.enableJmx();
+		ConversionServer conversionServer;
+		try {
+			conversionServer = builder.build();
+		} catch (IOException ioException) {
+			System.err.println("Could not start the server: " + ioException.getMessage());
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(conversionServer::close, "cwitest-server-shutdown"));
+		conversionServer.start();
+		System.out.println("Converting on http://localhost:" + conversionServer.getPort() + "/convert.");
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		startTime = System.nanoTime();
+		httpServer.start();
+	}
+
+	/**
+	 * Stops answering requests and stops the server threads.
+	 */
+	@Override
+	public void close() {
+		httpServer.stop(0);
+		handlerExecutorService.shutdownNow();
+		batchExecutorService.shutdownNow();
+	}
+
+	/**
+	 * Returns the port the server is bound to, which is useful when it was
+	 * created on port zero.
+	 *
+	 * @return The port of the server.
+	 */
+	public int getPort() {
+		return httpServer.getAddress().getPort();
+	}
+
+	/**
+	 * Returns the number of requests received.
+	 *
+	 * @return The number of requests received.
+	 */
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	/**
+	 * Returns the number of conversions executed, either single or batched.
+	 *
+	 * @return The number of conversions executed.
+	 */
+	public long getConversionCount() {
+		return conversions.sum();
+	}
+
+	/**
+	 * Returns the number of micro-batches converted. Each single conversion
+	 * request is converted on a micro-batch, alone when the server is idle.
+	 *
+	 * @return The number of micro-batches converted.
+	 */
+	public long getBatchCount() {
+		return batches.sum();
+	}
+
+	/**
+	 * Returns the number of conversions which failed.
+	 *
+	 * @return The number of conversions which failed.
+	 */
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * Answers a "/convert" request.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @throws IOException
+	 *             When the answer could not be sent.
+	 */
+	private void handleConvert(HttpExchange httpExchange) throws IOException {
+		Map<String, String> parameters = parseQuery(httpExchange.getRequestURI().getRawQuery());
+		ConversionRequest request;
+		try {
+			request = new ConversionRequest(getParameter(parameters, "from"), getParameter(parameters, "to"),
+					parseValue(getParameter(parameters, "value")), getParameter(parameters, "quotation"));
+		} catch (InvalidParameterException invalidParameterException) {
+			failures.increment();
+			respondError(httpExchange, BAD_REQUEST, invalidParameterException);
+			return;
+		}
+
+		ConversionResult result;
+		try {
+			result = submit(request).get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a conversion.");
+		} catch (ExecutionException executionException) {
+			result = ConversionResult.failure(request, (Exception) executionException.getCause());
+		} catch (TimeoutException timeoutException) {
+			failures.increment();
+			respondError(httpExchange, GATEWAY_TIMEOUT, new TimeoutException("The conversion took too long."));
+			return;
+		}
+
+		if (!result.isSuccessful()) {
+			respondError(httpExchange, statusOf(result.getException()), result.getException());
+			return;
+		}
+		respond(httpExchange, OK, "application/json",
+				"{\"from\":" + quote(request.getFrom()) + ",\"to\":" + quote(request.getTo()) + ",\"value\":"
+						+ ((BigDecimal) request.getValue()).toPlainString() + ",\"quotation\":"
+						+ quote(request.getQuotation()) + ",\"convertedValue\":"
+						+ result.getConvertedValue().toPlainString() + "}");
+	}
+
+	/**
+	 * Answers a "/batch" request.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @throws IOException
+	 *             When the request body could not be read or the answer could
+	 *             not be sent.
+	 */
+	private void handleBatch(HttpExchange httpExchange) throws IOException {
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(httpExchange.getRequestBody(), StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); null != line; line = reader.readLine()) {
+				if (!line.trim().isEmpty()) {
+					lines.add(line);
+				}
+			}
+		}
+
+		StringBuilder body = new StringBuilder(lines.size() * 64);
+		if (!lines.isEmpty() && StreamingConverter.isHeader(lines.get(0))) {
+			String header = lines.remove(0);
+			char separator = StreamingConverter.findSeparator(header);
+			body.append(header).append(separator).append("converted").append(separator).append("error").append('\n');
+		}
+
+		/* Parses every record, so the valid ones are converted on a single batch. */
+		ConversionResult[] results = new ConversionResult[lines.size()];
+		List<ConversionRequest> requests = new ArrayList<>(lines.size());
+		List<Integer> requestIndexes = new ArrayList<>(lines.size());
+		for (int index = 0; index < lines.size(); index++) {
+			String line = lines.get(index);
+			try {
+				requests.add(StreamingConverter.parseRecord(line, StreamingConverter.findSeparator(line)));
+				requestIndexes.add(index);
+			} catch (InvalidParameterException invalidParameterException) {
+				results[index] = ConversionResult.failure(null, invalidParameterException);
+			}
+		}
+		List<ConversionResult> convertedResults = cwiTest.currencyQuotations(requests);
+		for (int position = 0; position < convertedResults.size(); position++) {
+			results[requestIndexes.get(position)] = convertedResults.get(position);
+		}
+
+		for (int index = 0; index < lines.size(); index++) {
+			String line = lines.get(index);
+			char separator = StreamingConverter.findSeparator(line);
+			body.append(line).append(separator);
+			if (results[index].isSuccessful()) {
+				body.append(results[index].getConvertedValue().toPlainString()).append(separator);
+			} else {
+				body.append(separator).append(StreamingConverter.describe(results[index].getException()));
+				failures.increment();
+			}
+			body.append('\n');
+		}
+		conversions.add(lines.size());
+		respond(httpExchange, OK, "text/csv; charset=utf-8", body.toString());
+	}
+
+	/**
+	 * Answers a "/health" request.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @throws IOException
+	 *             When the answer could not be sent.
+	 */
+	private void handleHealth(HttpExchange httpExchange) throws IOException {
+		respond(httpExchange, OK, "application/json", "{\"status\":\"UP\",\"uptimeSeconds\":"
+				+ TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime) + "}");
+	}
+
+	/**
+	 * Answers a "/metrics" request.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @throws IOException
+	 *             When the answer could not be sent.
+	 */
+	private void handleMetrics(HttpExchange httpExchange) throws IOException {
+		long batchCount = batches.sum();
+		StringBuilder body = new StringBuilder();
+		body.append("Server metrics:").append('\n');
+		body.append("Requests: ").append(requests.sum()).append('\n');
+		body.append("Conversions: ").append(conversions.sum()).append('\n');
+		body.append("Failures: ").append(failures.sum()).append('\n');
+		body.append("Batches: ").append(batchCount).append('\n');
+		body.append(String.format(Locale.ROOT, "Mean batch size: %.2f",
+				batchCount == 0 ? 0.0 : (double) batchedConversions.sum() / batchCount)).append('\n');
+		QuotationMetrics quotationMetrics = Metrics.get();
+		if (quotationMetrics instanceof RecordingQuotationMetrics) {
+			body.append(quotationMetrics).append('\n');
+		}
+		respond(httpExchange, OK, "text/plain; charset=utf-8", body.toString());
+	}
+
+	/**
+	 * Submits a conversion to the micro-batch of its quotation date, starting
+	 * the conversion of the batches on the batch executor if no other thread is
+	 * converting the ones of the same date.
+	 *
+	 * @param request
+	 *            The conversion request.
+	 * @return The future of the conversion result.
+	 */
+	private CompletableFuture<ConversionResult> submit(ConversionRequest request) {
+		CompletableFuture<ConversionResult> future = new CompletableFuture<>();
+		pendingConversions.incrementAndGet();
+		for (;;) {
+			BatchQueue batchQueue = batchQueues.computeIfAbsent(request.getQuotation(), quotation -> new BatchQueue());
+			Boolean first = batchQueue.add(request, future);
+			if (null != first) {
+				if (first) {
+					batchExecutorService.execute(() -> convertBatches(request.getQuotation(), batchQueue));
+				}
+				return future;
+			}
+		}
+	}
+
+	/**
+	 * Converts the micro-batches of a queue until it is empty.
+	 *
+	 * @param quotation
+	 *            The quotation date of the queue.
+	 * @param batchQueue
+	 *            The queue.
+	 */
+	private void convertBatches(String quotation, BatchQueue batchQueue) {
+		for (;;) {
+			List<ConversionRequest> requests = new ArrayList<>();
+			List<CompletableFuture<ConversionResult>> futures = new ArrayList<>();
+			if (!batchQueue.poll(requests, futures, maxBatchSize)) {
+				batchQueues.remove(quotation, batchQueue);
+				return;
+			}
+
+			List<ConversionResult> results = null;
+			RuntimeException exception = null;
+			try {
+				results = cwiTest.currencyQuotations(requests);
+			} catch (RuntimeException runtimeException) {
+				exception = runtimeException;
+			}
+
+			/* Counted before any client may read its result. */
+			pendingConversions.addAndGet(-requests.size());
+			conversions.add(requests.size());
+			batchedConversions.add(requests.size());
+			batches.increment();
+			if (null != results) {
+				for (ConversionResult result : results) {
+					if (!result.isSuccessful()) {
+						failures.increment();
+					}
+				}
+			}
+
+			for (int index = 0; index < futures.size(); index++) {
+				if (null != exception) {
+					futures.get(index).completeExceptionally(exception);
+				} else {
+					futures.get(index).complete(results.get(index));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of conversions submitted whose results are not ready
+	 * yet, either queued or being converted.
+	 *
+	 * @return The number of pending conversions.
+	 */
+	int getPendingCount() {
+		return pendingConversions.get();
+	}
+
+	/**
+	 * Creates the handler of a path, which checks the request method, counts
+	 * the request and answers unexpected failures.
+	 *
+	 * @param method
+	 *            The request method supported by the path.
+	 * @param httpHandler
+	 *            The handler of the requests of the path.
+	 * @return The handler created.
+	 */
+	private HttpHandler createHandler(String method, HttpHandler httpHandler) {
+		return httpExchange -> {
+			requests.increment();
+			try {
+				if (!method.equals(httpExchange.getRequestMethod())) {
+					httpExchange.getResponseHeaders().set("Allow", method);
+					respond(httpExchange, METHOD_NOT_ALLOWED, "text/plain; charset=utf-8",
+							"Method " + httpExchange.getRequestMethod() + " is not allowed.");
+					return;
+				}
+				httpHandler.handle(httpExchange);
+			} catch (RuntimeException runtimeException) {
+				respondError(httpExchange, UNPROCESSABLE_ENTITY, runtimeException);
+			} finally {
+				httpExchange.close();
+			}
+		};
+	}
+
+	/**
+	 * Returns the HTTP status of a failed conversion.
+	 *
+	 * @param exception
+	 *            The exception of the conversion.
+	 * @return The HTTP status.
+	 */
+	private static int statusOf(Exception exception) {
+		if (exception instanceof InvalidParameterException) {
+			return BAD_REQUEST;
+		}
+		if (exception instanceof FileNotFoundException) {
+			return NOT_FOUND;
+		}
+		if (exception instanceof IOException) {
+			return BAD_GATEWAY;
+		}
+		return UNPROCESSABLE_ENTITY;
+	}
+
+	/**
+	 * Answers a request with the message of an exception.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @param status
+	 *            The HTTP status.
+	 * @param exception
+	 *            The exception.
+	 * @throws IOException
+	 *             When the answer could not be sent.
+	 */
+	private static void respondError(HttpExchange httpExchange, int status, Exception exception) throws IOException {
+		respond(httpExchange, status, "application/json", "{\"error\":" + quote(String.valueOf(exception.getMessage()))
+				+ "}");
+	}
+
+	/**
+	 * Answers a request.
+	 *
+	 * @param httpExchange
+	 *            The request exchange.
+	 * @param status
+	 *            The HTTP status.
+	 * @param contentType
+	 *            The content type of the body.
+	 * @param body
+	 *            The body.
+	 * @throws IOException
+	 *             When the answer could not be sent.
+	 */
+	private static void respond(HttpExchange httpExchange, int status, String contentType, String body)
+			throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		httpExchange.getResponseHeaders().set("Content-Type", contentType);
+		httpExchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream outputStream = httpExchange.getResponseBody()) {
+			outputStream.write(bytes);
+		}
+	}
+
+	/**
+	 * Parses the parameters of a query.
+	 *
+	 * @param rawQuery
+	 *            The query, still URL encoded, or {@code null} if there is none.
+	 * @return The parameters indexed by name.
+	 */
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> parameters = new HashMap<>();
+		if (null == rawQuery) {
+			return parameters;
+		}
+
+		try {
+			for (String parameter : rawQuery.split("&")) {
+				int equalsIndex = parameter.indexOf('=');
+				if (equalsIndex > 0) {
+					parameters.put(URLDecoder.decode(parameter.substring(0, equalsIndex), "UTF-8"),
+							URLDecoder.decode(parameter.substring(equalsIndex + 1), "UTF-8"));
+				}
+			}
+		} catch (UnsupportedEncodingException | IllegalArgumentException exception) {
+			throw new InvalidParameterException("Invalid query: " + exception.getMessage());
+		}
+		return parameters;
+	}
+
+	/**
+	 * Returns a required parameter of a query.
+	 *
+	 * @param parameters
+	 *            The parameters indexed by name.
+	 * @param name
+	 *            The parameter name.
+	 * @return The parameter value.
+	 */
+	private static String getParameter(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (null == value) {
+			throw new InvalidParameterException("The \"" + name + "\" parameter is required.");
+		}
+		return value;
+	}
+
+	/**
+	 * Parses the amount of a conversion.
+	 *
+	 * @param value
+	 *            The amount, as informed.
+	 * @return The amount.
+	 */
+	private static BigDecimal parseValue(String value) {
+		try {
+			return new BigDecimal(value.trim());
+		} catch (NumberFormatException numberFormatException) {
+			throw new InvalidParameterException("Invalid amount \"" + value + "\".");
+		}
+	}
+
+	/**
+	 * Quotes a text as a JSON string.
+	 *
+	 * @param text
+	 *            The text.
+	 * @return The JSON string.
+	 */
+	private static String quote(String text) {
+		StringBuilder stringBuilder = new StringBuilder(text.length() + 2).append('"');
+		for (int index = 0; index < text.length(); index++) {
+			char character = text.charAt(index);
+			if (character == '"' || character == '\\') {
+				stringBuilder.append('\\').append(character);
+			} else if (character < 0x20) {
+				stringBuilder.append(String.format("\\u%04x", (int) character));
+			} else {
+				stringBuilder.append(character);
+			}
+		}
+		return stringBuilder.append('"').toString();
+	}
+
+	/**
+	 * Creates a factory of daemon threads.
+	 *
+	 * @param name
+	 *            The prefix of the thread names.
+	 * @return The thread factory.
+	 */
+	private static ThreadFactory createThreadFactory(String name) {
+		AtomicInteger threadCount = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	/**
+	 * The conversions of a quotation date waiting for a micro-batch.
+	 */
+	private static final class BatchQueue {
+
+		/**
+		 * The conversion requests waiting.
+		 */
+		private final List<ConversionRequest> requests = new ArrayList<>();
+
+		/**
+		 * The futures of the conversion requests waiting.
+		 */
+		private final List<CompletableFuture<ConversionResult>> futures = new ArrayList<>();
+
+		/**
+		 * Whether a thread is converting the micro-batches of the queue.
+		 */
+		private boolean converting;
+
+		/**
+		 * Whether the queue was removed, so no conversion can be added to it.
+		 */
+		private boolean removed;
+
+		/**
+		 * Adds a conversion to the queue.
+		 *
+		 * @param request
+		 *            The conversion request.
+		 * @param future
+		 *            The future of the conversion result.
+		 * @return {@code true} if the queue must be converted by a new thread,
+		 *         {@code false} if another thread is already converting it or
+		 *         {@code null} if the queue was removed and the conversion was
+		 *         not added.
+		 */
+		private synchronized Boolean add(ConversionRequest request, CompletableFuture<ConversionResult> future) {
+			if (removed) {
+				return null;
+			}
+			requests.add(request);
+			futures.add(future);
+			if (converting) {
+				return false;
+			}
+			converting = true;
+			return true;
+		}
+
+		/**
+		 * Takes the next micro-batch of the queue. If the queue is empty, it is
+		 * marked as removed.
+		 *
+		 * @param batchRequests
+		 *            The list which receives the conversion requests of the batch.
+		 * @param batchFutures
+		 *            The list which receives the futures of the batch.
+		 * @param maxBatchSize
+		 *            The maximum number of conversions of the batch.
+		 * @return {@code true} if a batch was taken, {@code false} if the queue
+		 *         was empty.
+		 */
+		private synchronized boolean poll(List<ConversionRequest> batchRequests,
+				List<CompletableFuture<ConversionResult>> batchFutures, int maxBatchSize) {
+			if (requests.isEmpty()) {
+				converting = false;
+				removed = true;
+				return false;
+			}
+
+			int size = Math.min(maxBatchSize, requests.size());
+			List<ConversionRequest> headRequests = requests.subList(0, size);
+			List<CompletableFuture<ConversionResult>> headFutures = futures.subList(0, size);
+			batchRequests.addAll(headRequests);
+			batchFutures.addAll(headFutures);
+			headRequests.clear();
+			headFutures.clear();
+			return true;
+		}
+	}
+
+	/**
+	 * Builds {@link ConversionServer} objects.
+	 */
+	public static final class Builder {
+
+		/**
+		 * The object which converts the amounts.
+		 */
+		private CWITest cwiTest = CWITest.getDefault();
+
+		/**
+		 * The address the server is bound to.
+		 */
+		private String host = "0.0.0.0";
+
+		/**
+		 * The port of the server.
+		 */
+		private int port = DEFAULT_PORT;
+
+		/**
+		 * The number of threads which handle the requests.
+		 */
+		private int threads = DEFAULT_THREADS;
+
+		/**
+		 * The maximum number of conversions of a micro-batch.
+		 */
+		private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+		/**
+		 * The time a request waits for its conversion.
+		 */
+		private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+		/**
+		 * Defines the object which converts the amounts.
+		 *
+		 * @param cwiTest
+		 *            The object which converts the amounts.
+		 * @return This builder.
+		 */
+		public Builder cwiTest(CWITest cwiTest) {
+			if (null == cwiTest) {
+				throw new InvalidParameterException("CWITest object cannot be null.");
+			}
+			this.cwiTest = cwiTest;
+			return this;
+		}
+
+		/**
+		 * Defines the address the server is bound to.
+		 *
+		 * @param host
+		 *            The host name or address, e.g. "127.0.0.1" to answer only
+		 *            local requests.
+		 * @return This builder.
+		 */
+		public Builder host(String host) {
+			if (null == host) {
+				throw new InvalidParameterException("Host cannot be null.");
+			}
+			this.host = host;
+			return this;
+		}
+
+		/**
+		 * Defines the port of the server.
+		 *
+		 * @param port
+		 *            The port, or zero for any free port.
+		 * @return This builder.
+		 */
+		public Builder port(int port) {
+			if (port < 0 || port > 0xFFFF) {
+				throw new InvalidParameterException("Port must be between 0 and 65535.");
+			}
+			this.port = port;
+			return this;
+		}
+
+		/**
+		 * Defines the number of threads which handle the requests.
+		 *
+		 * @param threads
+		 *            The number of threads.
+		 * @return This builder.
+		 */
+		public Builder threads(int threads) {
+			if (threads <= 0) {
+				throw new InvalidParameterException("Number of threads must be greater than zero.");
+			}
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * Defines the maximum number of conversions of a micro-batch.
+		 *
+		 * @param maxBatchSize
+		 *            The maximum number of conversions.
+		 * @return This builder.
+		 */
+		public Builder maxBatchSize(int maxBatchSize) {
+			if (maxBatchSize <= 0) {
+				throw new InvalidParameterException("Maximum batch size must be greater than zero.");
+			}
+			this.maxBatchSize = maxBatchSize;
+			return this;
+		}
+
+		/**
+		 * Defines the time a request waits for its conversion.
+		 *
+		 * @param requestTimeout
+		 *            The time a request waits.
+		 * @return This builder.
+		 */
+		public Builder requestTimeout(Duration requestTimeout) {
+			if (null == requestTimeout || requestTimeout.isNegative() || requestTimeout.isZero()) {
+				throw new InvalidParameterException("Request timeout must be positive.");
+			}
+			this.requestTimeout = requestTimeout;
+			return this;
+		}
+
+		/**
+		 * Builds a server with the settings informed, bound to its port but not
+		 * started yet.
+		 *
+		 * @return The server built.
+		 * @throws IOException
+		 *             When the server could not be bound to its port.
+		 */
+		public ConversionServer build() throws IOException {
+			return new ConversionServer(this);
+		}
+	}
+}
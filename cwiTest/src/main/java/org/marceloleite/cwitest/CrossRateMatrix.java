@@ -0,0 +1,490 @@
+package org.marceloleite.cwitest;
+
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The conversion factors among the hot currencies of a {@link RateTable}.
+ * <p>
+ * The factors of a pair are its buying rates reduced by their greatest common
+ * divisor, so a conversion through them has the exact results of
+ * {@link FixedPointConverter} with a smaller product. They are kept on flat
+ * arrays indexed by {@link #pairOf(int, int) pair}, along with the cross rates
+ * of every {@link Variant}, so the following conversions take no table
+ * lookup. The values of a pair are computed on its first request, so only the
+ * rates of the currencies requested are read from the table.
+ * <p>
+ * The hot currencies are defined by the {@value #HOT_CURRENCIES_PROPERTY}
+ * system property as a comma separated list of abbreviations
+ * ({@value #DEFAULT_HOT_CURRENCIES} by default), limited to
+ * {@value #MAX_HOT_CURRENCIES} currencies so a matrix never takes more than a
+ * few dozen kilobytes. An empty list disables the matrix. Hot currencies are
+ * found through an array indexed by {@link CurrencyCodes packed code} shared
+ * by every matrix.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class CrossRateMatrix {
+
+	/**
+	 * The system property which defines the hot currencies.
+	 */
+	public static final String HOT_CURRENCIES_PROPERTY = "cwitest.crossRateMatrix.currencies";
+
+	/**
+	 * The hot currencies used when the system property is not defined.
+	 */
+	public static final String DEFAULT_HOT_CURRENCIES = "USD,EUR,GBP,JPY,CHF,CAD,AUD,CNY";
+
+	/**
+	 * The maximum number of hot currencies.
+	 */
+	public static final int MAX_HOT_CURRENCIES = 64;
+
+	/**
+	 * The value returned when a currency is not on the matrix.
+	 */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * The packed abbreviations of the hot currencies.
+	 */
+	private static final int[] HOT_CURRENCIES = parseHotCurrencies(
+			System.getProperty(HOT_CURRENCIES_PROPERTY, DEFAULT_HOT_CURRENCIES));
+
+	/**
+	 * The position of each hot currency on {@link #HOT_CURRENCIES}, indexed by
+	 * packed code, or {@link #NOT_FOUND} for the other currencies.
+	 */
+	private static final byte[] HOT_INDEXES = createHotIndexes(HOT_CURRENCIES);
+
+	/**
+	 * The quotation date of the table used to compute the matrix.
+	 */
+	private final LocalDate quotationDate;
+
+	/**
+	 * The number of hot currencies.
+	 */
+	private final int size;
+
+	/**
+	 * The table whose rates are used.
+	 */
+	private final RateTable rateTable;
+
+	/**
+	 * The slot of each hot currency on the table, or {@link RateTable#NOT_FOUND}
+	 * if it is not on the table.
+	 */
+	private final int[] slots;
+
+	/**
+	 * The buying rate of the base currency of each pair reduced by the greatest
+	 * common divisor of both buying rates, indexed by
+	 * {@link #pairOf(int, int) pair}.
+	 */
+	private final long[] multipliers;
+
+	/**
+	 * The buying rate of the quote currency of each pair reduced by the
+	 * greatest common divisor of both buying rates, indexed by
+	 * {@link #pairOf(int, int) pair}.
+	 */
+	private final long[] divisors;
+
+	/**
+	 * The cross rates, indexed by {@link #position(int, Variant)}.
+	 */
+	private final double[] crossRates;
+
+	/**
+	 * Whether the values of each pair were computed (1) or not (0). Threads
+	 * which compute the same pair at once write the same values, so no lock is
+	 * needed. The values are published by the volatile write which marks the
+	 * pair as computed.
+	 */
+	private final AtomicIntegerArray computedPairs;
+
+	/**
+	 * The rates from which a cross rate can be computed.
+	 */
+	public enum Variant {
+
+		/**
+		 * The buying rates.
+		 */
+		BUYING,
+
+		/**
+		 * The selling rates.
+		 */
+		SELLING,
+
+		/**
+		 * The buying purchasing power parities.
+		 */
+		BUYING_PPP,
+
+		/**
+		 * The selling purchasing power parities.
+		 */
+		SELLING_PPP
+	}
+
+	/**
+	 * Creates a new {@link CrossRateMatrix} object with the hot currencies of a
+	 * table. No rate is read until a pair is converted.
+	 *
+	 * @param rateTable
+	 *            The table whose rates are used.
+	 */
+	CrossRateMatrix(RateTable rateTable) {
+		this.quotationDate = rateTable.getQuotationDate();
+		this.rateTable = rateTable;
+		this.size = HOT_CURRENCIES.length;
+		this.slots = new int[size];
+		this.multipliers = new long[size * size];
+		this.divisors = new long[size * size];
+		this.crossRates = new double[Variant.values().length * size * size];
+		this.computedPairs = new AtomicIntegerArray(size * size);
+		for (int index = 0; index < size; index++) {
+			slots[index] = rateTable.slotOf(HOT_CURRENCIES[index]);
+		}
+	}
+
+	/**
+	 * Returns the quotation date of the table used to compute the matrix.
+	 *
+	 * @return The quotation date.
+	 */
+	public LocalDate getQuotationDate() {
+		return quotationDate;
+	}
+
+	/**
+	 * Returns the number of hot currencies, including the ones which are not on
+	 * the table.
+	 *
+	 * @return The number of hot currencies.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the position of a currency on the matrix.
+	 *
+	 * @param currencyAbbreviation
+	 *            The currency abbreviation.
+	 * @return The position of the currency or {@link #NOT_FOUND} if it is not a
+	 *         hot currency or it is not on the table.
+	 */
+	public int indexOf(String currencyAbbreviation) {
+		return indexOf(CurrencyCodes.pack(currencyAbbreviation));
+	}
+
+	/**
+	 * Returns the position of a currency on the matrix.
+	 *
+	 * @param currencyAbbreviation
+	 *            The {@link CurrencyCodes packed} currency abbreviation.
+	 * @return The position of the currency or {@link #NOT_FOUND} if it is not a
+	 *         hot currency or it is not on the table.
+	 */
+	public int indexOf(int currencyAbbreviation) {
+		if (currencyAbbreviation < 0 || currencyAbbreviation >= CurrencyCodes.CODE_COUNT) {
+			return NOT_FOUND;
+		}
+		int index = HOT_INDEXES[currencyAbbreviation];
+		if (index == NOT_FOUND || slots[index] == RateTable.NOT_FOUND) {
+			return NOT_FOUND;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the packed currency abbreviation of a position.
+	 *
+	 * @param index
+	 *            The position.
+	 * @return The {@link CurrencyCodes packed} currency abbreviation.
+	 */
+	public int getCurrencyAbbreviation(int index) {
+		return HOT_CURRENCIES[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the pair of two currencies, i. e. the position of their factors.
+	 *
+	 * @param fromCurrency
+	 *            The {@link CurrencyCodes packed} abbreviation of the base
+	 *            currency.
+	 * @param toCurrency
+	 *            The {@link CurrencyCodes packed} abbreviation of the quote
+	 *            currency.
+	 * @return The pair or {@link #NOT_FOUND} if a currency is not a hot currency
+	 *         or it is not on the table.
+	 */
+	public int pairOf(int fromCurrency, int toCurrency) {
+		int fromIndex = indexOf(fromCurrency);
+		int toIndex = indexOf(toCurrency);
+		if (fromIndex == NOT_FOUND || toIndex == NOT_FOUND) {
+			return NOT_FOUND;
+		}
+		return fromIndex * size + toIndex;
+	}
+
+	/**
+	 * Returns the multiplier of a pair, i. e. the buying rate of its base
+	 * currency divided by the greatest common divisor of both buying rates.
+	 *
+	 * @param pair
+	 *            The pair.
+	 * @return The multiplier of the pair.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	public long getMultiplier(int pair) {
+		return multipliers[computedPair(pair)];
+	}
+
+	/**
+	 * Returns the divisor of a pair, i. e. the buying rate of its quote currency
+	 * divided by the greatest common divisor of both buying rates.
+	 *
+	 * @param pair
+	 *            The pair.
+	 * @return The divisor of the pair.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	public long getDivisor(int pair) {
+		return divisors[computedPair(pair)];
+	}
+
+	/**
+	 * Converts an amount of a currency to another one using the factors of their
+	 * pair, with the exact arithmetic of {@link FixedPointConverter}.
+	 *
+	 * @param pair
+	 *            The pair of the currencies.
+	 * @param amountMinor
+	 *            The amount of base currency to convert, in hundredths.
+	 * @return The equivalent amount on the quote currency, in hundredths, rounded
+	 *         half to even.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	public long convert(int pair, long amountMinor) {
+		computedPair(pair);
+		return FixedPointConverter.convert(amountMinor, multipliers[pair], divisors[pair]);
+	}
+
+	/**
+	 * Converts an amount of a currency to another one using the buying rates,
+	 * with the exact arithmetic of {@link FixedPointConverter}.
+	 *
+	 * @param fromIndex
+	 *            The position of the base currency.
+	 * @param toIndex
+	 *            The position of the quote currency.
+	 * @param amountMinor
+	 *            The amount of base currency to convert, in hundredths.
+	 * @return The equivalent amount on the quote currency, in hundredths, rounded
+	 *         half to even.
+	 */
+	public long convert(int fromIndex, int toIndex, long amountMinor) {
+		return convert(checkAvailable(fromIndex) * size + checkAvailable(toIndex), amountMinor);
+	}
+
+	/**
+	 * Returns the cross rate of a pair, i. e. how much of the quote currency is
+	 * worth a unit of the base currency.
+	 *
+	 * @param fromIndex
+	 *            The position of the base currency.
+	 * @param toIndex
+	 *            The position of the quote currency.
+	 * @param variant
+	 *            The rates used.
+	 * @return The cross rate or {@link Double#NaN} if a currency is not on the
+	 *         table.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	public double getCrossRate(int fromIndex, int toIndex, Variant variant) {
+		if (slots[checkIndex(fromIndex)] == RateTable.NOT_FOUND || slots[checkIndex(toIndex)] == RateTable.NOT_FOUND) {
+			return Double.NaN;
+		}
+		return crossRates[position(computedPair(fromIndex * size + toIndex), variant)];
+	}
+
+	@Override
+	public String toString() {
+		return "Cross rate matrix of " + quotationDate + " with " + size + " hot currencies.";
+	}
+
+	/**
+	 * Checks if the currencies of a pair are on the table and computes its
+	 * values if they were not computed yet.
+	 *
+	 * @param pair
+	 *            The pair.
+	 * @return The pair.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	private int computedPair(int pair) {
+		if (pair < 0 || pair >= computedPairs.length()) {
+			throw new IndexOutOfBoundsException("Invalid pair " + pair + " on a matrix of " + size + " currencies.");
+		}
+		if (computedPairs.get(pair) == 0) {
+			computePair(pair);
+		}
+		return pair;
+	}
+
+	/**
+	 * Computes the factors and the cross rates of a pair. Rates which cannot be
+	 * reduced are kept, so they fail on conversion as on
+	 * {@link FixedPointConverter}.
+	 *
+	 * @param pair
+	 *            The pair.
+	 * @throws UncheckedIOException
+	 *             When the line of a currency could not be parsed.
+	 */
+	private void computePair(int pair) {
+		int fromSlot = slots[checkAvailable(pair / size)];
+		int toSlot = slots[checkAvailable(pair % size)];
+		long fromRate = rateTable.getBuyingRate(fromSlot);
+		long toRate = rateTable.getBuyingRate(toSlot);
+		long greatestCommonDivisor = fromRate >= 0 && toRate > 0
+				? FixedPointConverter.greatestCommonDivisor(fromRate, toRate)
+				: 1;
+		multipliers[pair] = fromRate / greatestCommonDivisor;
+		divisors[pair] = toRate / greatestCommonDivisor;
+		for (Variant variant : Variant.values()) {
+			crossRates[position(pair, variant)] = (double) rateTable.getRate(fromSlot, variant)
+					/ rateTable.getRate(toSlot, variant);
+		}
+		computedPairs.set(pair, 1);
+	}
+
+	/**
+	 * Returns the position of a cross rate on the flat array.
+	 *
+	 * @param pair
+	 *            The pair.
+	 * @param variant
+	 *            The rates used.
+	 * @return The position of the cross rate.
+	 */
+	private int position(int pair, Variant variant) {
+		return variant.ordinal() * size * size + pair;
+	}
+
+	/**
+	 * Checks if a position is on this matrix.
+	 *
+	 * @param index
+	 *            The position to be checked.
+	 * @return The position.
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(
+					"Invalid position " + index + " on a matrix of " + size + " currencies.");
+		}
+		return index;
+	}
+
+	/**
+	 * Checks if a position is on this matrix and its currency is on the table.
+	 *
+	 * @param index
+	 *            The position to be checked.
+	 * @return The position.
+	 */
+	private int checkAvailable(int index) {
+		if (slots[checkIndex(index)] == RateTable.NOT_FOUND) {
+			throw new RuntimeException("Could not find exchanging rates for \""
+					+ CurrencyCodes.unpack(HOT_CURRENCIES[index]) + "\" currency.");
+		}
+		return index;
+	}
+
+	/**
+	 * Parses a list of hot currencies.
+	 *
+	 * @param hotCurrencies
+	 *            The comma separated currency abbreviations.
+	 * @return The packed abbreviations, without repetitions.
+	 */
+	static int[] parseHotCurrencies(String hotCurrencies) {
+		int[] currencies = new int[MAX_HOT_CURRENCIES];
+		int count = 0;
+		for (String currencyAbbreviation : hotCurrencies.split(",")) {
+			currencyAbbreviation = currencyAbbreviation.trim();
+			if (currencyAbbreviation.isEmpty()) {
+				continue;
+			}
+
+			int currency = CurrencyCodes.pack(currencyAbbreviation);
+			if (currency == CurrencyCodes.INVALID_CODE) {
+				throw new InvalidParameterException(
+						"Invalid hot currency \"" + currencyAbbreviation + "\" on \"" + hotCurrencies + "\".");
+			}
+			if (contains(currencies, count, currency)) {
+				continue;
+			}
+			if (count == MAX_HOT_CURRENCIES) {
+				throw new InvalidParameterException(
+						"At most " + MAX_HOT_CURRENCIES + " hot currencies are allowed on \"" + hotCurrencies + "\".");
+			}
+			currencies[count++] = currency;
+		}
+		return Arrays.copyOf(currencies, count);
+	}
+
+	/**
+	 * Checks if a value is among the first elements of an array.
+	 *
+	 * @param values
+	 *            The array.
+	 * @param count
+	 *            The number of elements checked.
+	 * @param value
+	 *            The value to be found.
+	 * @return {@code true} if the value was found.
+	 */
+	private static boolean contains(int[] values, int count, int value) {
+		for (int index = 0; index < count; index++) {
+			if (values[index] == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates the array which finds the position of the hot currencies.
+	 *
+	 * @param hotCurrencies
+	 *            The packed abbreviations of the hot currencies.
+	 * @return The position of each packed code.
+	 */
+	private static byte[] createHotIndexes(int[] hotCurrencies) {
+		byte[] hotIndexes = new byte[CurrencyCodes.CODE_COUNT];
+		Arrays.fill(hotIndexes, (byte) NOT_FOUND);
+		for (int index = 0; index < hotCurrencies.length; index++) {
+			hotIndexes[hotCurrencies[index]] = (byte) index;
+		}
+		return hotIndexes;
+	}
+}
@@ -0,0 +1,139 @@
+package org.marceloleite.cwitest;
+
+/**
+ * Converts three letters currency abbreviations (e.g. "USD") to and from
+ * packed integer codes.
+ * <p>
+ * Each letter takes five bits, so every abbreviation fits on the 15 lower bits
+ * of an integer and can be used as an array index or hashed without
+ * allocations.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class CurrencyCodes {
+
+	/**
+	 * The code returned when a value is not a valid currency abbreviation.
+	 */
+	public static final int INVALID_CODE = -1;
+
+	/**
+	 * The number of distinct packed codes.
+	 */
+	public static final int CODE_COUNT = 1 << 15;
+
+	/**
+	 * The number of bits used by each letter.
+	 */
+	private static final int BITS_PER_LETTER = 5;
+
+	/**
+	 * The number of letters of the alphabet.
+	 */
+	private static final int LETTER_COUNT = 26;
+
+	/**
+	 * The mask which isolates a letter on a packed code.
+	 */
+	private static final int LETTER_MASK = (1 << BITS_PER_LETTER) - 1;
+
+	/**
+	 * The abbreviations already unpacked, indexed by packed code, so each one is
+	 * created only once.
+	 */
+	private static final String[] ABBREVIATIONS = new String[CODE_COUNT];
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private CurrencyCodes() {
+	}
+
+	/**
+	 * Packs a currency abbreviation.
+	 *
+	 * @param currencyAbbreviation
+	 *            The currency abbreviation.
+	 * @return The packed code of the abbreviation or {@link #INVALID_CODE} if it
+	 *         is not made of three uppercase letters.
+	 */
+	public static int pack(CharSequence currencyAbbreviation) {
+		if (null == currencyAbbreviation || currencyAbbreviation.length() != 3) {
+			return INVALID_CODE;
+		}
+		return pack(currencyAbbreviation.charAt(0), currencyAbbreviation.charAt(1), currencyAbbreviation.charAt(2));
+	}
+
+	/**
+	 * Packs a currency abbreviation informed letter by letter.
+	 *
+	 * @param first
+	 *            The first letter of the abbreviation.
+	 * @param second
+	 *            The second letter of the abbreviation.
+	 * @param third
+	 *            The third letter of the abbreviation.
+	 * @return The packed code of the abbreviation or {@link #INVALID_CODE} if any
+	 *         character is not an uppercase letter.
+	 */
+	public static int pack(int first, int second, int third) {
+		if (!isLetter(first) || !isLetter(second) || !isLetter(third)) {
+			return INVALID_CODE;
+		}
+		return ((first - 'A') << (2 * BITS_PER_LETTER)) | ((second - 'A') << BITS_PER_LETTER) | (third - 'A');
+	}
+
+	/**
+	 * Unpacks a currency code.
+	 *
+	 * @param code
+	 *            The packed code.
+	 * @return The currency abbreviation of the code. The same {@link String}
+	 *         object is returned on every call with the same code.
+	 */
+	public static String unpack(int code) {
+		if (!isValid(code)) {
+			throw new IllegalArgumentException("Invalid currency code " + code + ".");
+		}
+
+		/*
+		 * Concurrent calls may create the same abbreviation twice, which is harmless
+		 * since strings are immutable.
+		 */
+		String abbreviation = ABBREVIATIONS[code];
+		if (null == abbreviation) {
+			char[] letters = new char[3];
+			letters[0] = (char) ('A' + ((code >> (2 * BITS_PER_LETTER)) & LETTER_MASK));
+			letters[1] = (char) ('A' + ((code >> BITS_PER_LETTER) & LETTER_MASK));
+			letters[2] = (char) ('A' + (code & LETTER_MASK));
+			abbreviation = new String(letters);
+			ABBREVIATIONS[code] = abbreviation;
+		}
+		return abbreviation;
+	}
+
+	/**
+	 * Checks if a value is a valid packed code.
+	 *
+	 * @param code
+	 *            The value to be checked.
+	 * @return {@code true} if the value is the packed code of three uppercase
+	 *         letters.
+	 */
+	public static boolean isValid(int code) {
+		return code >= 0 && code < CODE_COUNT && ((code >> (2 * BITS_PER_LETTER)) & LETTER_MASK) < LETTER_COUNT
+				&& ((code >> BITS_PER_LETTER) & LETTER_MASK) < LETTER_COUNT && (code & LETTER_MASK) < LETTER_COUNT;
+	}
+
+	/**
+	 * Checks if a character is an uppercase letter.
+	 *
+	 * @param character
+	 *            The character to be checked.
+	 * @return {@code true} if the character is between "A" and "Z".
+	 */
+	private static boolean isLetter(int character) {
+		return character >= 'A' && character <= 'Z';
+	}
+}
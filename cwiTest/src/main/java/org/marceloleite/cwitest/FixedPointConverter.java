@@ -0,0 +1,395 @@
+package org.marceloleite.cwitest;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.security.InvalidParameterException;
+
+/**
+ * Converts currency amounts through rates scaled by
+ * {@link BcbCsvParser#RATE_SCALE_FACTOR} using exact integer arithmetic.
+ * <p>
+ * An amount is converted by multiplying it by the base currency rate and
+ * dividing it by the quote currency rate, rounding the quotient half to even
+ * into hundredths of the quote currency. Both rates have the same scale, so it
+ * cancels out and the result is exact for any amount. The computation is done
+ * with {@code long} values whenever the product fits on 63 bits, which covers
+ * every usual amount, and falls back to {@link BigInteger} otherwise.
+ * {@link BigDecimal} is only used to receive amounts with more than two decimal
+ * places and on the public API edge.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class FixedPointConverter {
+
+	/**
+	 * The number of decimal places of the converted amounts.
+	 */
+	public static final int MINOR_UNIT_SCALE = 2;
+
+	/**
+	 * The values which fit on 31 bits, whose product always fits on a
+	 * {@code long}.
+	 */
+	private static final long SMALL_VALUE_MASK = ~0x7FFFFFFFL;
+
+	/**
+	 * The number of hundredths on a unit of currency.
+	 */
+	private static final double MINOR_UNITS_PER_UNIT = 100.0;
+
+	/**
+	 * The largest amount in hundredths whose {@code double} value is read as
+	 * exactly two decimal places by {@link BigDecimal#valueOf(double)}.
+	 */
+	private static final double MAX_EXACT_DOUBLE_MINOR = 1L << 46;
+
+	/**
+	 * The largest amount in hundredths which is exactly represented by a
+	 * {@code double} value.
+	 */
+	private static final long MAX_DOUBLE_MINOR = 1L << 53;
+
+	/**
+	 * The powers of ten which fit on a {@code long}.
+	 */
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int exponent = 1; exponent < POWERS_OF_TEN.length; exponent++) {
+			POWERS_OF_TEN[exponent] = POWERS_OF_TEN[exponent - 1] * 10;
+		}
+	}
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private FixedPointConverter() {
+	}
+
+	/**
+	 * Converts an amount in hundredths of a currency to hundredths of another
+	 * one.
+	 *
+	 * @param amountMinor
+	 *            The amount of base currency, in hundredths.
+	 * @param fromRate
+	 *            The scaled rate of the base currency.
+	 * @param toRate
+	 *            The scaled rate of the quote currency.
+	 * @return The equivalent amount on the quote currency, in hundredths,
+	 *         rounded half to even.
+	 * @throws ArithmeticException
+	 *             When the quote currency rate is not positive or the result does
+	 *             not fit on a {@code long}.
+	 */
+	public static long convert(long amountMinor, long fromRate, long toRate) {
+		checkRates(fromRate, toRate);
+		long absoluteAmount = Math.abs(amountMinor);
+		if (((absoluteAmount | fromRate) & SMALL_VALUE_MASK) == 0
+				|| (absoluteAmount != Long.MIN_VALUE && absoluteAmount <= Long.MAX_VALUE / Math.max(1, fromRate))) {
+			return divideHalfEven(amountMinor * fromRate, toRate);
+		}
+		return divideHalfEven(BigInteger.valueOf(amountMinor).multiply(BigInteger.valueOf(fromRate)),
+				BigInteger.valueOf(toRate));
+	}
+
+	/**
+	 * Converts an amount of a currency to hundredths of another one.
+	 *
+	 * @param amount
+	 *            The amount of base currency, with any number of decimal places.
+	 * @param fromRate
+	 *            The scaled rate of the base currency.
+	 * @param toRate
+	 *            The scaled rate of the quote currency.
+	 * @return The equivalent amount on the quote currency, in hundredths,
+	 *         rounded half to even.
+	 * @throws ArithmeticException
+	 *             When the quote currency rate is not positive or the result does
+	 *             not fit on a {@code long}.
+	 */
+	public static long convert(BigDecimal amount, long fromRate, long toRate) {
+		checkRates(fromRate, toRate);
+		int extraScale = amount.scale() - MINOR_UNIT_SCALE;
+		if (extraScale <= 0) {
+			if (extraScale > -POWERS_OF_TEN.length && amount.precision() - extraScale < POWERS_OF_TEN.length) {
+				return convert(amount.unscaledValue().longValue() * POWERS_OF_TEN[-extraScale], fromRate, toRate);
+			}
+			return convert(amount.setScale(MINOR_UNIT_SCALE).unscaledValue().longValueExact(), fromRate, toRate);
+		}
+
+		/* Keeps the extra decimal places on the divisor, so no precision is lost. */
+		BigInteger numerator = amount.unscaledValue().multiply(BigInteger.valueOf(fromRate));
+		BigInteger denominator = BigInteger.valueOf(toRate).multiply(BigInteger.TEN.pow(extraScale));
+		return divideHalfEven(numerator, denominator);
+	}
+
+	/**
+	 * Converts amounts in hundredths of a currency to hundredths of another one,
+	 * with the same results as {@link #convert(long, long, long)}.
+	 * <p>
+	 * The rates are checked and reduced by their greatest common divisor once.
+	 * Products below 2<sup>53</sup> are then divided by multiplying them by the
+	 * reciprocal of the divisor and correcting the quotient through its exact
+	 * remainder, which avoids a {@code long} division per amount. Larger
+	 * products fall back to {@link #convert(long, long, long)}.
+	 *
+	 * @param amountsMinor
+	 *            The amounts of base currency, in hundredths.
+	 * @param fromRate
+	 *            The scaled rate of the base currency.
+	 * @param toRate
+	 *            The scaled rate of the quote currency.
+	 * @param convertedAmountsMinor
+	 *            The array where the equivalent amounts on the quote currency, in
+	 *            hundredths, are stored on the same positions. It may be the
+	 *            array of the amounts.
+	 * @throws ArithmeticException
+	 *             When the quote currency rate is not positive or a result does
+	 *             not fit on a {@code long}.
+	 */
+	public static void convertAll(long[] amountsMinor, long fromRate, long toRate, long[] convertedAmountsMinor) {
+		checkRates(fromRate, toRate);
+		checkLengths(amountsMinor.length, convertedAmountsMinor.length);
+		long greatestCommonDivisor = greatestCommonDivisor(fromRate, toRate);
+		long multiplier = fromRate / greatestCommonDivisor;
+		long divisor = toRate / greatestCommonDivisor;
+
+		if (divisor == 1) {
+			for (int index = 0; index < amountsMinor.length; index++) {
+				convertedAmountsMinor[index] = Math.multiplyExact(amountsMinor[index], multiplier);
+			}
+			return;
+		}
+
+		long maxExactAmount = MAX_DOUBLE_MINOR / Math.max(1, multiplier);
+		double reciprocal = 1.0 / divisor;
+		for (int index = 0; index < amountsMinor.length; index++) {
+			long amountMinor = amountsMinor[index];
+			convertedAmountsMinor[index] = amountMinor <= maxExactAmount && amountMinor >= -maxExactAmount
+					? divideHalfEven(amountMinor * multiplier, divisor, reciprocal)
+					: convert(amountMinor, multiplier, divisor);
+		}
+	}
+
+	/**
+	 * Converts amounts of a currency to another one, with the same results as
+	 * converting each {@link #toBigDecimal(Number) amount} through
+	 * {@link #convert(BigDecimal, long, long)} and reading the
+	 * {@link #fromMinorUnits(long) result} as a {@code double} value.
+	 * <p>
+	 * Amounts with up to two decimal places below 2<sup>46</sup> hundredths are
+	 * converted in hundredths without creating any object, as on
+	 * {@link #convertAll(long[], long, long, long[])}. The other ones fall back
+	 * to {@link BigDecimal}.
+	 *
+	 * @param amounts
+	 *            The amounts of base currency.
+	 * @param fromRate
+	 *            The scaled rate of the base currency.
+	 * @param toRate
+	 *            The scaled rate of the quote currency.
+	 * @param convertedAmounts
+	 *            The array where the equivalent amounts on the quote currency,
+	 *            rounded half to even with two decimal places, are stored on the
+	 *            same positions. It may be the array of the amounts.
+	 * @throws ArithmeticException
+	 *             When the quote currency rate is not positive or a result does
+	 *             not fit on a {@code long} in hundredths.
+	 * @throws NumberFormatException
+	 *             When an amount is infinite or not a number.
+	 */
+	public static void convertAll(double[] amounts, long fromRate, long toRate, double[] convertedAmounts) {
+		checkRates(fromRate, toRate);
+		checkLengths(amounts.length, convertedAmounts.length);
+		long greatestCommonDivisor = greatestCommonDivisor(fromRate, toRate);
+		long multiplier = fromRate / greatestCommonDivisor;
+		long divisor = toRate / greatestCommonDivisor;
+		long maxExactAmount = MAX_DOUBLE_MINOR / Math.max(1, multiplier);
+		double reciprocal = 1.0 / divisor;
+
+		for (int index = 0; index < amounts.length; index++) {
+			double amount = amounts[index];
+			double scaledAmount = Math.rint(amount * MINOR_UNITS_PER_UNIT);
+			long convertedAmountMinor;
+			if (Math.abs(scaledAmount) < MAX_EXACT_DOUBLE_MINOR && scaledAmount / MINOR_UNITS_PER_UNIT == amount) {
+				long amountMinor = (long) scaledAmount;
+				convertedAmountMinor = amountMinor <= maxExactAmount && amountMinor >= -maxExactAmount
+						? divideHalfEven(amountMinor * multiplier, divisor, reciprocal)
+						: convert(amountMinor, multiplier, divisor);
+			} else {
+				convertedAmountMinor = convert(BigDecimal.valueOf(amount), fromRate, toRate);
+			}
+			convertedAmounts[index] = Math.abs(convertedAmountMinor) <= MAX_DOUBLE_MINOR
+					? convertedAmountMinor / MINOR_UNITS_PER_UNIT
+					: fromMinorUnits(convertedAmountMinor).doubleValue();
+		}
+	}
+
+	/**
+	 * Converts an amount informed by the API into a {@link BigDecimal} without
+	 * the binary representation errors of {@code double} values, i. e. "0.1"
+	 * becomes exactly one tenth.
+	 *
+	 * @param amount
+	 *            The amount.
+	 * @return The amount as a {@link BigDecimal}.
+	 */
+	public static BigDecimal toBigDecimal(Number amount) {
+		if (amount instanceof BigDecimal) {
+			return (BigDecimal) amount;
+		}
+		if (amount instanceof Long || amount instanceof Integer || amount instanceof Short
+				|| amount instanceof Byte) {
+			return BigDecimal.valueOf(amount.longValue());
+		}
+		if (amount instanceof BigInteger) {
+			return new BigDecimal((BigInteger) amount);
+		}
+		return BigDecimal.valueOf(amount.doubleValue());
+	}
+
+	/**
+	 * Converts an amount in hundredths into a {@link BigDecimal} with two
+	 * decimal places.
+	 *
+	 * @param amountMinor
+	 *            The amount in hundredths.
+	 * @return The amount with two decimal places.
+	 */
+	public static BigDecimal fromMinorUnits(long amountMinor) {
+		return BigDecimal.valueOf(amountMinor, MINOR_UNIT_SCALE);
+	}
+
+	/**
+	 * Checks if rates can be used on a conversion.
+	 *
+	 * @param fromRate
+	 *            The scaled rate of the base currency.
+	 * @param toRate
+	 *            The scaled rate of the quote currency.
+	 */
+	private static void checkRates(long fromRate, long toRate) {
+		if (fromRate < 0 || toRate <= 0) {
+			throw new ArithmeticException(
+					"Invalid rates " + fromRate + " and " + toRate + ": rates must be positive.");
+		}
+	}
+
+	/**
+	 * Checks if the array of the converted amounts can receive every amount.
+	 *
+	 * @param amounts
+	 *            The number of amounts.
+	 * @param convertedAmounts
+	 *            The length of the array of the converted amounts.
+	 */
+	private static void checkLengths(int amounts, int convertedAmounts) {
+		if (convertedAmounts < amounts) {
+			throw new InvalidParameterException("The array of converted amounts has " + convertedAmounts
+					+ " positions, but " + amounts + " amounts were informed.");
+		}
+	}
+
+	/**
+	 * Computes the greatest common divisor of a rate and a positive rate.
+	 *
+	 * @param rate
+	 *            The first rate, which may be zero.
+	 * @param positiveRate
+	 *            The second rate.
+	 * @return The greatest common divisor of the rates.
+	 */
+	static long greatestCommonDivisor(long rate, long positiveRate) {
+		while (rate != 0) {
+			long remainder = positiveRate % rate;
+			positiveRate = rate;
+			rate = remainder;
+		}
+		return positiveRate;
+	}
+
+	/**
+	 * Divides a value by a positive divisor, rounding half to even.
+	 *
+	 * @param dividend
+	 *            The value divided.
+	 * @param divisor
+	 *            The positive divisor.
+	 * @return The rounded quotient.
+	 */
+	private static long divideHalfEven(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (remainder == 0) {
+			return quotient;
+		}
+
+		/* Compares twice the remainder with the divisor without overflowing. */
+		long absoluteRemainder = Math.abs(remainder);
+		long complement = divisor - absoluteRemainder;
+		if (absoluteRemainder > complement || (absoluteRemainder == complement && (quotient & 1) != 0)) {
+			return dividend < 0 ? quotient - 1 : quotient + 1;
+		}
+		return quotient;
+	}
+
+	/**
+	 * Divides a value below 2<sup>53</sup> by a positive divisor through the
+	 * reciprocal of the divisor, rounding half to even.
+	 * <p>
+	 * Both the value and the divisor are exact as {@code double} values, so the
+	 * estimated quotient is off by a few units at most. It is corrected to the
+	 * floor of the exact quotient through the remainder, which is then compared
+	 * with the divisor.
+	 *
+	 * @param dividend
+	 *            The value divided, whose absolute value is below
+	 *            2<sup>53</sup>.
+	 * @param divisor
+	 *            The positive divisor.
+	 * @param reciprocal
+	 *            The reciprocal of the divisor.
+	 * @return The rounded quotient.
+	 */
+	private static long divideHalfEven(long dividend, long divisor, double reciprocal) {
+		long quotient = (long) (dividend * reciprocal);
+		long remainder = dividend - quotient * divisor;
+		while (remainder < 0) {
+			quotient--;
+			remainder += divisor;
+		}
+		while (remainder >= divisor) {
+			quotient++;
+			remainder -= divisor;
+		}
+
+		/*
+		 * Rounds up without branches, since the remainders of a bulk conversion are
+		 * random: when twice the remainder exceeds the divisor, or equals it and
+		 * the quotient is odd.
+		 */
+		long difference = (remainder << 1) - divisor;
+		long tie = ((difference | -difference) >>> 63) ^ 1;
+		return quotient + (-difference >>> 63) + (tie & quotient);
+	}
+
+	/**
+	 * Divides a value by a positive divisor, rounding half to even.
+	 *
+	 * @param dividend
+	 *            The value divided.
+	 * @param divisor
+	 *            The positive divisor.
+	 * @return The rounded quotient.
+	 * @throws ArithmeticException
+	 *             When the quotient does not fit on a {@code long}.
+	 */
+	private static long divideHalfEven(BigInteger dividend, BigInteger divisor) {
+		return new BigDecimal(dividend).divide(new BigDecimal(divisor), 0, RoundingMode.HALF_EVEN)
+				.longValueExact();
+	}
+}
@@ -0,0 +1,97 @@
+package org.marceloleite.cwitest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helper methods for {@link CompletableFuture} objects which Java 8 does not
+ * provide.
+ *
+ * @author Marcelo Leite
+ *
+ */
+final class Futures {
+
+	/**
+	 * The scheduler shared by all timeouts. Its single thread only completes
+	 * futures, so it is never blocked.
+	 */
+	private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private Futures() {
+	}
+
+	/**
+	 * Returns the scheduler shared by all timeouts. Tasks submitted to it must
+	 * not block.
+	 *
+	 * @return The scheduler shared by all timeouts.
+	 */
+	static ScheduledExecutorService scheduler() {
+		return SCHEDULER;
+	}
+
+	/**
+	 * Completes a future with a {@link TimeoutException} if it is not completed
+	 * within a time limit.
+	 *
+	 * @param future
+	 *            The future.
+	 * @param timeout
+	 *            The time limit.
+	 * @param message
+	 *            The message of the {@link TimeoutException}.
+	 * @param <T>
+	 *            The type of the future value.
+	 * @return The same future.
+	 */
+	static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Duration timeout, String message) {
+		if (future.isDone()) {
+			return future;
+		}
+
+		ScheduledFuture<?> timeoutTask = SCHEDULER.schedule(
+				() -> future.completeExceptionally(new TimeoutException(message)), timeout.toNanos(),
+				TimeUnit.NANOSECONDS);
+		future.whenComplete((value, throwable) -> timeoutTask.cancel(false));
+		return future;
+	}
+
+	/**
+	 * Creates a future completed with an exception.
+	 *
+	 * @param throwable
+	 *            The exception.
+	 * @param <T>
+	 *            The type of the future value.
+	 * @return The future completed with the exception.
+	 */
+	static <T> CompletableFuture<T> failed(Throwable throwable) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(throwable);
+		return future;
+	}
+
+	/**
+	 * Creates the scheduler shared by all timeouts.
+	 *
+	 * @return The scheduler created.
+	 */
+	private static ScheduledExecutorService createScheduler() {
+		ScheduledThreadPoolExecutor scheduledThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "cwitest-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduledThreadPoolExecutor.setRemoveOnCancelPolicy(true);
+		return scheduledThreadPoolExecutor;
+	}
+}
@@ -0,0 +1,190 @@
+package org.marceloleite.cwitest;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies in nanoseconds with logarithmic buckets.
+ * <p>
+ * Each power of two is split into {@value #SUB_BUCKETS} linear buckets, so any
+ * positive {@code long} value is recorded on one of less than a thousand
+ * counters and percentiles are reported with a relative error below 7%, on
+ * the same log-linear layout used by HdrHistogram. Recording a value takes a
+ * few atomic additions and never allocates.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * The number of bits which select a bucket inside a power of two.
+	 */
+	private static final int SUB_BUCKET_BITS = 4;
+
+	/**
+	 * The number of buckets of each power of two.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The number of buckets needed for any positive {@code long} value.
+	 */
+	private static final int BUCKET_COUNT = bucketOf(Long.MAX_VALUE) + 1;
+
+	/**
+	 * The number of values recorded on each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/**
+	 * The number of values recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+
+	/**
+	 * The sum of the values recorded.
+	 */
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * The greatest value recorded.
+	 */
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 *
+	 * @param value
+	 *            The value, in nanoseconds.
+	 */
+	public void record(long value) {
+		long positiveValue = Math.max(0L, value);
+		counts.incrementAndGet(bucketOf(positiveValue));
+		count.increment();
+		sum.add(positiveValue);
+		long currentMax;
+		while (positiveValue > (currentMax = max.get()) && !max.compareAndSet(currentMax, positiveValue)) {
+			/* Tries again until the value is stored or a greater one is found. */
+		}
+	}
+
+	/**
+	 * Returns the number of values recorded.
+	 *
+	 * @return The number of values recorded.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the greatest value recorded.
+	 *
+	 * @return The greatest value recorded or zero if none was recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded.
+	 *
+	 * @return The mean of the values recorded or zero if none was recorded.
+	 */
+	public double getMean() {
+		long currentCount = count.sum();
+		return currentCount == 0 ? 0.0 : (double) sum.sum() / currentCount;
+	}
+
+	/**
+	 * Returns a percentile of the values recorded. Values recorded while this
+	 * method runs may or may not be considered.
+	 *
+	 * @param percentile
+	 *            The percentile, from 0 to 100.
+	 * @return The greatest value which falls on the same bucket of the
+	 *         percentile, limited to the greatest value recorded, or zero if no
+	 *         value was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		if (!(percentile >= 0.0 && percentile <= 100.0)) {
+			throw new InvalidParameterException("Percentile must be between 0 and 100.");
+		}
+
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			snapshot[bucket] = counts.get(bucket);
+			total += snapshot[bucket];
+		}
+		if (total == 0) {
+			return 0L;
+		}
+
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+		long accumulated = 0;
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			accumulated += snapshot[bucket];
+			if (accumulated >= rank) {
+				return Math.min(highestValueOf(bucket), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Discards all values recorded. Values recorded while this method runs may
+	 * be partially discarded.
+	 */
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+			counts.set(bucket, 0L);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0L);
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + Math.round(getMean()) + " ns, p50=" + getPercentile(50.0)
+				+ " ns, p99=" + getPercentile(99.0) + " ns, max=" + getMax() + " ns";
+	}
+
+	/**
+	 * Returns the bucket of a value.
+	 *
+	 * @param value
+	 *            The positive value.
+	 * @return The bucket of the value.
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		/* Keeps the highest bits of the value, which select its linear bucket. */
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	/**
+	 * Returns the greatest value of a bucket.
+	 *
+	 * @param bucket
+	 *            The bucket.
+	 * @return The greatest value recorded on the bucket.
+	 */
+	static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+		long highBits = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+		return ((highBits + 1) << shift) - 1;
+	}
+}
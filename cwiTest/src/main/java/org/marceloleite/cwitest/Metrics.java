@@ -0,0 +1,138 @@
+package org.marceloleite.cwitest;
+
+import java.lang.management.ManagementFactory;
+import java.security.InvalidParameterException;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds the {@link QuotationMetrics} which receive the measurements of every
+ * instrumented class.
+ * <p>
+ * Nothing is measured by default. Metrics are enabled through
+ * {@link #install(QuotationMetrics)}, with any implementation, or through
+ * {@link #enableJmx()}, which is called on startup if the
+ * {@value #ENABLED_PROPERTY} system property is "true".
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class Metrics {
+
+	/**
+	 * The system property which enables the metrics exposed through JMX on
+	 * startup.
+	 */
+	public static final String ENABLED_PROPERTY = "cwitest.metrics.enabled";
+
+	/**
+	 * The name under which the metrics are registered on the platform MBean
+	 * server.
+	 */
+	public static final String OBJECT_NAME = "org.marceloleite.cwitest:type=QuotationMetrics";
+
+	/**
+	 * The metrics installed.
+	 */
+	private static volatile QuotationMetrics quotationMetrics = QuotationMetrics.NOOP;
+
+	static {
+		if (Boolean.getBoolean(ENABLED_PROPERTY)) {
+			enableJmx();
+		}
+	}
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private Metrics() {
+	}
+
+	/**
+	 * Returns the metrics installed.
+	 *
+	 * @return The metrics installed, which are {@link QuotationMetrics#NOOP} if
+	 *         none was.
+	 */
+	public static QuotationMetrics get() {
+		return quotationMetrics;
+	}
+
+	/**
+	 * Installs the metrics which receive the measurements from now on.
+	 *
+	 * @param quotationMetrics
+	 *            The metrics, or {@link QuotationMetrics#NOOP} to stop measuring.
+	 */
+	public static void install(QuotationMetrics quotationMetrics) {
+		if (null == quotationMetrics) {
+			throw new InvalidParameterException("Quotation metrics cannot be null.");
+		}
+		Metrics.quotationMetrics = quotationMetrics;
+	}
+
+	/**
+	 * Installs {@link RecordingQuotationMetrics} and registers them on the
+	 * platform MBean server as {@value #OBJECT_NAME}, unless metrics registered
+	 * by a previous call are already installed.
+	 *
+	 * @return The metrics installed.
+	 */
+	public static synchronized RecordingQuotationMetrics enableJmx() {
+		if (quotationMetrics instanceof RecordingQuotationMetrics) {
+			return (RecordingQuotationMetrics) quotationMetrics;
+		}
+
+		RecordingQuotationMetrics recordingQuotationMetrics = new RecordingQuotationMetrics();
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(OBJECT_NAME);
+			try {
+				mBeanServer.registerMBean(recordingQuotationMetrics, objectName);
+			} catch (InstanceAlreadyExistsException instanceAlreadyExistsException) {
+				unregister(mBeanServer, objectName);
+				mBeanServer.registerMBean(recordingQuotationMetrics, objectName);
+			}
+		} catch (JMException jmException) {
+			throw new IllegalStateException("Could not register quotation metrics on JMX.", jmException);
+		}
+
+		install(recordingQuotationMetrics);
+		return recordingQuotationMetrics;
+	}
+
+	/**
+	 * Installs {@link QuotationMetrics#NOOP} and unregisters the metrics
+	 * registered through {@link #enableJmx()}.
+	 */
+	public static synchronized void disable() {
+		install(QuotationMetrics.NOOP);
+		try {
+			unregister(ManagementFactory.getPlatformMBeanServer(), new ObjectName(OBJECT_NAME));
+		} catch (JMException jmException) {
+			throw new IllegalStateException("Could not unregister quotation metrics from JMX.", jmException);
+		}
+	}
+
+	/**
+	 * Unregisters an MBean, ignoring it if it is not registered.
+	 *
+	 * @param mBeanServer
+	 *            The MBean server.
+	 * @param objectName
+	 *            The MBean name.
+	 * @throws JMException
+	 *             When the MBean could not be unregistered.
+	 */
+	private static void unregister(MBeanServer mBeanServer, ObjectName objectName) throws JMException {
+		try {
+			mBeanServer.unregisterMBean(objectName);
+		} catch (InstanceNotFoundException instanceNotFoundException) {
+			/* Nothing to unregister. */
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RateTableLoader} which reads the tables of past dates from a
+ * {@link RateTableStore} and only asks another loader for the tables which are
+ * not stored yet, storing them afterwards.
+ * <p>
+ * The table of the current date (and of any future date) is never stored,
+ * since Brazilian central bank may not have published its final version yet.
+ * A table which cannot be read from or written to the store is still returned
+ * from the other loader, so a damaged store never blocks a quotation.
+ * <p>
+ * Tables are written on the store by another thread, since writing reads all
+ * their values and tables read by {@link BcbCsvParser#parseLazily} only decode
+ * the currencies requested. A table whose write is still pending when the JVM
+ * exits, or which finds the queue of pending writes full, is counted as a
+ * store failure and loaded and stored again later.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class PersistentRateTableLoader implements RateTableLoader {
+
+	/**
+	 * The maximum number of tables waiting to be written by the default
+	 * executor.
+	 */
+	private static final int STORE_QUEUE_CAPACITY = 64;
+
+	/**
+	 * The executor which writes the tables on the store by default.
+	 */
+	private static final Executor DEFAULT_STORE_EXECUTOR = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(STORE_QUEUE_CAPACITY), runnable -> {
+				Thread thread = new Thread(runnable, "cwitest-store-write");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/**
+	 * The store of the past dates' tables.
+	 */
+	private final RateTableStore rateTableStore;
+
+	/**
+	 * The loader used to retrieve the tables which are not on the store.
+	 */
+	private final RateTableLoader rateTableLoader;
+
+	/**
+	 * The clock used to identify the current date.
+	 */
+	private final Clock clock;
+
+	/**
+	 * The executor which writes the tables on the store.
+	 */
+	private final Executor storeExecutor;
+
+	/**
+	 * The number of tables read from the store.
+	 */
+	private final AtomicLong storeHitCount = new AtomicLong();
+
+	/**
+	 * The number of tables which could not be read from or written to the store.
+	 */
+	private final AtomicLong storeFailureCount = new AtomicLong();
+
+	/**
+	 * Creates a new {@link PersistentRateTableLoader} object.
+	 *
+	 * @param rateTableStore
+	 *            The store of the past dates' tables.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables which are not on the
+	 *            store.
+	 */
+	public PersistentRateTableLoader(RateTableStore rateTableStore, RateTableLoader rateTableLoader) {
+		this(rateTableStore, rateTableLoader, Clock.system(CWITest.BCB_TIME_ZONE));
+	}
+
+	/**
+	 * Creates a new {@link PersistentRateTableLoader} object.
+	 *
+	 * @param rateTableStore
+	 *            The store of the past dates' tables.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables which are not on the
+	 *            store.
+	 * @param clock
+	 *            The clock used to identify the current date.
+	 */
+	public PersistentRateTableLoader(RateTableStore rateTableStore, RateTableLoader rateTableLoader, Clock clock) {
+		this(rateTableStore, rateTableLoader, clock, DEFAULT_STORE_EXECUTOR);
+	}
+
+	/**
+	 * Creates a new {@link PersistentRateTableLoader} object.
+	 *
+	 * @param rateTableStore
+	 *            The store of the past dates' tables.
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables which are not on the
+	 *            store.
+	 * @param clock
+	 *            The clock used to identify the current date.
+	 * @param storeExecutor
+	 *            The executor which writes the tables on the store.
+	 */
+	public PersistentRateTableLoader(RateTableStore rateTableStore, RateTableLoader rateTableLoader, Clock clock,
+			Executor storeExecutor) {
+		if (null == rateTableStore) {
+			throw new InvalidParameterException("Rate table store cannot be null.");
+		}
+
+		if (null == rateTableLoader) {
+			throw new InvalidParameterException("Rate table loader cannot be null.");
+		}
+
+		if (null == clock) {
+			throw new InvalidParameterException("Clock cannot be null.");
+		}
+
+		if (null == storeExecutor) {
+			throw new InvalidParameterException("Store executor cannot be null.");
+		}
+
+		this.rateTableStore = rateTableStore;
+		this.rateTableLoader = rateTableLoader;
+		this.clock = clock;
+		this.storeExecutor = storeExecutor;
+	}
+
+	@Override
+	public RateTable load(LocalDate quotationDate) throws IOException {
+		boolean past = quotationDate.isBefore(LocalDate.now(clock));
+		if (past) {
+			QuotationMetrics metrics = Metrics.get();
+			long startTime = metrics.startTimer();
+			try {
+				RateTable rateTable = rateTableStore.get(quotationDate);
+				if (null != rateTable) {
+					storeHitCount.incrementAndGet();
+					metrics.increment(QuotationMetrics.Counter.STORE_HITS, 1L);
+					return rateTable;
+				}
+			} catch (IOException ioException) {
+				storeFailureCount.incrementAndGet();
+				metrics.recordFailure(QuotationMetrics.Stage.STORE, ioException);
+			} finally {
+				metrics.stopTimer(QuotationMetrics.Stage.STORE, startTime);
+			}
+		}
+
+		RateTable rateTable = rateTableLoader.load(quotationDate);
+		if (past && rateTable.size() > 0) {
+			try {
+				storeExecutor.execute(() -> store(rateTable));
+			} catch (RejectedExecutionException rejectedExecutionException) {
+				storeFailureCount.incrementAndGet();
+				Metrics.get().recordFailure(QuotationMetrics.Stage.STORE, rejectedExecutionException);
+			}
+		}
+		return rateTable;
+	}
+
+	/**
+	 * Writes a table on the store, counting the failure if it could not be
+	 * written.
+	 *
+	 * @param rateTable
+	 *            The table to be written.
+	 */
+	private void store(RateTable rateTable) {
+		try {
+			rateTableStore.put(rateTable);
+		} catch (IOException ioException) {
+			storeFailureCount.incrementAndGet();
+			Metrics.get().recordFailure(QuotationMetrics.Stage.STORE, ioException);
+		} catch (UncheckedIOException uncheckedIOException) {
+
+			/* A line of a lazily parsed table could not be decoded. */
+			storeFailureCount.incrementAndGet();
+			Metrics.get().recordFailure(QuotationMetrics.Stage.STORE, uncheckedIOException.getCause());
+		} catch (RuntimeException runtimeException) {
+			storeFailureCount.incrementAndGet();
+			Metrics.get().recordFailure(QuotationMetrics.Stage.STORE, runtimeException);
+		}
+	}
+
+	/**
+	 * Returns the store of the past dates' tables.
+	 *
+	 * @return The store of the past dates' tables.
+	 */
+	public RateTableStore getRateTableStore() {
+		return rateTableStore;
+	}
+
+	/**
+	 * Returns the number of tables read from the store.
+	 *
+	 * @return The number of tables read from the store.
+	 */
+	public long getStoreHitCount() {
+		return storeHitCount.get();
+	}
+
+	/**
+	 * Returns the number of tables which could not be read from or written to
+	 * the store.
+	 *
+	 * @return The number of store failures.
+	 */
+	public long getStoreFailureCount() {
+		return storeFailureCount.get();
+	}
+}
@@ -0,0 +1,196 @@
+package org.marceloleite.cwitest;
+
+/**
+ * Receives the latencies, counters and failures of each stage of a currency
+ * quotation.
+ * <p>
+ * The instrumented code reads the metrics installed on {@link Metrics} and
+ * measures a stage as below, so when {@link #NOOP} is installed no clock is
+ * read and the calls are removed by the compiler:
+ *
+ * <pre>
+ * QuotationMetrics metrics = Metrics.get();
+ * long startTime = metrics.startTimer();
+ * ...
+ * metrics.stopTimer(QuotationMetrics.Stage.PARSE, startTime);
+ * </pre>
+ *
+ * Implementations must be thread safe and must not block.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public interface QuotationMetrics {
+
+	/**
+	 * The metrics which discard everything.
+	 */
+	QuotationMetrics NOOP = new QuotationMetrics() {
+
+		@Override
+		public long startTimer() {
+			return 0L;
+		}
+
+		@Override
+		public void stopTimer(Stage stage, long startTime) {
+		}
+
+		@Override
+		public void increment(Counter counter, long delta) {
+		}
+
+		@Override
+		public void recordFailure(Stage stage, Throwable failure) {
+		}
+	};
+
+	/**
+	 * The measured stages of a currency quotation.
+	 */
+	enum Stage {
+
+		/**
+		 * The whole {@link CWITest#currencyQuotation} call.
+		 */
+		QUOTATION,
+
+		/**
+		 * The resolution of the informed date to a business day.
+		 */
+		RESOLVE_DATE,
+
+		/**
+		 * The load of a table which was not on cache, through any loader.
+		 */
+		LOAD,
+
+		/**
+		 * The read of a table from a {@link RateTableStore}.
+		 */
+		STORE,
+
+		/**
+		 * The download of a quotation CSV file, including its parse since the file
+		 * is parsed while downloaded.
+		 */
+		DOWNLOAD,
+
+		/**
+		 * The parse of a quotation CSV file and the creation of its table.
+		 */
+		PARSE,
+
+		/**
+		 * The conversion of an amount with a table.
+		 */
+		CONVERT,
+
+		/**
+		 * An attempt of a {@link RateTablePrefetcher} to load the current date's
+		 * table ahead of demand.
+		 */
+		PREFETCH
+	}
+
+	/**
+	 * The counted events of a currency quotation.
+	 */
+	enum Counter {
+
+		/**
+		 * The requests which found a table on cache.
+		 */
+		CACHE_HITS,
+
+		/**
+		 * The requests which did not find a table on cache.
+		 */
+		CACHE_MISSES,
+
+		/**
+		 * The tables read from a {@link RateTableStore}.
+		 */
+		STORE_HITS,
+
+		/**
+		 * The quotation CSV file downloads started.
+		 */
+		DOWNLOADS,
+
+		/**
+		 * The downloads answered with "304 Not Modified".
+		 */
+		NOT_MODIFIED,
+
+		/**
+		 * The bytes received, before decompression.
+		 */
+		BYTES_DOWNLOADED,
+
+		/**
+		 * The quotation CSV file lines parsed.
+		 */
+		PARSED_ROWS,
+
+		/**
+		 * The tables put on cache by a {@link RateTablePrefetcher}.
+		 */
+		PREFETCHES,
+
+		/**
+		 * The prefetch attempts which found no quotation CSV file published yet.
+		 */
+		PREFETCH_RETRIES,
+
+		/**
+		 * The sources started by a {@link RateSourceRouter} because the previous
+		 * ones were slow.
+		 */
+		HEDGED_LOADS,
+
+		/**
+		 * The sources started by a {@link RateSourceRouter} because the previous
+		 * one failed or had no file.
+		 */
+		SOURCE_FAILOVERS
+	}
+
+	/**
+	 * Starts measuring a stage.
+	 *
+	 * @return The start time to be informed to {@link #stopTimer}.
+	 */
+	long startTimer();
+
+	/**
+	 * Finishes measuring a stage.
+	 *
+	 * @param stage
+	 *            The stage measured.
+	 * @param startTime
+	 *            The value returned by {@link #startTimer()} when the stage
+	 *            started.
+	 */
+	void stopTimer(Stage stage, long startTime);
+
+	/**
+	 * Increments a counter.
+	 *
+	 * @param counter
+	 *            The counter.
+	 * @param delta
+	 *            The value added to the counter.
+	 */
+	void increment(Counter counter, long delta);
+
+	/**
+	 * Records a failure of a stage.
+	 *
+	 * @param stage
+	 *            The stage which failed.
+	 * @param failure
+	 *            The exception thrown by the stage.
+	 */
+	void recordFailure(Stage stage, Throwable failure);
+}
@@ -0,0 +1,70 @@
+package org.marceloleite.cwitest;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link RecordingQuotationMetrics}, which
+ * exposes the quotation metrics through JMX. Maps are keyed by the
+ * {@link QuotationMetrics.Stage stage} or {@link QuotationMetrics.Counter
+ * counter} name.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public interface QuotationMetricsMXBean {
+
+	/**
+	 * Returns the value of each counter.
+	 *
+	 * @return The value of each counter.
+	 */
+	Map<String, Long> getCounters();
+
+	/**
+	 * Returns the number of failures of each stage by exception type, keyed by
+	 * the stage name and the exception class name separated by a colon.
+	 *
+	 * @return The number of failures of each stage by exception type.
+	 */
+	Map<String, Long> getFailures();
+
+	/**
+	 * Returns the number of times each stage was measured.
+	 *
+	 * @return The number of times each stage was measured.
+	 */
+	Map<String, Long> getLatencyCounts();
+
+	/**
+	 * Returns the mean latency of each stage.
+	 *
+	 * @return The mean latency of each stage, in nanoseconds.
+	 */
+	Map<String, Long> getLatencyMeans();
+
+	/**
+	 * Returns the median latency of each stage.
+	 *
+	 * @return The median latency of each stage, in nanoseconds.
+	 */
+	Map<String, Long> getLatencyMedians();
+
+	/**
+	 * Returns the 99th percentile latency of each stage.
+	 *
+	 * @return The 99th percentile latency of each stage, in nanoseconds.
+	 */
+	Map<String, Long> getLatency99thPercentiles();
+
+	/**
+	 * Returns the maximum latency of each stage.
+	 *
+	 * @return The maximum latency of each stage, in nanoseconds.
+	 */
+	Map<String, Long> getLatencyMaximums();
+
+	/**
+	 * Discards all values recorded.
+	 */
+	void reset();
+}
@@ -0,0 +1,273 @@
+package org.marceloleite.cwitest;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * A chunk of the daily cross rates of a currency pair, stored on parallel
+ * primitive arrays of dates and scaled rates in chronological order.
+ * <p>
+ * Long series are returned by
+ * {@link CWITest#currencyQuotationSeries(String, String, LocalDate, LocalDate)}
+ * as a stream of consecutive chunks, so only the chunks being consumed and
+ * loaded are kept in memory however long the period is.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class RateSeries {
+
+	/**
+	 * The packed abbreviation of the base currency.
+	 */
+	private final int fromCurrency;
+
+	/**
+	 * The packed abbreviation of the quote currency.
+	 */
+	private final int toCurrency;
+
+	/**
+	 * The rates from which the cross rates were computed.
+	 */
+	private final CrossRateMatrix.Variant variant;
+
+	/**
+	 * The number of points of the series.
+	 */
+	private final int size;
+
+	/**
+	 * The quotation date of each point, as the number of days since 01/01/1970.
+	 */
+	private final int[] epochDays;
+
+	/**
+	 * The scaled cross rate of each point.
+	 */
+	private final long[] rates;
+
+	/**
+	 * Creates a new {@link RateSeries} object. The arrays are used as they are,
+	 * so they must not be changed afterwards.
+	 *
+	 * @param fromCurrency
+	 *            The packed abbreviation of the base currency.
+	 * @param toCurrency
+	 *            The packed abbreviation of the quote currency.
+	 * @param variant
+	 *            The rates from which the cross rates were computed.
+	 * @param size
+	 *            The number of points of the series.
+	 * @param epochDays
+	 *            The quotation date of each point.
+	 * @param rates
+	 *            The scaled cross rate of each point.
+	 */
+	RateSeries(int fromCurrency, int toCurrency, CrossRateMatrix.Variant variant, int size, int[] epochDays,
+			long[] rates) {
+		this.fromCurrency = fromCurrency;
+		this.toCurrency = toCurrency;
+		this.variant = variant;
+		this.size = size;
+		this.epochDays = epochDays;
+		this.rates = rates;
+	}
+
+	/**
+	 * Returns the base currency.
+	 *
+	 * @return The base currency abbreviation.
+	 */
+	public String getFrom() {
+		return CurrencyCodes.unpack(fromCurrency);
+	}
+
+	/**
+	 * Returns the quote currency.
+	 *
+	 * @return The quote currency abbreviation.
+	 */
+	public String getTo() {
+		return CurrencyCodes.unpack(toCurrency);
+	}
+
+	/**
+	 * Returns the rates from which the cross rates were computed.
+	 *
+	 * @return The rates from which the cross rates were computed.
+	 */
+	public CrossRateMatrix.Variant getVariant() {
+		return variant;
+	}
+
+	/**
+	 * Returns the number of points of the series.
+	 *
+	 * @return The number of points of the series.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the quotation date of a point.
+	 *
+	 * @param index
+	 *            The point position.
+	 * @return The quotation date, as the number of days since 01/01/1970.
+	 */
+	public int getEpochDay(int index) {
+		return epochDays[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the quotation date of a point.
+	 *
+	 * @param index
+	 *            The point position.
+	 * @return The quotation date.
+	 */
+	public LocalDate getQuotationDate(int index) {
+		return LocalDate.ofEpochDay(getEpochDay(index));
+	}
+
+	/**
+	 * Returns the cross rate of a point, i. e. how much of the quote currency is
+	 * worth a unit of the base currency.
+	 *
+	 * @param index
+	 *            The point position.
+	 * @return The cross rate, scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}
+	 *         and rounded half to even.
+	 */
+	public long getRate(int index) {
+		return rates[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the cross rate of a point as a {@code double} value.
+	 *
+	 * @param index
+	 *            The point position.
+	 * @return The cross rate.
+	 */
+	public double getRateAsDouble(int index) {
+		return BcbCsvParser.toDouble(getRate(index));
+	}
+
+	@Override
+	public String toString() {
+		if (size == 0) {
+			return "Empty " + getFrom() + "/" + getTo() + " series.";
+		}
+		return getFrom() + "/" + getTo() + " series from " + getQuotationDate(0) + " to "
+				+ getQuotationDate(size - 1) + " with " + size + " points.";
+	}
+
+	/**
+	 * Checks if a point position is on this series.
+	 *
+	 * @param index
+	 *            The position to be checked.
+	 * @return The position.
+	 */
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Invalid position " + index + " on a series of " + size + " points.");
+		}
+		return index;
+	}
+
+	/**
+	 * Builds a {@link RateSeries} from the tables of consecutive dates.
+	 */
+	static final class Builder {
+
+		/**
+		 * The packed abbreviation of the base currency.
+		 */
+		private final int fromCurrency;
+
+		/**
+		 * The packed abbreviation of the quote currency.
+		 */
+		private final int toCurrency;
+
+		/**
+		 * The rates from which the cross rates are computed.
+		 */
+		private final CrossRateMatrix.Variant variant;
+
+		/**
+		 * The number of points added so far.
+		 */
+		private int size;
+
+		/**
+		 * The quotation date of each point.
+		 */
+		private final int[] epochDays;
+
+		/**
+		 * The scaled cross rate of each point.
+		 */
+		private final long[] rates;
+
+		/**
+		 * Creates a new {@link Builder} object.
+		 *
+		 * @param fromCurrency
+		 *            The packed abbreviation of the base currency.
+		 * @param toCurrency
+		 *            The packed abbreviation of the quote currency.
+		 * @param variant
+		 *            The rates from which the cross rates are computed.
+		 * @param capacity
+		 *            The maximum number of points.
+		 */
+		Builder(int fromCurrency, int toCurrency, CrossRateMatrix.Variant variant, int capacity) {
+			this.fromCurrency = fromCurrency;
+			this.toCurrency = toCurrency;
+			this.variant = variant;
+			this.epochDays = new int[capacity];
+			this.rates = new long[capacity];
+		}
+
+		/**
+		 * Adds the cross rate of a table, unless the table lacks any of the
+		 * currencies or the quote currency rate is zero.
+		 *
+		 * @param rateTable
+		 *            The table of the next quotation date.
+		 */
+		void add(RateTable rateTable) {
+			int fromSlot = rateTable.slotOf(fromCurrency);
+			int toSlot = rateTable.slotOf(toCurrency);
+			if (fromSlot == RateTable.NOT_FOUND || toSlot == RateTable.NOT_FOUND) {
+				return;
+			}
+
+			long toRate = rateTable.getRate(toSlot, variant);
+			if (toRate <= 0) {
+				return;
+			}
+
+			/* Converting a unit scaled like the rates gives the scaled cross rate. */
+			epochDays[size] = (int) rateTable.getQuotationDate().toEpochDay();
+			rates[size] = FixedPointConverter.convert(BcbCsvParser.RATE_SCALE_FACTOR,
+					rateTable.getRate(fromSlot, variant), toRate);
+			size++;
+		}
+
+		/**
+		 * Creates the series with the points added so far.
+		 *
+		 * @return The series created.
+		 */
+		RateSeries build() {
+			return new RateSeries(fromCurrency, toCurrency, variant, size, Arrays.copyOf(epochDays, size),
+					Arrays.copyOf(rates, size));
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package org.marceloleite.cwitest;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks the business days of a period in chunks, loading the tables of each
+ * chunk at once and the tables of the next chunk while the current one is
+ * consumed, and reports the cross rates of each chunk as a {@link RateSeries}.
+ * <p>
+ * Dates without a quotation CSV file are skipped, as well as tables which lack
+ * any of the currencies. Any other load failure is thrown when the chunk of
+ * its date is reached, as an {@link UncheckedIOException} if it is an
+ * {@link IOException}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+final class RateSeriesSpliterator implements Spliterator<RateSeries> {
+
+	/**
+	 * The packed abbreviation of the base currency.
+	 */
+	private final int fromCurrency;
+
+	/**
+	 * The packed abbreviation of the quote currency.
+	 */
+	private final int toCurrency;
+
+	/**
+	 * The rates from which the cross rates are computed.
+	 */
+	private final CrossRateMatrix.Variant variant;
+
+	/**
+	 * The last date of the period, inclusive.
+	 */
+	private final LocalDate lastDate;
+
+	/**
+	 * The maximum number of business days of each chunk.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * The resolver which identifies the business days.
+	 */
+	private final BusinessDayResolver businessDayResolver;
+
+	/**
+	 * The function which starts the load of the table of a date.
+	 */
+	private final Function<LocalDate, CompletableFuture<RateTable>> rateTableLoader;
+
+	/**
+	 * The first date not included on a chunk yet.
+	 */
+	private LocalDate nextDate;
+
+	/**
+	 * The chunk being loaded or {@code null} if no chunk was requested yet or
+	 * the period is over.
+	 */
+	private CompletableFuture<RateSeries> pendingChunk;
+
+	/**
+	 * Creates a new {@link RateSeriesSpliterator} object.
+	 *
+	 * @param fromCurrency
+	 *            The packed abbreviation of the base currency.
+	 * @param toCurrency
+	 *            The packed abbreviation of the quote currency.
+	 * @param variant
+	 *            The rates from which the cross rates are computed.
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive.
+	 * @param chunkSize
+	 *            The maximum number of business days of each chunk.
+	 * @param businessDayResolver
+	 *            The resolver which identifies the business days.
+	 * @param rateTableLoader
+	 *            The function which starts the load of the table of a date.
+	 */
+	RateSeriesSpliterator(int fromCurrency, int toCurrency, CrossRateMatrix.Variant variant, LocalDate firstDate,
+			LocalDate lastDate, int chunkSize, BusinessDayResolver businessDayResolver,
+			Function<LocalDate, CompletableFuture<RateTable>> rateTableLoader) {
+		this.fromCurrency = fromCurrency;
+		this.toCurrency = toCurrency;
+		this.variant = variant;
+		this.nextDate = firstDate;
+		this.lastDate = lastDate;
+		this.chunkSize = chunkSize;
+		this.businessDayResolver = businessDayResolver;
+		this.rateTableLoader = rateTableLoader;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super RateSeries> action) {
+		if (null == pendingChunk) {
+			pendingChunk = loadNextChunk();
+		}
+
+		while (null != pendingChunk) {
+			RateSeries rateSeries = join(pendingChunk);
+
+			/* Loads the next chunk while this one is consumed. */
+			pendingChunk = loadNextChunk();
+			if (rateSeries.size() > 0) {
+				action.accept(rateSeries);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Spliterator<RateSeries> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		long remainingDays = nextDate.isAfter(lastDate) ? 0 : ChronoUnit.DAYS.between(nextDate, lastDate) + 1;
+		return (remainingDays + chunkSize - 1) / chunkSize + (null == pendingChunk ? 0 : 1);
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Stops waiting for the chunk being loaded. The loads already started are
+	 * not aborted.
+	 */
+	void close() {
+		if (null != pendingChunk) {
+			pendingChunk.cancel(false);
+			pendingChunk = null;
+		}
+		nextDate = lastDate.plusDays(1);
+	}
+
+	/**
+	 * Starts loading the tables of the next chunk.
+	 *
+	 * @return The future of the next chunk or {@code null} if the period is
+	 *         over.
+	 */
+	private CompletableFuture<RateSeries> loadNextChunk() {
+		List<CompletableFuture<RateTable>> rateTableFutures = new ArrayList<>(chunkSize);
+		while (rateTableFutures.size() < chunkSize && !nextDate.isAfter(lastDate)) {
+			if (businessDayResolver.isBusinessDay(nextDate)) {
+				rateTableFutures.add(rateTableLoader.apply(nextDate).handle(RateSeriesSpliterator::skipMissingFile));
+			}
+			nextDate = nextDate.plusDays(1);
+		}
+
+		if (rateTableFutures.isEmpty()) {
+			return null;
+		}
+
+		return CompletableFuture.allOf(rateTableFutures.toArray(new CompletableFuture<?>[rateTableFutures.size()]))
+				.thenApply(ignored -> {
+					RateSeries.Builder builder = new RateSeries.Builder(fromCurrency, toCurrency, variant,
+							rateTableFutures.size());
+					for (CompletableFuture<RateTable> rateTableFuture : rateTableFutures) {
+						RateTable rateTable = rateTableFuture.join();
+						if (null != rateTable) {
+							builder.add(rateTable);
+						}
+					}
+					return builder.build();
+				});
+	}
+
+	/**
+	 * Replaces the failure of a date without quotation CSV file by a
+	 * {@code null} table.
+	 *
+	 * @param rateTable
+	 *            The table loaded.
+	 * @param failure
+	 *            The load failure.
+	 * @return The table loaded or {@code null} if the date has no file.
+	 */
+	private static RateTable skipMissingFile(RateTable rateTable, Throwable failure) {
+		if (null == failure) {
+			return rateTable;
+		}
+
+		Throwable cause = failure instanceof CompletionException && null != failure.getCause() ? failure.getCause()
+				: failure;
+		if (cause instanceof FileNotFoundException) {
+			return null;
+		}
+		throw failure instanceof CompletionException ? (CompletionException) failure
+				: new CompletionException(failure);
+	}
+
+	/**
+	 * Waits for a chunk, unwrapping its failure.
+	 *
+	 * @param chunk
+	 *            The future of the chunk.
+	 * @return The chunk.
+	 */
+	private static RateSeries join(CompletableFuture<RateSeries> chunk) {
+		try {
+			return chunk.join();
+		} catch (CompletionException completionException) {
+			Throwable cause = completionException.getCause();
+			if (cause instanceof IOException) {
+				throw new UncheckedIOException((IOException) cause);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw completionException;
+		}
+	}
+}
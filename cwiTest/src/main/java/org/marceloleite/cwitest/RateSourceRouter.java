@@ -0,0 +1,742 @@
+package org.marceloleite.cwitest;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link RateTableLoader} which loads each table from the fastest of several
+ * rate sources, such as Brazilian central bank site, its mirrors and a
+ * {@link RateTableStore}. Any {@link RateTableLoader} may be a source.
+ * <p>
+ * The sources are tried in ascending order of their average latency. If a
+ * source does not answer within the hedge delay, the next one is started as
+ * well and the first table loaded is returned, so a slow source does not delay
+ * the load beyond the delay. A source which fails, or which has no file for the
+ * date, is replaced by the next one at once.
+ * <p>
+ * Each source has a circuit breaker: after a number of consecutive failures it
+ * is skipped for a while, and then a single load is allowed to check if it has
+ * recovered. A missing file is not a failure of the source.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateSourceRouter implements RateTableLoader {
+
+	/**
+	 * The default time waited for a source before the next one is started.
+	 */
+	public static final Duration DEFAULT_HEDGE_DELAY = Duration.ofMillis(500);
+
+	/**
+	 * The default number of consecutive failures which opens the circuit
+	 * breaker of a source.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+	/**
+	 * The default time a source is skipped after its circuit breaker opens.
+	 */
+	public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+	/**
+	 * The weight of the latest latency on the average latency of a source.
+	 */
+	private static final double LATENCY_SMOOTHING = 0.2;
+
+	/**
+	 * The executor which runs the loads of all routers by default.
+	 */
+	private static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "cwitest-rate-source");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The sources, on the order they were added.
+	 */
+	private final List<Source> sources;
+
+	/**
+	 * The time waited for a source before the next one is started, in
+	 * nanoseconds.
+	 */
+	private final long hedgeDelayNanos;
+
+	/**
+	 * The executor which runs the loads.
+	 */
+	private final Executor executor;
+
+	/**
+	 * Creates a new {@link RateSourceRouter} object.
+	 *
+	 * @param builder
+	 *            The builder with the router configuration.
+	 */
+	private RateSourceRouter(Builder builder) {
+		List<Source> sources = new ArrayList<>(builder.names.size());
+		for (int index = 0; index < builder.names.size(); index++) {
+			sources.add(new Source(builder.names.get(index), builder.rateTableLoaders.get(index),
+					builder.failureThreshold, builder.openDuration.toNanos()));
+		}
+		this.sources = Collections.unmodifiableList(sources);
+		this.hedgeDelayNanos = builder.hedgeDelay.toNanos();
+		this.executor = builder.executor;
+	}
+
+	/**
+	 * Loads the table of a quotation date from the fastest available source.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @return The table of the quotation date.
+	 * @throws FileNotFoundException
+	 *             When no source has the file of the date.
+	 * @throws IOException
+	 *             When no source could load the table. The failure of each
+	 *             source is suppressed by the exception thrown.
+	 */
+	@Override
+	public RateTable load(LocalDate quotationDate) throws IOException {
+		/* Reads each latency once, since other loads may update them while sorting. */
+		Map<Source, Long> averageLatencies = new IdentityHashMap<>(sources.size());
+		for (Source source : sources) {
+			averageLatencies.put(source, source.getAverageLatencyNanos());
+		}
+		List<Source> orderedSources = new ArrayList<>(sources);
+		orderedSources.sort(Comparator.comparing(averageLatencies::get));
+
+		Load load = new Load(quotationDate, orderedSources);
+		if (!load.startNext()) {
+			throw new IOException("Could not load the table of " + quotationDate
+					+ " since the circuit breakers of all sources are open.");
+		}
+
+		try {
+			while (true) {
+				try {
+					return load.result.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+				} catch (TimeoutException timeoutException) {
+					if (load.startNext()) {
+						Metrics.get().increment(QuotationMetrics.Counter.HEDGED_LOADS, 1L);
+					} else {
+						return load.result.get();
+					}
+				}
+			}
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading the table of " + quotationDate + ".");
+		} catch (ExecutionException executionException) {
+			Throwable cause = executionException.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("Could not load the table of " + quotationDate + ".", cause);
+		}
+	}
+
+	/**
+	 * Returns the current status of each source.
+	 *
+	 * @return The status of each source, on the order they were added.
+	 */
+	public List<SourceStatus> getSourceStatuses() {
+		List<SourceStatus> sourceStatuses = new ArrayList<>(sources.size());
+		for (Source source : sources) {
+			sourceStatuses.add(source.getStatus());
+		}
+		return sourceStatuses;
+	}
+
+	/**
+	 * The states of a source circuit breaker.
+	 */
+	public enum CircuitState {
+
+		/**
+		 * The source is used normally.
+		 */
+		CLOSED,
+
+		/**
+		 * The source is skipped after too many consecutive failures.
+		 */
+		OPEN,
+
+		/**
+		 * The source was skipped long enough and its next load checks if it has
+		 * recovered.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * An immutable snapshot of the status of a source.
+	 */
+	public static final class SourceStatus {
+
+		/**
+		 * The source name.
+		 */
+		private final String name;
+
+		/**
+		 * The source circuit breaker state.
+		 */
+		private final CircuitState circuitState;
+
+		/**
+		 * The source average latency, in nanoseconds.
+		 */
+		private final long averageLatencyNanos;
+
+		/**
+		 * The number of tables loaded by the source.
+		 */
+		private final long successCount;
+
+		/**
+		 * The number of failed loads of the source.
+		 */
+		private final long failureCount;
+
+		/**
+		 * Creates a new {@link SourceStatus} object.
+		 *
+		 * @param name
+		 *            The source name.
+		 * @param circuitState
+		 *            The source circuit breaker state.
+		 * @param averageLatencyNanos
+		 *            The source average latency, in nanoseconds.
+		 * @param successCount
+		 *            The number of tables loaded by the source.
+		 * @param failureCount
+		 *            The number of failed loads of the source.
+		 */
+		private SourceStatus(String name, CircuitState circuitState, long averageLatencyNanos, long successCount,
+				long failureCount) {
+			this.name = name;
+			this.circuitState = circuitState;
+			this.averageLatencyNanos = averageLatencyNanos;
+			this.successCount = successCount;
+			this.failureCount = failureCount;
+		}
+
+		/**
+		 * Returns the source name.
+		 *
+		 * @return The source name.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the source circuit breaker state.
+		 *
+		 * @return The source circuit breaker state.
+		 */
+		public CircuitState getCircuitState() {
+			return circuitState;
+		}
+
+		/**
+		 * Returns the source average latency, weighted towards the latest loads.
+		 *
+		 * @return The source average latency, which is zero until the source
+		 *         answers a load.
+		 */
+		public Duration getAverageLatency() {
+			return Duration.ofNanos(averageLatencyNanos);
+		}
+
+		/**
+		 * Returns the number of tables loaded by the source.
+		 *
+		 * @return The number of tables loaded by the source.
+		 */
+		public long getSuccessCount() {
+			return successCount;
+		}
+
+		/**
+		 * Returns the number of failed loads of the source.
+		 *
+		 * @return The number of failed loads of the source.
+		 */
+		public long getFailureCount() {
+			return failureCount;
+		}
+
+		@Override
+		public String toString() {
+			return name + " (" + circuitState + ", " + averageLatencyNanos / 1_000_000 + " ms, " + successCount
+					+ " successes, " + failureCount + " failures)";
+		}
+	}
+
+	/**
+	 * A source with its circuit breaker and latency statistics.
+	 */
+	private static final class Source {
+
+		/**
+		 * The source name.
+		 */
+		private final String name;
+
+		/**
+		 * The loader of the source tables.
+		 */
+		private final RateTableLoader rateTableLoader;
+
+		/**
+		 * The number of consecutive failures which opens the circuit breaker.
+		 */
+		private final int failureThreshold;
+
+		/**
+		 * The time the source is skipped after its circuit breaker opens, in
+		 * nanoseconds.
+		 */
+		private final long openDurationNanos;
+
+		/**
+		 * The number of consecutive failures.
+		 */
+		private int consecutiveFailures;
+
+		/**
+		 * The moment the circuit breaker opened, in nanoseconds.
+		 */
+		private long openTime;
+
+		/**
+		 * Indicates if the load which checks if the source has recovered is
+		 * running.
+		 */
+		private boolean trialRunning;
+
+		/**
+		 * The average latency, in nanoseconds.
+		 */
+		private volatile long averageLatencyNanos;
+
+		/**
+		 * The number of tables loaded.
+		 */
+		private long successCount;
+
+		/**
+		 * The number of failed loads.
+		 */
+		private long failureCount;
+
+		/**
+		 * Creates a new {@link Source} object.
+		 *
+		 * @param name
+		 *            The source name.
+		 * @param rateTableLoader
+		 *            The loader of the source tables.
+		 * @param failureThreshold
+		 *            The number of consecutive failures which opens the circuit
+		 *            breaker.
+		 * @param openDurationNanos
+		 *            The time the source is skipped after its circuit breaker
+		 *            opens, in nanoseconds.
+		 */
+		private Source(String name, RateTableLoader rateTableLoader, int failureThreshold, long openDurationNanos) {
+			this.name = name;
+			this.rateTableLoader = rateTableLoader;
+			this.failureThreshold = failureThreshold;
+			this.openDurationNanos = openDurationNanos;
+		}
+
+		/**
+		 * Returns the average latency.
+		 *
+		 * @return The average latency, in nanoseconds.
+		 */
+		private long getAverageLatencyNanos() {
+			return averageLatencyNanos;
+		}
+
+		/**
+		 * Checks if the source may be used now, claiming the recovery check if
+		 * the circuit breaker is half open.
+		 *
+		 * @return {@code true} if the source may be used.
+		 */
+		private synchronized boolean tryAcquire() {
+			CircuitState circuitState = getCircuitState();
+			if (circuitState == CircuitState.CLOSED) {
+				return true;
+			}
+			if (circuitState == CircuitState.HALF_OPEN && !trialRunning) {
+				trialRunning = true;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Records a load answered by the source, be it a table or a missing file.
+		 *
+		 * @param latencyNanos
+		 *            The load latency, in nanoseconds.
+		 * @param loaded
+		 *            Indicates if a table was loaded.
+		 */
+		private synchronized void recordAnswer(long latencyNanos, boolean loaded) {
+			consecutiveFailures = 0;
+			trialRunning = false;
+			if (loaded) {
+				successCount++;
+			}
+			long previousLatencyNanos = averageLatencyNanos;
+			averageLatencyNanos = previousLatencyNanos == 0 ? latencyNanos
+					: (long) (previousLatencyNanos + (latencyNanos - previousLatencyNanos) * LATENCY_SMOOTHING);
+		}
+
+		/**
+		 * Records a failed load, opening the circuit breaker if the failure
+		 * threshold is reached or if the recovery check failed.
+		 *
+		 * @param latencyNanos
+		 *            The load latency, in nanoseconds.
+		 */
+		private synchronized void recordFailure(long latencyNanos) {
+			failureCount++;
+			consecutiveFailures++;
+			if (trialRunning || consecutiveFailures == failureThreshold) {
+				openTime = System.nanoTime();
+			}
+			trialRunning = false;
+
+			/* A failing source should not look fast. */
+			averageLatencyNanos = Math.max(averageLatencyNanos, latencyNanos);
+		}
+
+		/**
+		 * Releases the recovery check claimed by a load which was not executed.
+		 */
+		private synchronized void release() {
+			trialRunning = false;
+		}
+
+		/**
+		 * Returns the circuit breaker state.
+		 *
+		 * @return The circuit breaker state.
+		 */
+		private synchronized CircuitState getCircuitState() {
+			if (consecutiveFailures < failureThreshold) {
+				return CircuitState.CLOSED;
+			}
+			return System.nanoTime() - openTime < openDurationNanos ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+		}
+
+		/**
+		 * Returns a snapshot of the source status.
+		 *
+		 * @return The source status.
+		 */
+		private synchronized SourceStatus getStatus() {
+			return new SourceStatus(name, getCircuitState(), averageLatencyNanos, successCount, failureCount);
+		}
+	}
+
+	/**
+	 * The load of a table, which starts the sources one at a time until one of
+	 * them loads it.
+	 */
+	private final class Load {
+
+		/**
+		 * The quotation date of the table.
+		 */
+		private final LocalDate quotationDate;
+
+		/**
+		 * The sources, on the order they are tried.
+		 */
+		private final List<Source> orderedSources;
+
+		/**
+		 * The future of the table.
+		 */
+		private final CompletableFuture<RateTable> result = new CompletableFuture<>();
+
+		/**
+		 * The failures of the sources already tried.
+		 */
+		private final List<Exception> failures = new ArrayList<>();
+
+		/**
+		 * The position of the next source to be tried.
+		 */
+		private int nextSource;
+
+		/**
+		 * The number of sources started and not answered yet.
+		 */
+		private int runningSources;
+
+		/**
+		 * Creates a new {@link Load} object.
+		 *
+		 * @param quotationDate
+		 *            The quotation date of the table.
+		 * @param orderedSources
+		 *            The sources, on the order they are tried.
+		 */
+		private Load(LocalDate quotationDate, List<Source> orderedSources) {
+			this.quotationDate = quotationDate;
+			this.orderedSources = orderedSources;
+		}
+
+		/**
+		 * Starts the next available source.
+		 *
+		 * @return {@code true} if a source was started or {@code false} if no
+		 *         source is left or the table is already loaded.
+		 */
+		private synchronized boolean startNext() {
+			while (!result.isDone() && nextSource < orderedSources.size()) {
+				Source source = orderedSources.get(nextSource++);
+				if (source.tryAcquire()) {
+					runningSources++;
+					executor.execute(() -> run(source));
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Loads the table from a source.
+		 *
+		 * @param source
+		 *            The source.
+		 */
+		private void run(Source source) {
+			if (result.isDone()) {
+				source.release();
+				return;
+			}
+
+			long startTime = System.nanoTime();
+			try {
+				RateTable rateTable = source.rateTableLoader.load(quotationDate);
+				source.recordAnswer(System.nanoTime() - startTime, true);
+				result.complete(rateTable);
+			} catch (FileNotFoundException fileNotFoundException) {
+				source.recordAnswer(System.nanoTime() - startTime, false);
+				fail(fileNotFoundException);
+			} catch (IOException | RuntimeException exception) {
+				source.recordFailure(System.nanoTime() - startTime);
+				fail(exception);
+			}
+		}
+
+		/**
+		 * Records the failure of a source and starts the next one, failing the
+		 * load if no source is left.
+		 *
+		 * @param exception
+		 *            The source failure.
+		 */
+		private synchronized void fail(Exception exception) {
+			failures.add(exception);
+			runningSources--;
+			if (startNext()) {
+				Metrics.get().increment(QuotationMetrics.Counter.SOURCE_FAILOVERS, 1L);
+			} else if (runningSources == 0) {
+				result.completeExceptionally(createFailure());
+			}
+		}
+
+		/**
+		 * Creates the exception thrown when no source could load the table.
+		 *
+		 * @return A {@link FileNotFoundException} if every source answered that
+		 *         it has no file for the date or an {@link IOException} otherwise,
+		 *         with each source failure suppressed.
+		 */
+		private IOException createFailure() {
+			boolean missingEverywhere = true;
+			for (Exception failure : failures) {
+				missingEverywhere &= failure instanceof FileNotFoundException;
+			}
+
+			IOException ioException = missingEverywhere
+					? new FileNotFoundException("No source has the quotation CSV file of " + quotationDate + ".")
+					: new IOException("Could not load the table of " + quotationDate + " from any source.");
+			for (Exception failure : failures) {
+				ioException.addSuppressed(failure);
+			}
+			return ioException;
+		}
+	}
+
+	/**
+	 * Configures and creates {@link RateSourceRouter} objects.
+	 */
+	public static final class Builder {
+
+		/**
+		 * The names of the sources.
+		 */
+		private final List<String> names = new ArrayList<>();
+
+		/**
+		 * The loaders of the sources.
+		 */
+		private final List<RateTableLoader> rateTableLoaders = new ArrayList<>();
+
+		/**
+		 * The time waited for a source before the next one is started.
+		 */
+		private Duration hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+		/**
+		 * The number of consecutive failures which opens the circuit breaker of a
+		 * source.
+		 */
+		private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+		/**
+		 * The time a source is skipped after its circuit breaker opens.
+		 */
+		private Duration openDuration = DEFAULT_OPEN_DURATION;
+
+		/**
+		 * The executor which runs the loads.
+		 */
+		private Executor executor = DEFAULT_EXECUTOR;
+
+		/**
+		 * Adds a source. Sources never used yet are tried first, on the order
+		 * they were added.
+		 *
+		 * @param name
+		 *            The source name.
+		 * @param rateTableLoader
+		 *            The loader of the source tables.
+		 * @return This builder.
+		 */
+		public Builder addSource(String name, RateTableLoader rateTableLoader) {
+			if (null == name || name.isEmpty()) {
+				throw new InvalidParameterException("Source name cannot be null nor empty.");
+			}
+
+			if (null == rateTableLoader) {
+				throw new InvalidParameterException("Rate table loader cannot be null.");
+			}
+
+			names.add(name);
+			rateTableLoaders.add(rateTableLoader);
+			return this;
+		}
+
+		/**
+		 * Defines the time waited for a source before the next one is started.
+		 *
+		 * @param hedgeDelay
+		 *            The hedge delay.
+		 * @return This builder.
+		 */
+		public Builder hedgeDelay(Duration hedgeDelay) {
+			this.hedgeDelay = hedgeDelay;
+			return this;
+		}
+
+		/**
+		 * Defines the number of consecutive failures which opens the circuit
+		 * breaker of a source.
+		 *
+		 * @param failureThreshold
+		 *            The failure threshold.
+		 * @return This builder.
+		 */
+		public Builder failureThreshold(int failureThreshold) {
+			this.failureThreshold = failureThreshold;
+			return this;
+		}
+
+		/**
+		 * Defines the time a source is skipped after its circuit breaker opens.
+		 *
+		 * @param openDuration
+		 *            The open duration.
+		 * @return This builder.
+		 */
+		public Builder openDuration(Duration openDuration) {
+			this.openDuration = openDuration;
+			return this;
+		}
+
+		/**
+		 * Defines the executor which runs the loads. It must run each load on its
+		 * own thread, so a slow source does not hold back the others.
+		 *
+		 * @param executor
+		 *            The executor of the loads.
+		 * @return This builder.
+		 */
+		public Builder executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * Creates a {@link RateSourceRouter} object with the sources added.
+		 *
+		 * @return The router created.
+		 */
+		public RateSourceRouter build() {
+			if (names.isEmpty()) {
+				throw new InvalidParameterException("At least one source must be added.");
+			}
+
+			if (null == hedgeDelay || hedgeDelay.isNegative()) {
+				throw new InvalidParameterException("Hedge delay cannot be null nor negative.");
+			}
+
+			if (failureThreshold <= 0) {
+				throw new InvalidParameterException("Failure threshold must be greater than zero.");
+			}
+
+			if (null == openDuration || openDuration.isNegative()) {
+				throw new InvalidParameterException("Open duration cannot be null nor negative.");
+			}
+
+			if (null == executor) {
+				throw new InvalidParameterException("Executor cannot be null.");
+			}
+
+			return new RateSourceRouter(this);
+		}
+	}
+}
@@ -0,0 +1,1046 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The currencies' exchanging information published by Brazilian central bank
+ * for a specific quotation date.
+ * <p>
+ * Each currency is stored on a slot of parallel primitive arrays and found
+ * through an open addressing index of its {@link CurrencyCodes packed code}, so
+ * lookups and conversions do not create objects and a table takes a few
+ * kilobytes. Rates are kept as {@code long} values scaled by
+ * {@link BcbCsvParser#RATE_SCALE_FACTOR}. {@link CurrencyExchangingInformation}
+ * objects are only created when requested through
+ * {@link #getExchangingInformation(String)}.
+ * <p>
+ * Tables read by {@link BcbCsvParser#parseLazily} keep the CSV file contents
+ * and only know where the line of each currency is: its values are decoded
+ * when one of them is first requested and kept on the arrays afterwards. The
+ * arrays are created when the first currency is decoded, and the contents are
+ * released once all currencies are, either on request or through
+ * {@link #compact()}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class RateTable {
+
+	/**
+	 * The value returned when a currency is not on the table.
+	 */
+	public static final int NOT_FOUND = -1;
+
+	/**
+	 * The quotation date of the exchanging information.
+	 */
+	private final LocalDate quotationDate;
+
+	/**
+	 * The number of currencies on this table.
+	 */
+	private final int size;
+
+	/**
+	 * The index of the slots, where each position holds a slot plus one or zero
+	 * if it is empty.
+	 */
+	private final int[] index;
+
+	/**
+	 * The packed currency abbreviation of each slot.
+	 */
+	private final int[] currencyAbbreviations;
+
+	/*
+	 * The values of each slot. Lazily decoded tables create them on the first
+	 * decoding, and they are published to other threads by the volatile write
+	 * which marks a slot as decoded.
+	 */
+
+	/**
+	 * The currency identification code of each slot.
+	 */
+	private int[] currencyCodes;
+
+	/**
+	 * The currency type of each slot.
+	 */
+	private char[] types;
+
+	/**
+	 * The exchanging date of each slot, as the number of days since 01/01/1970.
+	 */
+	private int[] exchangingEpochDays;
+
+	/**
+	 * The scaled buying rate of each slot.
+	 */
+	private long[] buyingRates;
+
+	/**
+	 * The scaled selling rate of each slot.
+	 */
+	private long[] sellingRates;
+
+	/**
+	 * The scaled buying purchasing power parity of each slot.
+	 */
+	private long[] buyingPpps;
+
+	/**
+	 * The scaled selling purchasing power parity of each slot.
+	 */
+	private long[] sellingPpps;
+
+	/**
+	 * The lines whose values are decoded on the first request, or {@code null}
+	 * if all values are decoded. It is released by the thread which decodes the
+	 * last slot, and the volatile write publishes every value.
+	 */
+	private volatile LazyRows lazyRows;
+
+	/**
+	 * The cross rates among the hot currencies, computed on the first request.
+	 */
+	private volatile CrossRateMatrix crossRateMatrix;
+
+	/**
+	 * Creates a new {@link RateTable} object. The arrays are used as they are,
+	 * so they must not be changed afterwards.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the exchanging information.
+	 * @param size
+	 *            The number of currencies on the table.
+	 * @param currencyAbbreviations
+	 *            The packed currency abbreviation of each slot.
+	 * @param currencyCodes
+	 *            The currency identification code of each slot.
+	 * @param types
+	 *            The currency type of each slot.
+	 * @param exchangingEpochDays
+	 *            The exchanging date of each slot.
+	 * @param buyingRates
+	 *            The scaled buying rate of each slot.
+	 * @param sellingRates
+	 *            The scaled selling rate of each slot.
+	 * @param buyingPpps
+	 *            The scaled buying purchasing power parity of each slot.
+	 * @param sellingPpps
+	 *            The scaled selling purchasing power parity of each slot.
+	 */
+	RateTable(LocalDate quotationDate, int size, int[] currencyAbbreviations, int[] currencyCodes, char[] types,
+			int[] exchangingEpochDays, long[] buyingRates, long[] sellingRates, long[] buyingPpps,
+			long[] sellingPpps) {
+		this(quotationDate, size, currencyAbbreviations, currencyCodes, types, exchangingEpochDays, buyingRates,
+				sellingRates, buyingPpps, sellingPpps, null);
+	}
+
+	/**
+	 * Creates a new {@link RateTable} object whose values are decoded from the
+	 * lines of a CSV file when first requested.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the exchanging information.
+	 * @param size
+	 *            The number of currencies on the table.
+	 * @param currencyAbbreviations
+	 *            The packed currency abbreviation of each slot.
+	 * @param lazyRows
+	 *            The line of each slot.
+	 */
+	private RateTable(LocalDate quotationDate, int size, int[] currencyAbbreviations, LazyRows lazyRows) {
+		this(quotationDate, size, currencyAbbreviations, null, null, null, null, null, null, null,
+				size > 0 ? lazyRows : null);
+	}
+
+	/**
+	 * Creates a new {@link RateTable} object.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the exchanging information.
+	 * @param size
+	 *            The number of currencies on the table.
+	 * @param currencyAbbreviations
+	 *            The packed currency abbreviation of each slot.
+	 * @param currencyCodes
+	 *            The currency identification code of each slot.
+	 * @param types
+	 *            The currency type of each slot.
+	 * @param exchangingEpochDays
+	 *            The exchanging date of each slot.
+	 * @param buyingRates
+	 *            The scaled buying rate of each slot.
+	 * @param sellingRates
+	 *            The scaled selling rate of each slot.
+	 * @param buyingPpps
+	 *            The scaled buying purchasing power parity of each slot.
+	 * @param sellingPpps
+	 *            The scaled selling purchasing power parity of each slot.
+	 * @param lazyRows
+	 *            The line of each slot whose values are decoded on the first
+	 *            request, or {@code null} if the arrays are already filled.
+	 *            The arrays are {@code null} if this parameter is not.
+	 */
+	private RateTable(LocalDate quotationDate, int size, int[] currencyAbbreviations, int[] currencyCodes,
+			char[] types, int[] exchangingEpochDays, long[] buyingRates, long[] sellingRates, long[] buyingPpps,
+			long[] sellingPpps, LazyRows lazyRows) {
+		this.lazyRows = lazyRows;
+		this.quotationDate = quotationDate;
+		this.size = size;
+		this.currencyAbbreviations = currencyAbbreviations;
+		this.currencyCodes = currencyCodes;
+		this.types = types;
+		this.exchangingEpochDays = exchangingEpochDays;
+		this.buyingRates = buyingRates;
+		this.sellingRates = sellingRates;
+		this.buyingPpps = buyingPpps;
+		this.sellingPpps = sellingPpps;
+		this.index = createIndex(currencyAbbreviations, size);
+	}
+
+	/**
+	 * Returns the quotation date of the exchanging information.
+	 *
+	 * @return The quotation date of the exchanging information.
+	 */
+	public LocalDate getQuotationDate() {
+		return quotationDate;
+	}
+
+	/**
+	 * Returns the number of currencies on this table.
+	 *
+	 * @return The number of currencies on this table.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot of a currency.
+	 *
+	 * @param currencyAbbreviation
+	 *            The currency abbreviation.
+	 * @return The slot of the currency or {@link #NOT_FOUND} if the table has no
+	 *         information about it.
+	 */
+	public int slotOf(String currencyAbbreviation) {
+		return slotOf(CurrencyCodes.pack(currencyAbbreviation));
+	}
+
+	/**
+	 * Returns the slot of a currency.
+	 *
+	 * @param currencyAbbreviation
+	 *            The {@link CurrencyCodes packed} currency abbreviation.
+	 * @return The slot of the currency or {@link #NOT_FOUND} if the table has no
+	 *         information about it.
+	 */
+	public int slotOf(int currencyAbbreviation) {
+		if (currencyAbbreviation < 0) {
+			return NOT_FOUND;
+		}
+		return findSlot(index, currencyAbbreviations, currencyAbbreviation);
+	}
+
+	/**
+	 * Returns the packed currency abbreviation of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The {@link CurrencyCodes packed} currency abbreviation.
+	 */
+	public int getCurrencyAbbreviation(int slot) {
+		return currencyAbbreviations[checkSlot(slot)];
+	}
+
+	/**
+	 * Returns the currency identification code of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The currency identification code.
+	 */
+	public int getCurrencyCode(int slot) {
+		decodedSlot(slot);
+		return currencyCodes[slot];
+	}
+
+	/**
+	 * Returns the currency type of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The currency type.
+	 */
+	public char getType(int slot) {
+		decodedSlot(slot);
+		return types[slot];
+	}
+
+	/**
+	 * Returns the exchanging date of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The exchanging date, as the number of days since 01/01/1970.
+	 */
+	public int getExchangingEpochDay(int slot) {
+		decodedSlot(slot);
+		return exchangingEpochDays[slot];
+	}
+
+	/**
+	 * Returns the buying rate of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The buying rate, scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	public long getBuyingRate(int slot) {
+		decodedSlot(slot);
+		return buyingRates[slot];
+	}
+
+	/**
+	 * Returns the selling rate of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The selling rate, scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	public long getSellingRate(int slot) {
+		decodedSlot(slot);
+		return sellingRates[slot];
+	}
+
+	/**
+	 * Returns the buying purchasing power parity of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The buying purchasing power parity, scaled by
+	 *         {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	public long getBuyingPpp(int slot) {
+		decodedSlot(slot);
+		return buyingPpps[slot];
+	}
+
+	/**
+	 * Returns the selling purchasing power parity of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @return The selling purchasing power parity, scaled by
+	 *         {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	public long getSellingPpp(int slot) {
+		decodedSlot(slot);
+		return sellingPpps[slot];
+	}
+
+	/**
+	 * Returns a rate of a slot.
+	 *
+	 * @param slot
+	 *            The slot.
+	 * @param variant
+	 *            The rate returned.
+	 * @return The rate, scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	public long getRate(int slot, CrossRateMatrix.Variant variant) {
+		switch (variant) {
+		case BUYING:
+			return getBuyingRate(slot);
+		case SELLING:
+			return getSellingRate(slot);
+		case BUYING_PPP:
+			return getBuyingPpp(slot);
+		default:
+			return getSellingPpp(slot);
+		}
+	}
+
+	/**
+	 * Returns the conversion factors among the hot currencies of this table. The
+	 * matrix is created on the first call and computes each pair on its first
+	 * conversion.
+	 *
+	 * @return The cross rate matrix.
+	 */
+	public CrossRateMatrix getCrossRateMatrix() {
+
+		/*
+		 * Concurrent calls may create the matrix twice, which is harmless since both
+		 * compute the same factors.
+		 */
+		CrossRateMatrix matrix = crossRateMatrix;
+		if (null == matrix) {
+			matrix = new CrossRateMatrix(this);
+			crossRateMatrix = matrix;
+		}
+		return matrix;
+	}
+
+	/**
+	 * Converts an amount of a currency to another one using the buying rates.
+	 * Pairs of hot currencies are converted through the factors of the
+	 * {@link #getCrossRateMatrix() cross rate matrix}.
+	 *
+	 * @param fromCode
+	 *            The {@link CurrencyCodes packed} abbreviation of the base
+	 *            currency.
+	 * @param toCode
+	 *            The {@link CurrencyCodes packed} abbreviation of the quote
+	 *            currency.
+	 * @param amountMinor
+	 *            The amount of base currency to convert, in hundredths.
+	 * @return The equivalent amount on the quote currency, in hundredths, rounded
+	 *         half to even.
+	 * @see FixedPointConverter#convert(long, long, long)
+	 */
+	public long convert(int fromCode, int toCode, long amountMinor) {
+		CrossRateMatrix matrix = getCrossRateMatrix();
+		int pair = matrix.pairOf(fromCode, toCode);
+		if (pair != CrossRateMatrix.NOT_FOUND) {
+			return matrix.convert(pair, amountMinor);
+		}
+
+		int fromSlot = slotOf(fromCode);
+		if (fromSlot == NOT_FOUND) {
+			throw new RuntimeException("Could not find exchanging rates for \"" + describe(fromCode) + "\" currency.");
+		}
+
+		int toSlot = slotOf(toCode);
+		if (toSlot == NOT_FOUND) {
+			throw new RuntimeException("Could not find exchanging rates for \"" + describe(toCode) + "\" currency.");
+		}
+
+		return FixedPointConverter.convert(amountMinor, getBuyingRate(fromSlot), getBuyingRate(toSlot));
+	}
+
+	/**
+	 * Returns the exchanging information of a currency. A new object is created
+	 * on every call.
+	 *
+	 * @param currencyAbbreviation
+	 *            The currency abbreviation.
+	 * @return The exchanging information of the currency or {@code null} if the
+	 *         table has no information about it.
+	 */
+	public CurrencyExchangingInformation getExchangingInformation(String currencyAbbreviation) {
+		int slot = slotOf(currencyAbbreviation);
+		if (slot == NOT_FOUND) {
+			return null;
+		}
+
+		decodedSlot(slot);
+		Date exchangingDate = Date
+				.from(LocalDate.ofEpochDay(exchangingEpochDays[slot]).atStartOfDay(ZoneId.systemDefault()).toInstant());
+		return new CurrencyExchangingInformation(exchangingDate, String.format("%03d", currencyCodes[slot]),
+				String.valueOf(types[slot]), CurrencyCodes.unpack(currencyAbbreviations[slot]),
+				BcbCsvParser.toDouble(buyingRates[slot]), BcbCsvParser.toDouble(sellingRates[slot]),
+				BcbCsvParser.toDouble(buyingPpps[slot]), BcbCsvParser.toDouble(sellingPpps[slot]));
+	}
+
+	/**
+	 * Decodes the values of every slot which was not requested yet, so the CSV
+	 * file contents of a table read by {@link BcbCsvParser#parseLazily} are
+	 * released and the table takes as much memory as one parsed at once. Slots
+	 * whose lines cannot be parsed are kept for their requests to fail.
+	 */
+	void compact() {
+		LazyRows rows = lazyRows;
+		if (null == rows) {
+			return;
+		}
+
+		for (int slot = 0; slot < size; slot++) {
+			if (rows.decodedRows.get(slot) == 0) {
+				try {
+					decode(rows, slot);
+				} catch (UncheckedIOException uncheckedIOException) {
+
+					/* Decoded again, and failed again, when requested. */
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if the values of every slot are decoded, i. e. if the table keeps
+	 * no CSV file contents.
+	 *
+	 * @return {@code true} if every value is decoded.
+	 */
+	boolean isDecoded() {
+		return null == lazyRows;
+	}
+
+	/**
+	 * Estimates the memory taken by the arrays of this table, without object
+	 * headers nor the {@link #getCrossRateMatrix() cross rate matrix}.
+	 *
+	 * @return The estimated size, in bytes.
+	 */
+	long estimateRetainedSize() {
+		long retainedSize = (long) Integer.BYTES * (index.length + currencyAbbreviations.length);
+		if (null != buyingRates) {
+			retainedSize += (long) size * (Integer.BYTES * 2 + Character.BYTES + Long.BYTES * 4);
+		}
+
+		LazyRows rows = lazyRows;
+		if (null != rows) {
+			retainedSize += rows.contents.length + (long) size * Integer.BYTES * 4;
+		}
+		return retainedSize;
+	}
+
+	@Override
+	public String toString() {
+		return "Rate table of " + quotationDate + " with " + size + " currencies.";
+	}
+
+	/**
+	 * Checks if a slot is on this table.
+	 *
+	 * @param slot
+	 *            The slot to be checked.
+	 * @return The slot.
+	 */
+	private int checkSlot(int slot) {
+		if (slot < 0 || slot >= size) {
+			throw new IndexOutOfBoundsException("Invalid slot " + slot + " on a table of " + size + " currencies.");
+		}
+		return slot;
+	}
+
+	/**
+	 * Checks if a slot is on this table and decodes its values if they were
+	 * not decoded yet.
+	 *
+	 * @param slot
+	 *            The slot to be checked.
+	 * @return The slot.
+	 * @throws UncheckedIOException
+	 *             When the line of the slot could not be parsed.
+	 */
+	private int decodedSlot(int slot) {
+		checkSlot(slot);
+		LazyRows rows = lazyRows;
+		if (null != rows && rows.decodedRows.get(slot) == 0) {
+			decode(rows, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Decodes the values of a slot from its line.
+	 * <p>
+	 * Threads which decode the same slot at once write the same values, so no
+	 * lock is needed. The values are published by the volatile write which
+	 * marks the slot as decoded.
+	 *
+	 * @param rows
+	 *            The lines of the table.
+	 * @param slot
+	 *            The slot to be decoded.
+	 * @throws UncheckedIOException
+	 *             When the line of the slot could not be parsed.
+	 */
+	private void decode(LazyRows rows, int slot) {
+		createColumns();
+		try {
+			BcbCsvParser.parseIndexedLine(rows.contents, rows.lineStarts[slot], rows.lineEnds[slot],
+					rows.lineNumbers[slot], rows.quotation, (exchangingEpochDay, currencyCode, type,
+							currencyAbbreviation, buyingRate, sellingRate, buyingPpp, sellingPpp) -> {
+						currencyCodes[slot] = currencyCode;
+						types[slot] = type;
+						exchangingEpochDays[slot] = exchangingEpochDay;
+						buyingRates[slot] = buyingRate;
+						sellingRates[slot] = sellingRate;
+						buyingPpps[slot] = buyingPpp;
+						sellingPpps[slot] = sellingPpp;
+					});
+		} catch (IOException ioException) {
+			throw new UncheckedIOException(ioException);
+		}
+
+		if (rows.decodedRows.compareAndSet(slot, 0, 1)) {
+			Metrics.get().increment(QuotationMetrics.Counter.PARSED_ROWS, 1L);
+			if (rows.decodedCount.incrementAndGet() == size) {
+				lazyRows = null;
+			}
+		}
+	}
+
+	/**
+	 * Creates the arrays of the values of a lazily decoded table, unless they
+	 * were already created. It is called once per slot, so the lock is rarely
+	 * contended.
+	 */
+	private synchronized void createColumns() {
+		if (null != buyingRates) {
+			return;
+		}
+
+		currencyCodes = new int[size];
+		types = new char[size];
+		exchangingEpochDays = new int[size];
+		buyingRates = new long[size];
+		sellingRates = new long[size];
+		buyingPpps = new long[size];
+		sellingPpps = new long[size];
+	}
+
+	/**
+	 * Describes a packed currency abbreviation on error messages.
+	 *
+	 * @param currencyAbbreviation
+	 *            The packed currency abbreviation.
+	 * @return The currency abbreviation or the code itself if it is invalid.
+	 */
+	private static String describe(int currencyAbbreviation) {
+		if (CurrencyCodes.isValid(currencyAbbreviation)) {
+			return CurrencyCodes.unpack(currencyAbbreviation);
+		}
+		return String.valueOf(currencyAbbreviation);
+	}
+
+	/**
+	 * Creates the index of the slots.
+	 *
+	 * @param currencyAbbreviations
+	 *            The packed currency abbreviation of each slot.
+	 * @param size
+	 *            The number of slots.
+	 * @return The index of the slots.
+	 */
+	private static int[] createIndex(int[] currencyAbbreviations, int size) {
+		int[] index = new int[indexCapacity(size)];
+		for (int slot = 0; slot < size; slot++) {
+			addToIndex(index, currencyAbbreviations[slot], slot);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the index capacity needed for a number of slots, keeping at most
+	 * half of its positions used.
+	 *
+	 * @param size
+	 *            The number of slots.
+	 * @return The index capacity, which is a power of two.
+	 */
+	private static int indexCapacity(int size) {
+		return Math.max(2, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+	}
+
+	/**
+	 * Returns the first index position probed for a currency.
+	 *
+	 * @param currencyAbbreviation
+	 *            The packed currency abbreviation.
+	 * @param mask
+	 *            The index capacity minus one.
+	 * @return The first index position probed.
+	 */
+	private static int hash(int currencyAbbreviation, int mask) {
+		return (currencyAbbreviation * 0x9E3779B1 >>> 16) & mask;
+	}
+
+	/**
+	 * Adds a slot to an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @param currencyAbbreviation
+	 *            The packed currency abbreviation of the slot.
+	 * @param slot
+	 *            The slot.
+	 */
+	private static void addToIndex(int[] index, int currencyAbbreviation, int slot) {
+		int mask = index.length - 1;
+		int position = hash(currencyAbbreviation, mask);
+		while (index[position] != 0) {
+			position = (position + 1) & mask;
+		}
+		index[position] = slot + 1;
+	}
+
+	/**
+	 * Finds the slot of a currency on an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @param currencyAbbreviations
+	 *            The packed currency abbreviation of each slot.
+	 * @param currencyAbbreviation
+	 *            The packed currency abbreviation to be found.
+	 * @return The slot of the currency or {@link #NOT_FOUND}.
+	 */
+	private static int findSlot(int[] index, int[] currencyAbbreviations, int currencyAbbreviation) {
+		int mask = index.length - 1;
+		int position = hash(currencyAbbreviation, mask);
+		int entry;
+		while ((entry = index[position]) != 0) {
+			if (currencyAbbreviations[entry - 1] == currencyAbbreviation) {
+				return entry - 1;
+			}
+			position = (position + 1) & mask;
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Builds a {@link RateTable} from the values of each line of a quotation CSV
+	 * file. If a currency is added more than once, its last values are kept.
+	 */
+	public static class Builder implements BcbCsvParser.RowHandler {
+
+		/**
+		 * The initial number of slots of the builder.
+		 */
+		private static final int INITIAL_CAPACITY = 32;
+
+		/**
+		 * The quotation date of the table being built.
+		 */
+		private final LocalDate quotationDate;
+
+		/**
+		 * The number of currencies added so far.
+		 */
+		private int size;
+
+		/**
+		 * The index of the slots added so far.
+		 */
+		private int[] index = new int[indexCapacity(INITIAL_CAPACITY)];
+
+		/**
+		 * The packed currency abbreviation of each slot.
+		 */
+		private int[] currencyAbbreviations = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The currency identification code of each slot.
+		 */
+		private int[] currencyCodes = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The currency type of each slot.
+		 */
+		private char[] types = new char[INITIAL_CAPACITY];
+
+		/**
+		 * The exchanging date of each slot.
+		 */
+		private int[] exchangingEpochDays = new int[INITIAL_CAPACITY];
+
+		/**
+		 * The scaled buying rate of each slot.
+		 */
+		private long[] buyingRates = new long[INITIAL_CAPACITY];
+
+		/**
+		 * The scaled selling rate of each slot.
+		 */
+		private long[] sellingRates = new long[INITIAL_CAPACITY];
+
+		/**
+		 * The scaled buying purchasing power parity of each slot.
+		 */
+		private long[] buyingPpps = new long[INITIAL_CAPACITY];
+
+		/**
+		 * The scaled selling purchasing power parity of each slot.
+		 */
+		private long[] sellingPpps = new long[INITIAL_CAPACITY];
+
+		/**
+		 * Creates a new {@link Builder} object.
+		 *
+		 * @param quotationDate
+		 *            The quotation date of the table being built.
+		 */
+		public Builder(LocalDate quotationDate) {
+			this.quotationDate = quotationDate;
+		}
+
+		@Override
+		public void handleRow(int exchangingEpochDay, int currencyCode, char type, int currencyAbbreviation,
+				long buyingRate, long sellingRate, long buyingPpp, long sellingPpp) {
+			int slot = findSlot(index, currencyAbbreviations, currencyAbbreviation);
+			if (slot == NOT_FOUND) {
+				if (size == currencyAbbreviations.length) {
+					grow();
+				}
+				slot = size++;
+				currencyAbbreviations[slot] = currencyAbbreviation;
+				addToIndex(index, currencyAbbreviation, slot);
+			}
+
+			currencyCodes[slot] = currencyCode;
+			types[slot] = type;
+			exchangingEpochDays[slot] = exchangingEpochDay;
+			buyingRates[slot] = buyingRate;
+			sellingRates[slot] = sellingRate;
+			buyingPpps[slot] = buyingPpp;
+			sellingPpps[slot] = sellingPpp;
+		}
+
+		/**
+		 * Creates the table with the exchanging information added so far.
+		 *
+		 * @return The table created.
+		 */
+		public RateTable build() {
+			return new RateTable(quotationDate, size, Arrays.copyOf(currencyAbbreviations, size),
+					Arrays.copyOf(currencyCodes, size), Arrays.copyOf(types, size),
+					Arrays.copyOf(exchangingEpochDays, size), Arrays.copyOf(buyingRates, size),
+					Arrays.copyOf(sellingRates, size), Arrays.copyOf(buyingPpps, size),
+					Arrays.copyOf(sellingPpps, size));
+		}
+
+		/**
+		 * Doubles the number of slots of the builder.
+		 */
+		private void grow() {
+			int capacity = currencyAbbreviations.length * 2;
+			currencyAbbreviations = Arrays.copyOf(currencyAbbreviations, capacity);
+			currencyCodes = Arrays.copyOf(currencyCodes, capacity);
+			types = Arrays.copyOf(types, capacity);
+			exchangingEpochDays = Arrays.copyOf(exchangingEpochDays, capacity);
+			buyingRates = Arrays.copyOf(buyingRates, capacity);
+			sellingRates = Arrays.copyOf(sellingRates, capacity);
+			buyingPpps = Arrays.copyOf(buyingPpps, capacity);
+			sellingPpps = Arrays.copyOf(sellingPpps, capacity);
+
+			index = new int[indexCapacity(capacity)];
+			for (int slot = 0; slot < size; slot++) {
+				addToIndex(index, currencyAbbreviations[slot], slot);
+			}
+		}
+	}
+
+	/**
+	 * The CSV file lines of a table whose values are decoded on the first
+	 * request.
+	 */
+	private static final class LazyRows {
+
+		/**
+		 * The CSV file contents.
+		 */
+		private final byte[] contents;
+
+		/**
+		 * The quotation date of the CSV file on "dd/MM/yyyy" format, used to
+		 * describe errors.
+		 */
+		private final String quotation;
+
+		/**
+		 * The position of the first character of each slot line.
+		 */
+		private final int[] lineStarts;
+
+		/**
+		 * The position after the last character of each slot line.
+		 */
+		private final int[] lineEnds;
+
+		/**
+		 * The number of each slot line on the file.
+		 */
+		private final int[] lineNumbers;
+
+		/**
+		 * Whether the values of each slot were decoded (1) or not (0).
+		 */
+		private final AtomicIntegerArray decodedRows;
+
+		/**
+		 * The number of slots decoded.
+		 */
+		private final AtomicInteger decodedCount = new AtomicInteger();
+
+		/**
+		 * Creates a new {@link LazyRows} object.
+		 *
+		 * @param contents
+		 *            The CSV file contents.
+		 * @param quotation
+		 *            The quotation date of the CSV file on "dd/MM/yyyy" format.
+		 * @param lineStarts
+		 *            The position of the first character of each slot line.
+		 * @param lineEnds
+		 *            The position after the last character of each slot line.
+		 * @param lineNumbers
+		 *            The number of each slot line on the file.
+		 */
+		private LazyRows(byte[] contents, String quotation, int[] lineStarts, int[] lineEnds, int[] lineNumbers) {
+			this.contents = contents;
+			this.quotation = quotation;
+			this.lineStarts = lineStarts;
+			this.lineEnds = lineEnds;
+			this.lineNumbers = lineNumbers;
+			this.decodedRows = new AtomicIntegerArray(lineStarts.length);
+		}
+	}
+
+	/**
+	 * Builds a {@link RateTable} which decodes the values of each currency from
+	 * its CSV file line when first requested. When a currency appears on many
+	 * lines, the last one is kept.
+	 */
+	static class LazyBuilder {
+
+		/**
+		 * The minimum initial number of slots.
+		 */
+		private static final int INITIAL_CAPACITY = 32;
+
+		/**
+		 * The usual length of a CSV file line, used to estimate the number of
+		 * slots from the file length.
+		 */
+		private static final int EXPECTED_LINE_LENGTH = 64;
+
+		/**
+		 * The quotation date of the exchanging information.
+		 */
+		private final LocalDate quotationDate;
+
+		/**
+		 * The quotation date of the CSV file on "dd/MM/yyyy" format.
+		 */
+		private final String quotation;
+
+		/**
+		 * The CSV file contents.
+		 */
+		private final byte[] contents;
+
+		/**
+		 * The number of slots filled.
+		 */
+		private int size;
+
+		/**
+		 * The index of the slots filled.
+		 */
+		private int[] index;
+
+		/**
+		 * The packed currency abbreviation of each slot.
+		 */
+		private int[] currencyAbbreviations;
+
+		/**
+		 * The position of the first character of each slot line.
+		 */
+		private int[] lineStarts;
+
+		/**
+		 * The position after the last character of each slot line.
+		 */
+		private int[] lineEnds;
+
+		/**
+		 * The number of each slot line on the file.
+		 */
+		private int[] lineNumbers;
+
+		/**
+		 * Creates a new {@link LazyBuilder} object.
+		 *
+		 * @param quotationDate
+		 *            The quotation date of the exchanging information.
+		 * @param quotation
+		 *            The quotation date of the CSV file on "dd/MM/yyyy" format,
+		 *            used to describe errors.
+		 * @param contents
+		 *            The CSV file contents, which must not be changed afterwards.
+		 */
+		LazyBuilder(LocalDate quotationDate, String quotation, byte[] contents) {
+			this.quotationDate = quotationDate;
+			this.quotation = quotation;
+			this.contents = contents;
+
+			/* Sized from the file length, so a usual file needs no growth. */
+			int capacity = Math.max(INITIAL_CAPACITY, contents.length / EXPECTED_LINE_LENGTH + 1);
+			this.index = new int[indexCapacity(capacity)];
+			this.currencyAbbreviations = new int[capacity];
+			this.lineStarts = new int[capacity];
+			this.lineEnds = new int[capacity];
+			this.lineNumbers = new int[capacity];
+		}
+
+		/**
+		 * Adds the line of a currency.
+		 *
+		 * @param currencyAbbreviation
+		 *            The {@link CurrencyCodes packed} currency abbreviation.
+		 * @param lineStart
+		 *            The position of the first line character.
+		 * @param lineEnd
+		 *            The position after the last line character.
+		 * @param lineNumber
+		 *            The number of the line on the file.
+		 */
+		void addRow(int currencyAbbreviation, int lineStart, int lineEnd, int lineNumber) {
+			int slot = findSlot(index, currencyAbbreviations, currencyAbbreviation);
+			if (slot == NOT_FOUND) {
+				if (size == currencyAbbreviations.length) {
+					grow();
+				}
+				slot = size++;
+				currencyAbbreviations[slot] = currencyAbbreviation;
+				addToIndex(index, currencyAbbreviation, slot);
+			}
+
+			lineStarts[slot] = lineStart;
+			lineEnds[slot] = lineEnd;
+			lineNumbers[slot] = lineNumber;
+		}
+
+		/**
+		 * Creates the table with the lines added.
+		 *
+		 * @return The table created.
+		 */
+		RateTable build() {
+			return new RateTable(quotationDate, size, Arrays.copyOf(currencyAbbreviations, size),
+					new LazyRows(contents, quotation, Arrays.copyOf(lineStarts, size),
+							Arrays.copyOf(lineEnds, size), Arrays.copyOf(lineNumbers, size)));
+		}
+
+		/**
+		 * Doubles the capacity of the arrays and rebuilds the index.
+		 */
+		private void grow() {
+			int capacity = currencyAbbreviations.length * 2;
+			currencyAbbreviations = Arrays.copyOf(currencyAbbreviations, capacity);
+			lineStarts = Arrays.copyOf(lineStarts, capacity);
+			lineEnds = Arrays.copyOf(lineEnds, capacity);
+			lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+
+			index = new int[indexCapacity(capacity)];
+			for (int slot = 0; slot < size; slot++) {
+				addToIndex(index, currencyAbbreviations[slot], slot);
+			}
+		}
+	}
+}
@@ -0,0 +1,502 @@
+package org.marceloleite.cwitest;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.security.InvalidParameterException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the tables of every business day of a period and hands them to a
+ * {@link RateTableSink}, usually to warm up a {@link RateTableStore}.
+ * <p>
+ * The dates are loaded by a bounded number of threads at once. Each thread
+ * parses its CSV file while it is downloaded, so downloads and parsing overlap
+ * without an intermediate queue. Failed loads are retried with an exponential
+ * backoff, except when the file does not exist, and a date which still fails
+ * does not abort the others: it is reported on the {@link Report}.
+ * <p>
+ * As on {@link PersistentRateTableLoader}, the table of the current date (and
+ * of any future date) is never loaded, since Brazilian central bank may not
+ * have published its final version yet and a store never replaces a date it
+ * has.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableBackfill {
+
+	/**
+	 * The default number of dates loaded at once.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * The default maximum number of attempts to load a date.
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/**
+	 * The default time waited before the first retry of a date.
+	 */
+	public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(500);
+
+	/**
+	 * The maximum number of times the initial backoff is doubled.
+	 */
+	private static final int MAX_BACKOFF_DOUBLINGS = 6;
+
+	/**
+	 * The formatter of the dates informed to and printed by the command.
+	 */
+	private static final DateTimeFormatter QUOTATION_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	/**
+	 * The loader used to retrieve the tables.
+	 */
+	private final RateTableLoader rateTableLoader;
+
+	/**
+	 * The resolver which lists the business days of the period.
+	 */
+	private final BusinessDayResolver businessDayResolver;
+
+	/**
+	 * The number of dates loaded at once.
+	 */
+	private final int parallelism;
+
+	/**
+	 * The maximum number of attempts to load a date.
+	 */
+	private final int maxAttempts;
+
+	/**
+	 * The time waited before the first retry of a date, in milliseconds.
+	 */
+	private final long initialBackoffMillis;
+
+	/**
+	 * The clock used to identify the current date.
+	 */
+	private final Clock clock;
+
+	/**
+	 * Creates a new {@link RateTableBackfill} object with the default
+	 * parallelism and retry policy.
+	 *
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables.
+	 */
+	public RateTableBackfill(RateTableLoader rateTableLoader) {
+		this(rateTableLoader, BusinessDayResolver.getDefault(), DEFAULT_PARALLELISM, DEFAULT_MAX_ATTEMPTS,
+				DEFAULT_INITIAL_BACKOFF);
+	}
+
+	/**
+	 * Creates a new {@link RateTableBackfill} object.
+	 *
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables.
+	 * @param businessDayResolver
+	 *            The resolver which lists the business days of the period.
+	 * @param parallelism
+	 *            The number of dates loaded at once.
+	 * @param maxAttempts
+	 *            The maximum number of attempts to load a date.
+	 * @param initialBackoff
+	 *            The time waited before the first retry of a date. It doubles on
+	 *            each following retry.
+	 */
+	public RateTableBackfill(RateTableLoader rateTableLoader, BusinessDayResolver businessDayResolver,
+			int parallelism, int maxAttempts, Duration initialBackoff) {
+		this(rateTableLoader, businessDayResolver, parallelism, maxAttempts, initialBackoff,
+				Clock.system(CWITest.BCB_TIME_ZONE));
+	}
+
+	/**
+	 * Creates a new {@link RateTableBackfill} object.
+	 *
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables.
+	 * @param businessDayResolver
+	 *            The resolver which lists the business days of the period.
+	 * @param parallelism
+	 *            The number of dates loaded at once.
+	 * @param maxAttempts
+	 *            The maximum number of attempts to load a date.
+	 * @param initialBackoff
+	 *            The time waited before the first retry of a date. It doubles on
+	 *            each following retry.
+	 * @param clock
+	 *            The clock used to identify the current date.
+	 */
+	public RateTableBackfill(RateTableLoader rateTableLoader, BusinessDayResolver businessDayResolver,
+			int parallelism, int maxAttempts, Duration initialBackoff, Clock clock) {
+		if (null == rateTableLoader) {
+			throw new InvalidParameterException("Rate table loader cannot be null.");
+		}
+
+		if (null == businessDayResolver) {
+			throw new InvalidParameterException("Business day resolver cannot be null.");
+		}
+
+		if (parallelism <= 0) {
+			throw new InvalidParameterException("Parallelism must be greater than zero.");
+		}
+
+		if (maxAttempts <= 0) {
+			throw new InvalidParameterException("Maximum number of attempts must be greater than zero.");
+		}
+
+		if (null == initialBackoff || initialBackoff.isNegative()) {
+			throw new InvalidParameterException("Initial backoff cannot be null nor negative.");
+		}
+
+		if (null == clock) {
+			throw new InvalidParameterException("Clock cannot be null.");
+		}
+
+		this.rateTableLoader = rateTableLoader;
+		this.businessDayResolver = businessDayResolver;
+		this.parallelism = parallelism;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffMillis = initialBackoff.toMillis();
+		this.clock = clock;
+	}
+
+	/**
+	 * The backfill command entry method.
+	 *
+	 * @param args
+	 *            The first and the last dates of the period on "dd/MM/yyyy"
+	 *            format, the directory of the {@link RateTableStore} which
+	 *            receives the tables and, optionally, the number of dates loaded
+	 *            at once and the base URL of the quotation CSV files.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3 || args.length > 5) {
+			System.err.println("Usage: backfill <first date dd/MM/yyyy> <last date dd/MM/yyyy> <store directory>"
+					+ " [parallelism] [base URL]");
+			System.exit(2);
+			return;
+		}
+
+		LocalDate firstDate;
+		LocalDate lastDate;
+		int parallelism;
+		try {
+			firstDate = LocalDate.parse(args[0], QUOTATION_DATE_FORMATTER);
+			lastDate = LocalDate.parse(args[1], QUOTATION_DATE_FORMATTER);
+			parallelism = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_PARALLELISM;
+		} catch (DateTimeParseException | NumberFormatException exception) {
+			System.err.println("Invalid argument: " + exception.getMessage());
+			System.exit(2);
+			return;
+		}
+		BcbRateTableLoader bcbRateTableLoader = args.length > 4 ? new BcbRateTableLoader(args[4])
+				: new BcbRateTableLoader();
+
+		RateTableBackfill rateTableBackfill = new RateTableBackfill(bcbRateTableLoader,
+				BusinessDayResolver.getDefault(), parallelism, DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF);
+		Report report;
+		try (RateTableStore rateTableStore = RateTableStore.open(Paths.get(args[2]))) {
+			report = rateTableBackfill.run(firstDate, lastDate, rateTableStore,
+					(completed, total, elapsed) -> System.out.print(String.format(Locale.ROOT,
+							"\rBackfilled %d of %d dates (%.1f dates/s).", completed, total,
+							completed * 1000.0 / Math.max(1, elapsed.toMillis()))));
+			rateTableStore.flush();
+		} catch (IOException | InterruptedException exception) {
+			System.err.println();
+			System.err.println("Could not backfill the rate table store: " + exception.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		System.out.println();
+		System.out.println(report);
+		for (Map.Entry<LocalDate, Exception> failure : report.getFailures().entrySet()) {
+			System.out.println("  " + QUOTATION_DATE_FORMATTER.format(failure.getKey()) + ": "
+					+ failure.getValue().getMessage());
+		}
+	}
+
+	/**
+	 * Loads the tables of every business day of a period.
+	 *
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive. Dates from the current
+	 *            one onwards are not loaded.
+	 * @param rateTableSink
+	 *            The sink which receives the tables. Dates it already contains
+	 *            are skipped.
+	 * @return The report of the backfill.
+	 * @throws InterruptedException
+	 *             When the current thread is interrupted while waiting for the
+	 *             loads.
+	 */
+	public Report run(LocalDate firstDate, LocalDate lastDate, RateTableSink rateTableSink)
+			throws InterruptedException {
+		return run(firstDate, lastDate, rateTableSink, (completed, total, elapsed) -> {
+		});
+	}
+
+	/**
+	 * Loads the tables of every business day of a period.
+	 *
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period, inclusive. Dates from the current
+	 *            one onwards are not loaded.
+	 * @param rateTableSink
+	 *            The sink which receives the tables. Dates it already contains
+	 *            are skipped.
+	 * @param progressListener
+	 *            The listener notified whenever a date is completed.
+	 * @return The report of the backfill.
+	 * @throws InterruptedException
+	 *             When the current thread is interrupted while waiting for the
+	 *             loads.
+	 */
+	public Report run(LocalDate firstDate, LocalDate lastDate, RateTableSink rateTableSink,
+			ProgressListener progressListener) throws InterruptedException {
+		if (null == rateTableSink) {
+			throw new InvalidParameterException("Rate table sink cannot be null.");
+		}
+
+		if (null == progressListener) {
+			throw new InvalidParameterException("Progress listener cannot be null.");
+		}
+
+		List<LocalDate> businessDays = new ArrayList<>(businessDayResolver.getBusinessDays(firstDate, lastDate));
+		LocalDate lastPastDate = LocalDate.now(clock).minusDays(1);
+		businessDays.removeIf(businessDay -> businessDay.isAfter(lastPastDate));
+		int total = businessDays.size();
+		AtomicInteger completed = new AtomicInteger();
+		AtomicInteger loaded = new AtomicInteger();
+		AtomicInteger skipped = new AtomicInteger();
+		Map<LocalDate, Exception> failures = new ConcurrentHashMap<>();
+		long start = System.nanoTime();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, total)),
+				runnable -> {
+					Thread thread = new Thread(runnable, "rate-table-backfill");
+					thread.setDaemon(true);
+					return thread;
+				});
+		try {
+			for (LocalDate businessDay : businessDays) {
+				executorService.execute(() -> {
+					try {
+						if (rateTableSink.contains(businessDay)) {
+							skipped.incrementAndGet();
+						} else {
+							rateTableSink.accept(loadWithRetries(businessDay));
+							loaded.incrementAndGet();
+						}
+					} catch (IOException | RuntimeException exception) {
+						failures.put(businessDay, exception);
+					}
+					synchronized (progressListener) {
+						progressListener.onProgress(completed.incrementAndGet(), total,
+								Duration.ofNanos(System.nanoTime() - start));
+					}
+				});
+			}
+			executorService.shutdown();
+			executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		return new Report(total, loaded.get(), skipped.get(), new TreeMap<>(failures),
+				Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/**
+	 * Loads the table of a date, retrying when the load fails.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The table of the date.
+	 * @throws IOException
+	 *             When the last attempt fails or there is no file for the date.
+	 */
+	private RateTable loadWithRetries(LocalDate quotationDate) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				return rateTableLoader.load(quotationDate);
+			} catch (FileNotFoundException fileNotFoundException) {
+				throw fileNotFoundException;
+			} catch (IOException ioException) {
+				if (attempt >= maxAttempts) {
+					throw ioException;
+				}
+			}
+
+			/* Waits between half and all of the backoff, so retries do not align. */
+			long backoffMillis = initialBackoffMillis << Math.min(attempt - 1, MAX_BACKOFF_DOUBLINGS);
+			try {
+				Thread.sleep(backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1));
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting to load " + quotationDate + " again.");
+			}
+		}
+	}
+
+	/**
+	 * Receives the progress of a backfill. It is called by the loading threads,
+	 * but by one thread at a time, on the order the dates are completed.
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+
+		/**
+		 * Informs that a date was completed, either loaded, skipped or failed.
+		 *
+		 * @param completed
+		 *            The number of dates completed so far.
+		 * @param total
+		 *            The number of dates of the backfill.
+		 * @param elapsed
+		 *            The time elapsed since the backfill started.
+		 */
+		void onProgress(int completed, int total, Duration elapsed);
+	}
+
+	/**
+	 * The result of a backfill.
+	 */
+	public static final class Report {
+
+		/**
+		 * The number of business days of the period.
+		 */
+		private final int total;
+
+		/**
+		 * The number of tables loaded and handed to the sink.
+		 */
+		private final int loaded;
+
+		/**
+		 * The number of dates skipped because the sink already had them.
+		 */
+		private final int skipped;
+
+		/**
+		 * The exceptions of the dates which failed, in chronological order.
+		 */
+		private final Map<LocalDate, Exception> failures;
+
+		/**
+		 * The time spent on the backfill.
+		 */
+		private final Duration elapsed;
+
+		/**
+		 * Creates a new {@link Report} object.
+		 *
+		 * @param total
+		 *            The number of business days of the period.
+		 * @param loaded
+		 *            The number of tables loaded and handed to the sink.
+		 * @param skipped
+		 *            The number of dates skipped because the sink already had
+		 *            them.
+		 * @param failures
+		 *            The exceptions of the dates which failed.
+		 * @param elapsed
+		 *            The time spent on the backfill.
+		 */
+		private Report(int total, int loaded, int skipped, Map<LocalDate, Exception> failures, Duration elapsed) {
+			this.total = total;
+			this.loaded = loaded;
+			this.skipped = skipped;
+			this.failures = Collections.unmodifiableMap(failures);
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Returns the number of business days of the period.
+		 *
+		 * @return The number of business days of the period.
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * Returns the number of tables loaded and handed to the sink.
+		 *
+		 * @return The number of tables loaded.
+		 */
+		public int getLoaded() {
+			return loaded;
+		}
+
+		/**
+		 * Returns the number of dates skipped because the sink already had them.
+		 *
+		 * @return The number of dates skipped.
+		 */
+		public int getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * Returns the exceptions of the dates which failed.
+		 *
+		 * @return The exceptions indexed by date, in chronological order.
+		 */
+		public Map<LocalDate, Exception> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Returns the time spent on the backfill.
+		 *
+		 * @return The time spent on the backfill.
+		 */
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Returns the number of tables loaded per second.
+		 *
+		 * @return The number of tables loaded per second.
+		 */
+		public double getThroughput() {
+			return loaded * 1_000_000_000.0 / Math.max(1, elapsed.toNanos());
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%d dates: %d loaded, %d skipped and %d failed in %.1f s (%.1f tables/s).", total, loaded, skipped,
+					failures.size(), elapsed.toMillis() / 1000.0, getThroughput());
+		}
+	}
+}
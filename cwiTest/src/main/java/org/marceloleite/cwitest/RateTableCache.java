@@ -0,0 +1,469 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe and size-bounded cache of {@link RateTable} objects indexed by
+ * their quotation dates.
+ * <p>
+ * When the cache is full, the least recently used table is evicted. Tables of
+ * past dates never change once published, so they stay on cache until evicted.
+ * The table of the current date, however, expires after a configurable time to
+ * live, since Brazilian central bank may not have published its final version
+ * yet.
+ * <p>
+ * Concurrent requests for the same missing table are coalesced, so the table
+ * is loaded only once and shared by all of them. Requests for tables on cache
+ * take no lock, and their counters are striped so they do not contend across
+ * cores.
+ * <p>
+ * Tables read by {@link BcbCsvParser#parseLazily} are compacted by another
+ * thread once on cache, so a table kept for a long time takes no more memory
+ * than one parsed at once while its first conversion only decodes the
+ * currencies requested.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableCache {
+
+	/**
+	 * The default maximum number of tables kept on cache.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * The default time to live of the current date's table.
+	 */
+	public static final Duration DEFAULT_TODAY_TIME_TO_LIVE = Duration.ofMinutes(15);
+
+	/**
+	 * The maximum number of tables waiting to be compacted by the default
+	 * executor. When it is reached, the thread which puts a table compacts it.
+	 */
+	private static final int COMPACTION_QUEUE_CAPACITY = 256;
+
+	/**
+	 * The executor which compacts the tables by default.
+	 */
+	private static final Executor DEFAULT_COMPACTION_EXECUTOR = new ThreadPoolExecutor(1, 1, 0L,
+			TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(COMPACTION_QUEUE_CAPACITY), runnable -> {
+				Thread thread = new Thread(runnable, "cwitest-table-compaction");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+	/**
+	 * The maximum number of tables kept on cache.
+	 */
+	private final int capacity;
+
+	/**
+	 * The time to live of the current date's table, in milliseconds.
+	 */
+	private final long todayTimeToLiveMillis;
+
+	/**
+	 * The clock used to identify the current date and the tables' ages.
+	 */
+	private final Clock clock;
+
+	/**
+	 * The executor which compacts the tables put on cache.
+	 */
+	private final Executor compactionExecutor;
+
+	/**
+	 * The cache entries indexed by quotation date.
+	 */
+	private final Map<LocalDate, Entry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * The table loads being executed.
+	 */
+	private final SingleFlight<LocalDate, RateTable> loads = new SingleFlight<>();
+
+	/**
+	 * The number of requests which found a valid table on cache.
+	 */
+	private final LongAdder hitCount = new LongAdder();
+
+	/**
+	 * The number of requests which did not find a valid table on cache.
+	 */
+	private final LongAdder missCount = new LongAdder();
+
+	/**
+	 * The number of tables removed from cache to respect its capacity.
+	 */
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * Creates a new {@link RateTableCache} object with the default capacity and
+	 * time to live.
+	 */
+	public RateTableCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_TODAY_TIME_TO_LIVE);
+	}
+
+	/**
+	 * Creates a new {@link RateTableCache} object.
+	 *
+	 * @param capacity
+	 *            The maximum number of tables kept on cache.
+	 * @param todayTimeToLive
+	 *            The time to live of the current date's table.
+	 */
+	public RateTableCache(int capacity, Duration todayTimeToLive) {
+		this(capacity, todayTimeToLive, Clock.system(CWITest.BCB_TIME_ZONE));
+	}
+
+	/**
+	 * Creates a new {@link RateTableCache} object.
+	 *
+	 * @param capacity
+	 *            The maximum number of tables kept on cache.
+	 * @param todayTimeToLive
+	 *            The time to live of the current date's table.
+	 * @param clock
+	 *            The clock used to identify the current date and the tables' ages.
+	 */
+	public RateTableCache(int capacity, Duration todayTimeToLive, Clock clock) {
+		this(capacity, todayTimeToLive, clock, DEFAULT_COMPACTION_EXECUTOR);
+	}
+
+	/**
+	 * Creates a new {@link RateTableCache} object.
+	 *
+	 * @param capacity
+	 *            The maximum number of tables kept on cache.
+	 * @param todayTimeToLive
+	 *            The time to live of the current date's table.
+	 * @param clock
+	 *            The clock used to identify the current date and the tables' ages.
+	 * @param compactionExecutor
+	 *            The executor which compacts the tables put on cache.
+	 */
+	public RateTableCache(int capacity, Duration todayTimeToLive, Clock clock, Executor compactionExecutor) {
+		if (capacity <= 0) {
+			throw new InvalidParameterException("Cache capacity must be greater than zero.");
+		}
+
+		if (null == todayTimeToLive || todayTimeToLive.isNegative()) {
+			throw new InvalidParameterException("Time to live cannot be null nor negative.");
+		}
+
+		if (null == clock) {
+			throw new InvalidParameterException("Clock cannot be null.");
+		}
+
+		if (null == compactionExecutor) {
+			throw new InvalidParameterException("Compaction executor cannot be null.");
+		}
+
+		this.capacity = capacity;
+		this.todayTimeToLiveMillis = todayTimeToLive.toMillis();
+		this.clock = clock;
+		this.compactionExecutor = compactionExecutor;
+	}
+
+	/**
+	 * Returns the table of a quotation date if it is on cache.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @return The table of the quotation date or {@code null} if it is not on
+	 *         cache or has expired.
+	 */
+	public RateTable get(LocalDate quotationDate) {
+		Entry entry = entries.get(quotationDate);
+		if (null == entry || isExpired(entry)) {
+			missCount.increment();
+			Metrics.get().increment(QuotationMetrics.Counter.CACHE_MISSES, 1L);
+			return null;
+		}
+
+		entry.lastAccessTime = System.nanoTime();
+		hitCount.increment();
+		Metrics.get().increment(QuotationMetrics.Counter.CACHE_HITS, 1L);
+		return entry.rateTable;
+	}
+
+	/**
+	 * Returns the table of a quotation date, loading and putting it on cache if
+	 * it is not there yet.
+	 * <p>
+	 * If other threads are already loading the same table, this method waits for
+	 * their load instead of starting a new one.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @param rateTableLoader
+	 *            The loader used if the table is not on cache.
+	 * @return The table of the quotation date.
+	 * @throws IOException
+	 *             When the table could not be loaded.
+	 */
+	public RateTable get(LocalDate quotationDate, RateTableLoader rateTableLoader) throws IOException {
+		RateTable rateTable = get(quotationDate);
+		if (null != rateTable) {
+			return rateTable;
+		}
+
+		return loads.execute(quotationDate, () -> load(quotationDate, rateTableLoader));
+	}
+
+	/**
+	 * Returns a future of the table of a quotation date, loading and putting it
+	 * on cache through an executor if it is not there yet.
+	 * <p>
+	 * The future of a table on cache is already completed, so no thread is
+	 * involved. If the table is already being loaded, the future waits for that
+	 * load instead of starting a new one.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @param rateTableLoader
+	 *            The loader used if the table is not on cache.
+	 * @param executor
+	 *            The executor which loads the table.
+	 * @return A future of the table of the quotation date.
+	 */
+	public CompletableFuture<RateTable> getAsync(LocalDate quotationDate, RateTableLoader rateTableLoader,
+			Executor executor) {
+		RateTable rateTable = get(quotationDate);
+		if (null != rateTable) {
+			return CompletableFuture.completedFuture(rateTable);
+		}
+
+		return loads.executeAsync(quotationDate, () -> load(quotationDate, rateTableLoader), executor);
+	}
+
+	/**
+	 * Puts a table on cache, replacing any previous table of the same date and
+	 * evicting the least recently used tables if the capacity is exceeded.
+	 *
+	 * @param rateTable
+	 *            The table to be put on cache.
+	 */
+	public void put(RateTable rateTable) {
+		synchronized (this) {
+			entries.put(rateTable.getQuotationDate(), new Entry(rateTable, clock.millis(), System.nanoTime()));
+
+			while (entries.size() > capacity) {
+				evictLeastRecentlyUsed();
+			}
+		}
+
+		if (!rateTable.isDecoded()) {
+			try {
+				compactionExecutor.execute(rateTable::compact);
+			} catch (RejectedExecutionException rejectedExecutionException) {
+
+				/* The table keeps its contents until all its currencies are requested. */
+			}
+		}
+	}
+
+	/**
+	 * Removes the table of a quotation date from cache.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table to be removed.
+	 */
+	public void invalidate(LocalDate quotationDate) {
+		entries.remove(quotationDate);
+	}
+
+	/**
+	 * Removes all tables from cache.
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of tables on cache, including the expired ones not
+	 * removed yet.
+	 *
+	 * @return The number of tables on cache.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the tables on cache which have not expired, such as to be written
+	 * on a {@link RateTableSnapshot}.
+	 *
+	 * @return The tables on cache, in chronological order.
+	 */
+	public List<RateTable> getRateTables() {
+		List<RateTable> rateTables = new ArrayList<>(entries.size());
+		for (Entry entry : entries.values()) {
+			if (!isExpired(entry)) {
+				rateTables.add(entry.rateTable);
+			}
+		}
+		rateTables.sort(Comparator.comparing(RateTable::getQuotationDate));
+		return rateTables;
+	}
+
+	/**
+	 * Returns the maximum number of tables kept on cache.
+	 *
+	 * @return The maximum number of tables kept on cache.
+	 */
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of requests which found a valid table on cache.
+	 *
+	 * @return The number of requests which found a valid table on cache.
+	 */
+	public final long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Returns the number of requests which did not find a valid table on cache.
+	 *
+	 * @return The number of requests which did not find a valid table on cache.
+	 */
+	public final long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * Returns the number of tables removed from cache to respect its capacity.
+	 *
+	 * @return The number of tables removed from cache to respect its capacity.
+	 */
+	public final long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Loads a table and puts it on cache, unless another load has put it there
+	 * since the cache was checked.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @param rateTableLoader
+	 *            The loader of the table.
+	 * @return The table of the quotation date.
+	 * @throws IOException
+	 *             When the table could not be loaded.
+	 */
+	private RateTable load(LocalDate quotationDate, RateTableLoader rateTableLoader) throws IOException {
+		Entry entry = entries.get(quotationDate);
+		if (null != entry && !isExpired(entry)) {
+			return entry.rateTable;
+		}
+
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		RateTable loadedRateTable;
+		try {
+			loadedRateTable = rateTableLoader.load(quotationDate);
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.LOAD, exception);
+			throw exception;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.LOAD, startTime);
+		}
+
+		put(loadedRateTable);
+		return loadedRateTable;
+	}
+
+	/**
+	 * Checks if a cache entry has expired.
+	 *
+	 * @param entry
+	 *            The entry to be checked.
+	 * @return {@code true} if the entry holds the current date's table and it is
+	 *         older than the time to live.
+	 */
+	private boolean isExpired(Entry entry) {
+		if (!entry.rateTable.getQuotationDate().equals(LocalDate.now(clock))) {
+			return false;
+		}
+		return clock.millis() - entry.creationTime >= todayTimeToLiveMillis;
+	}
+
+	/**
+	 * Removes the least recently used table from cache.
+	 */
+	private void evictLeastRecentlyUsed() {
+		LocalDate eldestQuotationDate = null;
+		long eldestAccessTime = Long.MAX_VALUE;
+		for (Map.Entry<LocalDate, Entry> mapEntry : entries.entrySet()) {
+			long lastAccessTime = mapEntry.getValue().lastAccessTime;
+			if (null == eldestQuotationDate || lastAccessTime - eldestAccessTime < 0) {
+				eldestQuotationDate = mapEntry.getKey();
+				eldestAccessTime = lastAccessTime;
+			}
+		}
+
+		if (null != eldestQuotationDate && null != entries.remove(eldestQuotationDate)) {
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A table kept on cache and its access information.
+	 */
+	private static final class Entry {
+
+		/**
+		 * The table kept on cache.
+		 */
+		private final RateTable rateTable;
+
+		/**
+		 * The moment the table was put on cache, in milliseconds.
+		 */
+		private final long creationTime;
+
+		/**
+		 * The moment the table was last accessed, in nanoseconds.
+		 */
+		private volatile long lastAccessTime;
+
+		/**
+		 * Creates a new {@link Entry} object.
+		 *
+		 * @param rateTable
+		 *            The table kept on cache.
+		 * @param creationTime
+		 *            The moment the table was put on cache, in milliseconds.
+		 * @param lastAccessTime
+		 *            The moment the table was last accessed, in nanoseconds.
+		 */
+		private Entry(RateTable rateTable, long creationTime, long lastAccessTime) {
+			this.rateTable = rateTable;
+			this.creationTime = creationTime;
+			this.lastAccessTime = lastAccessTime;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Loads the {@link RateTable} of a quotation date.
+ *
+ * @author Marcelo Leite
+ *
+ */
+@FunctionalInterface
+public interface RateTableLoader {
+
+	/**
+	 * Loads the table of a quotation date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @return The table of the quotation date.
+	 * @throws IOException
+	 *             When the table could not be loaded.
+	 */
+	RateTable load(LocalDate quotationDate) throws IOException;
+}
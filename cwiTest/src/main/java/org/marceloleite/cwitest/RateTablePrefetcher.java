@@ -0,0 +1,445 @@
+package org.marceloleite.cwitest;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the current date's {@link RateTable} ahead of demand and keeps it warm
+ * on a {@link RateTableCache}, so no conversion pays for its download.
+ * <p>
+ * On each business day, the prefetcher starts trying to load the day's
+ * quotation CSV file at the time Brazilian central bank usually publishes it,
+ * retrying until the file appears. Once loaded, the table replaces the
+ * previous one on cache at once and is reloaded periodically until the day
+ * ends, so the final version of the file is picked up and the cached table
+ * never reaches its time to live. The refresh interval must therefore be
+ * shorter than the time to live of the cache.
+ * <p>
+ * The delay between the publication time and the first load of each day, as
+ * well as the failures, are reported by this object and by the
+ * {@link QuotationMetrics.Stage#PREFETCH} stage of the installed metrics.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTablePrefetcher implements AutoCloseable {
+
+	/**
+	 * The default time on which the prefetcher starts trying to load the
+	 * current date's table, on Brazilian central bank time zone.
+	 */
+	public static final LocalTime DEFAULT_PUBLICATION_TIME = LocalTime.of(13, 10);
+
+	/**
+	 * The default interval between the attempts to load a table not published
+	 * yet.
+	 */
+	public static final Duration DEFAULT_RETRY_INTERVAL = Duration.ofMinutes(1);
+
+	/**
+	 * The default interval between the reloads of a table already published.
+	 */
+	public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(10);
+
+	/**
+	 * The cache on which the tables are put.
+	 */
+	private final RateTableCache rateTableCache;
+
+	/**
+	 * The loader of the tables.
+	 */
+	private final RateTableLoader rateTableLoader;
+
+	/**
+	 * The resolver which identifies the days on which quotations are published.
+	 */
+	private final BusinessDayResolver businessDayResolver;
+
+	/**
+	 * The executor which runs the loads.
+	 */
+	private final ScheduledExecutorService scheduledExecutorService;
+
+	/**
+	 * Indicates if the executor was created by this object and must be shut
+	 * down when it is closed.
+	 */
+	private final boolean ownsScheduledExecutorService;
+
+	/**
+	 * The clock used to identify the current date and time.
+	 */
+	private final Clock clock;
+
+	/**
+	 * The time on which the prefetcher starts trying to load the current date's
+	 * table.
+	 */
+	private final LocalTime publicationTime;
+
+	/**
+	 * The interval between the attempts to load a table not published yet.
+	 */
+	private final Duration retryInterval;
+
+	/**
+	 * The interval between the reloads of a table already published.
+	 */
+	private final Duration refreshInterval;
+
+	/**
+	 * The number of tables put on cache.
+	 */
+	private final AtomicLong refreshCount = new AtomicLong();
+
+	/**
+	 * The number of attempts which failed for any reason other than the file
+	 * not being published yet.
+	 */
+	private final AtomicLong failureCount = new AtomicLong();
+
+	/**
+	 * The quotation date of the last table put on cache.
+	 */
+	private volatile LocalDate lastRefreshDate;
+
+	/**
+	 * The moment the last table was put on cache.
+	 */
+	private volatile Instant lastRefreshTime;
+
+	/**
+	 * The delay between the publication time and the first load of the last
+	 * quotation date loaded.
+	 */
+	private volatile Duration lastRefreshLag;
+
+	/**
+	 * The last failure of an attempt.
+	 */
+	private volatile Throwable lastFailure;
+
+	/**
+	 * The next scheduled attempt or {@code null} if the prefetcher is not
+	 * started.
+	 */
+	private ScheduledFuture<?> scheduledFuture;
+
+	/**
+	 * Indicates if the prefetcher was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Creates a new {@link RateTablePrefetcher} object with the default
+	 * publication time and intervals, which runs on its own thread.
+	 *
+	 * @param rateTableCache
+	 *            The cache on which the tables are put.
+	 * @param rateTableLoader
+	 *            The loader of the tables.
+	 * @param businessDayResolver
+	 *            The resolver which identifies the days on which quotations are
+	 *            published.
+	 */
+	public RateTablePrefetcher(RateTableCache rateTableCache, RateTableLoader rateTableLoader,
+			BusinessDayResolver businessDayResolver) {
+		this(rateTableCache, rateTableLoader, businessDayResolver, createScheduledExecutorService(), true,
+				Clock.system(CWITest.BCB_TIME_ZONE), DEFAULT_PUBLICATION_TIME, DEFAULT_RETRY_INTERVAL,
+				DEFAULT_REFRESH_INTERVAL);
+	}
+
+	/**
+	 * Creates a new {@link RateTablePrefetcher} object.
+	 *
+	 * @param rateTableCache
+	 *            The cache on which the tables are put.
+	 * @param rateTableLoader
+	 *            The loader of the tables.
+	 * @param businessDayResolver
+	 *            The resolver which identifies the days on which quotations are
+	 *            published.
+	 * @param scheduledExecutorService
+	 *            The executor which runs the loads. It is not shut down when the
+	 *            prefetcher is closed.
+	 * @param clock
+	 *            The clock used to identify the current date and time.
+	 * @param publicationTime
+	 *            The time on which the prefetcher starts trying to load the
+	 *            current date's table, on the clock time zone.
+	 * @param retryInterval
+	 *            The interval between the attempts to load a table not published
+	 *            yet.
+	 * @param refreshInterval
+	 *            The interval between the reloads of a table already published.
+	 */
+	public RateTablePrefetcher(RateTableCache rateTableCache, RateTableLoader rateTableLoader,
+			BusinessDayResolver businessDayResolver, ScheduledExecutorService scheduledExecutorService, Clock clock,
+			LocalTime publicationTime, Duration retryInterval, Duration refreshInterval) {
+		this(rateTableCache, rateTableLoader, businessDayResolver, scheduledExecutorService, false, clock,
+				publicationTime, retryInterval, refreshInterval);
+	}
+
+	/**
+	 * Creates a new {@link RateTablePrefetcher} object.
+	 *
+	 * @param rateTableCache
+	 *            The cache on which the tables are put.
+	 * @param rateTableLoader
+	 *            The loader of the tables.
+	 * @param businessDayResolver
+	 *            The resolver which identifies the days on which quotations are
+	 *            published.
+	 * @param scheduledExecutorService
+	 *            The executor which runs the loads.
+	 * @param ownsScheduledExecutorService
+	 *            Indicates if the executor must be shut down when the prefetcher
+	 *            is closed.
+	 * @param clock
+	 *            The clock used to identify the current date and time.
+	 * @param publicationTime
+	 *            The time on which the prefetcher starts trying to load the
+	 *            current date's table.
+	 * @param retryInterval
+	 *            The interval between the attempts to load a table not published
+	 *            yet.
+	 * @param refreshInterval
+	 *            The interval between the reloads of a table already published.
+	 */
+	private RateTablePrefetcher(RateTableCache rateTableCache, RateTableLoader rateTableLoader,
+			BusinessDayResolver businessDayResolver, ScheduledExecutorService scheduledExecutorService,
+			boolean ownsScheduledExecutorService, Clock clock, LocalTime publicationTime, Duration retryInterval,
+			Duration refreshInterval) {
+		if (null == rateTableCache) {
+			throw new InvalidParameterException("Rate table cache cannot be null.");
+		}
+
+		if (null == rateTableLoader) {
+			throw new InvalidParameterException("Rate table loader cannot be null.");
+		}
+
+		if (null == businessDayResolver) {
+			throw new InvalidParameterException("Business day resolver cannot be null.");
+		}
+
+		if (null == scheduledExecutorService) {
+			throw new InvalidParameterException("Scheduled executor service cannot be null.");
+		}
+
+		if (null == clock) {
+			throw new InvalidParameterException("Clock cannot be null.");
+		}
+
+		if (null == publicationTime) {
+			throw new InvalidParameterException("Publication time cannot be null.");
+		}
+
+		if (null == retryInterval || retryInterval.isNegative() || retryInterval.isZero()) {
+			throw new InvalidParameterException("Retry interval must be greater than zero.");
+		}
+
+		if (null == refreshInterval || refreshInterval.isNegative() || refreshInterval.isZero()) {
+			throw new InvalidParameterException("Refresh interval must be greater than zero.");
+		}
+
+		this.rateTableCache = rateTableCache;
+		this.rateTableLoader = rateTableLoader;
+		this.businessDayResolver = businessDayResolver;
+		this.scheduledExecutorService = scheduledExecutorService;
+		this.ownsScheduledExecutorService = ownsScheduledExecutorService;
+		this.clock = clock;
+		this.publicationTime = publicationTime;
+		this.retryInterval = retryInterval;
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * Creates the executor of a prefetcher which runs on its own thread.
+	 *
+	 * @return The executor created.
+	 */
+	private static ScheduledExecutorService createScheduledExecutorService() {
+		return Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cwitest-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts the prefetcher, which tries to load the current date's table at
+	 * once if it is already past the publication time. Does nothing if it is
+	 * already started.
+	 */
+	public synchronized void start() {
+		if (closed) {
+			throw new IllegalStateException("Prefetcher is closed.");
+		}
+
+		if (null == scheduledFuture) {
+			scheduledFuture = scheduledExecutorService.schedule(this::run, 0L, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the prefetcher. The tables already on cache are kept there.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (null != scheduledFuture) {
+			scheduledFuture.cancel(false);
+			scheduledFuture = null;
+		}
+
+		if (ownsScheduledExecutorService) {
+			scheduledExecutorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the number of tables put on cache.
+	 *
+	 * @return The number of tables put on cache.
+	 */
+	public final long getRefreshCount() {
+		return refreshCount.get();
+	}
+
+	/**
+	 * Returns the number of attempts which failed for any reason other than the
+	 * file not being published yet.
+	 *
+	 * @return The number of failed attempts.
+	 */
+	public final long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * Returns the quotation date of the last table put on cache.
+	 *
+	 * @return The quotation date or {@code null} if no table was loaded yet.
+	 */
+	public final LocalDate getLastRefreshDate() {
+		return lastRefreshDate;
+	}
+
+	/**
+	 * Returns the moment the last table was put on cache.
+	 *
+	 * @return The moment or {@code null} if no table was loaded yet.
+	 */
+	public final Instant getLastRefreshTime() {
+		return lastRefreshTime;
+	}
+
+	/**
+	 * Returns the delay between the publication time and the first load of the
+	 * last quotation date loaded.
+	 *
+	 * @return The delay or {@code null} if no table was loaded yet.
+	 */
+	public final Duration getLastRefreshLag() {
+		return lastRefreshLag;
+	}
+
+	/**
+	 * Returns the last failure of an attempt.
+	 *
+	 * @return The last failure or {@code null} if no attempt has failed.
+	 */
+	public final Throwable getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Makes an attempt and schedules the next one.
+	 */
+	private void run() {
+		Duration delay;
+		try {
+			delay = refresh();
+		} catch (RuntimeException runtimeException) {
+			delay = retryInterval;
+		}
+
+		synchronized (this) {
+			if (!closed) {
+				scheduledFuture = scheduledExecutorService.schedule(this::run, delay.toMillis(),
+						TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Loads the current date's table and puts it on cache, if it is a business
+	 * day already past the publication time.
+	 *
+	 * @return The delay until the next attempt.
+	 */
+	Duration refresh() {
+		LocalDateTime now = LocalDateTime.now(clock);
+		LocalDate today = now.toLocalDate();
+		if (!businessDayResolver.isBusinessDay(today) || now.toLocalTime().isBefore(publicationTime)) {
+			return Duration.between(now, getNextPublication(today));
+		}
+
+		QuotationMetrics metrics = Metrics.get();
+		long startTime = metrics.startTimer();
+		RateTable rateTable;
+		try {
+			rateTable = rateTableLoader.load(today);
+		} catch (FileNotFoundException fileNotFoundException) {
+			metrics.increment(QuotationMetrics.Counter.PREFETCH_RETRIES, 1L);
+			return retryInterval;
+		} catch (IOException | RuntimeException exception) {
+			metrics.recordFailure(QuotationMetrics.Stage.PREFETCH, exception);
+			failureCount.incrementAndGet();
+			lastFailure = exception;
+			return retryInterval;
+		} finally {
+			metrics.stopTimer(QuotationMetrics.Stage.PREFETCH, startTime);
+		}
+
+		/* Replaces the previous table at once, so callers never wait for a load. */
+		rateTableCache.put(rateTable);
+		metrics.increment(QuotationMetrics.Counter.PREFETCHES, 1L);
+		refreshCount.incrementAndGet();
+		if (!today.equals(lastRefreshDate)) {
+			lastRefreshLag = Duration.between(today.atTime(publicationTime), LocalDateTime.now(clock));
+			lastRefreshDate = today;
+		}
+		lastRefreshTime = clock.instant();
+		return refreshInterval;
+	}
+
+	/**
+	 * Returns the next publication time from a date on.
+	 *
+	 * @param date
+	 *            The date from which the publication is searched.
+	 * @return The publication time of the date if it is a business day or of its
+	 *         immediately following business day otherwise.
+	 */
+	private LocalDateTime getNextPublication(LocalDate date) {
+		LocalDate businessDay = date;
+		while (!businessDayResolver.isBusinessDay(businessDay)) {
+			businessDay = businessDay.plusDays(1);
+		}
+		return businessDay.atTime(publicationTime);
+	}
+}
@@ -0,0 +1,39 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Receives the {@link RateTable} objects produced by a bulk operation, such as
+ * a {@link RateTableBackfill}. Sinks may be called by several threads at once,
+ * so they must be thread-safe.
+ *
+ * @author Marcelo Leite
+ *
+ */
+@FunctionalInterface
+public interface RateTableSink {
+
+	/**
+	 * Receives a table.
+	 *
+	 * @param rateTable
+	 *            The table received.
+	 * @throws IOException
+	 *             When the table could not be kept.
+	 */
+	void accept(RateTable rateTable) throws IOException;
+
+	/**
+	 * Checks if the sink already has the table of a quotation date, so it does
+	 * not need to be produced again.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return {@code true} if the sink already has the table. This
+	 *         implementation always returns {@code false}.
+	 */
+	default boolean contains(LocalDate quotationDate) {
+		return false;
+	}
+}
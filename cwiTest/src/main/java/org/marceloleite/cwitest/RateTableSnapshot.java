@@ -0,0 +1,724 @@
+package org.marceloleite.cwitest;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A compact binary snapshot of many {@link RateTable} objects, written and read
+ * as a stream so a node can bootstrap its history from a single file.
+ * <p>
+ * After {@link #MAGIC_NUMBER} and {@link #VERSION}, each table is written as a
+ * block of columns, and the whole stream is deflated:
+ * <ul>
+ * <li>the quotation date, as the difference between its epoch day and the one
+ * of the previous table;</li>
+ * <li>the number of currencies;</li>
+ * <li>the currency of each slot, as a position on a dictionary of currency
+ * abbreviations, codes and types which grows as new currencies appear, each
+ * new entry written right after its first position;</li>
+ * <li>the exchanging date of each slot, as the difference to the quotation
+ * date;</li>
+ * <li>the four scaled rates of each slot, as the difference to the same rate of
+ * the same dictionary entry on the previous table.</li>
+ * </ul>
+ * Every number is written as a variable length integer, and differences are
+ * zigzag encoded, so rates which barely move from one day to the next take one
+ * or two bytes. A zero byte ends the stream.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class RateTableSnapshot {
+
+	/**
+	 * The number which identifies a snapshot stream.
+	 */
+	static final int MAGIC_NUMBER = 0x43574953;
+
+	/**
+	 * The version of the snapshot format.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The byte which precedes each table.
+	 */
+	private static final int TABLE_MARKER = 1;
+
+	/**
+	 * The byte which ends the stream.
+	 */
+	private static final int END_MARKER = 0;
+
+	/**
+	 * The number of rate columns of a table.
+	 */
+	private static final int RATE_COLUMNS = 4;
+
+	/**
+	 * The size of the buffers between the encoding and the compression.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private RateTableSnapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of tables.
+	 *
+	 * @param rateTables
+	 *            The tables to be written.
+	 * @param outputStream
+	 *            The stream on which the snapshot is written. It is not closed.
+	 * @return The number of tables written.
+	 * @throws IOException
+	 *             When the snapshot could not be written.
+	 */
+	public static int write(Iterable<RateTable> rateTables, OutputStream outputStream) throws IOException {
+		if (null == rateTables) {
+			throw new InvalidParameterException("Rate tables cannot be null.");
+		}
+
+		Writer writer = new Writer(outputStream);
+		int count = 0;
+		try {
+			for (RateTable rateTable : rateTables) {
+				writer.accept(rateTable);
+				count++;
+			}
+			writer.finish();
+		} finally {
+			writer.deflater.end();
+		}
+		return count;
+	}
+
+	/**
+	 * Writes a snapshot of all tables of a store, reading one table at a time.
+	 *
+	 * @param rateTableStore
+	 *            The store whose tables are written.
+	 * @param outputStream
+	 *            The stream on which the snapshot is written. It is not closed.
+	 * @return The number of tables written.
+	 * @throws IOException
+	 *             When a table could not be read or the snapshot could not be
+	 *             written.
+	 */
+	public static int write(RateTableStore rateTableStore, OutputStream outputStream) throws IOException {
+		if (null == rateTableStore) {
+			throw new InvalidParameterException("Rate table store cannot be null.");
+		}
+
+		Writer writer = new Writer(outputStream);
+		int count = 0;
+		try {
+			for (LocalDate quotationDate : rateTableStore.getQuotationDates()) {
+				writer.accept(rateTableStore.get(quotationDate));
+				count++;
+			}
+			writer.finish();
+		} finally {
+			writer.deflater.end();
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a snapshot, handing each table to a sink as soon as it is decoded.
+	 *
+	 * @param inputStream
+	 *            The stream from which the snapshot is read. It is not closed.
+	 * @param rateTableSink
+	 *            The sink which receives the tables, such as a
+	 *            {@link RateTableStore} or the {@link RateTableCache#put} method of
+	 *            a cache.
+	 * @return The number of tables read.
+	 * @throws IOException
+	 *             When the snapshot could not be read or is invalid.
+	 */
+	public static int read(InputStream inputStream, RateTableSink rateTableSink) throws IOException {
+		if (null == rateTableSink) {
+			throw new InvalidParameterException("Rate table sink cannot be null.");
+		}
+
+		Reader reader = new Reader(inputStream);
+		int count = 0;
+		try {
+			RateTable rateTable;
+			while (null != (rateTable = reader.read())) {
+				rateTableSink.accept(rateTable);
+				count++;
+			}
+		} finally {
+			reader.inflater.end();
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes a number as a zigzag integer, so small negative numbers are small
+	 * as well.
+	 *
+	 * @param value
+	 *            The number.
+	 * @return The zigzag encoded number.
+	 */
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Decodes a zigzag integer.
+	 *
+	 * @param value
+	 *            The zigzag encoded number.
+	 * @return The number.
+	 */
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * A dictionary entry: a currency abbreviation with its code and type.
+	 */
+	private static final class Currency {
+
+		/**
+		 * The packed currency abbreviation.
+		 */
+		private final int abbreviation;
+
+		/**
+		 * The currency identification code.
+		 */
+		private final int code;
+
+		/**
+		 * The currency type.
+		 */
+		private final char type;
+
+		/**
+		 * Creates a new {@link Currency} object.
+		 *
+		 * @param abbreviation
+		 *            The packed currency abbreviation.
+		 * @param code
+		 *            The currency identification code.
+		 * @param type
+		 *            The currency type.
+		 */
+		private Currency(int abbreviation, int code, char type) {
+			this.abbreviation = abbreviation;
+			this.code = code;
+			this.type = type;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Currency)) {
+				return false;
+			}
+			Currency currency = (Currency) object;
+			return abbreviation == currency.abbreviation && code == currency.code && type == currency.type;
+		}
+
+		@Override
+		public int hashCode() {
+			return (abbreviation * 31 + code) * 31 + type;
+		}
+	}
+
+	/**
+	 * Writes a snapshot one table at a time. The tables may be written in any
+	 * order, although chronological order compresses best. Objects of this class
+	 * are thread-safe, so they may be the sink of a {@link RateTableBackfill}.
+	 */
+	public static final class Writer implements RateTableSink, Closeable {
+
+		/**
+		 * The compressor of the snapshot, released when the snapshot is finished.
+		 */
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		/**
+		 * The stream which compresses the snapshot.
+		 */
+		private final DeflaterOutputStream deflaterOutputStream;
+
+		/**
+		 * The positions of the dictionary entries.
+		 */
+		private final Map<Currency, Integer> dictionary = new HashMap<>();
+
+		/**
+		 * The last value of each rate column of each dictionary entry, indexed by
+		 * entry position times {@link #RATE_COLUMNS} plus column.
+		 */
+		private long[] lastRates = new long[RATE_COLUMNS * 256];
+
+		/**
+		 * The encoded bytes not compressed yet.
+		 */
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		/**
+		 * The number of encoded bytes on {@link #buffer}.
+		 */
+		private int bufferSize;
+
+		/**
+		 * The epoch day of the last table written.
+		 */
+		private long lastEpochDay;
+
+		/**
+		 * Indicates if the end of the stream was written.
+		 */
+		private boolean finished;
+
+		/**
+		 * Creates a new {@link Writer} object and writes the snapshot header.
+		 *
+		 * @param outputStream
+		 *            The stream on which the snapshot is written.
+		 * @throws IOException
+		 *             When the header could not be written.
+		 */
+		public Writer(OutputStream outputStream) throws IOException {
+			if (null == outputStream) {
+				throw new InvalidParameterException("Output stream cannot be null.");
+			}
+
+			this.deflaterOutputStream = new DeflaterOutputStream(outputStream, deflater, BUFFER_SIZE);
+			writeVarLong(MAGIC_NUMBER);
+			writeVarLong(VERSION);
+		}
+
+		/**
+		 * Writes a table.
+		 *
+		 * @param rateTable
+		 *            The table to be written.
+		 * @throws IOException
+		 *             When the table could not be written.
+		 */
+		@Override
+		public synchronized void accept(RateTable rateTable) throws IOException {
+			if (null == rateTable) {
+				throw new InvalidParameterException("Rate table cannot be null.");
+			}
+
+			if (finished) {
+				throw new IllegalStateException("Snapshot is already finished.");
+			}
+
+			int size = rateTable.size();
+			long epochDay = rateTable.getQuotationDate().toEpochDay();
+			writeByte(TABLE_MARKER);
+			writeVarLong(zigzag(epochDay - lastEpochDay));
+			writeVarLong(size);
+			lastEpochDay = epochDay;
+
+			int[] entries = new int[size];
+			for (int slot = 0; slot < size; slot++) {
+				Currency currency = new Currency(rateTable.getCurrencyAbbreviation(slot),
+						rateTable.getCurrencyCode(slot), rateTable.getType(slot));
+				Integer entry = dictionary.get(currency);
+				if (null == entry) {
+					entry = dictionary.size();
+					dictionary.put(currency, entry);
+					if (lastRates.length < (entry + 1) * RATE_COLUMNS) {
+						lastRates = Arrays.copyOf(lastRates, lastRates.length * 2);
+					}
+					writeVarLong(entry);
+					writeVarLong(currency.abbreviation);
+					writeVarLong(currency.code);
+					writeVarLong(currency.type);
+				} else {
+					writeVarLong(entry);
+				}
+				entries[slot] = entry;
+			}
+
+			for (int slot = 0; slot < size; slot++) {
+				writeVarLong(zigzag(rateTable.getExchangingEpochDay(slot) - epochDay));
+			}
+
+			for (int slot = 0; slot < size; slot++) {
+				writeRate(entries[slot], 0, rateTable.getBuyingRate(slot));
+			}
+			for (int slot = 0; slot < size; slot++) {
+				writeRate(entries[slot], 1, rateTable.getSellingRate(slot));
+			}
+			for (int slot = 0; slot < size; slot++) {
+				writeRate(entries[slot], 2, rateTable.getBuyingPpp(slot));
+			}
+			for (int slot = 0; slot < size; slot++) {
+				writeRate(entries[slot], 3, rateTable.getSellingPpp(slot));
+			}
+		}
+
+		/**
+		 * Writes the end of the stream and flushes the compressed bytes, without
+		 * closing the underlying stream.
+		 *
+		 * @throws IOException
+		 *             When the end of the stream could not be written.
+		 */
+		public synchronized void finish() throws IOException {
+			if (finished) {
+				return;
+			}
+
+			writeByte(END_MARKER);
+			flushBuffer();
+			deflaterOutputStream.finish();
+			deflaterOutputStream.flush();
+			deflater.end();
+			finished = true;
+		}
+
+		/**
+		 * Finishes the snapshot and closes the underlying stream.
+		 *
+		 * @throws IOException
+		 *             When the snapshot could not be finished.
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				finish();
+			} finally {
+				deflaterOutputStream.close();
+			}
+		}
+
+		/**
+		 * Writes a rate as the difference to the previous rate of the same entry
+		 * and column.
+		 *
+		 * @param entry
+		 *            The dictionary entry position.
+		 * @param column
+		 *            The rate column.
+		 * @param rate
+		 *            The scaled rate.
+		 * @throws IOException
+		 *             When the rate could not be written.
+		 */
+		private void writeRate(int entry, int column, long rate) throws IOException {
+			int position = entry * RATE_COLUMNS + column;
+			writeVarLong(zigzag(rate - lastRates[position]));
+			lastRates[position] = rate;
+		}
+
+		/**
+		 * Writes a non negative number as a variable length integer, seven bits
+		 * per byte starting from the least significant ones.
+		 *
+		 * @param value
+		 *            The number, treated as unsigned.
+		 * @throws IOException
+		 *             When the number could not be written.
+		 */
+		private void writeVarLong(long value) throws IOException {
+			if (bufferSize > BUFFER_SIZE - 10) {
+				flushBuffer();
+			}
+
+			long remaining = value;
+			while ((remaining & ~0x7FL) != 0) {
+				buffer[bufferSize++] = (byte) ((remaining & 0x7F) | 0x80);
+				remaining >>>= 7;
+			}
+			buffer[bufferSize++] = (byte) remaining;
+		}
+
+		/**
+		 * Writes a single byte.
+		 *
+		 * @param value
+		 *            The byte.
+		 * @throws IOException
+		 *             When the byte could not be written.
+		 */
+		private void writeByte(int value) throws IOException {
+			if (bufferSize == BUFFER_SIZE) {
+				flushBuffer();
+			}
+			buffer[bufferSize++] = (byte) value;
+		}
+
+		/**
+		 * Compresses the encoded bytes.
+		 *
+		 * @throws IOException
+		 *             When the bytes could not be written.
+		 */
+		private void flushBuffer() throws IOException {
+			deflaterOutputStream.write(buffer, 0, bufferSize);
+			bufferSize = 0;
+		}
+	}
+
+	/**
+	 * Reads a snapshot one table at a time. Objects of this class are not
+	 * thread-safe.
+	 */
+	public static final class Reader implements Closeable {
+
+		/**
+		 * The decompressor of the snapshot, released when the snapshot ends.
+		 */
+		private final Inflater inflater = new Inflater();
+
+		/**
+		 * The stream which decompresses the snapshot.
+		 */
+		private final InflaterInputStream inflaterInputStream;
+
+		/**
+		 * The dictionary entries, by position.
+		 */
+		private Currency[] dictionary = new Currency[256];
+
+		/**
+		 * The number of dictionary entries.
+		 */
+		private int dictionarySize;
+
+		/**
+		 * The last value of each rate column of each dictionary entry, indexed by
+		 * entry position times {@link #RATE_COLUMNS} plus column.
+		 */
+		private long[] lastRates = new long[RATE_COLUMNS * 256];
+
+		/**
+		 * The decompressed bytes.
+		 */
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+
+		/**
+		 * The position of the next byte to be decoded on {@link #buffer}.
+		 */
+		private int bufferPosition;
+
+		/**
+		 * The number of decompressed bytes on {@link #buffer}.
+		 */
+		private int bufferSize;
+
+		/**
+		 * The epoch day of the last table read.
+		 */
+		private long lastEpochDay;
+
+		/**
+		 * Indicates if the end of the stream was read.
+		 */
+		private boolean finished;
+
+		/**
+		 * Creates a new {@link Reader} object and reads the snapshot header.
+		 *
+		 * @param inputStream
+		 *            The stream from which the snapshot is read.
+		 * @throws IOException
+		 *             When the header could not be read or is invalid.
+		 */
+		public Reader(InputStream inputStream) throws IOException {
+			if (null == inputStream) {
+				throw new InvalidParameterException("Input stream cannot be null.");
+			}
+
+			this.inflaterInputStream = new InflaterInputStream(inputStream, inflater, BUFFER_SIZE);
+			try {
+				if (readVarLong() != MAGIC_NUMBER) {
+					throw new IOException("The stream is not a rate table snapshot.");
+				}
+				long version = readVarLong();
+				if (version != VERSION) {
+					throw new IOException("Unsupported rate table snapshot version " + version + ".");
+				}
+			} catch (IOException | RuntimeException exception) {
+				inflater.end();
+				throw exception;
+			}
+		}
+
+		/**
+		 * Reads the next table.
+		 *
+		 * @return The next table or {@code null} if the snapshot has no more
+		 *         tables.
+		 * @throws IOException
+		 *             When the table could not be read or is invalid.
+		 */
+		public RateTable read() throws IOException {
+			if (finished) {
+				return null;
+			}
+
+			int marker = readByte();
+			if (marker == END_MARKER) {
+				inflater.end();
+				finished = true;
+				return null;
+			}
+			if (marker != TABLE_MARKER) {
+				throw new IOException("Invalid table marker " + marker + " on rate table snapshot.");
+			}
+
+			long epochDay = lastEpochDay + unzigzag(readVarLong());
+			long size = readVarLong();
+			if (size > Integer.MAX_VALUE / RATE_COLUMNS) {
+				throw new IOException("Invalid table size " + size + " on rate table snapshot.");
+			}
+			lastEpochDay = epochDay;
+
+			int tableSize = (int) size;
+			int[] entries = new int[tableSize];
+			int[] currencyAbbreviations = new int[tableSize];
+			int[] currencyCodes = new int[tableSize];
+			char[] types = new char[tableSize];
+			for (int slot = 0; slot < tableSize; slot++) {
+				int entry = readEntry();
+				Currency currency = dictionary[entry];
+				entries[slot] = entry;
+				currencyAbbreviations[slot] = currency.abbreviation;
+				currencyCodes[slot] = currency.code;
+				types[slot] = currency.type;
+			}
+
+			int[] exchangingEpochDays = new int[tableSize];
+			for (int slot = 0; slot < tableSize; slot++) {
+				exchangingEpochDays[slot] = (int) (epochDay + unzigzag(readVarLong()));
+			}
+
+			long[] buyingRates = readRates(entries, 0);
+			long[] sellingRates = readRates(entries, 1);
+			long[] buyingPpps = readRates(entries, 2);
+			long[] sellingPpps = readRates(entries, 3);
+
+			return new RateTable(LocalDate.ofEpochDay(epochDay), tableSize, currencyAbbreviations, currencyCodes,
+					types, exchangingEpochDays, buyingRates, sellingRates, buyingPpps, sellingPpps);
+		}
+
+		/**
+		 * Closes the underlying stream.
+		 *
+		 * @throws IOException
+		 *             When the stream could not be closed.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				inflaterInputStream.close();
+			} finally {
+				inflater.end();
+			}
+		}
+
+		/**
+		 * Reads the dictionary entry position of a slot, adding the entry to the
+		 * dictionary if it is new.
+		 *
+		 * @return The dictionary entry position.
+		 * @throws IOException
+		 *             When the entry could not be read or is invalid.
+		 */
+		private int readEntry() throws IOException {
+			long entry = readVarLong();
+			if (entry < dictionarySize) {
+				return (int) entry;
+			}
+			if (entry != dictionarySize) {
+				throw new IOException("Invalid currency entry " + entry + " on rate table snapshot.");
+			}
+
+			Currency currency = new Currency((int) readVarLong(), (int) readVarLong(), (char) readVarLong());
+			if (dictionarySize == dictionary.length) {
+				dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+				lastRates = Arrays.copyOf(lastRates, lastRates.length * 2);
+			}
+			dictionary[dictionarySize] = currency;
+			return dictionarySize++;
+		}
+
+		/**
+		 * Reads a rate column.
+		 *
+		 * @param entries
+		 *            The dictionary entry position of each slot.
+		 * @param column
+		 *            The rate column.
+		 * @return The scaled rates of the column.
+		 * @throws IOException
+		 *             When the column could not be read.
+		 */
+		private long[] readRates(int[] entries, int column) throws IOException {
+			long[] rates = new long[entries.length];
+			for (int slot = 0; slot < entries.length; slot++) {
+				int position = entries[slot] * RATE_COLUMNS + column;
+				rates[slot] = lastRates[position] + unzigzag(readVarLong());
+				lastRates[position] = rates[slot];
+			}
+			return rates;
+		}
+
+		/**
+		 * Reads a variable length integer.
+		 *
+		 * @return The number read.
+		 * @throws IOException
+		 *             When the number could not be read or is too long.
+		 */
+		private long readVarLong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < Long.SIZE; shift += 7) {
+				int currentByte = readByte();
+				value |= (long) (currentByte & 0x7F) << shift;
+				if ((currentByte & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Invalid variable length integer on rate table snapshot.");
+		}
+
+		/**
+		 * Reads a single byte.
+		 *
+		 * @return The byte read.
+		 * @throws IOException
+		 *             When the stream ends before the snapshot does.
+		 */
+		private int readByte() throws IOException {
+			if (bufferPosition == bufferSize) {
+				bufferSize = inflaterInputStream.read(buffer, 0, BUFFER_SIZE);
+				bufferPosition = 0;
+				if (bufferSize <= 0) {
+					bufferSize = 0;
+					throw new EOFException("Rate table snapshot ended unexpectedly.");
+				}
+			}
+			return buffer[bufferPosition++] & 0xFF;
+		}
+	}
+}
@@ -0,0 +1,588 @@
+package org.marceloleite.cwitest;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A persistent store of {@link RateTable} objects on a local directory.
+ * <p>
+ * The tables are appended to a data file, one binary record per quotation
+ * date, and the position of each record is appended to an index file. The
+ * index is read into memory when the store is opened and the data file is
+ * memory-mapped, so reading a table copies its arrays straight from the page
+ * cache without parsing any text.
+ * <p>
+ * A record holds the quotation date as an epoch day, the number of currencies
+ * and then each column of the table: the packed currency abbreviations, the
+ * currency codes, the types, the exchanging epoch days and the four scaled
+ * rates. Both files start with {@link #MAGIC_NUMBER} and {@link #VERSION}.
+ * <p>
+ * Records are written before their index entries, so an interrupted write
+ * leaves at most an unreferenced record or an incomplete index entry, which is
+ * ignored when the store is opened again. The data file is limited to
+ * {@link #MAX_DATA_SIZE} bytes, the size of a single mapping. Objects of this
+ * class are thread-safe and reads take no lock.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableStore implements RateTableSink, RateTableLoader, Closeable {
+
+	/**
+	 * The name of the file which holds the table records.
+	 */
+	public static final String DATA_FILE_NAME = "rate-tables.dat";
+
+	/**
+	 * The name of the file which holds the record positions.
+	 */
+	public static final String INDEX_FILE_NAME = "rate-tables.idx";
+
+	/**
+	 * The number which identifies the store files.
+	 */
+	static final int MAGIC_NUMBER = 0x43574954;
+
+	/**
+	 * The version of the store files format.
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * The greatest size of the data file, in bytes, so it can be mapped at once
+	 * and every position fits on an {@code int}.
+	 */
+	static final long MAX_DATA_SIZE = Integer.MAX_VALUE;
+
+	/**
+	 * The size of the files header, in bytes.
+	 */
+	private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+	/**
+	 * The size of an index entry, in bytes.
+	 */
+	private static final int INDEX_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+	/**
+	 * The size of a record header, in bytes.
+	 */
+	private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+	/**
+	 * The size of each currency on a record, in bytes.
+	 */
+	private static final int RECORD_SLOT_SIZE = 3 * Integer.BYTES + Character.BYTES + 4 * Long.BYTES;
+
+	/**
+	 * The directory of the store files.
+	 */
+	private final Path directory;
+
+	/**
+	 * The channel of the data file.
+	 */
+	private final FileChannel dataChannel;
+
+	/**
+	 * The channel of the index file.
+	 */
+	private final FileChannel indexChannel;
+
+	/**
+	 * The record positions indexed by quotation epoch day.
+	 */
+	private final Map<Integer, Long> recordPositions = new ConcurrentHashMap<>();
+
+	/**
+	 * The size of the data file, including only complete records. It is only
+	 * written while holding the lock of this object and before the positions of
+	 * the records it includes are published.
+	 */
+	private volatile long dataSize;
+
+	/**
+	 * The size of the index file, including only complete entries.
+	 */
+	private long indexSize;
+
+	/**
+	 * The read-only mapping of the data file. It is replaced by a larger one
+	 * when a record beyond its end is read.
+	 */
+	private final AtomicReference<DataMapping> dataMapping = new AtomicReference<>(new DataMapping(null, 0));
+
+	/**
+	 * Creates a new {@link RateTableStore} object.
+	 *
+	 * @param directory
+	 *            The directory of the store files.
+	 * @param dataChannel
+	 *            The channel of the data file.
+	 * @param indexChannel
+	 *            The channel of the index file.
+	 */
+	private RateTableStore(Path directory, FileChannel dataChannel, FileChannel indexChannel) {
+		this.directory = directory;
+		this.dataChannel = dataChannel;
+		this.indexChannel = indexChannel;
+	}
+
+	/**
+	 * Opens a store, creating its directory and files if they do not exist.
+	 *
+	 * @param directory
+	 *            The directory of the store files.
+	 * @return The store opened.
+	 * @throws IOException
+	 *             When the store files could not be opened or are not valid.
+	 */
+	public static RateTableStore open(Path directory) throws IOException {
+		if (null == directory) {
+			throw new InvalidParameterException("Store directory cannot be null.");
+		}
+
+		Files.createDirectories(directory);
+		FileChannel dataChannel = FileChannel.open(directory.resolve(DATA_FILE_NAME), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		FileChannel indexChannel = null;
+		try {
+			indexChannel = FileChannel.open(directory.resolve(INDEX_FILE_NAME), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			RateTableStore rateTableStore = new RateTableStore(directory, dataChannel, indexChannel);
+			rateTableStore.initialize();
+			return rateTableStore;
+		} catch (IOException | RuntimeException exception) {
+			dataChannel.close();
+			if (null != indexChannel) {
+				indexChannel.close();
+			}
+			throw exception;
+		}
+	}
+
+	/**
+	 * Returns the directory of the store files.
+	 *
+	 * @return The directory of the store files.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the number of tables on the store.
+	 *
+	 * @return The number of tables on the store.
+	 */
+	public int size() {
+		return recordPositions.size();
+	}
+
+	/**
+	 * Returns the quotation dates of the tables on the store.
+	 *
+	 * @return The quotation dates, in chronological order.
+	 */
+	public List<LocalDate> getQuotationDates() {
+		int[] epochDays = new int[recordPositions.size()];
+		int size = 0;
+		for (Integer epochDay : recordPositions.keySet()) {
+			if (size == epochDays.length) {
+				epochDays = Arrays.copyOf(epochDays, size * 2 + 1);
+			}
+			epochDays[size++] = epochDay;
+		}
+		Arrays.sort(epochDays, 0, size);
+
+		List<LocalDate> quotationDates = new ArrayList<>(size);
+		for (int index = 0; index < size; index++) {
+			quotationDates.add(LocalDate.ofEpochDay(epochDays[index]));
+		}
+		return quotationDates;
+	}
+
+	/**
+	 * Checks if the store has the table of a quotation date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return {@code true} if the table is on the store.
+	 */
+	@Override
+	public boolean contains(LocalDate quotationDate) {
+		return recordPositions.containsKey(toEpochDay(quotationDate));
+	}
+
+	/**
+	 * Reads the table of a quotation date, so the store may be one of the
+	 * sources of a {@link RateSourceRouter}.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The table of the quotation date.
+	 * @throws FileNotFoundException
+	 *             When the table is not on the store.
+	 * @throws IOException
+	 *             When the table record could not be read.
+	 */
+	@Override
+	public RateTable load(LocalDate quotationDate) throws IOException {
+		RateTable rateTable = get(quotationDate);
+		if (null == rateTable) {
+			throw new FileNotFoundException("The table of " + quotationDate + " is not on the store.");
+		}
+		return rateTable;
+	}
+
+	/**
+	 * Reads the table of a quotation date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The table of the quotation date or {@code null} if it is not on the
+	 *         store.
+	 * @throws IOException
+	 *             When the table record could not be read.
+	 */
+	public RateTable get(LocalDate quotationDate) throws IOException {
+		Long recordPosition = recordPositions.get(toEpochDay(quotationDate));
+		if (null == recordPosition) {
+			return null;
+		}
+
+		/* Positions are published after the data size which includes their records. */
+		DataMapping mapping = mapData(recordPosition + RECORD_HEADER_SIZE);
+		ByteBuffer record = mapping.buffer.duplicate();
+		record.position((int) (long) recordPosition);
+		int epochDay = record.getInt();
+		int size = record.getInt();
+		long recordEnd = recordPosition + RECORD_HEADER_SIZE + (long) size * RECORD_SLOT_SIZE;
+		if (epochDay != quotationDate.toEpochDay() || size < 0 || recordEnd > dataSize) {
+			throw new IOException("Invalid record of " + quotationDate + " on position " + recordPosition + " of \""
+					+ directory.resolve(DATA_FILE_NAME) + "\".");
+		}
+
+		record = mapData(recordEnd).buffer.duplicate();
+		record.position((int) (recordPosition + RECORD_HEADER_SIZE));
+		int[] currencyAbbreviations = new int[size];
+		int[] currencyCodes = new int[size];
+		char[] types = new char[size];
+		int[] exchangingEpochDays = new int[size];
+		long[] buyingRates = new long[size];
+		long[] sellingRates = new long[size];
+		long[] buyingPpps = new long[size];
+		long[] sellingPpps = new long[size];
+		record.asIntBuffer().get(currencyAbbreviations);
+		record.position(record.position() + size * Integer.BYTES);
+		record.asIntBuffer().get(currencyCodes);
+		record.position(record.position() + size * Integer.BYTES);
+		record.asCharBuffer().get(types);
+		record.position(record.position() + size * Character.BYTES);
+		record.asIntBuffer().get(exchangingEpochDays);
+		record.position(record.position() + size * Integer.BYTES);
+		record.asLongBuffer().get(buyingRates);
+		record.position(record.position() + size * Long.BYTES);
+		record.asLongBuffer().get(sellingRates);
+		record.position(record.position() + size * Long.BYTES);
+		record.asLongBuffer().get(buyingPpps);
+		record.position(record.position() + size * Long.BYTES);
+		record.asLongBuffer().get(sellingPpps);
+
+		return new RateTable(quotationDate, size, currencyAbbreviations, currencyCodes, types, exchangingEpochDays,
+				buyingRates, sellingRates, buyingPpps, sellingPpps);
+	}
+
+	/**
+	 * Writes a table on the store. Since published tables never change, nothing
+	 * is written if the store already has a table of the same quotation date.
+	 *
+	 * @param rateTable
+	 *            The table to be written.
+	 * @return {@code true} if the table was written.
+	 * @throws IOException
+	 *             When the table could not be written.
+	 */
+	public synchronized boolean put(RateTable rateTable) throws IOException {
+		if (null == rateTable) {
+			throw new InvalidParameterException("Rate table cannot be null.");
+		}
+
+		int epochDay = toEpochDay(rateTable.getQuotationDate());
+		if (recordPositions.containsKey(epochDay)) {
+			return false;
+		}
+
+		int size = rateTable.size();
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + size * RECORD_SLOT_SIZE);
+		record.putInt(epochDay);
+		record.putInt(size);
+		for (int slot = 0; slot < size; slot++) {
+			record.putInt(rateTable.getCurrencyAbbreviation(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putInt(rateTable.getCurrencyCode(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putChar(rateTable.getType(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putInt(rateTable.getExchangingEpochDay(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putLong(rateTable.getBuyingRate(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putLong(rateTable.getSellingRate(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putLong(rateTable.getBuyingPpp(slot));
+		}
+		for (int slot = 0; slot < size; slot++) {
+			record.putLong(rateTable.getSellingPpp(slot));
+		}
+		record.flip();
+
+		long recordPosition = dataSize;
+		if (recordPosition + record.capacity() > MAX_DATA_SIZE) {
+			throw new IOException("File \"" + directory.resolve(DATA_FILE_NAME) + "\" is full: the table of "
+					+ rateTable.getQuotationDate() + " would exceed " + MAX_DATA_SIZE + " bytes.");
+		}
+		writeFully(dataChannel, record, recordPosition);
+		dataSize += record.capacity();
+
+		ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+		indexEntry.putInt(epochDay);
+		indexEntry.putLong(recordPosition);
+		indexEntry.flip();
+		writeFully(indexChannel, indexEntry, indexSize);
+		indexSize += INDEX_ENTRY_SIZE;
+
+		recordPositions.put(epochDay, recordPosition);
+		return true;
+	}
+
+	@Override
+	public void accept(RateTable rateTable) throws IOException {
+		put(rateTable);
+	}
+
+	/**
+	 * Forces the store files contents to the storage device.
+	 *
+	 * @throws IOException
+	 *             When the files could not be forced.
+	 */
+	public synchronized void flush() throws IOException {
+		dataChannel.force(false);
+		indexChannel.force(false);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			dataChannel.close();
+		} finally {
+			indexChannel.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Rate table store on \"" + directory + "\" with " + size() + " tables.";
+	}
+
+	/**
+	 * Checks the store files headers, writing them on new files, and reads the
+	 * index.
+	 *
+	 * @throws IOException
+	 *             When the files could not be read or are not valid.
+	 */
+	private void initialize() throws IOException {
+		dataSize = initializeHeader(dataChannel, DATA_FILE_NAME);
+		if (dataSize > MAX_DATA_SIZE) {
+			throw new IOException("File \"" + directory.resolve(DATA_FILE_NAME) + "\" is larger than "
+					+ MAX_DATA_SIZE + " bytes.");
+		}
+		indexSize = initializeHeader(indexChannel, INDEX_FILE_NAME);
+
+		/* Ignores an incomplete entry left by an interrupted write. */
+		long entries = (indexSize - HEADER_SIZE) / INDEX_ENTRY_SIZE;
+		indexSize = HEADER_SIZE + entries * INDEX_ENTRY_SIZE;
+		ByteBuffer index = ByteBuffer.allocate((int) (entries * INDEX_ENTRY_SIZE));
+		readFully(indexChannel, index, HEADER_SIZE);
+		index.flip();
+		while (index.hasRemaining()) {
+			int epochDay = index.getInt();
+			long recordPosition = index.getLong();
+			if (recordPosition < HEADER_SIZE || recordPosition + RECORD_HEADER_SIZE > dataSize) {
+				throw new IOException("Invalid position " + recordPosition + " of " + LocalDate.ofEpochDay(epochDay)
+						+ " record on \"" + directory.resolve(INDEX_FILE_NAME) + "\".");
+			}
+			recordPositions.put(epochDay, recordPosition);
+		}
+	}
+
+	/**
+	 * Checks the header of a store file, writing it if the file is empty.
+	 *
+	 * @param fileChannel
+	 *            The channel of the file.
+	 * @param fileName
+	 *            The name of the file, used on error messages.
+	 * @return The size of the file.
+	 * @throws IOException
+	 *             When the header could not be read or is not valid.
+	 */
+	private long initializeHeader(FileChannel fileChannel, String fileName) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		if (fileChannel.size() == 0) {
+			header.putInt(MAGIC_NUMBER);
+			header.putInt(VERSION);
+			header.flip();
+			writeFully(fileChannel, header, 0);
+			return HEADER_SIZE;
+		}
+
+		if (fileChannel.size() < HEADER_SIZE) {
+			throw new IOException("File \"" + directory.resolve(fileName) + "\" is not a rate table store file.");
+		}
+		readFully(fileChannel, header, 0);
+		header.flip();
+		if (header.getInt() != MAGIC_NUMBER) {
+			throw new IOException("File \"" + directory.resolve(fileName) + "\" is not a rate table store file.");
+		}
+
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported version " + version + " of file \"" + directory.resolve(fileName)
+					+ "\".");
+		}
+		return fileChannel.size();
+	}
+
+	/**
+	 * Returns a mapping of the data file which reaches at least a position.
+	 * <p>
+	 * No lock is taken: threads which need a larger mapping at once may each
+	 * map the file, but only the largest mapping is kept.
+	 *
+	 * @param end
+	 *            The position which must be mapped.
+	 * @return The mapping of the data file.
+	 * @throws IOException
+	 *             When the data file could not be mapped.
+	 */
+	private DataMapping mapData(long end) throws IOException {
+		DataMapping mapping = dataMapping.get();
+		if (mapping.size < end) {
+			long size = dataSize;
+			DataMapping largerMapping = new DataMapping(dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, size),
+					size);
+			mapping = dataMapping.accumulateAndGet(largerMapping,
+					(current, candidate) -> candidate.size > current.size ? candidate : current);
+		}
+		return mapping;
+	}
+
+	/**
+	 * Converts a quotation date to the key of the index.
+	 *
+	 * @param quotationDate
+	 *            The quotation date.
+	 * @return The epoch day of the quotation date.
+	 */
+	private static int toEpochDay(LocalDate quotationDate) {
+		if (null == quotationDate) {
+			throw new InvalidParameterException("Quotation date cannot be null.");
+		}
+		return (int) quotationDate.toEpochDay();
+	}
+
+	/**
+	 * Writes all remaining bytes of a buffer on a file.
+	 *
+	 * @param fileChannel
+	 *            The channel of the file.
+	 * @param buffer
+	 *            The bytes to be written.
+	 * @param position
+	 *            The file position where the bytes are written.
+	 * @throws IOException
+	 *             When the bytes could not be written.
+	 */
+	private static void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+		long filePosition = position;
+		while (buffer.hasRemaining()) {
+			filePosition += fileChannel.write(buffer, filePosition);
+		}
+	}
+
+	/**
+	 * Reads bytes from a file until a buffer is full.
+	 *
+	 * @param fileChannel
+	 *            The channel of the file.
+	 * @param buffer
+	 *            The buffer which receives the bytes.
+	 * @param position
+	 *            The file position where the bytes are read.
+	 * @throws IOException
+	 *             When the file ends before the buffer is full.
+	 */
+	private static void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+		long filePosition = position;
+		while (buffer.hasRemaining()) {
+			int bytesRead = fileChannel.read(buffer, filePosition);
+			if (bytesRead == -1) {
+				throw new IOException("Unexpected end of file.");
+			}
+			filePosition += bytesRead;
+		}
+	}
+
+	/**
+	 * A mapping of the data file with the size it reaches.
+	 */
+	private static final class DataMapping {
+
+		/**
+		 * The mapped bytes, or {@code null} if nothing was mapped yet.
+		 */
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * The number of mapped bytes.
+		 */
+		private final long size;
+
+		/**
+		 * Creates a new {@link DataMapping} object.
+		 *
+		 * @param buffer
+		 *            The mapped bytes.
+		 * @param size
+		 *            The number of mapped bytes.
+		 */
+		private DataMapping(MappedByteBuffer buffer, long size) {
+			this.buffer = buffer;
+			this.size = size;
+		}
+	}
+}
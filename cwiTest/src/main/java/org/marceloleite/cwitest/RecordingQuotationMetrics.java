@@ -0,0 +1,167 @@
+package org.marceloleite.cwitest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * The {@link QuotationMetrics} which keep a {@link LatencyHistogram} per stage,
+ * a counter per event and a failure counter per stage and exception type, and
+ * expose them through {@link QuotationMetricsMXBean}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RecordingQuotationMetrics implements QuotationMetrics, QuotationMetricsMXBean {
+
+	/**
+	 * The latency histogram of each stage, indexed by ordinal.
+	 */
+	private final LatencyHistogram[] latencyHistograms = new LatencyHistogram[Stage.values().length];
+
+	/**
+	 * The value of each counter, indexed by ordinal.
+	 */
+	private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+	/**
+	 * The number of failures of each stage by exception type.
+	 */
+	private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new {@link RecordingQuotationMetrics} object.
+	 */
+	public RecordingQuotationMetrics() {
+		for (int index = 0; index < latencyHistograms.length; index++) {
+			latencyHistograms[index] = new LatencyHistogram();
+		}
+		for (int index = 0; index < counters.length; index++) {
+			counters[index] = new LongAdder();
+		}
+	}
+
+	@Override
+	public long startTimer() {
+		return System.nanoTime();
+	}
+
+	@Override
+	public void stopTimer(Stage stage, long startTime) {
+		latencyHistograms[stage.ordinal()].record(System.nanoTime() - startTime);
+	}
+
+	@Override
+	public void increment(Counter counter, long delta) {
+		counters[counter.ordinal()].add(delta);
+	}
+
+	@Override
+	public void recordFailure(Stage stage, Throwable failure) {
+		failures.computeIfAbsent(stage + ":" + failure.getClass().getName(), key -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Returns the latency histogram of a stage.
+	 *
+	 * @param stage
+	 *            The stage.
+	 * @return The latency histogram of the stage.
+	 */
+	public LatencyHistogram getLatencyHistogram(Stage stage) {
+		return latencyHistograms[stage.ordinal()];
+	}
+
+	/**
+	 * Returns the value of a counter.
+	 *
+	 * @param counter
+	 *            The counter.
+	 * @return The value of the counter.
+	 */
+	public long getCounter(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		Map<String, Long> values = new TreeMap<>();
+		for (Counter counter : Counter.values()) {
+			values.put(counter.name(), getCounter(counter));
+		}
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getFailures() {
+		Map<String, Long> values = new TreeMap<>();
+		failures.forEach((key, failureCount) -> values.put(key, failureCount.sum()));
+		return values;
+	}
+
+	@Override
+	public Map<String, Long> getLatencyCounts() {
+		return summarizeLatencies(LatencyHistogram::getCount);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMeans() {
+		return summarizeLatencies(latencyHistogram -> Math.round(latencyHistogram.getMean()));
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMedians() {
+		return summarizeLatencies(latencyHistogram -> latencyHistogram.getPercentile(50.0));
+	}
+
+	@Override
+	public Map<String, Long> getLatency99thPercentiles() {
+		return summarizeLatencies(latencyHistogram -> latencyHistogram.getPercentile(99.0));
+	}
+
+	@Override
+	public Map<String, Long> getLatencyMaximums() {
+		return summarizeLatencies(LatencyHistogram::getMax);
+	}
+
+	@Override
+	public void reset() {
+		for (LatencyHistogram latencyHistogram : latencyHistograms) {
+			latencyHistogram.reset();
+		}
+		for (LongAdder counter : counters) {
+			counter.reset();
+		}
+		failures.clear();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder("Quotation metrics:");
+		for (Stage stage : Stage.values()) {
+			stringBuilder.append(System.lineSeparator()).append(stage).append(": ")
+					.append(latencyHistograms[stage.ordinal()]);
+		}
+		stringBuilder.append(System.lineSeparator()).append("Counters: ").append(getCounters());
+		stringBuilder.append(System.lineSeparator()).append("Failures: ").append(getFailures());
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * Summarizes the latency histogram of each stage.
+	 *
+	 * @param summary
+	 *            The function which summarizes a histogram.
+	 * @return The summary of each stage histogram.
+	 */
+	private Map<String, Long> summarizeLatencies(ToLongFunction<LatencyHistogram> summary) {
+		Map<String, Long> values = new TreeMap<>();
+		for (Stage stage : Stage.values()) {
+			values.put(stage.name(), summary.applyAsLong(latencyHistograms[stage.ordinal()]));
+		}
+		return values;
+	}
+}
@@ -0,0 +1,159 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent executions of the same call, identified by a key, so
+ * only one of them runs at a time and all concurrent callers receive its
+ * result.
+ * <p>
+ * A call is forgotten as soon as it finishes, so a failure is delivered to the
+ * callers waiting for it but does not prevent a later retry.
+ *
+ * @author Marcelo Leite
+ *
+ * @param <K>
+ *            The type of the key which identifies a call.
+ * @param <V>
+ *            The type of the value returned by a call.
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * The calls being executed indexed by key.
+	 */
+	private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+	/**
+	 * Executes a call unless another one with the same key is already running, in
+	 * which case waits for its result.
+	 *
+	 * @param key
+	 *            The key which identifies the call.
+	 * @param callable
+	 *            The call to be executed.
+	 * @return The value returned by the call.
+	 * @throws IOException
+	 *             When the call throws an {@link IOException}, or any other
+	 *             checked exception, or the thread is interrupted while waiting
+	 *             for the call result.
+	 */
+	public V execute(K key, Callable<V> callable) throws IOException {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> runningFuture = calls.putIfAbsent(key, future);
+
+		if (null == runningFuture) {
+			run(key, future, callable);
+			runningFuture = future;
+		}
+
+		return await(runningFuture);
+	}
+
+	/**
+	 * Executes a call on an executor unless another one with the same key is
+	 * already running, in which case returns a future of its result. The calling
+	 * thread never waits for the call.
+	 *
+	 * @param key
+	 *            The key which identifies the call.
+	 * @param callable
+	 *            The call to be executed.
+	 * @param executor
+	 *            The executor which runs the call if it is not running yet.
+	 * @return A future of the value returned by the call. Cancelling it does not
+	 *         cancel the call, which may be shared with other callers.
+	 */
+	public CompletableFuture<V> executeAsync(K key, Callable<V> callable, Executor executor) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> runningFuture = calls.putIfAbsent(key, future);
+
+		if (null == runningFuture) {
+			try {
+				executor.execute(() -> run(key, future, callable));
+			} catch (RuntimeException runtimeException) {
+				calls.remove(key, future);
+				future.completeExceptionally(runtimeException);
+			}
+			runningFuture = future;
+		}
+
+		return runningFuture.thenApply(Function.identity());
+	}
+
+	/**
+	 * Returns the number of calls being executed.
+	 *
+	 * @return The number of calls being executed.
+	 */
+	public int size() {
+		return calls.size();
+	}
+
+	/**
+	 * Runs a call and completes its future.
+	 *
+	 * @param key
+	 *            The key which identifies the call.
+	 * @param future
+	 *            The future of the call.
+	 * @param callable
+	 *            The call to be executed.
+	 */
+	private void run(K key, CompletableFuture<V> future, Callable<V> callable) {
+		/*
+		 * The call is removed before its future completes, so callers arriving after a
+		 * failure start a new call instead of receiving the same failure.
+		 */
+		try {
+			V value = callable.call();
+			calls.remove(key, future);
+			future.complete(value);
+		} catch (Throwable throwable) {
+			calls.remove(key, future);
+			future.completeExceptionally(throwable);
+		}
+	}
+
+	/**
+	 * Waits for the result of a call.
+	 *
+	 * @param future
+	 *            The future of the call.
+	 * @return The value returned by the call.
+	 * @throws IOException
+	 *             When the call throws a checked exception or the thread is
+	 *             interrupted while waiting.
+	 */
+	private V await(CompletableFuture<V> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException interruptedIOException = new InterruptedIOException(
+					"Interrupted while waiting for a concurrent call result.");
+			interruptedIOException.initCause(interruptedException);
+			throw interruptedIOException;
+		} catch (ExecutionException executionException) {
+			Throwable cause = executionException.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Concurrent call failed.", cause);
+		}
+	}
+}
@@ -0,0 +1,539 @@
+package org.marceloleite.cwitest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts a stream of amounts, one record per line, writing each record back
+ * with its converted amount.
+ * <p>
+ * Each record has the base currency, the quote currency, the amount and the
+ * quotation date on "dd/MM/yyyy" format, separated by commas or semicolons. A
+ * first line starting with "from" is taken as a header. The output has the
+ * same lines followed by the converted amount and an error message, which is
+ * empty when the record was converted. A record which cannot be converted does
+ * not abort the others.
+ * <p>
+ * The lines are read in chunks, which are converted by a bounded number of
+ * threads at once through the tables of a shared {@link CWITest} object. The
+ * chunks are written on the input order as soon as they are converted, and
+ * reading waits while too many chunks are pending, so memory usage does not
+ * depend on the input size.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class StreamingConverter {
+
+	/**
+	 * The default number of lines of a chunk.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	/**
+	 * The default number of chunks converted at once.
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The size of the buffers of the command input and output, in bytes.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The name of the command input and output which stand for the standard
+	 * ones.
+	 */
+	private static final String STANDARD_STREAM = "-";
+
+	/**
+	 * The number of fields of a record.
+	 */
+	private static final int FIELDS = 4;
+
+	/**
+	 * The object which converts the records.
+	 */
+	private final CWITest cwiTest;
+
+	/**
+	 * The number of chunks converted at once.
+	 */
+	private final int parallelism;
+
+	/**
+	 * The number of lines of a chunk.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * Creates a new {@link StreamingConverter} object with the default
+	 * parallelism and chunk size.
+	 *
+	 * @param cwiTest
+	 *            The object which converts the records.
+	 */
+	public StreamingConverter(CWITest cwiTest) {
+		this(cwiTest, DEFAULT_PARALLELISM, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates a new {@link StreamingConverter} object.
+	 *
+	 * @param cwiTest
+	 *            The object which converts the records.
+	 * @param parallelism
+	 *            The number of chunks converted at once. Twice as many chunks
+	 *            are kept in memory at most.
+	 * @param chunkSize
+	 *            The number of lines of a chunk.
+	 */
+	public StreamingConverter(CWITest cwiTest, int parallelism, int chunkSize) {
+		if (null == cwiTest) {
+			throw new InvalidParameterException("CWITest object cannot be null.");
+		}
+
+		if (parallelism <= 0) {
+			throw new InvalidParameterException("Parallelism must be greater than zero.");
+		}
+
+		if (chunkSize <= 0) {
+			throw new InvalidParameterException("Chunk size must be greater than zero.");
+		}
+
+		this.cwiTest = cwiTest;
+		this.parallelism = parallelism;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * The convert command entry method.
+	 *
+	 * @param args
+	 *            Optionally, the input file, the output file (either one "-" or
+	 *            absent for the standard ones) and the number of chunks
+	 *            converted at once.
+	 */
+	public static void main(String[] args) {
+		if (args.length > 3) {
+			System.err.println("Usage: convert [input file|-] [output file|-] [parallelism]");
+			System.exit(2);
+			return;
+		}
+
+		int parallelism;
+		try {
+			parallelism = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PARALLELISM;
+		} catch (NumberFormatException numberFormatException) {
+			System.err.println("Invalid argument: " + numberFormatException.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		String input = args.length > 0 ? args[0] : STANDARD_STREAM;
+		String output = args.length > 1 ? args[1] : STANDARD_STREAM;
+		StreamingConverter streamingConverter = new StreamingConverter(CWITest.getDefault(), parallelism,
+				DEFAULT_CHUNK_SIZE);
+		Report report;
+		try (ReadableByteChannel inputChannel = STANDARD_STREAM.equals(input) ? Channels.newChannel(System.in)
+				: FileChannel.open(Paths.get(input), StandardOpenOption.READ);
+				WritableByteChannel outputChannel = STANDARD_STREAM.equals(output) ? Channels.newChannel(System.out)
+						: FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								StandardOpenOption.TRUNCATE_EXISTING)) {
+			report = streamingConverter.run(
+					Channels.newReader(inputChannel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE),
+					Channels.newWriter(outputChannel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE));
+		} catch (IOException ioException) {
+			System.err.println("Could not convert the records: " + ioException.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		/* The standard output may hold the records, so the report goes apart. */
+		System.err.println(report);
+	}
+
+	/**
+	 * Converts the records of an input, writing them to an output. The output is
+	 * flushed, but neither the input nor the output is closed.
+	 *
+	 * @param input
+	 *            The input of the records.
+	 * @param output
+	 *            The output of the converted records.
+	 * @return The report of the conversion.
+	 * @throws IOException
+	 *             When the input could not be read or the output could not be
+	 *             written.
+	 */
+	public Report run(Reader input, Writer output) throws IOException {
+		if (null == input) {
+			throw new InvalidParameterException("Input cannot be null.");
+		}
+
+		if (null == output) {
+			throw new InvalidParameterException("Output cannot be null.");
+		}
+
+		BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input
+				: new BufferedReader(input, BUFFER_SIZE);
+		Writer writer = output instanceof BufferedWriter ? output : new BufferedWriter(output, BUFFER_SIZE);
+		long start = System.nanoTime();
+		long records = 0;
+		long failures = 0;
+
+		ExecutorService executorService = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "cwitest-converter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ArrayDeque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+		try {
+			String line = reader.readLine();
+			if (null != line && isHeader(line)) {
+				char separator = findSeparator(line);
+				writer.write(line + separator + "converted" + separator + "error");
+				writer.write('\n');
+				line = reader.readLine();
+			}
+
+			while (null != line) {
+				String[] lines = new String[chunkSize];
+				int size = 0;
+				for (; null != line && size < chunkSize; line = reader.readLine()) {
+					lines[size++] = line;
+				}
+				String[] chunkLines = lines;
+				int chunkLineCount = size;
+				pendingChunks.add(executorService.submit(() -> convertChunk(chunkLines, chunkLineCount)));
+
+				/* Keeps every thread busy while the oldest chunk is written. */
+				if (pendingChunks.size() > parallelism * 2) {
+					Chunk chunk = await(pendingChunks.remove());
+					writer.write(chunk.output);
+					records += chunk.records;
+					failures += chunk.failures;
+				}
+			}
+
+			while (!pendingChunks.isEmpty()) {
+				Chunk chunk = await(pendingChunks.remove());
+				writer.write(chunk.output);
+				records += chunk.records;
+				failures += chunk.failures;
+			}
+			writer.flush();
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		return new Report(records, failures, Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/**
+	 * Converts the records of a chunk. The tables of the chunk dates are looked
+	 * up once per chunk.
+	 *
+	 * @param lines
+	 *            The lines of the chunk.
+	 * @param size
+	 *            The number of lines of the chunk.
+	 * @return The converted chunk.
+	 */
+	private Chunk convertChunk(String[] lines, int size) {
+		StringBuilder output = new StringBuilder(size * 64);
+		Map<String, Object> rateTables = new HashMap<>();
+		int records = 0;
+		int failures = 0;
+		for (int index = 0; index < size; index++) {
+			String line = lines[index];
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+
+			char separator = findSeparator(line);
+			output.append(line).append(separator);
+			try {
+				output.append(convertRecord(line, separator, rateTables).toPlainString()).append(separator);
+			} catch (IOException | RuntimeException exception) {
+				output.append(separator).append(describe(exception));
+				failures++;
+			}
+			output.append('\n');
+			records++;
+		}
+		return new Chunk(output.toString(), records, failures);
+	}
+
+	/**
+	 * Converts a record.
+	 *
+	 * @param line
+	 *            The record line.
+	 * @param separator
+	 *            The separator of the record fields.
+	 * @param rateTables
+	 *            The tables, or the exceptions thrown while loading them,
+	 *            already looked up on the chunk, indexed by quotation date.
+	 * @return The converted amount.
+	 * @throws IOException
+	 *             When the table of the record date could not be loaded.
+	 */
+	private BigDecimal convertRecord(String line, char separator, Map<String, Object> rateTables)
+			throws IOException {
+		ConversionRequest request = parseRecord(line, separator);
+		CWITest.checkParameters(request.getFrom(), request.getTo(), request.getValue());
+
+		Object rateTable = rateTables.get(request.getQuotation());
+		if (null == rateTable) {
+			try {
+				rateTable = cwiTest.getRateTable(request.getQuotation());
+			} catch (IOException | RuntimeException exception) {
+				rateTable = exception;
+			}
+			rateTables.put(request.getQuotation(), rateTable);
+		}
+		if (rateTable instanceof IOException) {
+			throw (IOException) rateTable;
+		}
+		if (rateTable instanceof RuntimeException) {
+			throw (RuntimeException) rateTable;
+		}
+		return CWITest.convert((RateTable) rateTable, request.getFrom(), request.getTo(), request.getValue());
+	}
+
+	/**
+	 * Parses a record line.
+	 *
+	 * @param line
+	 *            The record line.
+	 * @param separator
+	 *            The separator of the record fields.
+	 * @return The conversion request of the record.
+	 */
+	static ConversionRequest parseRecord(String line, char separator) {
+		String[] fields = new String[FIELDS];
+		int fieldStart = 0;
+		for (int field = 0; field < FIELDS; field++) {
+			int fieldEnd = field < FIELDS - 1 ? line.indexOf(separator, fieldStart) : line.length();
+			if (fieldEnd < 0 || (field == FIELDS - 1 && line.indexOf(separator, fieldStart) >= 0)) {
+				throw new InvalidParameterException("A record must have " + FIELDS + " fields.");
+			}
+			fields[field] = line.substring(fieldStart, fieldEnd).trim();
+			fieldStart = fieldEnd + 1;
+		}
+
+		BigDecimal value;
+		try {
+			value = new BigDecimal(fields[2]);
+		} catch (NumberFormatException numberFormatException) {
+			throw new InvalidParameterException("Invalid amount \"" + fields[2] + "\".");
+		}
+		return new ConversionRequest(fields[0], fields[1], value, fields[3]);
+	}
+
+	/**
+	 * Checks if a line is a header.
+	 *
+	 * @param line
+	 *            The line.
+	 * @return {@code true} if the line starts with "from", {@code false}
+	 *         otherwise.
+	 */
+	static boolean isHeader(String line) {
+		return line.trim().regionMatches(true, 0, "from", 0, 4);
+	}
+
+	/**
+	 * Returns the separator of the fields of a line.
+	 *
+	 * @param line
+	 *            The line.
+	 * @return A semicolon if the line has one, a comma otherwise.
+	 */
+	static char findSeparator(String line) {
+		return line.indexOf(';') >= 0 ? ';' : ',';
+	}
+
+	/**
+	 * Describes the reason a record was not converted on a single line without
+	 * separators.
+	 *
+	 * @param exception
+	 *            The exception thrown by the conversion.
+	 * @return The description of the exception.
+	 */
+	static String describe(Exception exception) {
+		String message = null != exception.getMessage() ? exception.getMessage()
+				: exception.getClass().getSimpleName();
+		return message.replace('\n', ' ').replace('\r', ' ').replace(',', ' ').replace(';', ' ');
+	}
+
+	/**
+	 * Waits for a chunk to be converted.
+	 *
+	 * @param future
+	 *            The future of the converted chunk.
+	 * @return The converted chunk.
+	 * @throws IOException
+	 *             When the current thread is interrupted while waiting.
+	 */
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a chunk to be converted.");
+		} catch (ExecutionException executionException) {
+			throw new IllegalStateException("Could not convert a chunk.", executionException.getCause());
+		}
+	}
+
+	/**
+	 * A converted chunk.
+	 */
+	private static final class Chunk {
+
+		/**
+		 * The output lines of the chunk.
+		 */
+		private final String output;
+
+		/**
+		 * The number of records of the chunk.
+		 */
+		private final int records;
+
+		/**
+		 * The number of records of the chunk which could not be converted.
+		 */
+		private final int failures;
+
+		/**
+		 * Creates a new {@link Chunk} object.
+		 *
+		 * @param output
+		 *            The output lines of the chunk.
+		 * @param records
+		 *            The number of records of the chunk.
+		 * @param failures
+		 *            The number of records of the chunk which could not be
+		 *            converted.
+		 */
+		private Chunk(String output, int records, int failures) {
+			this.output = output;
+			this.records = records;
+			this.failures = failures;
+		}
+	}
+
+	/**
+	 * The result of a conversion.
+	 */
+	public static final class Report {
+
+		/**
+		 * The number of records read.
+		 */
+		private final long records;
+
+		/**
+		 * The number of records which could not be converted.
+		 */
+		private final long failures;
+
+		/**
+		 * The time spent on the conversion.
+		 */
+		private final Duration elapsed;
+
+		/**
+		 * Creates a new {@link Report} object.
+		 *
+		 * @param records
+		 *            The number of records read.
+		 * @param failures
+		 *            The number of records which could not be converted.
+		 * @param elapsed
+		 *            The time spent on the conversion.
+		 */
+		private Report(long records, long failures, Duration elapsed) {
+			this.records = records;
+			this.failures = failures;
+			this.elapsed = elapsed;
+		}
+
+		/**
+		 * Returns the number of records read.
+		 *
+		 * @return The number of records read.
+		 */
+		public long getRecords() {
+			return records;
+		}
+
+		/**
+		 * Returns the number of records converted.
+		 *
+		 * @return The number of records converted.
+		 */
+		public long getConverted() {
+			return records - failures;
+		}
+
+		/**
+		 * Returns the number of records which could not be converted.
+		 *
+		 * @return The number of records which could not be converted.
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * Returns the time spent on the conversion.
+		 *
+		 * @return The time spent on the conversion.
+		 */
+		public Duration getElapsed() {
+			return elapsed;
+		}
+
+		/**
+		 * Returns the number of records read per second.
+		 *
+		 * @return The number of records read per second.
+		 */
+		public double getThroughput() {
+			return records * 1_000_000_000.0 / Math.max(1, elapsed.toNanos());
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%d records: %d converted and %d failed in %.1f s (%.1f records/s).",
+					records, getConverted(), failures, elapsed.toMillis() / 1000.0, getThroughput());
+		}
+	}
+}
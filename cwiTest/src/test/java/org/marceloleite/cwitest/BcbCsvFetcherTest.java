@@ -0,0 +1,200 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test cases created to check the {@link BcbCsvFetcher} class against a local
+ * HTTP server.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbCsvFetcherTest {
+
+	/**
+	 * The entity tag of the files served.
+	 */
+	private static final String ENTITY_TAG = "\"20141120-1\"";
+
+	/**
+	 * The local HTTP server.
+	 */
+	private HttpServer httpServer;
+
+	/**
+	 * The executor of the local HTTP server.
+	 */
+	private ExecutorService executorService;
+
+	/**
+	 * The contents of the file served, before compression.
+	 */
+	private byte[] csvContents;
+
+	/**
+	 * Starts the local HTTP server.
+	 */
+	@Before
+	public void startServer() throws IOException {
+		csvContents = Fixtures.read("20141120.csv");
+		executorService = Executors.newCachedThreadPool();
+		httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		httpServer.setExecutor(executorService);
+		httpServer.createContext("/fresh/", this::serveCsv);
+		httpServer.createContext("/error/", exchange -> respond(exchange, 500, new byte[0]));
+		httpServer.createContext("/missing/", exchange -> respond(exchange, 404, new byte[0]));
+		httpServer.createContext("/slow/", exchange -> {
+			try {
+				Thread.sleep(2000);
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			serveCsv(exchange);
+		});
+		httpServer.start();
+	}
+
+	/**
+	 * Stops the local HTTP server.
+	 */
+	@After
+	public void stopServer() {
+		httpServer.stop(0);
+		executorService.shutdownNow();
+	}
+
+	/**
+	 * Tests if a compressed file is decompressed and a file fetched again is
+	 * revalidated instead of transferred.
+	 */
+	@Test
+	public void testFetchRevalidatesCompressedFile() throws IOException {
+		BcbCsvFetcher bcbCsvFetcher = new BcbCsvFetcher(getBaseUrl("fresh"));
+
+		RateTable rateTable = bcbCsvFetcher.fetch(LocalDate.of(2014, 11, 20));
+		long bytesTransferred = bcbCsvFetcher.getBytesTransferred();
+		RateTable revalidatedRateTable = bcbCsvFetcher.fetch(LocalDate.of(2014, 11, 20));
+
+		assertEquals(255020000L, rateTable.getBuyingRate(rateTable.slotOf("USD")));
+		assertTrue(bytesTransferred > 0 && bytesTransferred < csvContents.length);
+		assertSame(rateTable, revalidatedRateTable);
+		assertEquals(bytesTransferred, bcbCsvFetcher.getBytesTransferred());
+		assertEquals(2, bcbCsvFetcher.getFetchCount());
+		assertEquals(1, bcbCsvFetcher.getNotModifiedCount());
+		assertEquals(0, bcbCsvFetcher.getFailureCount());
+	}
+
+	/**
+	 * Tests if a missing file throws a {@link FileNotFoundException}.
+	 */
+	@Test(expected = FileNotFoundException.class)
+	public void testFetchMissingFileFileNotFoundException() throws IOException {
+		new BcbCsvFetcher(getBaseUrl("missing")).fetch(LocalDate.of(2014, 11, 20));
+	}
+
+	/**
+	 * Tests if a server error throws an {@link IOException} which is not a
+	 * {@link FileNotFoundException}.
+	 */
+	@Test
+	public void testFetchServerErrorIOException() {
+		BcbCsvFetcher bcbCsvFetcher = new BcbCsvFetcher(getBaseUrl("error"));
+		try {
+			bcbCsvFetcher.fetch(LocalDate.of(2014, 11, 20));
+			fail("The fetch should have failed.");
+		} catch (IOException ioException) {
+			assertFalse(ioException instanceof FileNotFoundException);
+		}
+		assertEquals(1, bcbCsvFetcher.getFailureCount());
+	}
+
+	/**
+	 * Tests if a server which does not answer in time throws an
+	 * {@link IOException} caused by a {@link SocketTimeoutException}.
+	 */
+	@Test
+	public void testFetchReadTimeout() {
+		BcbCsvFetcher bcbCsvFetcher = new BcbCsvFetcher(getBaseUrl("slow"), Duration.ofSeconds(1),
+				Duration.ofMillis(100));
+		try {
+			bcbCsvFetcher.fetch(LocalDate.of(2014, 11, 20));
+			fail("The fetch should have timed out.");
+		} catch (IOException ioException) {
+			assertTrue(ioException.getCause() instanceof SocketTimeoutException);
+		}
+	}
+
+	/**
+	 * Returns the base URL of a context of the local HTTP server.
+	 *
+	 * @param context
+	 *            The context name.
+	 * @return The base URL of the context.
+	 */
+	private String getBaseUrl(String context) {
+		return "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/" + context + "/";
+	}
+
+	/**
+	 * Serves the CSV file compressed, answering conditional requests with "304
+	 * Not Modified".
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @throws IOException
+	 *             When the response could not be written.
+	 */
+	private void serveCsv(HttpExchange exchange) throws IOException {
+		if (ENTITY_TAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+			gzipOutputStream.write(csvContents);
+		}
+		exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		exchange.getResponseHeaders().set("ETag", ENTITY_TAG);
+		respond(exchange, 200, byteArrayOutputStream.toByteArray());
+	}
+
+	/**
+	 * Writes a response.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @param status
+	 *            The response status.
+	 * @param body
+	 *            The response body.
+	 * @throws IOException
+	 *             When the response could not be written.
+	 */
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(body);
+		}
+	}
+}
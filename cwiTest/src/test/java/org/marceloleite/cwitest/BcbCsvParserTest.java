@@ -0,0 +1,225 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link BcbCsvParser} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbCsvParserTest {
+
+	/**
+	 * A quotation CSV file with two currencies.
+	 */
+	private static final String CSV_CONTENTS = "20/11/2014;220;A;USD;2,55020000;2,55080000;1,00000000;1,00000000\n"
+			+ "20/11/2014;978;B;EUR;3,20030000;3,20140000;1,25490000;1,25520000\n";
+
+	/**
+	 * Tests if all values of a line are parsed.
+	 */
+	@Test
+	public void testParseReadsAllValues() throws IOException {
+		RateTable rateTable = parse(CSV_CONTENTS);
+
+		assertEquals(2, rateTable.size());
+		CurrencyExchangingInformation euro = rateTable.getExchangingInformation("EUR");
+		assertEquals("978", euro.getCurrencyCode());
+		assertEquals("B", euro.getType());
+		assertEquals("EUR", euro.getCurrencyAbbreviation());
+		assertEquals(Double.parseDouble("3.2003"), euro.getBuyingRate(), 0.0);
+		assertEquals(Double.parseDouble("3.2014"), euro.getSellingRate(), 0.0);
+		assertEquals(Double.parseDouble("1.2549"), euro.getBuyingPpp(), 0.0);
+		assertEquals(Double.parseDouble("1.2552"), euro.getSellingPpp(), 0.0);
+		assertEquals(Date.from(LocalDate.of(2014, 11, 20).atStartOfDay(ZoneId.systemDefault()).toInstant()),
+				euro.getExchangingDate());
+	}
+
+	/**
+	 * Tests if numbers with grouping separators, few decimal places and Windows
+	 * line breaks are parsed.
+	 */
+	@Test
+	public void testParseAcceptsNumberVariations() throws IOException {
+		RateTable rateTable = parse("20/11/2014;470;A;JPY;0,02163;0,02164;1.176,5;117,60\r\n");
+
+		CurrencyExchangingInformation yen = rateTable.getExchangingInformation("JPY");
+		assertEquals(0.02163, yen.getBuyingRate(), 0.0);
+		assertEquals(1176.5, yen.getBuyingPpp(), 0.0);
+		assertEquals(117.6, yen.getSellingPpp(), 0.0);
+	}
+
+	/**
+	 * Tests if decimal places beyond the parser scale are rounded half to even.
+	 */
+	@Test
+	public void testDecodeRateRoundsHalfToEven() {
+		assertEquals(12L, decodeRate("0,000000115"));
+		assertEquals(12L, decodeRate("0,000000125"));
+		assertEquals(13L, decodeRate("0,0000001251"));
+		assertEquals(12L, decodeRate("0,0000001249"));
+		assertEquals(100000000L, decodeRate("1"));
+	}
+
+	/**
+	 * Tests if a line with less than eight values throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseMissingValuesIOException() throws IOException {
+		parse("20/11/2014;220;A;USD;2,55020000;2,55080000;1,00000000\n");
+	}
+
+	/**
+	 * Tests if a line with an invalid number throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseInvalidRateIOException() throws IOException {
+		parse("20/11/2014;220;A;USD;2,55O20000;2,55080000;1,00000000;1,00000000\n");
+	}
+
+	/**
+	 * Tests if a line with an invalid date throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseInvalidDateIOException() throws IOException {
+		parse("31/11/2014;220;A;USD;2,55020000;2,55080000;1,00000000;1,00000000\n");
+	}
+
+	/**
+	 * Tests if a line with an invalid currency abbreviation throws an
+	 * {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseInvalidCurrencyAbbreviationIOException() throws IOException {
+		parse("20/11/2014;220;A;US;2,55020000;2,55080000;1,00000000;1,00000000\n");
+	}
+
+	/**
+	 * Tests if a table parsed lazily has the same values as one parsed at once.
+	 */
+	@Test
+	public void testParseLazilyMatchesParse() throws IOException {
+		byte[] contents = Fixtures.read("20141120.csv");
+		LocalDate quotationDate = LocalDate.of(2014, 11, 20);
+		RateTable rateTable = new BcbCsvParser().parse(new ByteArrayInputStream(contents), quotationDate);
+
+		RateTable lazyRateTable = new BcbCsvParser().parseLazily(new ByteArrayInputStream(contents), quotationDate);
+
+		assertEquals(rateTable.size(), lazyRateTable.size());
+		for (int slot = 0; slot < rateTable.size(); slot++) {
+			int lazySlot = lazyRateTable.slotOf(rateTable.getCurrencyAbbreviation(slot));
+			assertEquals(rateTable.getCurrencyCode(slot), lazyRateTable.getCurrencyCode(lazySlot));
+			assertEquals(rateTable.getType(slot), lazyRateTable.getType(lazySlot));
+			assertEquals(rateTable.getExchangingEpochDay(slot), lazyRateTable.getExchangingEpochDay(lazySlot));
+			assertEquals(rateTable.getBuyingRate(slot), lazyRateTable.getBuyingRate(lazySlot));
+			assertEquals(rateTable.getSellingRate(slot), lazyRateTable.getSellingRate(lazySlot));
+			assertEquals(rateTable.getBuyingPpp(slot), lazyRateTable.getBuyingPpp(lazySlot));
+			assertEquals(rateTable.getSellingPpp(slot), lazyRateTable.getSellingPpp(lazySlot));
+		}
+	}
+
+	/**
+	 * Tests if a table parsed lazily keeps the last line of a repeated currency
+	 * and accepts Windows line breaks and a last line without line break.
+	 */
+	@Test
+	public void testParseLazilyKeepsLastRepeatedLine() throws IOException {
+		RateTable rateTable = parseLazily("20/11/2014;220;A;USD;2,55020000;2,55080000;1,00000000;1,00000000\r\n"
+				+ "\r\n" + "20/11/2014;220;A;USD;2,60000000;2,60100000;1,00000000;1,00000000");
+
+		assertEquals(1, rateTable.size());
+		assertEquals(260000000L, rateTable.getBuyingRate(rateTable.slotOf("USD")));
+		assertEquals(100000000L, rateTable.getSellingPpp(rateTable.slotOf("USD")));
+	}
+
+	/**
+	 * Tests if a line with an invalid number only fails when its currency is
+	 * requested, throwing an {@link UncheckedIOException}.
+	 */
+	@Test
+	public void testParseLazilyInvalidRateUncheckedIOException() throws IOException {
+		RateTable rateTable = parseLazily("20/11/2014;220;A;USD;2,55O20000;2,55080000;1,00000000;1,00000000\n"
+				+ "20/11/2014;978;B;EUR;3,20030000;3,20140000;1,25490000;1,25520000\n");
+
+		assertEquals(320030000L, rateTable.getBuyingRate(rateTable.slotOf("EUR")));
+		try {
+			rateTable.getBuyingRate(rateTable.slotOf("USD"));
+			fail("The line should not have been parsed.");
+		} catch (UncheckedIOException uncheckedIOException) {
+			assertTrue(uncheckedIOException.getCause().getMessage().startsWith("Could not parse line 1 "));
+		}
+	}
+
+	/**
+	 * Tests if a line with less than eight values parsed lazily throws an
+	 * {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testParseLazilyMissingValuesIOException() throws IOException {
+		parseLazily("20/11/2014;220;A;USD;2,55020000;2,55080000;1,00000000\n");
+	}
+
+	/**
+	 * Tests if dates are decoded into the same epoch days as {@link LocalDate}.
+	 */
+	@Test
+	public void testToEpochDayMatchesLocalDate() {
+		LocalDate date = LocalDate.of(1800, 1, 1);
+		while (date.getYear() < 2200) {
+			assertEquals(date.toEpochDay(),
+					BcbCsvParser.toEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+			date = date.plusDays(17);
+		}
+	}
+
+	/**
+	 * Parses a quotation CSV file content.
+	 *
+	 * @param csvContents
+	 *            The CSV file content.
+	 * @return The table parsed.
+	 * @throws IOException
+	 *             When the content could not be parsed.
+	 */
+	private static RateTable parse(String csvContents) throws IOException {
+		return new BcbCsvParser().parse(new ByteArrayInputStream(csvContents.getBytes(StandardCharsets.ISO_8859_1)),
+				LocalDate.of(2014, 11, 20));
+	}
+
+	/**
+	 * Parses a quotation CSV file content lazily.
+	 *
+	 * @param csvContents
+	 *            The CSV file content.
+	 * @return The table parsed.
+	 * @throws IOException
+	 *             When the content could not be indexed.
+	 */
+	private static RateTable parseLazily(String csvContents) throws IOException {
+		return new BcbCsvParser().parseLazily(new ByteArrayInputStream(
+				csvContents.getBytes(StandardCharsets.ISO_8859_1)), LocalDate.of(2014, 11, 20));
+	}
+
+	/**
+	 * Decodes a number on Brazilian format.
+	 *
+	 * @param number
+	 *            The number text.
+	 * @return The number scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 */
+	private static long decodeRate(String number) {
+		byte[] bytes = number.getBytes(StandardCharsets.ISO_8859_1);
+		return BcbCsvParser.decodeRate(bytes, 0, bytes.length);
+	}
+}
@@ -0,0 +1,134 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.time.LocalDate;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link BcbRateTableLoader} class against
+ * each mode of a {@link BcbStubServer}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BcbRateTableLoaderTest {
+
+	/**
+	 * The number of rows of the synthetic files.
+	 */
+	private static final int LARGE_FILE_ROWS = 5000;
+
+	/**
+	 * The local server which stands in for Brazilian central bank site.
+	 */
+	private static BcbStubServer bcbStubServer;
+
+	/**
+	 * Starts the local server.
+	 */
+	@BeforeClass
+	public static void startServer() throws IOException {
+		bcbStubServer = BcbStubServer.start(0, LARGE_FILE_ROWS, Duration.ofSeconds(2));
+	}
+
+	/**
+	 * Stops the local server.
+	 */
+	@AfterClass
+	public static void stopServer() {
+		bcbStubServer.close();
+	}
+
+	/**
+	 * Tests if the default constructor uses the base URL defined by the system
+	 * property.
+	 */
+	@Test
+	public void testDefaultBaseUrlProperty() {
+		assertEquals(BcbRateTableLoader.BCB_CSV_BASE_URL, new BcbRateTableLoader().getBaseUrl());
+
+		System.setProperty(BcbRateTableLoader.BASE_URL_PROPERTY, bcbStubServer.getBaseUrl());
+		try {
+			assertEquals(bcbStubServer.getBaseUrl(), new BcbRateTableLoader().getBaseUrl());
+		} finally {
+			System.clearProperty(BcbRateTableLoader.BASE_URL_PROPERTY);
+		}
+	}
+
+	/**
+	 * Tests if a synthetic file is loaded with all its rows.
+	 */
+	@Test
+	public void testLoadLargeFile() throws IOException {
+		RateTable rateTable = createLoader(BcbStubServer.Mode.LARGE).load(LocalDate.of(2020, 3, 2));
+
+		assertEquals(LARGE_FILE_ROWS, rateTable.size());
+		assertEquals(7969L, rateTable.convert(CurrencyCodes.pack("USD"), CurrencyCodes.pack("EUR"), 10000L));
+	}
+
+	/**
+	 * Tests if a file whose connection is closed halfway throws an
+	 * {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testLoadTruncatedFileIOException() throws IOException {
+		createLoader(BcbStubServer.Mode.TRUNCATED).load(LocalDate.of(2014, 11, 20));
+	}
+
+	/**
+	 * Tests if a missing file throws a {@link FileNotFoundException}.
+	 */
+	@Test(expected = FileNotFoundException.class)
+	public void testLoadMissingFileFileNotFoundException() throws IOException {
+		createLoader(BcbStubServer.Mode.MISSING).load(LocalDate.of(2014, 11, 20));
+	}
+
+	/**
+	 * Tests if a server error throws an {@link IOException} which is not a
+	 * {@link FileNotFoundException}.
+	 */
+	@Test
+	public void testLoadServerErrorIOException() {
+		try {
+			createLoader(BcbStubServer.Mode.ERROR).load(LocalDate.of(2014, 11, 20));
+			fail("The load should have failed.");
+		} catch (IOException ioException) {
+			assertFalse(ioException instanceof FileNotFoundException);
+		}
+	}
+
+	/**
+	 * Tests if a server which does not answer in time throws an
+	 * {@link IOException} caused by a {@link SocketTimeoutException}.
+	 */
+	@Test
+	public void testLoadSlowFileTimeout() {
+		BcbRateTableLoader bcbRateTableLoader = new BcbRateTableLoader(new BcbCsvFetcher(
+				bcbStubServer.getBaseUrl(BcbStubServer.Mode.SLOW), Duration.ofSeconds(1), Duration.ofMillis(100)));
+		try {
+			bcbRateTableLoader.load(LocalDate.of(2014, 11, 20));
+			fail("The load should have timed out.");
+		} catch (IOException ioException) {
+			assertTrue(ioException.getCause() instanceof SocketTimeoutException);
+		}
+	}
+
+	/**
+	 * Creates a loader of a server mode.
+	 *
+	 * @param mode
+	 *            The server mode.
+	 * @return The loader created.
+	 */
+	private static BcbRateTableLoader createLoader(BcbStubServer.Mode mode) {
+		return new BcbRateTableLoader(bcbStubServer.getBaseUrl(mode));
+	}
+}
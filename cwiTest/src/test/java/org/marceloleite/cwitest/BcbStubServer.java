@@ -0,0 +1,455 @@
+package org.marceloleite.cwitest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server which stands in for Brazilian central bank site, so
+ * correctness, load and latency tests run offline.
+ * <p>
+ * Each {@link Mode} is served on its own context, whose base URL is returned
+ * by {@link #getBaseUrl(Mode)} and can be informed to a
+ * {@link BcbRateTableLoader} or to the
+ * {@value BcbRateTableLoader#BASE_URL_PROPERTY} system property. The server can
+ * also be started alone through {@link #main(String[])}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+final class BcbStubServer implements Closeable {
+
+	/**
+	 * The number of rows of the synthetic files served by default.
+	 */
+	static final int DEFAULT_LARGE_FILE_ROWS = 10000;
+
+	/**
+	 * The maximum number of rows of the synthetic files, which is the number of
+	 * distinct currency abbreviations.
+	 */
+	static final int MAX_LARGE_FILE_ROWS = 26 * 26 * 26;
+
+	/**
+	 * The time the slow mode waits before answering by default.
+	 */
+	static final Duration DEFAULT_SLOW_DELAY = Duration.ofSeconds(2);
+
+	/**
+	 * The formatter of the quotation CSV file names.
+	 */
+	private static final DateTimeFormatter CSV_FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * The formatter of the dates on the quotation CSV file lines.
+	 */
+	private static final DateTimeFormatter CSV_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+	/**
+	 * The local HTTP server.
+	 */
+	private final HttpServer httpServer;
+
+	/**
+	 * The executor of the local HTTP server.
+	 */
+	private final ExecutorService executorService;
+
+	/**
+	 * The number of rows of the synthetic files.
+	 */
+	private final int largeFileRows;
+
+	/**
+	 * The time the slow mode waits before answering.
+	 */
+	private final Duration slowDelay;
+
+	/**
+	 * The number of requests received.
+	 */
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/**
+	 * The ways the server answers a request.
+	 */
+	enum Mode {
+
+		/**
+		 * Serves the quotation CSV files bundled with the tests, answering "404
+		 * Not Found" for the other dates.
+		 */
+		FIXTURES("fechamento"),
+
+		/**
+		 * Serves a synthetic file for any date, with the dollar and euro rates of
+		 * 20/11/2014 followed by other made up currencies.
+		 */
+		LARGE("large"),
+
+		/**
+		 * Serves the bundled files after a delay.
+		 */
+		SLOW("slow"),
+
+		/**
+		 * Announces the whole bundled file but closes the connection halfway
+		 * through it.
+		 */
+		TRUNCATED("truncated"),
+
+		/**
+		 * Answers "404 Not Found" for any date.
+		 */
+		MISSING("missing"),
+
+		/**
+		 * Answers "500 Internal Server Error" for any date.
+		 */
+		ERROR("error");
+
+		/**
+		 * The context path of the mode.
+		 */
+		private final String context;
+
+		/**
+		 * Creates a new {@link Mode}.
+		 *
+		 * @param context
+		 *            The context path of the mode.
+		 */
+		Mode(String context) {
+			this.context = context;
+		}
+	}
+
+	/**
+	 * Creates a new {@link BcbStubServer} object, which is already started.
+	 *
+	 * @param port
+	 *            The port listened or zero for any free port.
+	 * @param largeFileRows
+	 *            The number of rows of the synthetic files.
+	 * @param slowDelay
+	 *            The time the slow mode waits before answering.
+	 * @throws IOException
+	 *             When the server could not be started.
+	 */
+	private BcbStubServer(int port, int largeFileRows, Duration slowDelay) throws IOException {
+		if (largeFileRows < 2 || largeFileRows > MAX_LARGE_FILE_ROWS) {
+			throw new InvalidParameterException(
+					"Synthetic files must have between 2 and " + MAX_LARGE_FILE_ROWS + " rows.");
+		}
+
+		this.largeFileRows = largeFileRows;
+		this.slowDelay = slowDelay;
+		this.executorService = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "bcb-stub-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		httpServer.setExecutor(executorService);
+		for (Mode mode : Mode.values()) {
+			httpServer.createContext("/" + mode.context + "/", exchange -> {
+				requestCount.incrementAndGet();
+				try {
+					serve(exchange, mode);
+				} finally {
+					exchange.close();
+				}
+			});
+		}
+		httpServer.start();
+	}
+
+	/**
+	 * Starts a server on any free port with the default settings.
+	 *
+	 * @return The server started.
+	 * @throws IOException
+	 *             When the server could not be started.
+	 */
+	static BcbStubServer start() throws IOException {
+		return start(0, DEFAULT_LARGE_FILE_ROWS, DEFAULT_SLOW_DELAY);
+	}
+
+	/**
+	 * Starts a server.
+	 *
+	 * @param port
+	 *            The port listened or zero for any free port.
+	 * @param largeFileRows
+	 *            The number of rows of the synthetic files.
+	 * @param slowDelay
+	 *            The time the slow mode waits before answering.
+	 * @return The server started.
+	 * @throws IOException
+	 *             When the server could not be started.
+	 */
+	static BcbStubServer start(int port, int largeFileRows, Duration slowDelay) throws IOException {
+		return new BcbStubServer(port, largeFileRows, slowDelay);
+	}
+
+	/**
+	 * Starts a server and keeps it running until the process is stopped.
+	 *
+	 * @param args
+	 *            The port listened (any free port by default) and the number
+	 *            of rows of the synthetic files.
+	 * @throws IOException
+	 *             When the server could not be started.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+		int largeFileRows = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_LARGE_FILE_ROWS;
+		BcbStubServer bcbStubServer = start(port, largeFileRows, DEFAULT_SLOW_DELAY);
+		for (Mode mode : Mode.values()) {
+			System.out.println(mode + ": " + bcbStubServer.getBaseUrl(mode));
+		}
+	}
+
+	/**
+	 * Returns the base URL of the bundled files.
+	 *
+	 * @return The base URL of the bundled files.
+	 */
+	String getBaseUrl() {
+		return getBaseUrl(Mode.FIXTURES);
+	}
+
+	/**
+	 * Returns the base URL of a mode.
+	 *
+	 * @param mode
+	 *            The mode.
+	 * @return The base URL of the mode.
+	 */
+	String getBaseUrl(Mode mode) {
+		return "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/" + mode.context + "/";
+	}
+
+	/**
+	 * Returns the number of requests received.
+	 *
+	 * @return The number of requests received.
+	 */
+	long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@Override
+	public void close() {
+		httpServer.stop(0);
+		executorService.shutdownNow();
+	}
+
+	/**
+	 * Answers a request.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @param mode
+	 *            The mode of the request context.
+	 * @throws IOException
+	 *             When the response could not be written.
+	 */
+	private void serve(HttpExchange exchange, Mode mode) throws IOException {
+		LocalDate quotationDate = parseQuotationDate(exchange);
+		if (null == quotationDate) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+
+		switch (mode) {
+		case LARGE:
+			respond(exchange, createLargeFile(quotationDate));
+			break;
+		case SLOW:
+			try {
+				Thread.sleep(slowDelay.toMillis());
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			serveFixture(exchange, quotationDate);
+			break;
+		case TRUNCATED:
+			byte[] contents = readFixture(quotationDate);
+			if (null == contents) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, contents.length);
+			OutputStream responseBody = exchange.getResponseBody();
+			responseBody.write(contents, 0, contents.length / 2);
+			responseBody.flush();
+			break;
+		case MISSING:
+			exchange.sendResponseHeaders(404, -1);
+			break;
+		case ERROR:
+			exchange.sendResponseHeaders(500, -1);
+			break;
+		default:
+			serveFixture(exchange, quotationDate);
+		}
+	}
+
+	/**
+	 * Serves a bundled file or answers "404 Not Found" if there is none.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @param quotationDate
+	 *            The quotation date of the file.
+	 * @throws IOException
+	 *             When the response could not be written.
+	 */
+	private static void serveFixture(HttpExchange exchange, LocalDate quotationDate) throws IOException {
+		byte[] contents = readFixture(quotationDate);
+		if (null == contents) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		respond(exchange, contents);
+	}
+
+	/**
+	 * Writes a successful response.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @param contents
+	 *            The response body.
+	 * @throws IOException
+	 *             When the response could not be written.
+	 */
+	private static void respond(HttpExchange exchange, byte[] contents) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/csv");
+		exchange.sendResponseHeaders(200, contents.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(contents);
+		}
+	}
+
+	/**
+	 * Reads the bundled file of a date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the file.
+	 * @return The file contents or {@code null} if there is no file for the
+	 *         date.
+	 */
+	private static byte[] readFixture(LocalDate quotationDate) {
+		try {
+			return Fixtures.read(CSV_FILE_NAME_FORMATTER.format(quotationDate) + ".csv");
+		} catch (IOException ioException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the quotation date of the file requested.
+	 *
+	 * @param exchange
+	 *            The HTTP exchange.
+	 * @return The quotation date or {@code null} if the path is not a quotation
+	 *         CSV file name.
+	 */
+	private static LocalDate parseQuotationDate(HttpExchange exchange) {
+		String path = exchange.getRequestURI().getPath();
+		String fileName = path.substring(path.lastIndexOf('/') + 1);
+		if (!fileName.endsWith(".csv")) {
+			return null;
+		}
+
+		try {
+			return LocalDate.parse(fileName.substring(0, fileName.length() - 4), CSV_FILE_NAME_FORMATTER);
+		} catch (DateTimeParseException dateTimeParseException) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a synthetic file, whose first lines hold the dollar and euro rates
+	 * of 20/11/2014 and whose other lines hold made up currencies named from
+	 * "AAA" onwards.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the file.
+	 * @return The file contents.
+	 */
+	private byte[] createLargeFile(LocalDate quotationDate) {
+		String date = CSV_DATE_FORMATTER.format(quotationDate);
+		ByteArrayOutputStream contents = new ByteArrayOutputStream(largeFileRows * 72);
+		StringBuilder line = new StringBuilder(80);
+		appendLine(contents, line.append(date).append(";220;A;USD;2,55020000;2,55080000;1,00000000;1,00000000"));
+		appendLine(contents, line.append(date).append(";978;B;EUR;3,20030000;3,20140000;1,25490000;1,25520000"));
+
+		int dollar = CurrencyCodes.pack("USD");
+		int euro = CurrencyCodes.pack("EUR");
+		int code = 0;
+		for (int row = 2; row < largeFileRows; row++) {
+			while (!CurrencyCodes.isValid(code) || code == dollar || code == euro) {
+				code++;
+			}
+			long buyingRate = 1_000_000L + (code * 7919L) % 900_000_000L;
+			line.append(date).append(';').append(String.format("%03d", code % 1000)).append(";A;")
+					.append(CurrencyCodes.unpack(code)).append(';');
+			appendRate(line, buyingRate).append(';');
+			appendRate(line, buyingRate + 1000).append(';');
+			appendRate(line, 100_000_000L).append(';');
+			appendRate(line, 100_000_000L);
+			appendLine(contents, line);
+			code++;
+		}
+		return contents.toByteArray();
+	}
+
+	/**
+	 * Appends a scaled rate with eight decimal places separated by a comma.
+	 *
+	 * @param line
+	 *            The line being created.
+	 * @param scaledRate
+	 *            The rate scaled by {@link BcbCsvParser#RATE_SCALE_FACTOR}.
+	 * @return The line being created.
+	 */
+	private static StringBuilder appendRate(StringBuilder line, long scaledRate) {
+		return line.append(scaledRate / BcbCsvParser.RATE_SCALE_FACTOR).append(',')
+				.append(String.format("%08d", scaledRate % BcbCsvParser.RATE_SCALE_FACTOR));
+	}
+
+	/**
+	 * Writes a line to the file contents and clears it.
+	 *
+	 * @param contents
+	 *            The file contents.
+	 * @param line
+	 *            The line.
+	 */
+	private static void appendLine(ByteArrayOutputStream contents, StringBuilder line) {
+		byte[] bytes = line.append('\n').toString().getBytes(StandardCharsets.US_ASCII);
+		contents.write(bytes, 0, bytes.length);
+		line.setLength(0);
+	}
+}
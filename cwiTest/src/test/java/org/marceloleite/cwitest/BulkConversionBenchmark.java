@@ -0,0 +1,89 @@
+package org.marceloleite.cwitest;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the bulk conversions of {@link CWITest#convertAll} with converting
+ * each amount through {@link CWITest#currencyQuotation}, using the quotation
+ * CSV file of 20/11/2014 bundled with the tests.
+ * <p>
+ * Each operation converts a whole array of amounts. The array sizes are defined
+ * by the "benchmark.bulkSizes" system property, as a comma separated list (one
+ * million and ten million amounts by default). An array of a hundred million
+ * amounts needs a heap of about 2 GB.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BulkConversionBenchmark {
+
+	/**
+	 * The array sizes measured.
+	 */
+	private static final String SIZES = System.getProperty("benchmark.bulkSizes", "1000000,10000000");
+
+	/**
+	 * The largest array size converted one amount at a time, which would take
+	 * too long on the larger ones.
+	 */
+	private static final int MAX_SINGLE_CONVERSIONS_SIZE = 1000000;
+
+	/**
+	 * The benchmark entry method.
+	 *
+	 * @param args
+	 *            Not used.
+	 * @throws Exception
+	 *             When a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		CWITest cwiTest = new CWITest.Builder().rateTableLoader(new BcbRateTableLoader(Fixtures.getBaseUrl()))
+				.build();
+		Random random = new Random(20141120L);
+
+		MicroBenchmark.printHeader();
+		for (String size : SIZES.split(",")) {
+			int amounts = Integer.parseInt(size.trim());
+			long[] valuesMinor = new long[amounts];
+			double[] values = new double[amounts];
+			for (int index = 0; index < amounts; index++) {
+				valuesMinor[index] = random.nextInt(100000000);
+				values[index] = valuesMinor[index] / 100.0;
+			}
+			long[] convertedValuesMinor = new long[amounts];
+			double[] convertedValues = new double[amounts];
+
+			if (amounts <= MAX_SINGLE_CONVERSIONS_SIZE) {
+				print(amounts, MicroBenchmark.run("BulkConversionBenchmark.currencyQuotation[" + amounts + "]", () -> {
+					for (int index = 0; index < amounts; index++) {
+						convertedValues[index] = cwiTest.currencyQuotation("USD", "EUR", values[index], "20/11/2014")
+								.doubleValue();
+					}
+					return convertedValues;
+				}));
+			}
+			print(amounts, MicroBenchmark.run("BulkConversionBenchmark.convertAllMinorUnits[" + amounts + "]", () -> {
+				cwiTest.convertAll("USD", "EUR", valuesMinor, "20/11/2014", convertedValuesMinor);
+				return convertedValuesMinor;
+			}));
+			print(amounts, MicroBenchmark.run("BulkConversionBenchmark.convertAllDoubles[" + amounts + "]", () -> {
+				cwiTest.convertAll("USD", "EUR", values, "20/11/2014", convertedValues);
+				return convertedValues;
+			}));
+		}
+	}
+
+	/**
+	 * Prints the number of amounts converted per second by a benchmark.
+	 *
+	 * @param amounts
+	 *            The number of amounts converted by each operation.
+	 * @param result
+	 *            The benchmark results.
+	 */
+	private static void print(int amounts, MicroBenchmark.Result result) {
+		System.out.println(String.format(Locale.ROOT, "    %,.0f amounts/s, %.2f ns/amount",
+				result.getThroughput() * amounts, result.getAverageTime() / amounts));
+	}
+}
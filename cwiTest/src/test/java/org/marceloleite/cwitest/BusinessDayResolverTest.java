@@ -0,0 +1,161 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link BusinessDayResolver} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class BusinessDayResolverTest {
+
+	/**
+	 * Tests if weekend days are resolved to the preceding friday.
+	 */
+	@Test
+	public void testResolveWeekendToFriday() {
+		BusinessDayResolver businessDayResolver = BusinessDayResolver.getDefault();
+
+		assertEquals(LocalDate.of(2014, 11, 21), businessDayResolver.resolve("22/11/2014"));
+		assertEquals(LocalDate.of(2014, 11, 21), businessDayResolver.resolve("23/11/2014"));
+		assertEquals(LocalDate.of(2014, 11, 20), businessDayResolver.resolve("20/11/2014"));
+	}
+
+	/**
+	 * Tests if the Brazilian national holidays are resolved to the preceding
+	 * business day.
+	 */
+	@Test
+	public void testResolveHolidaysToPrecedingBusinessDay() {
+		BusinessDayResolver businessDayResolver = BusinessDayResolver.getDefault();
+
+		/* Carnival. */
+		assertEquals(LocalDate.of(2015, 2, 13), businessDayResolver.resolve(LocalDate.of(2015, 2, 17)));
+		/* Good friday. */
+		assertEquals(LocalDate.of(2015, 4, 2), businessDayResolver.resolve(LocalDate.of(2015, 4, 3)));
+		/* Corpus Christi. */
+		assertEquals(LocalDate.of(2015, 6, 3), businessDayResolver.resolve(LocalDate.of(2015, 6, 4)));
+		/* Christmas. */
+		assertEquals(LocalDate.of(2017, 12, 22), businessDayResolver.resolve(LocalDate.of(2017, 12, 25)));
+		/* Black consciousness day, a national holiday only from 2024 on. */
+		assertEquals(LocalDate.of(2024, 11, 19), businessDayResolver.resolve(LocalDate.of(2024, 11, 20)));
+		assertTrue(businessDayResolver.isBusinessDay(LocalDate.of(2014, 11, 20)));
+	}
+
+	/**
+	 * Tests if dates out of the precomputed calendar are resolved too.
+	 */
+	@Test
+	public void testResolveDatesOutOfPrecomputedCalendar() {
+		BusinessDayResolver businessDayResolver = BusinessDayResolver.getDefault();
+
+		assertEquals(LocalDate.of(1800, 1, 31), businessDayResolver.resolve("01/02/1800"));
+		assertEquals(LocalDate.of(2200, 12, 24), businessDayResolver.resolve(LocalDate.of(2200, 12, 25)));
+	}
+
+	/**
+	 * Tests if the precomputed calendar matches the rules evaluated date by date.
+	 */
+	@Test
+	public void testPrecomputedCalendarMatchesWeekendsOnly() {
+		BusinessDayResolver businessDayResolver = BusinessDayResolver.withoutHolidays();
+		LocalDate date = LocalDate.of(BusinessDayResolver.FIRST_YEAR, 1, 1);
+		while (date.getYear() <= BusinessDayResolver.LAST_YEAR) {
+			int daysToSubtract;
+			switch (date.getDayOfWeek()) {
+			case SATURDAY:
+				daysToSubtract = 1;
+				break;
+			case SUNDAY:
+				daysToSubtract = 2;
+				break;
+			default:
+				daysToSubtract = 0;
+			}
+			assertEquals(date.minusDays(daysToSubtract), businessDayResolver.resolve(date));
+			date = date.plusDays(1);
+		}
+	}
+
+	/**
+	 * Tests if the Easter Sunday is calculated correctly.
+	 */
+	@Test
+	public void testEasterSunday() {
+		assertEquals(LocalDate.of(2014, 4, 20), BusinessDayResolver.easterSunday(2014));
+		assertEquals(LocalDate.of(2017, 4, 16), BusinessDayResolver.easterSunday(2017));
+		assertEquals(LocalDate.of(2019, 4, 21), BusinessDayResolver.easterSunday(2019));
+		assertEquals(LocalDate.of(2038, 4, 25), BusinessDayResolver.easterSunday(2038));
+	}
+
+	/**
+	 * Tests if holiday rules limited to a range of years are respected.
+	 */
+	@Test
+	public void testLoadHolidayRulesWithYears() throws IOException {
+		BusinessDayResolver businessDayResolver = load("2014-11-20 # single date\n--11-19 2015-2016\n");
+
+		assertEquals(LocalDate.of(2014, 11, 19), businessDayResolver.resolve(LocalDate.of(2014, 11, 20)));
+		assertEquals(LocalDate.of(2014, 11, 19), businessDayResolver.resolve(LocalDate.of(2014, 11, 19)));
+		assertEquals(LocalDate.of(2015, 11, 18), businessDayResolver.resolve(LocalDate.of(2015, 11, 19)));
+		assertEquals(LocalDate.of(2017, 11, 17), businessDayResolver.resolve(LocalDate.of(2017, 11, 17)));
+	}
+
+	/**
+	 * Tests if an invalid holiday rule throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testLoadInvalidHolidayRuleIOException() throws IOException {
+		load("--13-01\n");
+	}
+
+	/**
+	 * Tests if a quotation date resolved twice returns the same object.
+	 */
+	@Test
+	public void testResolveMemoizesQuotationDates() {
+		BusinessDayResolver businessDayResolver = BusinessDayResolver.withoutHolidays();
+
+		assertSame(businessDayResolver.resolve("22/11/2014"), businessDayResolver.resolve("22/11/2014"));
+	}
+
+	/**
+	 * Tests if a quotation date on an invalid format throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testResolveInvalidFormatInvalidParameterException() {
+		BusinessDayResolver.getDefault().resolve("20-SEP-2017");
+	}
+
+	/**
+	 * Tests if an inexistent quotation date throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testResolveInexistentDateInvalidParameterException() {
+		BusinessDayResolver.getDefault().resolve("31/11/2014");
+	}
+
+	/**
+	 * Creates a resolver from a holidays file content.
+	 *
+	 * @param holidays
+	 *            The holidays file content.
+	 * @return The resolver created.
+	 * @throws IOException
+	 *             When the content has an invalid rule.
+	 */
+	private static BusinessDayResolver load(String holidays) throws IOException {
+		return BusinessDayResolver.load(new ByteArrayInputStream(holidays.getBytes(StandardCharsets.UTF_8)));
+	}
+}
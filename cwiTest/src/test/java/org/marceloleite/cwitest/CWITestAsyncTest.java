@@ -0,0 +1,174 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the asynchronous conversion methods of
+ * {@link CWITest}, using the quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CWITestAsyncTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * Tests if a conversion of a quotation table on cache is completed when
+	 * returned.
+	 */
+	@Test
+	public void testCurrencyQuotationAsyncCompletesCacheHitsImmediately() throws Exception {
+		CWITest cwiTest = new CWITest(new RateTableCache(), FIXTURE_LOADER);
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+
+		CompletableFuture<BigDecimal> future = cwiTest.currencyQuotationAsync("USD", "EUR", 100.00, "20/11/2014",
+				runnable -> fail("No thread should be used."), null);
+
+		assertTrue(future.isDone());
+		assertEquals(new BigDecimal("79.69"), future.get());
+	}
+
+	/**
+	 * Tests if thousands of pending conversions are served by two threads,
+	 * loading each quotation date only once.
+	 */
+	@Test
+	public void testCurrencyQuotationAsyncSharesLoadsAmongConversions() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		CWITest cwiTest = new CWITest(new RateTableCache(), quotationDate -> {
+			loads.incrementAndGet();
+			await(release);
+			return FIXTURE_LOADER.load(quotationDate);
+		});
+
+		ExecutorService executorService = Executors.newFixedThreadPool(2);
+		List<CompletableFuture<BigDecimal>> futures = new ArrayList<>();
+		try {
+			for (int index = 0; index < 5000; index++) {
+				String quotation = (17 + index % 5) + "/11/2014";
+				futures.add(cwiTest.currencyQuotationAsync("USD", "EUR", 100.00, quotation, executorService, null));
+			}
+			assertFalse(futures.get(0).isDone());
+			release.countDown();
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(10,
+					TimeUnit.SECONDS);
+		} finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(5, loads.get());
+		assertEquals(new BigDecimal("79.69"), futures.get(3).get());
+	}
+
+	/**
+	 * Tests if a conversion which exceeds its time limit completes with a
+	 * {@link TimeoutException} while the load still fills the cache.
+	 */
+	@Test
+	public void testCurrencyQuotationAsyncTimeout() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		RateTableCache rateTableCache = new RateTableCache();
+		CWITest cwiTest = new CWITest(rateTableCache, quotationDate -> {
+			await(release);
+			return FIXTURE_LOADER.load(quotationDate);
+		});
+
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<BigDecimal> future = cwiTest.currencyQuotationAsync("USD", "EUR", 100.00,
+					"20/11/2014", executorService, Duration.ofMillis(50));
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail("The conversion should have timed out.");
+			} catch (ExecutionException executionException) {
+				assertTrue(executionException.getCause() instanceof TimeoutException);
+			}
+
+			CompletableFuture<BigDecimal> cancelledFuture = cwiTest.currencyQuotationAsync("USD", "EUR", 100.00,
+					"20/11/2014", executorService, null);
+			assertTrue(cancelledFuture.cancel(false));
+
+			release.countDown();
+			executorService.shutdown();
+			executorService.awaitTermination(10, TimeUnit.SECONDS);
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		assertNotNull(rateTableCache.get(LocalDate.of(2014, 11, 20)));
+	}
+
+	/**
+	 * Tests if invalid parameters and load failures complete the future
+	 * exceptionally.
+	 */
+	@Test
+	public void testCurrencyQuotationAsyncFailures() throws InterruptedException {
+		CWITest cwiTest = new CWITest(new RateTableCache(), FIXTURE_LOADER);
+
+		assertCause(InvalidParameterException.class,
+				cwiTest.currencyQuotationAsync("USD", "EUR", 100.00, "20-SEP-2017", Runnable::run, null));
+		assertCause(IOException.class,
+				cwiTest.currencyQuotationAsync("USD", "EUR", 100.00, "01/02/1800", Runnable::run, null));
+		assertCause(RuntimeException.class,
+				cwiTest.currencyQuotationAsync("???", "EUR", 100.00, "20/11/2014", Runnable::run, null));
+	}
+
+	/**
+	 * Checks if a future completed exceptionally with an exception type.
+	 *
+	 * @param exceptionClass
+	 *            The expected exception type.
+	 * @param future
+	 *            The future.
+	 */
+	private static void assertCause(Class<? extends Throwable> exceptionClass, CompletableFuture<?> future)
+			throws InterruptedException {
+		try {
+			future.get();
+			fail("The future should have completed exceptionally.");
+		} catch (ExecutionException executionException) {
+			assertTrue(exceptionClass.isInstance(executionException.getCause()));
+		}
+	}
+
+	/**
+	 * Waits for a latch, converting an interruption into an {@link IOException}.
+	 *
+	 * @param latch
+	 *            The latch.
+	 * @throws IOException
+	 *             When the thread is interrupted.
+	 */
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			latch.await();
+		} catch (InterruptedException interruptedException) {
+			throw new IOException(interruptedException);
+		}
+	}
+}
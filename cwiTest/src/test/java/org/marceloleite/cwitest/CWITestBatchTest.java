@@ -0,0 +1,110 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the batch conversion methods of {@link CWITest},
+ * using the quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CWITestBatchTest {
+
+	/**
+	 * Tests if the results are returned on the requests order and each
+	 * quotation date is loaded only once.
+	 */
+	@Test
+	public void testCurrencyQuotationsLoadsEachDateOnce() {
+		AtomicInteger loads = new AtomicInteger();
+		RateTableLoader fixtureLoader = new BcbRateTableLoader(Fixtures.getBaseUrl());
+		CWITest cwiTest = new CWITest(new RateTableCache(), quotationDate -> {
+			loads.incrementAndGet();
+			return fixtureLoader.load(quotationDate);
+		});
+
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		List<ConversionResult> results;
+		try {
+			results = cwiTest.currencyQuotations(Arrays.asList(
+					new ConversionRequest("USD", "EUR", 100.00, "20/11/2014"),
+					new ConversionRequest("EUR", "USD", 79.69, "19/11/2014"),
+					new ConversionRequest("USD", "EUR", 100.00, "22/11/2014"),
+					new ConversionRequest("USD", "EUR", 100.00, "20/11/2014")), executorService);
+		} finally {
+			executorService.shutdown();
+		}
+
+		assertEquals(4, results.size());
+		assertEquals(new BigDecimal("79.69"), results.get(0).getConvertedValue());
+		assertEquals("EUR", results.get(1).getConversionRequest().getFrom());
+		assertTrue(results.get(2).isSuccessful());
+		assertEquals(new BigDecimal("79.69"), results.get(3).getConvertedValue());
+		assertEquals(3, loads.get());
+	}
+
+	/**
+	 * Tests if a request which cannot be converted does not abort the batch.
+	 */
+	@Test
+	public void testCurrencyQuotationsReportsErrorsPerRequest() {
+		CWITest cwiTest = new CWITest(new RateTableCache(), new BcbRateTableLoader(Fixtures.getBaseUrl()));
+
+		List<ConversionResult> results = cwiTest.currencyQuotations(Arrays.asList(
+				new ConversionRequest("USD", "EUR", 100.00, "20-SEP-2017"),
+				new ConversionRequest("???", "EUR", 100.00, "20/11/2014"),
+				new ConversionRequest("USD", "EUR", 100.00, "01/02/1800"),
+				new ConversionRequest("USD", "EUR", 100.00, "20/11/2014")));
+
+		assertTrue(results.get(0).getException() instanceof InvalidParameterException);
+		assertTrue(results.get(1).getException() instanceof RuntimeException);
+		assertTrue(results.get(2).getException() instanceof IOException);
+		assertEquals(new BigDecimal("79.69"), results.get(3).getConvertedValue());
+	}
+
+	/**
+	 * Tests if the bulk conversions return the same values as
+	 * {@link CWITest#currencyQuotation}.
+	 */
+	@Test
+	public void testConvertAllMatchesCurrencyQuotation() throws IOException {
+		CWITest cwiTest = new CWITest(new RateTableCache(), new BcbRateTableLoader(Fixtures.getBaseUrl()));
+		double[] values = { 100.00, 0.01, 79.69, 1234567.89, 0.1 + 0.2 };
+		long[] valuesMinor = { 10000L, 1L, 7969L, 123456789L, 30L };
+
+		double[] convertedValues = new double[values.length];
+		long[] convertedValuesMinor = new long[valuesMinor.length];
+		cwiTest.convertAll("USD", "EUR", values, "22/11/2014", convertedValues);
+		cwiTest.convertAll("USD", "EUR", valuesMinor, "22/11/2014", convertedValuesMinor);
+
+		for (int index = 0; index < values.length; index++) {
+			BigDecimal expected = cwiTest.currencyQuotation("USD", "EUR", values[index], "22/11/2014");
+			assertEquals(expected.doubleValue(), convertedValues[index], 0.0);
+			if (index < values.length - 1) {
+				assertEquals(expected, FixedPointConverter.fromMinorUnits(convertedValuesMinor[index]));
+			}
+		}
+	}
+
+	/**
+	 * Tests if a bulk conversion of an unknown currency throws a
+	 * {@link RuntimeException}.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testConvertAllUnknownCurrencyRuntimeException() throws IOException {
+		CWITest cwiTest = new CWITest(new RateTableCache(), new BcbRateTableLoader(Fixtures.getBaseUrl()));
+		cwiTest.convertAll("USD", "???", new long[1], "20/11/2014", new long[1]);
+	}
+}
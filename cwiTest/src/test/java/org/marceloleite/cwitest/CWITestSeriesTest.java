@@ -0,0 +1,153 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the quotation series of {@link CWITest}, using
+ * the quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CWITestSeriesTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * Tests if a series has a point for each business day of the period, and
+	 * if the days without quotation CSV file are skipped.
+	 */
+	@Test
+	public void testCurrencyQuotationSeries() {
+		CWITest cwiTest = new CWITest(new RateTableCache(), FIXTURE_LOADER);
+
+		List<RateSeries> rateSeriesList;
+		try (Stream<RateSeries> stream = cwiTest.currencyQuotationSeries("USD", "EUR", LocalDate.of(2014, 11, 15),
+				LocalDate.of(2014, 11, 28))) {
+			rateSeriesList = stream.collect(Collectors.toList());
+		}
+
+		assertEquals(1, rateSeriesList.size());
+		RateSeries rateSeries = rateSeriesList.get(0);
+		assertEquals("USD", rateSeries.getFrom());
+		assertEquals("EUR", rateSeries.getTo());
+		assertEquals(CrossRateMatrix.Variant.BUYING, rateSeries.getVariant());
+		assertEquals(5, rateSeries.size());
+		for (int index = 0; index < rateSeries.size(); index++) {
+			assertEquals(LocalDate.of(2014, 11, 17 + index), rateSeries.getQuotationDate(index));
+		}
+		assertEquals(79686279L, rateSeries.getRate(3));
+		assertEquals(0.79686279, rateSeries.getRateAsDouble(3), 0.0);
+	}
+
+	/**
+	 * Tests if the tables already on cache are reused, and if the tables loaded
+	 * for a series are kept on cache.
+	 */
+	@Test
+	public void testCurrencyQuotationSeriesReusesCache() throws IOException {
+		AtomicInteger loads = new AtomicInteger();
+		CWITest cwiTest = new CWITest(new RateTableCache(), quotationDate -> {
+			loads.incrementAndGet();
+			return FIXTURE_LOADER.load(quotationDate);
+		});
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+
+		long points = cwiTest.currencyQuotationSeries("USD", "EUR", LocalDate.of(2014, 11, 17),
+				LocalDate.of(2014, 11, 21), CrossRateMatrix.Variant.SELLING, Runnable::run)
+				.mapToInt(RateSeries::size).sum();
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "17/11/2014");
+
+		assertEquals(5, points);
+		assertEquals(5, loads.get());
+	}
+
+	/**
+	 * Tests if a series spanning many chunks is reported in chronological
+	 * order.
+	 */
+	@Test
+	public void testCurrencyQuotationSeriesChunksAreOrdered() {
+		CWITest cwiTest = new CWITest(new RateTableCache(), CWITestSeriesTest::createRateTable);
+
+		List<RateSeries> rateSeriesList = cwiTest.currencyQuotationSeries("EUR", "USD", LocalDate.of(2014, 1, 1),
+				LocalDate.of(2014, 12, 31)).collect(Collectors.toList());
+
+		assertTrue(rateSeriesList.size() > 1);
+		int previousEpochDay = Integer.MIN_VALUE;
+		int points = 0;
+		for (RateSeries rateSeries : rateSeriesList) {
+			assertTrue(rateSeries.size() <= CWITest.SERIES_CHUNK_SIZE);
+			for (int index = 0; index < rateSeries.size(); index++) {
+				assertTrue(rateSeries.getEpochDay(index) > previousEpochDay);
+				previousEpochDay = rateSeries.getEpochDay(index);
+			}
+			points += rateSeries.size();
+		}
+		assertTrue(points > 240);
+		assertEquals(125492118L, rateSeriesList.get(0).getRate(0));
+	}
+
+	/**
+	 * Tests if a load failure other than a missing file is thrown as an
+	 * {@link UncheckedIOException}.
+	 */
+	@Test(expected = UncheckedIOException.class)
+	public void testCurrencyQuotationSeriesLoadFailure() {
+		CWITest cwiTest = new CWITest(new RateTableCache(), quotationDate -> {
+			throw new IOException("Connection reset.");
+		});
+
+		cwiTest.currencyQuotationSeries("USD", "EUR", LocalDate.of(2014, 11, 17), LocalDate.of(2014, 11, 21))
+				.count();
+	}
+
+	/**
+	 * Tests if a currency with characters other than letters throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testCurrencyQuotationSeriesInvalidCurrency() {
+		new CWITest().currencyQuotationSeries("US1", "EUR", LocalDate.of(2014, 11, 17), LocalDate.of(2014, 11, 21));
+	}
+
+	/**
+	 * Tests if a period which ends before it starts throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testCurrencyQuotationSeriesInvalidPeriod() {
+		new CWITest().currencyQuotationSeries("USD", "EUR", LocalDate.of(2014, 11, 21), LocalDate.of(2014, 11, 17));
+	}
+
+	/**
+	 * Creates a table with the dollar and euro rates of 20/11/2014 on any
+	 * quotation date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @return The table created.
+	 */
+	private static RateTable createRateTable(LocalDate quotationDate) {
+		RateTable.Builder builder = new RateTable.Builder(quotationDate);
+		builder.handleRow(16394, 220, 'A', CurrencyCodes.pack("USD"), 255020000L, 255080000L, 100000000L,
+				100000000L);
+		builder.handleRow(16394, 978, 'B', CurrencyCodes.pack("EUR"), 320030000L, 320140000L, 125490000L,
+				125520000L);
+		return builder.build();
+	}
+}
@@ -0,0 +1,178 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check if a single {@link CWITest} object converts
+ * correctly when shared by many threads, using the quotation CSV files bundled
+ * with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CWITestStressTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * The currencies converted by the test cases.
+	 */
+	private static final String[] CURRENCIES = { "USD", "EUR", "GBP", "JPY", "ARS", "CHF", "CNY", "CLP" };
+
+	/**
+	 * The quotation dates converted by the test cases, including a weekend.
+	 */
+	private static final String[] QUOTATIONS = { "17/11/2014", "18/11/2014", "19/11/2014", "20/11/2014",
+			"21/11/2014", "22/11/2014", "23/11/2014" };
+
+	/**
+	 * The number of conversions of each thread.
+	 */
+	private static final int CONVERSIONS_PER_THREAD = 5000;
+
+	/**
+	 * Tests if concurrent conversions return the same values as sequential
+	 * ones, loading each quotation date only once.
+	 */
+	@Test
+	public void testConcurrentConversions() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CWITest cwiTest = new CWITest.Builder().rateTableLoader(quotationDate -> {
+			loads.incrementAndGet();
+			return FIXTURE_LOADER.load(quotationDate);
+		}).build();
+
+		convertConcurrently(cwiTest, computeExpectedValues());
+
+		assertEquals(5, loads.get());
+	}
+
+	/**
+	 * Tests if concurrent conversions return the same values as sequential
+	 * ones while the tables are evicted from and loaded into a small cache.
+	 */
+	@Test
+	public void testConcurrentConversionsWithEvictions() throws Exception {
+		CWITest cwiTest = new CWITest.Builder().rateTableCache(new RateTableCache(2,
+				RateTableCache.DEFAULT_TODAY_TIME_TO_LIVE)).rateTableLoader(FIXTURE_LOADER).build();
+
+		convertConcurrently(cwiTest, computeExpectedValues());
+	}
+
+	/**
+	 * Tests if the shared object is always the same.
+	 */
+	@Test
+	public void testGetDefaultIsShared() {
+		assertSame(CWITest.getDefault(), CWITest.getDefault());
+	}
+
+	/**
+	 * Tests if a builder without loader throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testBuilderNullLoaderInvalidParameterException() {
+		new CWITest.Builder().rateTableLoader(null).build();
+	}
+
+	/**
+	 * Computes the expected value of every conversion sequentially, on an
+	 * object of its own.
+	 *
+	 * @return The converted values indexed by conversion key.
+	 */
+	private static Map<String, BigDecimal> computeExpectedValues() throws IOException {
+		CWITest cwiTest = new CWITest.Builder().rateTableLoader(FIXTURE_LOADER).build();
+		Map<String, BigDecimal> expectedValues = new HashMap<>();
+		for (String quotation : QUOTATIONS) {
+			for (String from : CURRENCIES) {
+				for (String to : CURRENCIES) {
+					expectedValues.put(createKey(from, to, quotation),
+							cwiTest.currencyQuotation(from, to, 123.45, quotation));
+				}
+			}
+		}
+		return expectedValues;
+	}
+
+	/**
+	 * Converts random currency pairs and dates on many threads at once, through
+	 * both the synchronous and asynchronous methods, and checks every result.
+	 *
+	 * @param cwiTest
+	 *            The object shared by all threads.
+	 * @param expectedValues
+	 *            The expected converted values indexed by conversion key.
+	 */
+	private static void convertConcurrently(CWITest cwiTest, Map<String, BigDecimal> expectedValues)
+			throws Exception {
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> futures = new ArrayList<>(threads);
+		try {
+			for (int thread = 0; thread < threads; thread++) {
+				futures.add(executorService.submit(() -> {
+					start.await();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					for (int conversion = 0; conversion < CONVERSIONS_PER_THREAD; conversion++) {
+						String from = CURRENCIES[random.nextInt(CURRENCIES.length)];
+						String to = CURRENCIES[random.nextInt(CURRENCIES.length)];
+						String quotation = QUOTATIONS[random.nextInt(QUOTATIONS.length)];
+						BigDecimal convertedValue = conversion % 4 == 0
+								? cwiTest.currencyQuotationAsync(from, to, 123.45, quotation).get(10, TimeUnit.SECONDS)
+								: cwiTest.currencyQuotation(from, to, 123.45, quotation);
+						assertEquals(createKey(from, to, quotation), expectedValues.get(createKey(from, to, quotation)),
+								convertedValue);
+					}
+					return CONVERSIONS_PER_THREAD;
+				}));
+			}
+			start.countDown();
+
+			int conversions = 0;
+			for (Future<Integer> future : futures) {
+				conversions += future.get(60, TimeUnit.SECONDS);
+			}
+			assertEquals(threads * CONVERSIONS_PER_THREAD, conversions);
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates the key of a conversion.
+	 *
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param quotation
+	 *            The quotation date.
+	 * @return The conversion key.
+	 */
+	private static String createKey(String from, String to, String quotation) {
+		return from + "/" + to + "@" + quotation;
+	}
+}
@@ -7,17 +7,55 @@ import java.math.BigDecimal;
 import java.security.InvalidParameterException;
 import java.util.Random;
 
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 import org.marceloleite.cwitest.CWITest;
 
 /**
- * Test cases created to check the {@link CWITest} class.
+ * Test cases created to check the {@link CWITest} class against a local server
+ * which serves the quotation CSV files bundled with the tests.
  * 
  * @author Marcelo Leite
  *
  */
 public class CWITestTest {
 
+	/**
+	 * The local server which stands in for Brazilian central bank site.
+	 */
+	private static BcbStubServer bcbStubServer;
+
+	/**
+	 * The object tested, with an empty cache.
+	 */
+	private CWITest cwiTest;
+
+	/**
+	 * Starts the local server.
+	 */
+	@BeforeClass
+	public static void startServer() throws IOException {
+		bcbStubServer = BcbStubServer.start();
+	}
+
+	/**
+	 * Stops the local server.
+	 */
+	@AfterClass
+	public static void stopServer() {
+		bcbStubServer.close();
+	}
+
+	/**
+	 * Creates the object tested.
+	 */
+	@Before
+	public void createCWITest() {
+		cwiTest = new CWITest(new RateTableCache(), new BcbRateTableLoader(bcbStubServer.getBaseUrl()));
+	}
+
 	/**
 	 * Tests the {@link CWITest#currencyQuotation} method based on the example shown
 	 * on test description.
@@ -28,7 +66,7 @@ public class CWITestTest {
 		expected[0] = new BigDecimal("79.69");
 		BigDecimal[] results = new BigDecimal[1];
 		try {
-			results[0] = new CWITest().currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+			results[0] = cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -48,7 +86,7 @@ public class CWITestTest {
 		BigDecimal returnedValue = null;
 		Number randomAmount = ((new Random().nextDouble()) * maxValue);
 		try {
-			returnedValue = new CWITest().currencyQuotation("USD", "EUR", randomAmount, "20/11/2014");
+			returnedValue = cwiTest.currencyQuotation("USD", "EUR", randomAmount, "20/11/2014");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -64,7 +102,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationEmptyFromInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation("", "EUR", 100.00, "20/09/2017");
+			cwiTest.currencyQuotation("", "EUR", 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -78,7 +116,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationNullFromInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation(null, "EUR", 100.00, "20/09/2017");
+			cwiTest.currencyQuotation(null, "EUR", 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -92,7 +130,7 @@ public class CWITestTest {
 	@Test(expected = RuntimeException.class)
 	public void testCurrencyQuotationInvalidFromRuntimeException() {
 		try {
-			new CWITest().currencyQuotation("???", "EUR", 100.00, "20/09/2017");
+			cwiTest.currencyQuotation("???", "EUR", 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -106,7 +144,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationEmptyToInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation("USD", "", 100.00, "20/09/2017");
+			cwiTest.currencyQuotation("USD", "", 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -120,7 +158,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationNullToInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation("USD", null, 100.00, "20/09/2017");
+			cwiTest.currencyQuotation("USD", null, 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -134,7 +172,7 @@ public class CWITestTest {
 	@Test(expected = RuntimeException.class)
 	public void testCurrencyQuotationInvalidToRuntimeException() {
 		try {
-			new CWITest().currencyQuotation("USD", ":::", 100.00, "20/09/2017");
+			cwiTest.currencyQuotation("USD", ":::", 100.00, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -150,7 +188,7 @@ public class CWITestTest {
 	public void testCurrencyQuotationValueSmallerThanZeroInvalidParameterException() {
 		Number randomNegativeValue = ((new Random().nextDouble() - 1) * Double.MAX_VALUE);
 		try {
-			new CWITest().currencyQuotation("USD", "EUR", randomNegativeValue, "20/09/2017");
+			cwiTest.currencyQuotation("USD", "EUR", randomNegativeValue, "20/09/2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -165,7 +203,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationNullQuotationDateInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation("USD", "EUR", 100.00, null);
+			cwiTest.currencyQuotation("USD", "EUR", 100.00, null);
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -180,7 +218,7 @@ public class CWITestTest {
 	@Test(expected = InvalidParameterException.class)
 	public void testCurrencyQuotationInvalidQuotationDateFormatInvalidParameterException() {
 		try {
-			new CWITest().currencyQuotation("USD", "EUR", 100.00, "20-SEP-2017");
+			cwiTest.currencyQuotation("USD", "EUR", 100.00, "20-SEP-2017");
 		} catch (IOException ioException) {
 			fail("IOException thrown: " + ioException.getMessage());
 		}
@@ -194,6 +232,6 @@ public class CWITestTest {
 	 */
 	@Test(expected = IOException.class)
 	public void testCurrencyQuotationQuotationDateNotAvailableIOException() throws IOException {
-		new CWITest().currencyQuotation("USD", "EUR", 100.00, "01/02/1800");
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "01/02/1800");
 	}
 }
@@ -0,0 +1,77 @@
+package org.marceloleite.cwitest;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Compares the former {@code double} conversion of {@link CWITest} with the
+ * exact conversions of {@link FixedPointConverter}, using the quotation CSV
+ * file of 20/11/2014 bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionBenchmark {
+
+	/**
+	 * The benchmark entry method.
+	 *
+	 * @param args
+	 *            Not used.
+	 * @throws Exception
+	 *             When a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		RateTable rateTable = new BcbCsvParser().parse(new ByteArrayInputStream(Fixtures.read("20141120.csv")),
+				LocalDate.of(2014, 11, 20));
+		int dollar = CurrencyCodes.pack("USD");
+		int euro = CurrencyCodes.pack("EUR");
+		int peso = CurrencyCodes.pack("ARS");
+		CrossRateMatrix crossRateMatrix = rateTable.getCrossRateMatrix();
+		int dollarIndex = crossRateMatrix.indexOf(dollar);
+		int euroIndex = crossRateMatrix.indexOf(euro);
+		long dollarRate = rateTable.getBuyingRate(rateTable.slotOf(dollar));
+		long euroRate = rateTable.getBuyingRate(rateTable.slotOf(euro));
+		Number value = 100.00;
+		BigDecimal preciseValue = new BigDecimal("100.0012345");
+
+		MicroBenchmark.printHeader();
+		MicroBenchmark.run("ConversionBenchmark.convertDouble",
+				() -> convertDouble(rateTable, "USD", "EUR", value));
+		MicroBenchmark.run("ConversionBenchmark.convertBigDecimal",
+				() -> CWITest.convert(rateTable, "USD", "EUR", value));
+		MicroBenchmark.run("ConversionBenchmark.convertBigDecimalExtraDecimals",
+				() -> CWITest.convert(rateTable, "USD", "EUR", preciseValue));
+		MicroBenchmark.run("ConversionBenchmark.convertMinorUnits",
+				() -> rateTable.convert(dollar, euro, 10000L));
+		MicroBenchmark.run("ConversionBenchmark.convertMinorUnitsNotHot",
+				() -> rateTable.convert(dollar, peso, 10000L));
+		MicroBenchmark.run("ConversionBenchmark.crossRate",
+				() -> crossRateMatrix.getCrossRate(dollarIndex, euroIndex, CrossRateMatrix.Variant.SELLING));
+		MicroBenchmark.run("ConversionBenchmark.convertMinorUnitsLargeAmount",
+				() -> FixedPointConverter.convert(Long.MAX_VALUE / 1000, dollarRate, euroRate));
+	}
+
+	/**
+	 * Converts an amount as {@link CWITest} did before the exact conversion,
+	 * dividing {@code double} rates and rounding the result with
+	 * {@link Math#round(double)}.
+	 *
+	 * @param rateTable
+	 *            The quotation table.
+	 * @param from
+	 *            The quotation base currency.
+	 * @param to
+	 *            The quotation quote currency.
+	 * @param value
+	 *            The amount of base currency to convert.
+	 * @return The equivalent amount on the quote currency.
+	 */
+	private static BigDecimal convertDouble(RateTable rateTable, String from, String to, Number value) {
+		double exchangeRate = (BcbCsvParser.toDouble(rateTable.getBuyingRate(rateTable.slotOf(from)))
+				/ BcbCsvParser.toDouble(rateTable.getBuyingRate(rateTable.slotOf(to))));
+		double convertedValue = Math.round((value.doubleValue() * exchangeRate) * 100.0) / 100.0;
+		return new BigDecimal(Double.toString(convertedValue));
+	}
+}
@@ -0,0 +1,166 @@
+package org.marceloleite.cwitest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and the latencies of a {@link ConversionServer}
+ * under load, converting random currency pairs and dates on many client
+ * threads at once.
+ * <p>
+ * By default a local server is started on the quotation CSV files bundled with
+ * the tests. The base URL of a running server (e.g. "http://localhost:8080")
+ * can be informed as the first argument instead. The load is tuned through the
+ * "benchmark.clients" (twice the number of available processors by default)
+ * and "benchmark.durationSeconds" (10 by default) system properties.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionServerLoadHarness {
+
+	/**
+	 * The number of client threads.
+	 */
+	private static final int CLIENTS = Integer.getInteger("benchmark.clients",
+			Runtime.getRuntime().availableProcessors() * 2);
+
+	/**
+	 * The duration of the load, in seconds.
+	 */
+	private static final int DURATION_SECONDS = Integer.getInteger("benchmark.durationSeconds", 10);
+
+	/**
+	 * The currencies converted.
+	 */
+	private static final String[] CURRENCIES = { "USD", "EUR", "GBP", "JPY", "ARS", "CHF", "CNY", "CLP" };
+
+	/**
+	 * The quotation dates converted, URL encoded.
+	 */
+	private static final String[] QUOTATIONS = { "17%2F11%2F2014", "18%2F11%2F2014", "19%2F11%2F2014",
+			"20%2F11%2F2014", "21%2F11%2F2014" };
+
+	/**
+	 * The load harness entry method.
+	 *
+	 * @param args
+	 *            Optionally, the base URL of a running server.
+	 * @throws Exception
+	 *             When the load fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty(ConversionServer.NO_DELAY_PROPERTY, "true");
+		ConversionServer conversionServer = null;
+		String baseUrl;
+		if (args.length > 0) {
+			baseUrl = args[0];
+		} else {
+			conversionServer = new ConversionServer.Builder()
+					.cwiTest(new CWITest.Builder().rateTableLoader(new BcbRateTableLoader(Fixtures.getBaseUrl()))
+							.build())
+					.host("127.0.0.1").port(0).build();
+			conversionServer.start();
+			baseUrl = "http://127.0.0.1:" + conversionServer.getPort();
+		}
+
+		try {
+			System.out.println("Warming up " + baseUrl + "...");
+			run(baseUrl, Math.max(1, DURATION_SECONDS / 5));
+			System.out.println("Loading " + baseUrl + " with " + CLIENTS + " clients for " + DURATION_SECONDS
+					+ " s...");
+			run(baseUrl, DURATION_SECONDS);
+			if (null != conversionServer) {
+				System.out.println(String.format(Locale.ROOT, "Server: %d conversions on %d batches.",
+						conversionServer.getConversionCount(), conversionServer.getBatchCount()));
+			}
+		} finally {
+			if (null != conversionServer) {
+				conversionServer.close();
+			}
+		}
+	}
+
+	/**
+	 * Loads a server during a while and prints the results.
+	 *
+	 * @param baseUrl
+	 *            The base URL of the server.
+	 * @param durationSeconds
+	 *            The duration of the load, in seconds.
+	 * @throws Exception
+	 *             When a client fails.
+	 */
+	private static void run(String baseUrl, int durationSeconds) throws Exception {
+		LatencyHistogram latencyHistogram = new LatencyHistogram();
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+		ExecutorService executorService = Executors.newFixedThreadPool(CLIENTS);
+		List<Future<Integer>> futures = new ArrayList<>(CLIENTS);
+		try {
+			for (int client = 0; client < CLIENTS; client++) {
+				futures.add(executorService.submit(() -> load(baseUrl, deadline, latencyHistogram)));
+			}
+
+			int errors = 0;
+			for (Future<Integer> future : futures) {
+				errors += future.get();
+			}
+			double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+			System.out.println(String.format(Locale.ROOT, "%d requests, %d errors, %.1f requests/s.",
+					latencyHistogram.getCount(), errors, latencyHistogram.getCount() / seconds));
+			System.out.println(String.format(Locale.ROOT,
+					"Latency: mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us.",
+					latencyHistogram.getMean() / 1000.0, latencyHistogram.getPercentile(50.0) / 1000.0,
+					latencyHistogram.getPercentile(99.0) / 1000.0, latencyHistogram.getMax() / 1000.0));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Sends random conversions until a deadline, reusing the connection.
+	 *
+	 * @param baseUrl
+	 *            The base URL of the server.
+	 * @param deadline
+	 *            The time to stop, as returned by {@link System#nanoTime()}.
+	 * @param latencyHistogram
+	 *            The histogram which receives the latency of each request.
+	 * @return The number of requests which were not answered with success.
+	 */
+	private static int load(String baseUrl, long deadline, LatencyHistogram latencyHistogram) throws IOException {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		byte[] buffer = new byte[1024];
+		int errors = 0;
+		while (System.nanoTime() < deadline) {
+			String path = "/convert?from=" + CURRENCIES[random.nextInt(CURRENCIES.length)] + "&to="
+					+ CURRENCIES[random.nextInt(CURRENCIES.length)] + "&value=" + random.nextInt(100000) + "."
+					+ random.nextInt(10) + "&quotation=" + QUOTATIONS[random.nextInt(QUOTATIONS.length)];
+			long startTime = System.nanoTime();
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+			int status = connection.getResponseCode();
+			try (InputStream inputStream = status < 400 ? connection.getInputStream()
+					: connection.getErrorStream()) {
+				while (null != inputStream && inputStream.read(buffer) >= 0) {
+					/* Reads the whole body, so the connection is kept alive. */
+				}
+			}
+			latencyHistogram.record(System.nanoTime() - startTime);
+			if (status != 200) {
+				errors++;
+			}
+		}
+		return errors;
+	}
+}
@@ -0,0 +1,306 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidParameterException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link ConversionServer} class, using the
+ * quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class ConversionServerTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * The server of the test, closed after it.
+	 */
+	private ConversionServer conversionServer;
+
+	/**
+	 * Closes the server of the test.
+	 */
+	@After
+	public void closeServer() {
+		if (null != conversionServer) {
+			conversionServer.close();
+		}
+	}
+
+	/**
+	 * Tests if an amount is converted.
+	 */
+	@Test
+	public void testConvert() throws IOException {
+		startServer(FIXTURE_LOADER, 4);
+
+		Response response = send("GET", "/convert?from=USD&to=EUR&value=100.00&quotation=20%2F11%2F2014", null);
+
+		assertEquals(200, response.status);
+		assertEquals("{\"from\":\"USD\",\"to\":\"EUR\",\"value\":100.00,\"quotation\":\"20/11/2014\","
+				+ "\"convertedValue\":79.69}", response.body);
+		assertEquals(1, conversionServer.getConversionCount());
+		assertEquals(1, conversionServer.getBatchCount());
+	}
+
+	/**
+	 * Tests if each kind of failure is answered with its own status.
+	 */
+	@Test
+	public void testConvertFailures() throws IOException {
+		startServer(FIXTURE_LOADER, 4);
+
+		assertEquals(400, send("GET", "/convert?from=USD&to=EUR&quotation=20/11/2014", null).status);
+		assertEquals(400, send("GET", "/convert?from=USD&to=EUR&value=abc&quotation=20/11/2014", null).status);
+		assertEquals(400, send("GET", "/convert?from=USD&to=EUR&value=-1&quotation=20/11/2014", null).status);
+		assertEquals(422, send("GET", "/convert?from=USD&to=XYZ&value=1&quotation=20/11/2014", null).status);
+		assertEquals(404, send("GET", "/convert?from=USD&to=EUR&value=1&quotation=20/11/2013", null).status);
+		assertEquals(405, send("POST", "/convert", "").status);
+		Response response = send("GET", "/convert?from=USD&to=XYZ&value=1&quotation=20/11/2014", null);
+		assertTrue(response.body.startsWith("{\"error\":\"Could not find exchanging rates for \\\"XYZ\\\""));
+	}
+
+	/**
+	 * Tests if the records of a batch are answered on the request order.
+	 */
+	@Test
+	public void testBatch() throws IOException {
+		startServer(FIXTURE_LOADER, 4);
+
+		Response response = send("POST", "/batch", "from,to,amount,date\nUSD,EUR,100.00,20/11/2014\n"
+				+ "USD,EUR,abc,20/11/2014\nEUR;USD;79.69;19/11/2014\n");
+
+		assertEquals(200, response.status);
+		String[] lines = response.body.split("\n");
+		assertEquals(4, lines.length);
+		assertEquals("from,to,amount,date,converted,error", lines[0]);
+		assertEquals("USD,EUR,100.00,20/11/2014,79.69,", lines[1]);
+		assertEquals("USD,EUR,abc,20/11/2014,,Invalid amount \"abc\".", lines[2]);
+		assertTrue(lines[3].matches("EUR;USD;79\\.69;19/11/2014;[0-9.]+;"));
+	}
+
+	/**
+	 * Tests if the health and the metrics are answered.
+	 */
+	@Test
+	public void testHealthAndMetrics() throws IOException {
+		startServer(FIXTURE_LOADER, 4);
+		send("GET", "/convert?from=USD&to=EUR&value=100.00&quotation=20/11/2014", null);
+
+		Response health = send("GET", "/health", null);
+		Response metrics = send("GET", "/metrics", null);
+
+		assertEquals(200, health.status);
+		assertTrue(health.body.startsWith("{\"status\":\"UP\""));
+		assertEquals(200, metrics.status);
+		assertTrue(metrics.body.contains("Conversions: 1\n"));
+		assertTrue(metrics.body.contains("Batches: 1\n"));
+		assertEquals(3, conversionServer.getRequestCount());
+	}
+
+	/**
+	 * Tests if conversions of the same date which arrive while another one is
+	 * converted are converted together.
+	 */
+	@Test
+	public void testConcurrentConversionsAreMicroBatched() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		startServer(quotationDate -> {
+			loads.incrementAndGet();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			return FIXTURE_LOADER.load(quotationDate);
+		}, 20);
+
+		int clients = 16;
+		ExecutorService executorService = Executors.newFixedThreadPool(clients);
+		try {
+			List<Future<Response>> futures = new ArrayList<>();
+			for (int client = 0; client < clients; client++) {
+				futures.add(executorService.submit(() -> send("GET",
+						"/convert?from=USD&to=EUR&value=100.00&quotation=20/11/2014", null)));
+			}
+			awaitPendingCount(clients);
+			release.countDown();
+
+			for (Future<Response> future : futures) {
+				Response response = future.get(10, TimeUnit.SECONDS);
+				assertEquals(200, response.status);
+				assertTrue(response.body.endsWith("\"convertedValue\":79.69}"));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		/* The first batch waits for the table while the others are queued on a single batch. */
+		assertEquals(1, loads.get());
+		assertEquals(clients, conversionServer.getConversionCount());
+		assertTrue(conversionServer.getBatchCount() <= 2);
+		assertEquals(0, conversionServer.getPendingCount());
+	}
+
+	/**
+	 * Tests if the request which starts a micro-batch is answered with a
+	 * timeout when its table takes too long, as the ones queued behind it.
+	 */
+	@Test
+	public void testConvertTimeout() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		conversionServer = new ConversionServer.Builder().cwiTest(new CWITest.Builder().rateTableLoader(
+				quotationDate -> {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException interruptedException) {
+						Thread.currentThread().interrupt();
+					}
+					return FIXTURE_LOADER.load(quotationDate);
+				}).build()).host("127.0.0.1").port(0).threads(4).requestTimeout(Duration.ofMillis(200)).build();
+		conversionServer.start();
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Future<Response> first = executorService.submit(() -> send("GET",
+					"/convert?from=USD&to=EUR&value=100.00&quotation=20/11/2014", null));
+			awaitPendingCount(1);
+			Response second = send("GET", "/convert?from=USD&to=EUR&value=100.00&quotation=20/11/2014", null);
+
+			assertEquals(504, first.get(10, TimeUnit.SECONDS).status);
+			assertEquals(504, second.status);
+		} finally {
+			release.countDown();
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Tests if a builder without threads throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testBuilderZeroThreadsInvalidParameterException() {
+		new ConversionServer.Builder().threads(0);
+	}
+
+	/**
+	 * Waits until a number of conversions are queued or being converted by the
+	 * server of the test.
+	 *
+	 * @param pendingCount
+	 *            The number of pending conversions.
+	 */
+	private void awaitPendingCount(int pendingCount) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (conversionServer.getPendingCount() < pendingCount) {
+			assertTrue("The conversions were not submitted.", System.nanoTime() < deadline);
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Starts a local server on a free port.
+	 *
+	 * @param rateTableLoader
+	 *            The loader of the server tables.
+	 * @param threads
+	 *            The number of threads which handle the requests.
+	 */
+	private void startServer(RateTableLoader rateTableLoader, int threads) throws IOException {
+		conversionServer = new ConversionServer.Builder()
+				.cwiTest(new CWITest.Builder().rateTableLoader(rateTableLoader).build()).host("127.0.0.1").port(0)
+				.threads(threads).build();
+		conversionServer.start();
+	}
+
+	/**
+	 * Sends a request to the server of the test.
+	 *
+	 * @param method
+	 *            The request method.
+	 * @param path
+	 *            The request path and query.
+	 * @param body
+	 *            The request body, or {@code null} if there is none.
+	 * @return The response.
+	 */
+	private Response send(String method, String path, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://127.0.0.1:" + conversionServer.getPort() + path).openConnection();
+		connection.setRequestMethod(method);
+		if (null != body) {
+			connection.setDoOutput(true);
+			try (OutputStream outputStream = connection.getOutputStream()) {
+				outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		int status = connection.getResponseCode();
+		InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		if (null != inputStream) {
+			try (InputStream closedInputStream = inputStream) {
+				byte[] buffer = new byte[4096];
+				for (int read = closedInputStream.read(buffer); read >= 0; read = closedInputStream.read(buffer)) {
+					byteArrayOutputStream.write(buffer, 0, read);
+				}
+			}
+		}
+		return new Response(status, new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * A response of the server.
+	 */
+	private static final class Response {
+
+		/**
+		 * The HTTP status.
+		 */
+		private final int status;
+
+		/**
+		 * The body.
+		 */
+		private final String body;
+
+		/**
+		 * Creates a new {@link Response} object.
+		 *
+		 * @param status
+		 *            The HTTP status.
+		 * @param body
+		 *            The body.
+		 */
+		private Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+	}
+}
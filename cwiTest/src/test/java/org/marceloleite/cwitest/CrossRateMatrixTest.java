@@ -0,0 +1,137 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.security.InvalidParameterException;
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link CrossRateMatrix} class with the
+ * default hot currencies.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CrossRateMatrixTest {
+
+	/**
+	 * Tests if the cross rates of every variant match the rates of the table.
+	 */
+	@Test
+	public void testGetCrossRate() {
+		RateTable rateTable = createRateTable();
+		CrossRateMatrix crossRateMatrix = rateTable.getCrossRateMatrix();
+		int dollar = crossRateMatrix.indexOf("USD");
+		int euro = crossRateMatrix.indexOf("EUR");
+
+		assertSame(crossRateMatrix, rateTable.getCrossRateMatrix());
+		assertEquals(CurrencyCodes.pack("EUR"), crossRateMatrix.getCurrencyAbbreviation(euro));
+		assertEquals(2.5502 / 3.2003, crossRateMatrix.getCrossRate(dollar, euro, CrossRateMatrix.Variant.BUYING),
+				1e-12);
+		assertEquals(2.5508 / 3.2014, crossRateMatrix.getCrossRate(dollar, euro, CrossRateMatrix.Variant.SELLING),
+				1e-12);
+		assertEquals(1.0 / 1.2549, crossRateMatrix.getCrossRate(dollar, euro, CrossRateMatrix.Variant.BUYING_PPP),
+				1e-12);
+		assertEquals(1.2552, crossRateMatrix.getCrossRate(euro, dollar, CrossRateMatrix.Variant.SELLING_PPP), 1e-12);
+		assertEquals(1.0, crossRateMatrix.getCrossRate(euro, euro, CrossRateMatrix.Variant.BUYING), 0.0);
+	}
+
+	/**
+	 * Tests if conversions through the matrix match the conversions through the
+	 * table slots.
+	 */
+	@Test
+	public void testConvertMatchesTable() {
+		RateTable rateTable = createRateTable();
+		CrossRateMatrix crossRateMatrix = rateTable.getCrossRateMatrix();
+
+		assertEquals(7969L, crossRateMatrix.convert(crossRateMatrix.indexOf("USD"), crossRateMatrix.indexOf("EUR"),
+				10000L));
+		assertEquals(7969L, rateTable.convert(CurrencyCodes.pack("USD"), CurrencyCodes.pack("EUR"), 10000L));
+		assertEquals(12549L, rateTable.convert(CurrencyCodes.pack("EUR"), CurrencyCodes.pack("USD"), 10000L));
+		assertEquals(79694L, rateTable.convert(CurrencyCodes.pack("USD"), CurrencyCodes.pack("XAU"), 10000L));
+	}
+
+	/**
+	 * Tests if the factors of a pair are the buying rates reduced by their
+	 * greatest common divisor and convert as the rates do.
+	 */
+	@Test
+	public void testPairFactorsAreReducedRates() {
+		RateTable rateTable = createRateTable();
+		CrossRateMatrix crossRateMatrix = rateTable.getCrossRateMatrix();
+		int pair = crossRateMatrix.pairOf(CurrencyCodes.pack("USD"), CurrencyCodes.pack("EUR"));
+
+		assertEquals(25502L, crossRateMatrix.getMultiplier(pair));
+		assertEquals(32003L, crossRateMatrix.getDivisor(pair));
+		assertEquals(7969L, crossRateMatrix.convert(pair, 10000L));
+		for (long amountMinor = -100000L; amountMinor <= 100000L; amountMinor += 997L) {
+			assertEquals(FixedPointConverter.convert(amountMinor, 255020000L, 320030000L),
+					crossRateMatrix.convert(pair, amountMinor));
+		}
+		int samePair = crossRateMatrix.pairOf(CurrencyCodes.pack("EUR"), CurrencyCodes.pack("EUR"));
+		assertEquals(1L, crossRateMatrix.getMultiplier(samePair));
+		assertEquals(1L, crossRateMatrix.getDivisor(samePair));
+		assertEquals(CrossRateMatrix.NOT_FOUND,
+				crossRateMatrix.pairOf(CurrencyCodes.pack("USD"), CurrencyCodes.pack("XAU")));
+		assertEquals(CrossRateMatrix.NOT_FOUND,
+				crossRateMatrix.pairOf(CurrencyCodes.pack("GBP"), CurrencyCodes.pack("USD")));
+	}
+
+	/**
+	 * Tests if currencies which are not hot or not on the table are not found.
+	 */
+	@Test
+	public void testIndexOfMissingCurrencies() {
+		CrossRateMatrix crossRateMatrix = createRateTable().getCrossRateMatrix();
+		int pound = CurrencyCodes.pack("GBP");
+
+		assertEquals(CrossRateMatrix.NOT_FOUND, crossRateMatrix.indexOf("XAU"));
+		assertEquals(CrossRateMatrix.NOT_FOUND, crossRateMatrix.indexOf(pound));
+		assertEquals(CrossRateMatrix.NOT_FOUND, crossRateMatrix.indexOf("???"));
+		for (int index = 0; index < crossRateMatrix.size(); index++) {
+			if (crossRateMatrix.getCurrencyAbbreviation(index) == pound) {
+				assertTrue(Double.isNaN(crossRateMatrix.getCrossRate(index, crossRateMatrix.indexOf("USD"),
+						CrossRateMatrix.Variant.BUYING)));
+			}
+		}
+	}
+
+	/**
+	 * Tests if repeated hot currencies are kept once.
+	 */
+	@Test
+	public void testParseHotCurrencies() {
+		assertArrayEquals(new int[] { CurrencyCodes.pack("USD"), CurrencyCodes.pack("EUR") },
+				CrossRateMatrix.parseHotCurrencies(" USD, EUR,USD,"));
+		assertEquals(0, CrossRateMatrix.parseHotCurrencies("").length);
+	}
+
+	/**
+	 * Tests if an invalid hot currency throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testParseHotCurrenciesInvalidParameterException() {
+		CrossRateMatrix.parseHotCurrencies("USD,euro");
+	}
+
+	/**
+	 * Creates a table with the dollar and euro rates of 20/11/2014 and a
+	 * currency which is not hot.
+	 *
+	 * @return The table created.
+	 */
+	private static RateTable createRateTable() {
+		RateTable.Builder builder = new RateTable.Builder(LocalDate.of(2014, 11, 20));
+		builder.handleRow(16394, 220, 'A', CurrencyCodes.pack("USD"), 255020000L, 255080000L, 100000000L,
+				100000000L);
+		builder.handleRow(16394, 978, 'B', CurrencyCodes.pack("EUR"), 320030000L, 320140000L, 125490000L,
+				125520000L);
+		builder.handleRow(16394, 998, 'B', CurrencyCodes.pack("XAU"), 32000000L, 32100000L, 12549000L,
+				12552000L);
+		return builder.build();
+	}
+}
@@ -0,0 +1,99 @@
+package org.marceloleite.cwitest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Compares the performance of {@link BcbCsvParser} with the {@link String}
+ * based parsing {@link CWITest} used before it.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CsvParserBenchmark {
+
+	/**
+	 * The number of currencies on a typical quotation CSV file.
+	 */
+	private static final int CURRENCY_COUNT = 150;
+
+	/**
+	 * The benchmark entry method.
+	 *
+	 * @param args
+	 *            Not used.
+	 * @throws Exception
+	 *             When a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		byte[] csvContents = createCsvContents(CURRENCY_COUNT);
+		LocalDate quotationDate = LocalDate.of(2014, 11, 20);
+		BcbCsvParser bcbCsvParser = new BcbCsvParser();
+
+		MicroBenchmark.printHeader();
+		MicroBenchmark.run("CsvParserBenchmark.legacyParser",
+				() -> LegacyCsvParser.createExchangingInformationMap(new ByteArrayInputStream(csvContents)));
+		MicroBenchmark.run("CsvParserBenchmark.bcbCsvParser",
+				() -> bcbCsvParser.parse(new ByteArrayInputStream(csvContents), quotationDate));
+		MicroBenchmark.run("CsvParserBenchmark.bcbCsvParserOneConversion",
+				() -> convertOnce(bcbCsvParser.parse(new ByteArrayInputStream(csvContents), quotationDate)));
+		MicroBenchmark.run("CsvParserBenchmark.bcbCsvParserLazilyOneConversion",
+				() -> convertOnce(bcbCsvParser.parseLazily(new ByteArrayInputStream(csvContents), quotationDate)));
+		MicroBenchmark.run("CsvParserBenchmark.bcbCsvParserRowsOnly",
+				() -> {
+					long[] checksum = new long[1];
+					bcbCsvParser.parse(new ByteArrayInputStream(csvContents), "20/11/2014",
+							(exchangingEpochDay, currencyCode, type, currencyAbbreviation, buyingRate, sellingRate,
+									buyingPpp, sellingPpp) -> checksum[0] += buyingRate ^ currencyAbbreviation);
+					return checksum;
+				});
+	}
+
+	/**
+	 * Converts an amount between two currencies of a table just parsed, as a
+	 * conversion with a cold cache does.
+	 *
+	 * @param rateTable
+	 *            The table just parsed.
+	 * @return The converted amount.
+	 */
+	private static long convertOnce(RateTable rateTable) {
+		return FixedPointConverter.convert(10000L, rateTable.getBuyingRate(0),
+				rateTable.getBuyingRate(rateTable.size() / 2));
+	}
+
+	/**
+	 * Creates the contents of a synthetic quotation CSV file.
+	 *
+	 * @param currencyCount
+	 *            The number of currencies on the file.
+	 * @return The file contents.
+	 */
+	static byte[] createCsvContents(int currencyCount) {
+		StringBuilder csvContents = new StringBuilder();
+		for (int currency = 0; currency < currencyCount; currency++) {
+			int letters = currency * 7919 % (26 * 26 * 26);
+			String abbreviation = CurrencyCodes
+					.unpack(CurrencyCodes.pack('A' + letters / 676, 'A' + letters / 26 % 26, 'A' + letters % 26));
+			double buyingRate = 0.001 + currency * 0.0731;
+			csvContents.append(String.format(Locale.ROOT, "20/11/2014;%03d;%s;%s;%s;%s;%s;%s%n", currency,
+					currency % 2 == 0 ? "A" : "B", abbreviation, toBrazilianFormat(buyingRate),
+					toBrazilianFormat(buyingRate * 1.0003), toBrazilianFormat(1 / buyingRate),
+					toBrazilianFormat(1 / buyingRate * 1.0003)));
+		}
+		return csvContents.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Formats a number with eight decimal places on Brazilian format.
+	 *
+	 * @param number
+	 *            The number to be formatted.
+	 * @return The formatted number.
+	 */
+	private static String toBrazilianFormat(double number) {
+		return String.format(Locale.ROOT, "%.8f", number).replace('.', ',');
+	}
+}
@@ -0,0 +1,83 @@
+package org.marceloleite.cwitest;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * Measures each stage of {@link CWITest#currencyQuotation} and the whole
+ * method, using the quotation CSV files bundled with the tests instead of
+ * Brazilian central bank site.
+ * <p>
+ * Every benchmark runs on a single thread and then on the number of threads
+ * defined by the "benchmark.threads" system property (the number of available
+ * processors by default).
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class CurrencyQuotationBenchmark {
+
+	/**
+	 * The number of threads used on the multi-thread runs.
+	 */
+	private static final int THREADS = Integer.getInteger("benchmark.threads",
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * The benchmark entry method.
+	 *
+	 * @param args
+	 *            Not used.
+	 * @throws Exception
+	 *             When a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		byte[] csvContents = Fixtures.read("20141120.csv");
+		LocalDate quotationDate = LocalDate.of(2014, 11, 20);
+		BcbCsvParser bcbCsvParser = new BcbCsvParser();
+		RateTable rateTable = bcbCsvParser.parse(new ByteArrayInputStream(csvContents), quotationDate);
+		int dollar = CurrencyCodes.pack("USD");
+		int euro = CurrencyCodes.pack("EUR");
+		Number value = 100.00;
+
+		RateTableLoader fixtureLoader = new BcbRateTableLoader(Fixtures.getBaseUrl());
+		CWITest warmCWITest = new CWITest(new RateTableCache(), fixtureLoader);
+
+		Path storeDirectory = Files.createTempDirectory("rate-table-store");
+		storeDirectory.toFile().deleteOnExit();
+		RateTableStore rateTableStore = RateTableStore.open(storeDirectory);
+		rateTableStore.put(rateTable);
+		storeDirectory.resolve(RateTableStore.DATA_FILE_NAME).toFile().deleteOnExit();
+		storeDirectory.resolve(RateTableStore.INDEX_FILE_NAME).toFile().deleteOnExit();
+
+		MicroBenchmark.printHeader();
+		for (int threads : THREADS > 1 ? new int[] { 1, THREADS } : new int[] { 1 }) {
+			MicroBenchmark.run("CurrencyQuotationBenchmark.resolveQuotationDate", threads,
+					() -> warmCWITest.resolveQuotationDate("22/11/2014"));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.parseCsv", threads,
+					() -> bcbCsvParser.parse(new ByteArrayInputStream(csvContents), quotationDate));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.readStore", threads,
+					() -> rateTableStore.get(quotationDate));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.lookup", threads,
+					() -> rateTable.slotOf("EUR"));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.convert", threads,
+					() -> CWITest.convert(rateTable, "USD", "EUR", value));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.convertPrimitive", threads,
+					() -> rateTable.convert(dollar, euro, 10000L));
+			MicroBenchmark.run("CurrencyQuotationBenchmark.currencyQuotationCached", threads,
+					() -> warmCWITest.currencyQuotation("USD", "EUR", value, "20/11/2014"));
+			Metrics.enableJmx();
+			MicroBenchmark.run("CurrencyQuotationBenchmark.currencyQuotationCachedWithMetrics", threads,
+					() -> warmCWITest.currencyQuotation("USD", "EUR", value, "20/11/2014"));
+			Metrics.disable();
+			MicroBenchmark.run("CurrencyQuotationBenchmark.currencyQuotationUncached", threads, () -> {
+				BigDecimal convertedValue = new CWITest(new RateTableCache(), fixtureLoader)
+						.currencyQuotation("USD", "EUR", value, "20/11/2014");
+				return convertedValue;
+			});
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link FixedPointConverter} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class FixedPointConverterTest {
+
+	/**
+	 * The scaled buying rate of the dollar on 20/11/2014.
+	 */
+	private static final long DOLLAR_RATE = 255020000L;
+
+	/**
+	 * The scaled buying rate of the euro on 20/11/2014.
+	 */
+	private static final long EURO_RATE = 320030000L;
+
+	/**
+	 * Tests if the conversion of the original example is kept.
+	 */
+	@Test
+	public void testConvertKeepsExample() {
+		assertEquals(7969L, FixedPointConverter.convert(10000L, DOLLAR_RATE, EURO_RATE));
+		assertEquals(7969L, FixedPointConverter.convert(new BigDecimal("100.00"), DOLLAR_RATE, EURO_RATE));
+		assertEquals(new BigDecimal("79.69"), FixedPointConverter.fromMinorUnits(7969L));
+	}
+
+	/**
+	 * Tests if ties are rounded half to even.
+	 */
+	@Test
+	public void testConvertRoundsHalfToEven() {
+		assertEquals(0L, FixedPointConverter.convert(1L, 1L, 2L));
+		assertEquals(2L, FixedPointConverter.convert(3L, 1L, 2L));
+		assertEquals(2L, FixedPointConverter.convert(5L, 1L, 2L));
+		assertEquals(-2L, FixedPointConverter.convert(-5L, 1L, 2L));
+		assertEquals(0L, FixedPointConverter.convert(new BigDecimal("0.005"), 1L, 1L));
+		assertEquals(2L, FixedPointConverter.convert(new BigDecimal("0.015"), 1L, 1L));
+		assertEquals(2L, FixedPointConverter.convert(new BigDecimal("0.0150001"), 1L, 1L));
+	}
+
+	/**
+	 * Tests if amounts beyond the precision of {@code double} values and
+	 * products beyond 63 bits are converted exactly.
+	 */
+	@Test
+	public void testConvertLargeAmountsExactly() {
+		Random random = new Random(20141120L);
+		for (int iteration = 0; iteration < 10000; iteration++) {
+			long amountMinor = random.nextLong() >>> random.nextInt(40);
+			long fromRate = 1 + (random.nextLong() >>> (24 + random.nextInt(30)));
+			long toRate = 1 + (random.nextLong() >>> (24 + random.nextInt(30)));
+
+			BigDecimal expected = new BigDecimal(BigInteger.valueOf(amountMinor).multiply(BigInteger.valueOf(fromRate)))
+					.divide(BigDecimal.valueOf(toRate), 0, RoundingMode.HALF_EVEN);
+			if (expected.unscaledValue().bitLength() < 64) {
+				assertEquals(expected.longValueExact(), FixedPointConverter.convert(amountMinor, fromRate, toRate));
+			}
+		}
+	}
+
+	/**
+	 * Tests if the bulk conversion of amounts in hundredths returns the same
+	 * values as the conversion of each amount, including products beyond 63
+	 * bits and rates with common divisors.
+	 */
+	@Test
+	public void testConvertAllMinorUnitsMatchesConvert() {
+		Random random = new Random(20141121L);
+		long[] amountsMinor = new long[10000];
+		for (int index = 0; index < amountsMinor.length; index++) {
+			amountsMinor[index] = (random.nextLong() >> (20 + random.nextInt(44)));
+		}
+		long[][] rates = { { DOLLAR_RATE, EURO_RATE }, { EURO_RATE, DOLLAR_RATE }, { DOLLAR_RATE, DOLLAR_RATE },
+				{ 200000000L, 100000000L }, { 0L, EURO_RATE }, { 3L, 7L }, { 1L, 2L }, { 5L, 4L } };
+
+		long[] convertedAmountsMinor = new long[amountsMinor.length];
+		for (long[] rate : rates) {
+			FixedPointConverter.convertAll(amountsMinor, rate[0], rate[1], convertedAmountsMinor);
+			for (int index = 0; index < amountsMinor.length; index++) {
+				assertEquals(FixedPointConverter.convert(amountsMinor[index], rate[0], rate[1]),
+						convertedAmountsMinor[index]);
+			}
+		}
+	}
+
+	/**
+	 * Tests if the bulk conversion of {@code double} amounts returns the same
+	 * values as the conversion of each amount through {@link BigDecimal}.
+	 */
+	@Test
+	public void testConvertAllDoublesMatchesConvert() {
+		Random random = new Random(20141122L);
+		double[] amounts = new double[10000];
+		for (int index = 0; index < amounts.length; index++) {
+			switch (index % 4) {
+			case 0:
+				amounts[index] = random.nextInt(100000000) / 100.0;
+				break;
+			case 1:
+				amounts[index] = random.nextDouble() * 1000;
+				break;
+			case 2:
+				amounts[index] = -random.nextInt(1000000) / 100.0;
+				break;
+			default:
+				amounts[index] = (random.nextLong() >>> random.nextInt(64)) / 100.0;
+			}
+		}
+		amounts[0] = 0.005;
+		amounts[1] = 0.015;
+		amounts[2] = 1E15;
+
+		double[] convertedAmounts = new double[amounts.length];
+		FixedPointConverter.convertAll(amounts, DOLLAR_RATE, EURO_RATE, convertedAmounts);
+		for (int index = 0; index < amounts.length; index++) {
+			long expectedMinor = FixedPointConverter.convert(FixedPointConverter.toBigDecimal(amounts[index]),
+					DOLLAR_RATE, EURO_RATE);
+			assertEquals(FixedPointConverter.fromMinorUnits(expectedMinor).doubleValue(), convertedAmounts[index],
+					0.0);
+		}
+
+		FixedPointConverter.convertAll(amounts, DOLLAR_RATE, DOLLAR_RATE, amounts);
+		assertEquals(0.0, amounts[0], 0.0);
+		assertEquals(0.02, amounts[1], 0.0);
+	}
+
+	/**
+	 * Tests if an array of converted amounts smaller than the amounts throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testConvertAllShortArrayInvalidParameterException() {
+		FixedPointConverter.convertAll(new long[2], DOLLAR_RATE, EURO_RATE, new long[1]);
+	}
+
+	/**
+	 * Tests if amounts informed as {@code double} values keep their decimal
+	 * representation.
+	 */
+	@Test
+	public void testToBigDecimalKeepsDecimalRepresentation() {
+		assertEquals(new BigDecimal("0.1"), FixedPointConverter.toBigDecimal(0.1));
+		assertEquals(new BigDecimal("100"), FixedPointConverter.toBigDecimal(100));
+		assertEquals(new BigDecimal("12345678901234567890"),
+				FixedPointConverter.toBigDecimal(new BigInteger("12345678901234567890")));
+		assertEquals(1000000L, FixedPointConverter.convert(new BigDecimal("1E+4"), 1L, 1L));
+	}
+
+	/**
+	 * Tests if a quote currency without a positive rate throws an
+	 * {@link ArithmeticException}.
+	 */
+	@Test(expected = ArithmeticException.class)
+	public void testConvertZeroRateArithmeticException() {
+		FixedPointConverter.convert(10000L, DOLLAR_RATE, 0L);
+	}
+}
@@ -0,0 +1,70 @@
+package org.marceloleite.cwitest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Gives access to the quotation CSV files bundled with the tests, so they can
+ * run without reaching Brazilian central bank site.
+ * <p>
+ * The files follow the layout published by Brazilian central bank, but their
+ * rates are synthetic. The 20/11/2014 file keeps the example of the test
+ * description (100 USD are equivalent to 79.69 EUR).
+ *
+ * @author Marcelo Leite
+ *
+ */
+final class Fixtures {
+
+	/**
+	 * The resource directory where the quotation CSV files are.
+	 */
+	private static final String FIXTURES_DIRECTORY = "fixtures/";
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private Fixtures() {
+	}
+
+	/**
+	 * Returns the URL of the directory with the quotation CSV files, which can
+	 * be used as the base URL of a {@link BcbRateTableLoader}.
+	 *
+	 * @return The URL of the directory with the quotation CSV files.
+	 */
+	static String getBaseUrl() {
+		URL directoryUrl = Fixtures.class.getResource(FIXTURES_DIRECTORY);
+		if (null == directoryUrl) {
+			throw new IllegalStateException("Could not find the quotation CSV fixtures directory.");
+		}
+		return directoryUrl.toExternalForm();
+	}
+
+	/**
+	 * Reads the contents of a quotation CSV file.
+	 *
+	 * @param fileName
+	 *            The file name (e.g. "20141120.csv").
+	 * @return The file contents.
+	 * @throws IOException
+	 *             When the file could not be read.
+	 */
+	static byte[] read(String fileName) throws IOException {
+		try (InputStream inputStream = Fixtures.class.getResourceAsStream(FIXTURES_DIRECTORY + fileName)) {
+			if (null == inputStream) {
+				throw new IOException("Could not find the quotation CSV fixture \"" + fileName + "\".");
+			}
+
+			ByteArrayOutputStream contents = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				contents.write(buffer, 0, bytesRead);
+			}
+			return contents.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.marceloleite.cwitest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The quotation CSV parsing as {@link CWITest} did it before
+ * {@link BcbCsvParser} was created, kept as a baseline for the benchmarks.
+ *
+ * @author Marcelo Leite
+ *
+ */
+final class LegacyCsvParser {
+
+	/**
+	 * The character used to separate values on the CSV file.
+	 */
+	private static final String CSV_SEPARATION_CHARACTER = ";";
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private LegacyCsvParser() {
+	}
+
+	/**
+	 * creates a {@link HashMap} with the currencies' exchanging information based
+	 * on the values read from a CSV file stream.
+	 * 
+	 * @param csvInputStream
+	 *            The CSV file stream from which the currencies' exchanging
+	 *            information will be retrieved.
+	 * @return A {@link HashMap} with the currencies' exchanging information
+	 * @throws IOException
+	 *             When the values retrieved on the CSV file could not be parsed.
+	 */
+	static Map<String, CurrencyExchangingInformation> createExchangingInformationMap(InputStream csvInputStream)
+			throws IOException {
+		Map<String, CurrencyExchangingInformation> currencyExchangingInformationMap = new HashMap<>();
+		BufferedReader csvReader = new BufferedReader(
+				new InputStreamReader(csvInputStream, StandardCharsets.ISO_8859_1));
+
+		String lineBuffer;
+		String[] values;
+		String currencyAbbreviation = null;
+
+		DecimalFormatSymbols decimalFormatSymbols = new DecimalFormatSymbols();
+		decimalFormatSymbols.setDecimalSeparator(',');
+		decimalFormatSymbols.setGroupingSeparator('.');
+
+		DecimalFormat decimalFormat = new DecimalFormat();
+		decimalFormat.setDecimalFormatSymbols(decimalFormatSymbols);
+
+		try {
+			while (null != (lineBuffer = csvReader.readLine())) {
+				values = lineBuffer.split(CSV_SEPARATION_CHARACTER);
+				currencyAbbreviation = values[3];
+				double buyingRate = decimalFormat.parse(values[4]).doubleValue();
+				double sellingRate = decimalFormat.parse(values[5]).doubleValue();
+				double buyingPpp = decimalFormat.parse(values[6]).doubleValue();
+				double sellingPpp = decimalFormat.parse(values[7]).doubleValue();
+				Date exchangingDate = new SimpleDateFormat("dd/MM/yyyy").parse(values[0]);
+
+				currencyExchangingInformationMap.put(currencyAbbreviation, new CurrencyExchangingInformation(
+						exchangingDate, values[1], values[2], currencyAbbreviation, buyingRate, sellingRate,
+						buyingPpp, sellingPpp));
+			}
+		} catch (ParseException parseException) {
+			throw new IOException("Could not parse an information for currency \"" + currencyAbbreviation + "\".",
+					parseException);
+		}
+
+		return currencyExchangingInformationMap;
+	}
+}
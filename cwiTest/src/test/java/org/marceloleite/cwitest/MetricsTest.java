@@ -0,0 +1,142 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the quotation metrics recorded through
+ * {@link Metrics}, using the quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class MetricsTest {
+
+	/**
+	 * Stops measuring after each test.
+	 */
+	@After
+	public void disableMetrics() {
+		Metrics.disable();
+	}
+
+	/**
+	 * Tests if the stages, counters and failures of quotations are recorded.
+	 */
+	@Test
+	public void testCurrencyQuotationIsMeasured() throws IOException {
+		RecordingQuotationMetrics metrics = new RecordingQuotationMetrics();
+		Metrics.install(metrics);
+		/* Tables are not compacted, so only the lines requested are parsed. */
+		RateTableCache rateTableCache = new RateTableCache(RateTableCache.DEFAULT_CAPACITY,
+				RateTableCache.DEFAULT_TODAY_TIME_TO_LIVE, Clock.system(CWITest.BCB_TIME_ZONE), runnable -> {
+				});
+		CWITest cwiTest = new CWITest(rateTableCache, new BcbRateTableLoader(Fixtures.getBaseUrl()));
+
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+		cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+		try {
+			cwiTest.currencyQuotation("???", "EUR", 100.00, "20/11/2014");
+			fail("The conversion should have failed.");
+		} catch (RuntimeException runtimeException) {
+			/* Expected. */
+		}
+		try {
+			cwiTest.currencyQuotation("USD", "EUR", 100.00, "16/11/2015");
+			fail("The conversion should have failed.");
+		} catch (FileNotFoundException fileNotFoundException) {
+			/* Expected. */
+		}
+
+		assertEquals(4, metrics.getLatencyHistogram(QuotationMetrics.Stage.QUOTATION).getCount());
+		assertEquals(2, metrics.getLatencyHistogram(QuotationMetrics.Stage.DOWNLOAD).getCount());
+		assertEquals(1, metrics.getLatencyHistogram(QuotationMetrics.Stage.PARSE).getCount());
+		assertEquals(2, metrics.getLatencyHistogram(QuotationMetrics.Stage.CONVERT).getCount());
+		assertEquals(2, metrics.getCounter(QuotationMetrics.Counter.DOWNLOADS));
+		assertEquals(2, metrics.getCounter(QuotationMetrics.Counter.CACHE_HITS));
+		assertEquals(2, metrics.getCounter(QuotationMetrics.Counter.CACHE_MISSES));
+		/* Only the lines of the two converted currencies are parsed. */
+		assertEquals(2, metrics.getCounter(QuotationMetrics.Counter.PARSED_ROWS));
+		assertEquals(Fixtures.read("20141120.csv").length,
+				metrics.getCounter(QuotationMetrics.Counter.BYTES_DOWNLOADED));
+
+		Map<String, Long> failures = metrics.getFailures();
+		assertEquals(Long.valueOf(1), failures.get("QUOTATION:java.lang.RuntimeException"));
+		assertEquals(Long.valueOf(1), failures.get("QUOTATION:java.io.FileNotFoundException"));
+		assertEquals(Long.valueOf(1), failures.get("LOAD:java.io.FileNotFoundException"));
+		assertEquals(Long.valueOf(1), failures.get("DOWNLOAD:java.io.FileNotFoundException"));
+	}
+
+	/**
+	 * Tests if the metrics enabled through JMX are registered, readable and
+	 * unregistered when disabled.
+	 */
+	@Test
+	public void testEnableJmx() throws Exception {
+		RecordingQuotationMetrics metrics = Metrics.enableJmx();
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(Metrics.OBJECT_NAME);
+		metrics.increment(QuotationMetrics.Counter.DOWNLOADS, 3L);
+
+		assertSame(metrics, Metrics.get());
+		assertSame(metrics, Metrics.enableJmx());
+		assertTrue(mBeanServer.isRegistered(objectName));
+		assertNotNull(mBeanServer.getAttribute(objectName, "Counters"));
+		assertNotNull(mBeanServer.getAttribute(objectName, "Latency99thPercentiles"));
+
+		Metrics.disable();
+		assertSame(QuotationMetrics.NOOP, Metrics.get());
+		assertFalse(mBeanServer.isRegistered(objectName));
+	}
+
+	/**
+	 * Tests if the percentiles of a histogram are reported within the bucket
+	 * precision.
+	 */
+	@Test
+	public void testLatencyHistogramPercentiles() {
+		LatencyHistogram latencyHistogram = new LatencyHistogram();
+		for (long value = 1; value <= 100000; value++) {
+			latencyHistogram.record(value);
+		}
+
+		assertEquals(100000, latencyHistogram.getCount());
+		assertEquals(100000, latencyHistogram.getMax());
+		assertEquals(50000.5, latencyHistogram.getMean(), 0.0);
+		assertEquals(50000, latencyHistogram.getPercentile(50.0), 50000 * 0.07);
+		assertEquals(99000, latencyHistogram.getPercentile(99.0), 99000 * 0.07);
+		assertEquals(100000, latencyHistogram.getPercentile(100.0));
+		assertEquals(1, latencyHistogram.getPercentile(0.0));
+
+		latencyHistogram.reset();
+		assertEquals(0, latencyHistogram.getCount());
+		assertEquals(0, latencyHistogram.getPercentile(99.0));
+	}
+
+	/**
+	 * Tests if every bucket holds the values between the end of the previous
+	 * bucket and its own end.
+	 */
+	@Test
+	public void testLatencyHistogramBuckets() {
+		for (int bucket = 1; bucket <= LatencyHistogram.bucketOf(Long.MAX_VALUE); bucket++) {
+			long highestValue = LatencyHistogram.highestValueOf(bucket);
+			long lowestValue = LatencyHistogram.highestValueOf(bucket - 1) + 1;
+			assertEquals(bucket, LatencyHistogram.bucketOf(lowestValue));
+			assertEquals(bucket, LatencyHistogram.bucketOf(highestValue));
+			assertTrue(highestValue - lowestValue <= lowestValue / LatencyHistogram.SUB_BUCKETS);
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+}
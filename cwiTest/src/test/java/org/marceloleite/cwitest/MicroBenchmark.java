@@ -0,0 +1,318 @@
+package org.marceloleite.cwitest;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A minimal benchmark harness used to measure the performance of the quotation
+ * pipeline without external dependencies.
+ * <p>
+ * Each benchmark runs a number of warmup iterations, so the JIT compiler can
+ * optimize the measured code, and then a number of measurement iterations. An
+ * iteration calls the benchmark operation repeatedly during a fixed time, on
+ * one or more threads at once. The throughput, the average time, the number of
+ * bytes allocated per operation and the allocation rate are reported at the
+ * end.
+ * <p>
+ * The harness can be tuned through the "benchmark.warmupIterations",
+ * "benchmark.measurementIterations" and "benchmark.iterationMillis" system
+ * properties.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public final class MicroBenchmark {
+
+	/**
+	 * The number of iterations executed before measuring.
+	 */
+	private static final int WARMUP_ITERATIONS = Integer.getInteger("benchmark.warmupIterations", 5);
+
+	/**
+	 * The number of iterations measured.
+	 */
+	private static final int MEASUREMENT_ITERATIONS = Integer.getInteger("benchmark.measurementIterations", 5);
+
+	/**
+	 * The duration of each iteration, in milliseconds.
+	 */
+	private static final long ITERATION_MILLIS = Long.getLong("benchmark.iterationMillis", 1000L);
+
+	/**
+	 * The number of nanoseconds in a second.
+	 */
+	private static final double NANOSECONDS_PER_SECOND = 1_000_000_000.0;
+
+	/**
+	 * Accumulates the results of the operations, so the JIT compiler cannot
+	 * eliminate them as dead code.
+	 */
+	private static volatile int sink;
+
+	/**
+	 * Private constructor to avoid object instantiation.
+	 */
+	private MicroBenchmark() {
+	}
+
+	/**
+	 * Runs a benchmark on a single thread and prints its results.
+	 *
+	 * @param name
+	 *            The benchmark name.
+	 * @param operation
+	 *            The operation measured.
+	 * @return The benchmark results.
+	 * @throws Exception
+	 *             When the operation throws an exception.
+	 */
+	public static Result run(String name, Operation operation) throws Exception {
+		return run(name, 1, operation);
+	}
+
+	/**
+	 * Runs a benchmark and prints its results.
+	 *
+	 * @param name
+	 *            The benchmark name.
+	 * @param threads
+	 *            The number of threads calling the operation at once.
+	 * @param operation
+	 *            The operation measured. It must be thread-safe if more than one
+	 *            thread is used.
+	 * @return The benchmark results.
+	 * @throws Exception
+	 *             When the operation throws an exception.
+	 */
+	public static Result run(String name, int threads, Operation operation) throws Exception {
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		try {
+			for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+				runIteration(executorService, threads, operation);
+			}
+
+			long operations = 0;
+			long elapsedNanoseconds = 0;
+			long allocatedBytes = 0;
+			for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; iteration++) {
+				long start = System.nanoTime();
+				long[] iterationResult = runIteration(executorService, threads, operation);
+				elapsedNanoseconds += System.nanoTime() - start;
+				operations += iterationResult[0];
+				allocatedBytes += iterationResult[1];
+			}
+
+			Result result = new Result(name + (threads > 1 ? " (" + threads + " threads)" : ""), threads, operations,
+					elapsedNanoseconds, allocatedBytes);
+			System.out.println(result);
+			return result;
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Prints the header of the results table.
+	 */
+	public static void printHeader() {
+		System.out.println(String.format(Locale.ROOT, "%-60s %16s %14s %14s %12s", "Benchmark", "ops/s", "ns/op",
+				"bytes/op", "alloc MB/s"));
+	}
+
+	/**
+	 * Runs an iteration of a benchmark on all threads.
+	 *
+	 * @param executorService
+	 *            The executor which runs the threads.
+	 * @param threads
+	 *            The number of threads calling the operation at once.
+	 * @param operation
+	 *            The operation measured.
+	 * @return The number of operations executed and the number of bytes
+	 *         allocated by them.
+	 * @throws Exception
+	 *             When the operation throws an exception.
+	 */
+	private static long[] runIteration(ExecutorService executorService, int threads, Operation operation)
+			throws Exception {
+		long deadline = System.nanoTime() + ITERATION_MILLIS * 1_000_000L;
+		List<Future<long[]>> futures = new ArrayList<>(threads);
+		for (int thread = 0; thread < threads; thread++) {
+			futures.add(executorService.submit((Callable<long[]>) () -> runUntil(deadline, operation)));
+		}
+
+		long[] iterationResult = new long[2];
+		for (Future<long[]> future : futures) {
+			long[] threadResult;
+			try {
+				threadResult = future.get();
+			} catch (ExecutionException executionException) {
+				Throwable cause = executionException.getCause();
+				throw cause instanceof Exception ? (Exception) cause : executionException;
+			}
+			iterationResult[0] += threadResult[0];
+			iterationResult[1] += threadResult[1];
+		}
+		return iterationResult;
+	}
+
+	/**
+	 * Calls an operation repeatedly on the current thread until a deadline.
+	 *
+	 * @param deadline
+	 *            The moment, as informed by {@link System#nanoTime()}, when calls
+	 *            must stop.
+	 * @param operation
+	 *            The operation measured.
+	 * @return The number of operations executed and the number of bytes
+	 *         allocated by them.
+	 * @throws Exception
+	 *             When the operation throws an exception.
+	 */
+	private static long[] runUntil(long deadline, Operation operation) throws Exception {
+		long allocatedBytesBefore = allocatedBytes();
+		long operations = 0;
+		int accumulator = 0;
+		do {
+			Object value = operation.run();
+			accumulator += System.identityHashCode(value);
+			operations++;
+		} while (System.nanoTime() < deadline);
+		long allocatedBytes = allocatedBytes() - allocatedBytesBefore;
+		sink += accumulator;
+		return new long[] { operations, allocatedBytes };
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 *
+	 * @return The number of bytes allocated or zero if the JVM cannot inform it.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadMXBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * An operation measured by a benchmark.
+	 */
+	@FunctionalInterface
+	public interface Operation {
+
+		/**
+		 * Executes the operation once.
+		 *
+		 * @return The operation result, which is consumed by the harness.
+		 * @throws Exception
+		 *             When the operation fails.
+		 */
+		Object run() throws Exception;
+	}
+
+	/**
+	 * The results of a benchmark.
+	 */
+	public static final class Result {
+
+		/**
+		 * The benchmark name.
+		 */
+		private final String name;
+
+		/**
+		 * The number of threads which called the operation at once.
+		 */
+		private final int threads;
+
+		/**
+		 * The number of operations measured.
+		 */
+		private final long operations;
+
+		/**
+		 * The wall clock time spent on the measured operations, in nanoseconds.
+		 */
+		private final long elapsedNanoseconds;
+
+		/**
+		 * The number of bytes allocated by the measured operations.
+		 */
+		private final long allocatedBytes;
+
+		/**
+		 * Creates a new {@link Result} object.
+		 *
+		 * @param name
+		 *            The benchmark name.
+		 * @param threads
+		 *            The number of threads which called the operation at once.
+		 * @param operations
+		 *            The number of operations measured.
+		 * @param elapsedNanoseconds
+		 *            The wall clock time spent on the measured operations, in
+		 *            nanoseconds.
+		 * @param allocatedBytes
+		 *            The number of bytes allocated by the measured operations.
+		 */
+		private Result(String name, int threads, long operations, long elapsedNanoseconds, long allocatedBytes) {
+			this.name = name;
+			this.threads = threads;
+			this.operations = operations;
+			this.elapsedNanoseconds = elapsedNanoseconds;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		/**
+		 * Returns the number of operations per second.
+		 *
+		 * @return The number of operations per second.
+		 */
+		public double getThroughput() {
+			return operations * NANOSECONDS_PER_SECOND / elapsedNanoseconds;
+		}
+
+		/**
+		 * Returns the average time a thread spent on an operation, in nanoseconds.
+		 *
+		 * @return The average time of an operation, in nanoseconds.
+		 */
+		public double getAverageTime() {
+			return (double) elapsedNanoseconds * threads / operations;
+		}
+
+		/**
+		 * Returns the average number of bytes allocated by an operation.
+		 *
+		 * @return The average number of bytes allocated by an operation.
+		 */
+		public double getAllocationPerOperation() {
+			return (double) allocatedBytes / operations;
+		}
+
+		/**
+		 * Returns the number of megabytes allocated per second.
+		 *
+		 * @return The number of megabytes allocated per second.
+		 */
+		public double getAllocationRate() {
+			return allocatedBytes * NANOSECONDS_PER_SECOND / elapsedNanoseconds / (1024 * 1024);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%-60s %16.1f %14.1f %14.1f %12.1f", name, getThroughput(),
+					getAverageTime(), getAllocationPerOperation(), getAllocationRate());
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateSourceRouter} class against local
+ * stub sources.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateSourceRouterTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * The quotation date of the tests.
+	 */
+	private static final LocalDate QUOTATION_DATE = LocalDate.of(2014, 11, 20);
+
+	/**
+	 * Releases the sources which wait for it.
+	 */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	/**
+	 * Releases the sources still waiting and stops measuring after each test.
+	 */
+	@After
+	public void releaseSources() {
+		release.countDown();
+		Metrics.disable();
+	}
+
+	/**
+	 * Tests if the fastest source is preferred once the latencies are known.
+	 */
+	@Test
+	public void testLoadPrefersFastestSource() throws IOException {
+		AtomicInteger slowLoads = new AtomicInteger();
+		AtomicInteger fastLoads = new AtomicInteger();
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder().hedgeDelay(Duration.ofSeconds(10))
+				.addSource("slow", quotationDate -> {
+					slowLoads.incrementAndGet();
+					sleep(100);
+					return FIXTURE_LOADER.load(quotationDate);
+				}).addSource("fast", quotationDate -> {
+					fastLoads.incrementAndGet();
+					return FIXTURE_LOADER.load(quotationDate);
+				}).build();
+
+		for (int load = 0; load < 5; load++) {
+			assertEquals(QUOTATION_DATE, rateSourceRouter.load(QUOTATION_DATE).getQuotationDate());
+		}
+
+		assertEquals(1, slowLoads.get());
+		assertEquals(4, fastLoads.get());
+		RateSourceRouter.SourceStatus slowStatus = rateSourceRouter.getSourceStatuses().get(0);
+		RateSourceRouter.SourceStatus fastStatus = rateSourceRouter.getSourceStatuses().get(1);
+		assertTrue(slowStatus.getAverageLatency().compareTo(fastStatus.getAverageLatency()) > 0);
+	}
+
+	/**
+	 * Tests if a backup source is started when the first one is slow, and if the
+	 * first table loaded is returned.
+	 */
+	@Test
+	public void testLoadHedgesSlowSource() throws IOException {
+		RecordingQuotationMetrics metrics = new RecordingQuotationMetrics();
+		Metrics.install(metrics);
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder().hedgeDelay(Duration.ofMillis(50))
+				.addSource("stuck", quotationDate -> {
+					await(release);
+					return FIXTURE_LOADER.load(quotationDate);
+				}).addSource("backup", FIXTURE_LOADER).build();
+
+		long startTime = System.nanoTime();
+		RateTable rateTable = rateSourceRouter.load(QUOTATION_DATE);
+
+		assertEquals(QUOTATION_DATE, rateTable.getQuotationDate());
+		assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(1, metrics.getCounter(QuotationMetrics.Counter.HEDGED_LOADS));
+	}
+
+	/**
+	 * Tests if a failing source and a source without the file are replaced by
+	 * the next one at once.
+	 */
+	@Test
+	public void testLoadFailsOverToNextSource() throws IOException {
+		RecordingQuotationMetrics metrics = new RecordingQuotationMetrics();
+		Metrics.install(metrics);
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder().hedgeDelay(Duration.ofSeconds(10))
+				.addSource("store", quotationDate -> {
+					throw new FileNotFoundException("Not on store.");
+				}).addSource("broken", quotationDate -> {
+					throw new IOException("Connection reset.");
+				}).addSource("mirror", FIXTURE_LOADER).build();
+
+		assertEquals(QUOTATION_DATE, rateSourceRouter.load(QUOTATION_DATE).getQuotationDate());
+		assertEquals(2, metrics.getCounter(QuotationMetrics.Counter.SOURCE_FAILOVERS));
+		assertEquals(0, rateSourceRouter.getSourceStatuses().get(0).getFailureCount());
+		assertEquals(1, rateSourceRouter.getSourceStatuses().get(1).getFailureCount());
+		assertEquals(1, rateSourceRouter.getSourceStatuses().get(2).getSuccessCount());
+	}
+
+	/**
+	 * Tests if the circuit breaker of a failing source opens, skips the source
+	 * and closes again once a recovery check succeeds.
+	 */
+	@Test
+	public void testCircuitBreakerOpensAndRecovers() throws IOException {
+		AtomicBoolean healthy = new AtomicBoolean();
+		AtomicInteger flakyLoads = new AtomicInteger();
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder().hedgeDelay(Duration.ofSeconds(10))
+				.failureThreshold(2).openDuration(Duration.ofMillis(200)).addSource("flaky", quotationDate -> {
+					flakyLoads.incrementAndGet();
+					if (!healthy.get()) {
+						throw new IOException("Service unavailable.");
+					}
+					return FIXTURE_LOADER.load(quotationDate);
+				}).addSource("mirror", quotationDate -> {
+					sleep(20);
+					return FIXTURE_LOADER.load(quotationDate);
+				}).build();
+
+		rateSourceRouter.load(QUOTATION_DATE);
+		rateSourceRouter.load(QUOTATION_DATE);
+		assertEquals(RateSourceRouter.CircuitState.OPEN, rateSourceRouter.getSourceStatuses().get(0)
+				.getCircuitState());
+
+		rateSourceRouter.load(QUOTATION_DATE);
+		assertEquals(2, flakyLoads.get());
+
+		sleep(250);
+		assertEquals(RateSourceRouter.CircuitState.HALF_OPEN, rateSourceRouter.getSourceStatuses().get(0)
+				.getCircuitState());
+		healthy.set(true);
+		rateSourceRouter.load(QUOTATION_DATE);
+		assertEquals(3, flakyLoads.get());
+		assertEquals(RateSourceRouter.CircuitState.CLOSED, rateSourceRouter.getSourceStatuses().get(0)
+				.getCircuitState());
+	}
+
+	/**
+	 * Tests if a file missing on every source throws a
+	 * {@link FileNotFoundException} with the answer of each source.
+	 */
+	@Test
+	public void testLoadMissingEverywhereFileNotFoundException() throws IOException {
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder()
+				.addSource("bcb", quotationDate -> {
+					throw new FileNotFoundException("Not published.");
+				}).addSource("mirror", quotationDate -> {
+					throw new FileNotFoundException("Not mirrored.");
+				}).build();
+
+		try {
+			rateSourceRouter.load(QUOTATION_DATE);
+			fail("The load should have failed.");
+		} catch (FileNotFoundException fileNotFoundException) {
+			assertEquals(2, fileNotFoundException.getSuppressed().length);
+		}
+	}
+
+	/**
+	 * Tests if the failure of every source throws an {@link IOException} which
+	 * is not a {@link FileNotFoundException}.
+	 */
+	@Test
+	public void testLoadFailingEverywhereIOException() {
+		RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder()
+				.addSource("bcb", quotationDate -> {
+					throw new IOException("Connection reset.");
+				}).addSource("mirror", quotationDate -> {
+					throw new FileNotFoundException("Not mirrored.");
+				}).build();
+
+		try {
+			rateSourceRouter.load(QUOTATION_DATE);
+			fail("The load should have failed.");
+		} catch (IOException ioException) {
+			assertFalse(ioException instanceof FileNotFoundException);
+			assertEquals(2, ioException.getSuppressed().length);
+		}
+	}
+
+	/**
+	 * Tests if a slow Brazilian central bank site is hedged by a mirror, both
+	 * served by a {@link BcbStubServer}.
+	 */
+	@Test
+	public void testLoadHedgesSlowBcbSite() throws IOException {
+		try (BcbStubServer bcbStubServer = BcbStubServer.start(0, 10, Duration.ofSeconds(3))) {
+			RateSourceRouter rateSourceRouter = new RateSourceRouter.Builder().hedgeDelay(Duration.ofMillis(100))
+					.addSource("bcb", new BcbRateTableLoader(bcbStubServer.getBaseUrl(BcbStubServer.Mode.SLOW)))
+					.addSource("mirror", new BcbRateTableLoader(bcbStubServer.getBaseUrl())).build();
+
+			long startTime = System.nanoTime();
+			RateTable rateTable = rateSourceRouter.load(QUOTATION_DATE);
+
+			assertEquals(23, rateTable.size());
+			assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(2));
+		}
+	}
+
+	/**
+	 * Waits for a latch for up to ten seconds.
+	 *
+	 * @param latch
+	 *            The latch.
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sleeps for a while.
+	 *
+	 * @param millis
+	 *            The time to sleep, in milliseconds.
+	 */
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTableBackfill} class against a
+ * {@link BcbStubServer}.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableBackfillTest {
+
+	/**
+	 * The clock of the backfills, after every bundled quotation CSV file.
+	 */
+	private static final Clock CLOCK = Clock.fixed(Instant.parse("2014-11-25T15:00:00Z"), CWITest.BCB_TIME_ZONE);
+
+	/**
+	 * The local server which stands in for Brazilian central bank site.
+	 */
+	private static BcbStubServer bcbStubServer;
+
+	/**
+	 * The loader which downloads the quotation CSV files bundled with the tests
+	 * from the local server.
+	 */
+	private static RateTableLoader fixtureLoader;
+
+	/**
+	 * Starts the local server.
+	 */
+	@BeforeClass
+	public static void startServer() throws IOException {
+		bcbStubServer = BcbStubServer.start();
+		fixtureLoader = new BcbRateTableLoader(bcbStubServer.getBaseUrl());
+	}
+
+	/**
+	 * Stops the local server.
+	 */
+	@AfterClass
+	public static void stopServer() {
+		bcbStubServer.close();
+	}
+
+	/**
+	 * Tests if every business day of the period is loaded into the sink,
+	 * skipping weekend days.
+	 */
+	@Test
+	public void testRunLoadsEveryBusinessDay() throws InterruptedException {
+		MapSink mapSink = new MapSink();
+		AtomicInteger progressCount = new AtomicInteger();
+
+		RateTableBackfill.Report report = createBackfill(fixtureLoader).run(LocalDate.of(2014, 11, 16),
+				LocalDate.of(2014, 11, 23), mapSink, (completed, total, elapsed) -> progressCount.incrementAndGet());
+
+		assertEquals(5, report.getTotal());
+		assertEquals(5, report.getLoaded());
+		assertEquals(0, report.getSkipped());
+		assertTrue(report.getFailures().isEmpty());
+		assertEquals(5, progressCount.get());
+		assertEquals(5, mapSink.rateTables.size());
+		assertEquals(LocalDate.of(2014, 11, 20), mapSink.rateTables.get(LocalDate.of(2014, 11, 20)).getQuotationDate());
+	}
+
+	/**
+	 * Tests if dates which the sink already has are skipped.
+	 */
+	@Test
+	public void testRunSkipsDatesOnSink() throws InterruptedException {
+		MapSink mapSink = new MapSink();
+		mapSink.rateTables.put(LocalDate.of(2014, 11, 18), new RateTable.Builder(LocalDate.of(2014, 11, 18)).build());
+
+		RateTableBackfill.Report report = createBackfill(fixtureLoader).run(LocalDate.of(2014, 11, 17),
+				LocalDate.of(2014, 11, 19), mapSink);
+
+		assertEquals(2, report.getLoaded());
+		assertEquals(1, report.getSkipped());
+	}
+
+	/**
+	 * Tests if failed loads are retried until the maximum number of attempts.
+	 */
+	@Test
+	public void testRunRetriesFailedLoads() throws InterruptedException {
+		Map<LocalDate, AtomicInteger> attempts = new ConcurrentHashMap<>();
+		RateTableLoader flakyLoader = quotationDate -> {
+			int attempt = attempts.computeIfAbsent(quotationDate, date -> new AtomicInteger()).incrementAndGet();
+			if (quotationDate.getDayOfMonth() == 19 || attempt < 3) {
+				throw new IOException("Connection reset.");
+			}
+			return fixtureLoader.load(quotationDate);
+		};
+		MapSink mapSink = new MapSink();
+
+		RateTableBackfill.Report report = createBackfill(flakyLoader).run(LocalDate.of(2014, 11, 17),
+				LocalDate.of(2014, 11, 20), mapSink);
+
+		assertEquals(3, report.getLoaded());
+		assertEquals(1, report.getFailures().size());
+		assertTrue(report.getFailures().get(LocalDate.of(2014, 11, 19)) instanceof IOException);
+		assertEquals(3, attempts.get(LocalDate.of(2014, 11, 19)).get());
+		assertEquals(3, attempts.get(LocalDate.of(2014, 11, 20)).get());
+	}
+
+	/**
+	 * Tests if dates whose server answers an error are retried until the
+	 * maximum number of attempts.
+	 */
+	@Test
+	public void testRunRetriesServerErrors() throws InterruptedException {
+		long requestCount = bcbStubServer.getRequestCount();
+
+		RateTableBackfill.Report report = createBackfill(
+				new BcbRateTableLoader(bcbStubServer.getBaseUrl(BcbStubServer.Mode.ERROR)))
+						.run(LocalDate.of(2014, 11, 17), LocalDate.of(2014, 11, 18), new MapSink());
+
+		assertEquals(0, report.getLoaded());
+		assertEquals(2, report.getFailures().size());
+		for (Exception failure : report.getFailures().values()) {
+			assertTrue(failure instanceof IOException);
+			assertFalse(failure instanceof FileNotFoundException);
+		}
+		assertEquals(6, bcbStubServer.getRequestCount() - requestCount);
+	}
+
+	/**
+	 * Tests if dates without a quotation CSV file are not retried.
+	 */
+	@Test
+	public void testRunDoesNotRetryMissingFiles() throws InterruptedException {
+		long requestCount = bcbStubServer.getRequestCount();
+
+		RateTableBackfill.Report report = createBackfill(
+				new BcbRateTableLoader(bcbStubServer.getBaseUrl(BcbStubServer.Mode.MISSING)))
+						.run(LocalDate.of(2014, 11, 24), LocalDate.of(2014, 11, 24), new MapSink());
+
+		assertEquals(1, bcbStubServer.getRequestCount() - requestCount);
+		assertTrue(report.getFailures().get(LocalDate.of(2014, 11, 24)) instanceof FileNotFoundException);
+	}
+
+	/**
+	 * Tests if the current date and the following ones are not loaded, since
+	 * their tables may not be final yet.
+	 */
+	@Test
+	public void testRunSkipsCurrentDate() throws InterruptedException {
+		MapSink mapSink = new MapSink();
+		RateTableBackfill rateTableBackfill = new RateTableBackfill(fixtureLoader, BusinessDayResolver.getDefault(),
+				2, 3, Duration.ZERO, Clock.fixed(Instant.parse("2014-11-20T15:00:00Z"), CWITest.BCB_TIME_ZONE));
+
+		RateTableBackfill.Report report = rateTableBackfill.run(LocalDate.of(2014, 11, 17),
+				LocalDate.of(2014, 11, 28), mapSink);
+
+		assertEquals(3, report.getTotal());
+		assertEquals(3, report.getLoaded());
+		assertFalse(mapSink.contains(LocalDate.of(2014, 11, 20)));
+	}
+
+	/**
+	 * Creates a backfill which retries without waiting, on a date after every
+	 * bundled quotation CSV file.
+	 *
+	 * @param rateTableLoader
+	 *            The loader used to retrieve the tables.
+	 * @return The backfill created.
+	 */
+	private static RateTableBackfill createBackfill(RateTableLoader rateTableLoader) {
+		return new RateTableBackfill(rateTableLoader, BusinessDayResolver.getDefault(), 2, 3, Duration.ZERO, CLOCK);
+	}
+
+	/**
+	 * A sink which keeps the tables on a map.
+	 */
+	private static final class MapSink implements RateTableSink {
+
+		/**
+		 * The tables received, indexed by quotation date.
+		 */
+		private final Map<LocalDate, RateTable> rateTables = new ConcurrentHashMap<>();
+
+		@Override
+		public void accept(RateTable rateTable) {
+			rateTables.put(rateTable.getQuotationDate(), rateTable);
+		}
+
+		@Override
+		public boolean contains(LocalDate quotationDate) {
+			return rateTables.containsKey(quotationDate);
+		}
+	}
+}
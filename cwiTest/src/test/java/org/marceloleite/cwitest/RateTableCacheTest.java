@@ -0,0 +1,150 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTableCache} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableCacheTest {
+
+	/**
+	 * Tests if a table put on cache is returned and counted as a hit.
+	 */
+	@Test
+	public void testGetReturnsTablePutOnCache() {
+		RateTableCache rateTableCache = new RateTableCache();
+		RateTable rateTable = createRateTable(LocalDate.of(2014, 11, 20));
+		rateTableCache.put(rateTable);
+
+		assertSame(rateTable, rateTableCache.get(LocalDate.of(2014, 11, 20)));
+		assertNull(rateTableCache.get(LocalDate.of(2014, 11, 21)));
+		assertEquals(1, rateTableCache.getHitCount());
+		assertEquals(1, rateTableCache.getMissCount());
+	}
+
+	/**
+	 * Tests if a table parsed lazily takes more memory than one parsed at once
+	 * after a single conversion, and as much once compacted on cache.
+	 */
+	@Test
+	public void testPutCompactsLazyTable() throws IOException {
+		byte[] contents = Fixtures.read("20141120.csv");
+		LocalDate quotationDate = LocalDate.of(2014, 11, 20);
+		RateTable rateTable = new BcbCsvParser().parse(new ByteArrayInputStream(contents), quotationDate);
+		RateTable lazyRateTable = new BcbCsvParser().parseLazily(new ByteArrayInputStream(contents), quotationDate);
+		int dollar = CurrencyCodes.pack("USD");
+		int euro = CurrencyCodes.pack("EUR");
+
+		assertEquals(rateTable.convert(dollar, euro, 10000L), lazyRateTable.convert(dollar, euro, 10000L));
+		assertFalse(lazyRateTable.isDecoded());
+		assertTrue(lazyRateTable.estimateRetainedSize() > rateTable.estimateRetainedSize());
+
+		new RateTableCache(RateTableCache.DEFAULT_CAPACITY, RateTableCache.DEFAULT_TODAY_TIME_TO_LIVE,
+				Clock.system(CWITest.BCB_TIME_ZONE), Runnable::run).put(lazyRateTable);
+
+		assertTrue(lazyRateTable.isDecoded());
+		assertEquals(rateTable.estimateRetainedSize(), lazyRateTable.estimateRetainedSize());
+		assertEquals(rateTable.getSellingPpp(rateTable.slotOf("GBP")),
+				lazyRateTable.getSellingPpp(lazyRateTable.slotOf("GBP")));
+	}
+
+	/**
+	 * Tests if the least recently used table is evicted when the cache capacity
+	 * is exceeded.
+	 */
+	@Test
+	public void testPutEvictsLeastRecentlyUsedTable() throws InterruptedException {
+		RateTableCache rateTableCache = new RateTableCache(2, RateTableCache.DEFAULT_TODAY_TIME_TO_LIVE);
+		rateTableCache.put(createRateTable(LocalDate.of(2014, 11, 18)));
+		Thread.sleep(1);
+		rateTableCache.put(createRateTable(LocalDate.of(2014, 11, 19)));
+		Thread.sleep(1);
+		rateTableCache.get(LocalDate.of(2014, 11, 18));
+		rateTableCache.put(createRateTable(LocalDate.of(2014, 11, 20)));
+
+		assertEquals(2, rateTableCache.size());
+		assertEquals(1, rateTableCache.getEvictionCount());
+		assertNotNull(rateTableCache.get(LocalDate.of(2014, 11, 18)));
+		assertNull(rateTableCache.get(LocalDate.of(2014, 11, 19)));
+		assertNotNull(rateTableCache.get(LocalDate.of(2014, 11, 20)));
+	}
+
+	/**
+	 * Tests if the current date's table expires after its time to live while
+	 * past dates' tables do not.
+	 */
+	@Test
+	public void testCurrentDateTableExpires() {
+		MutableClock clock = new MutableClock(Instant.parse("2014-11-20T15:00:00Z"));
+		RateTableCache rateTableCache = new RateTableCache(8, Duration.ofMinutes(10), clock);
+		rateTableCache.put(createRateTable(LocalDate.of(2014, 11, 19)));
+		rateTableCache.put(createRateTable(LocalDate.of(2014, 11, 20)));
+
+		clock.instant = clock.instant.plus(Duration.ofMinutes(5));
+		assertNotNull(rateTableCache.get(LocalDate.of(2014, 11, 20)));
+
+		clock.instant = clock.instant.plus(Duration.ofMinutes(5));
+		assertNull(rateTableCache.get(LocalDate.of(2014, 11, 20)));
+		assertNotNull(rateTableCache.get(LocalDate.of(2014, 11, 19)));
+	}
+
+	/**
+	 * Creates an empty table for a quotation date.
+	 *
+	 * @param quotationDate
+	 *            The quotation date of the table.
+	 * @return An empty table for the quotation date.
+	 */
+	private static RateTable createRateTable(LocalDate quotationDate) {
+		return new RateTable.Builder(quotationDate).build();
+	}
+
+	/**
+	 * A clock which instant can be changed by the test cases.
+	 */
+	private static final class MutableClock extends Clock {
+
+		/**
+		 * The current instant of this clock.
+		 */
+		private Instant instant;
+
+		/**
+		 * Creates a new {@link MutableClock} object.
+		 *
+		 * @param instant
+		 *            The initial instant of this clock.
+		 */
+		private MutableClock(Instant instant) {
+			this.instant = instant;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return CWITest.BCB_TIME_ZONE;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+}
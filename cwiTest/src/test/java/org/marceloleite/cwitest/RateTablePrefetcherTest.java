@@ -0,0 +1,219 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTablePrefetcher} class, using
+ * the quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTablePrefetcherTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * The quotation date of the tests.
+	 */
+	private static final LocalDate QUOTATION_DATE = LocalDate.of(2014, 11, 20);
+
+	/**
+	 * Tests if nothing is loaded before the publication time.
+	 */
+	@Test
+	public void testRefreshWaitsForPublication() {
+		MutableClock clock = new MutableClock(QUOTATION_DATE.atTime(12, 10));
+		RateTablePrefetcher rateTablePrefetcher = createPrefetcher(new RateTableCache(), quotationDate -> {
+			throw new AssertionError("No table should be loaded.");
+		}, clock);
+
+		assertEquals(Duration.ofHours(1), rateTablePrefetcher.refresh());
+		assertEquals(0, rateTablePrefetcher.getRefreshCount());
+	}
+
+	/**
+	 * Tests if nothing is loaded on weekends, and if the next attempt is
+	 * scheduled to the publication time of the next business day.
+	 */
+	@Test
+	public void testRefreshSkipsWeekends() {
+		MutableClock clock = new MutableClock(LocalDateTime.of(2014, 11, 22, 14, 0));
+		RateTablePrefetcher rateTablePrefetcher = createPrefetcher(new RateTableCache(), quotationDate -> {
+			throw new AssertionError("No table should be loaded.");
+		}, clock);
+
+		assertEquals(Duration.ofHours(47).plusMinutes(10), rateTablePrefetcher.refresh());
+	}
+
+	/**
+	 * Tests if the table is retried until published, then put on cache and
+	 * refreshed before it expires.
+	 */
+	@Test
+	public void testRefreshRetriesUntilPublished() {
+		MutableClock clock = new MutableClock(QUOTATION_DATE.atTime(13, 10));
+		RateTableCache rateTableCache = new RateTableCache(8, Duration.ofMinutes(15), clock);
+		AtomicInteger loads = new AtomicInteger();
+		RateTablePrefetcher rateTablePrefetcher = createPrefetcher(rateTableCache, quotationDate -> {
+			if (loads.incrementAndGet() == 1) {
+				throw new FileNotFoundException(quotationDate + " not published yet.");
+			}
+			return FIXTURE_LOADER.load(quotationDate);
+		}, clock);
+
+		assertEquals(Duration.ofMinutes(1), rateTablePrefetcher.refresh());
+		assertNull(rateTablePrefetcher.getLastRefreshDate());
+		assertEquals(0, rateTablePrefetcher.getFailureCount());
+
+		clock.advance(Duration.ofMinutes(1));
+		assertEquals(Duration.ofMinutes(10), rateTablePrefetcher.refresh());
+		assertEquals(QUOTATION_DATE, rateTablePrefetcher.getLastRefreshDate());
+		assertEquals(Duration.ofMinutes(1), rateTablePrefetcher.getLastRefreshLag());
+		assertNotNull(rateTableCache.get(QUOTATION_DATE));
+
+		/* Each refresh restarts the time to live of the cached table. */
+		for (int refresh = 0; refresh < 3; refresh++) {
+			clock.advance(Duration.ofMinutes(10));
+			assertNotNull(rateTableCache.get(QUOTATION_DATE));
+			rateTablePrefetcher.refresh();
+		}
+		assertEquals(4, rateTablePrefetcher.getRefreshCount());
+		assertEquals(Duration.ofMinutes(1), rateTablePrefetcher.getLastRefreshLag());
+	}
+
+	/**
+	 * Tests if a failure other than a file not published yet is reported and
+	 * retried.
+	 */
+	@Test
+	public void testRefreshReportsFailures() {
+		IOException failure = new IOException("Connection reset.");
+		MutableClock clock = new MutableClock(QUOTATION_DATE.atTime(14, 0));
+		RateTablePrefetcher rateTablePrefetcher = createPrefetcher(new RateTableCache(), quotationDate -> {
+			throw failure;
+		}, clock);
+
+		assertEquals(Duration.ofMinutes(1), rateTablePrefetcher.refresh());
+		assertEquals(1, rateTablePrefetcher.getFailureCount());
+		assertSame(failure, rateTablePrefetcher.getLastFailure());
+		assertEquals(0, rateTablePrefetcher.getRefreshCount());
+	}
+
+	/**
+	 * Tests if a started prefetcher loads the table on its executor, so the
+	 * next conversion finds it on cache.
+	 */
+	@Test
+	public void testStartLoadsTable() throws Exception {
+		MutableClock clock = new MutableClock(QUOTATION_DATE.atTime(14, 0));
+		RateTableCache rateTableCache = new RateTableCache(8, Duration.ofMinutes(15), clock);
+		CountDownLatch loaded = new CountDownLatch(1);
+		ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+		try (RateTablePrefetcher rateTablePrefetcher = new RateTablePrefetcher(rateTableCache, quotationDate -> {
+			RateTable rateTable = FIXTURE_LOADER.load(quotationDate);
+			loaded.countDown();
+			return rateTable;
+		}, BusinessDayResolver.withoutHolidays(), scheduledExecutorService, clock,
+				RateTablePrefetcher.DEFAULT_PUBLICATION_TIME, Duration.ofMinutes(1), Duration.ofMinutes(10))) {
+			rateTablePrefetcher.start();
+			assertTrue(loaded.await(10, TimeUnit.SECONDS));
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (rateTablePrefetcher.getRefreshCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+
+			CWITest cwiTest = new CWITest(rateTableCache, quotationDate -> {
+				throw new AssertionError("The table should be on cache.");
+			});
+			assertEquals("79.69", cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014").toString());
+		} finally {
+			scheduledExecutorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creates a prefetcher with the default publication time and intervals
+	 * which is refreshed by the test cases themselves.
+	 *
+	 * @param rateTableCache
+	 *            The cache on which the tables are put.
+	 * @param rateTableLoader
+	 *            The loader of the tables.
+	 * @param clock
+	 *            The clock used to identify the current date and time.
+	 * @return The prefetcher created.
+	 */
+	private static RateTablePrefetcher createPrefetcher(RateTableCache rateTableCache,
+			RateTableLoader rateTableLoader, Clock clock) {
+		return new RateTablePrefetcher(rateTableCache, rateTableLoader, BusinessDayResolver.withoutHolidays(),
+				Executors.newSingleThreadScheduledExecutor(), clock, RateTablePrefetcher.DEFAULT_PUBLICATION_TIME,
+				Duration.ofMinutes(1), Duration.ofMinutes(10));
+	}
+
+	/**
+	 * A clock which instant can be changed by the test cases.
+	 */
+	private static final class MutableClock extends Clock {
+
+		/**
+		 * The current instant of this clock.
+		 */
+		private volatile Instant instant;
+
+		/**
+		 * Creates a new {@link MutableClock} object.
+		 *
+		 * @param dateTime
+		 *            The initial date and time of this clock.
+		 */
+		private MutableClock(LocalDateTime dateTime) {
+			this.instant = dateTime.atZone(getZone()).toInstant();
+		}
+
+		/**
+		 * Moves this clock forward.
+		 *
+		 * @param duration
+		 *            The time to be added.
+		 */
+		private void advance(Duration duration) {
+			instant = instant.plus(duration);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return CWITest.BCB_TIME_ZONE;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+}
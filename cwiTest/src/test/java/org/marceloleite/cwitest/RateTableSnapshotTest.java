@@ -0,0 +1,277 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTableSnapshot} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableSnapshotTest {
+
+	/**
+	 * The quotation CSV files bundled with the tests.
+	 */
+	private static final String[] FIXTURE_FILE_NAMES = { "20141117.csv", "20141118.csv", "20141119.csv",
+			"20141120.csv", "20141121.csv", "20170920.csv" };
+
+	/**
+	 * Tests if the tables read from a snapshot have the same values as the
+	 * tables written.
+	 */
+	@Test
+	public void testReadReturnsTablesWritten() throws IOException {
+		List<RateTable> rateTables = parseFixtures();
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+
+		assertEquals(rateTables.size(), RateTableSnapshot.write(rateTables, byteArrayOutputStream));
+
+		List<RateTable> readRateTables = new ArrayList<>();
+		assertEquals(rateTables.size(), RateTableSnapshot
+				.read(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), readRateTables::add));
+		for (int index = 0; index < rateTables.size(); index++) {
+			assertTableEquals(rateTables.get(index), readRateTables.get(index));
+		}
+	}
+
+	/**
+	 * Tests if years of history are written compactly and read back with the
+	 * same values.
+	 */
+	@Test
+	public void testReadReturnsHistoryWritten() throws IOException {
+		List<RateTable> rateTables = createHistory(LocalDate.of(2008, 1, 1), LocalDate.of(2017, 12, 31), 160);
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (RateTableSnapshot.Writer writer = new RateTableSnapshot.Writer(byteArrayOutputStream)) {
+			for (RateTable rateTable : rateTables) {
+				writer.accept(rateTable);
+			}
+		}
+
+		/* Each row holds a currency, a date and four rates on 37 bytes or more. */
+		int rows = rateTables.size() * 160;
+		assertTrue(byteArrayOutputStream.size() < rows * 8);
+
+		try (RateTableSnapshot.Reader reader = new RateTableSnapshot.Reader(
+				new ByteArrayInputStream(byteArrayOutputStream.toByteArray()))) {
+			for (RateTable rateTable : rateTables) {
+				assertTableEquals(rateTable, reader.read());
+			}
+			assertNull(reader.read());
+			assertNull(reader.read());
+		}
+	}
+
+	/**
+	 * Tests if the tables of a store are exported and imported into another
+	 * store.
+	 */
+	@Test
+	public void testExportAndImportStore() throws IOException {
+		Path sourceDirectory = Files.createTempDirectory("rate-table-snapshot");
+		Path targetDirectory = Files.createTempDirectory("rate-table-snapshot");
+		try {
+			List<RateTable> rateTables = parseFixtures();
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			try (RateTableStore rateTableStore = RateTableStore.open(sourceDirectory)) {
+				for (int index = rateTables.size() - 1; index >= 0; index--) {
+					rateTableStore.put(rateTables.get(index));
+				}
+				assertEquals(rateTables.size(), RateTableSnapshot.write(rateTableStore, byteArrayOutputStream));
+			}
+
+			try (RateTableStore rateTableStore = RateTableStore.open(targetDirectory)) {
+				RateTableSnapshot.read(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), rateTableStore);
+
+				assertEquals(rateTables.size(), rateTableStore.size());
+				for (RateTable rateTable : rateTables) {
+					assertTableEquals(rateTable, rateTableStore.get(rateTable.getQuotationDate()));
+				}
+			}
+		} finally {
+			deleteDirectory(sourceDirectory);
+			deleteDirectory(targetDirectory);
+		}
+	}
+
+	/**
+	 * Tests if the tables on cache are exported in chronological order and
+	 * imported into another cache.
+	 */
+	@Test
+	public void testExportAndImportCache() throws IOException {
+		RateTableCache rateTableCache = new RateTableCache();
+		List<RateTable> rateTables = parseFixtures();
+		for (int index = rateTables.size() - 1; index >= 0; index--) {
+			rateTableCache.put(rateTables.get(index));
+		}
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		RateTableSnapshot.write(rateTableCache.getRateTables(), byteArrayOutputStream);
+
+		RateTableCache importedRateTableCache = new RateTableCache();
+		RateTableSnapshot.read(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()),
+				importedRateTableCache::put);
+
+		List<RateTable> importedRateTables = importedRateTableCache.getRateTables();
+		assertEquals(rateTables.size(), importedRateTables.size());
+		for (int index = 0; index < rateTables.size(); index++) {
+			assertTableEquals(rateTables.get(index), importedRateTables.get(index));
+		}
+	}
+
+	/**
+	 * Tests if a stream which is not a snapshot throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testReadInvalidStreamIOException() throws IOException {
+		RateTableSnapshot.read(new ByteArrayInputStream(Fixtures.read("20141120.csv")), rateTable -> {
+		});
+	}
+
+	/**
+	 * Tests if a truncated snapshot throws an {@link EOFException}.
+	 */
+	@Test(expected = EOFException.class)
+	public void testReadTruncatedSnapshotEOFException() throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		RateTableSnapshot.write(createHistory(LocalDate.of(2017, 1, 1), LocalDate.of(2017, 12, 31), 160),
+				byteArrayOutputStream);
+		byte[] snapshot = byteArrayOutputStream.toByteArray();
+
+		RateTableSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length / 2)),
+				rateTable -> {
+				});
+	}
+
+	/**
+	 * Tests if zigzag encoding is reversible on the extreme values.
+	 */
+	@Test
+	public void testZigzag() {
+		for (long value : new long[] { 0L, 1L, -1L, 63L, -64L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+			assertEquals(value, RateTableSnapshot.unzigzag(RateTableSnapshot.zigzag(value)));
+		}
+		assertEquals(1L, RateTableSnapshot.zigzag(-1L));
+		assertEquals(2L, RateTableSnapshot.zigzag(1L));
+	}
+
+	/**
+	 * Parses the quotation CSV files bundled with the tests.
+	 *
+	 * @return The tables parsed, in chronological order.
+	 * @throws IOException
+	 *             When a fixture could not be read.
+	 */
+	private static List<RateTable> parseFixtures() throws IOException {
+		List<RateTable> rateTables = new ArrayList<>();
+		for (String fileName : FIXTURE_FILE_NAMES) {
+			LocalDate quotationDate = LocalDate.of(Integer.parseInt(fileName.substring(0, 4)),
+					Integer.parseInt(fileName.substring(4, 6)), Integer.parseInt(fileName.substring(6, 8)));
+			rateTables.add(new BcbCsvParser().parse(new ByteArrayInputStream(Fixtures.read(fileName)),
+					quotationDate));
+		}
+		return rateTables;
+	}
+
+	/**
+	 * Creates a table for each weekday of a period, whose rates drift randomly
+	 * from one day to the next.
+	 *
+	 * @param firstDate
+	 *            The first date of the period.
+	 * @param lastDate
+	 *            The last date of the period.
+	 * @param currencies
+	 *            The number of currencies of each table.
+	 * @return The tables created, in chronological order.
+	 */
+	private static List<RateTable> createHistory(LocalDate firstDate, LocalDate lastDate, int currencies) {
+		Random random = new Random(firstDate.toEpochDay());
+		long[] rates = new long[currencies];
+		for (int currency = 0; currency < currencies; currency++) {
+			rates[currency] = 1_000_000L + random.nextInt(500_000_000);
+		}
+
+		List<RateTable> rateTables = new ArrayList<>();
+		for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+			if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+				continue;
+			}
+
+			RateTable.Builder builder = new RateTable.Builder(date);
+			for (int currency = 0; currency < currencies; currency++) {
+				rates[currency] += rates[currency] * (random.nextInt(201) - 100) / 10_000;
+				builder.handleRow((int) date.toEpochDay(), 100 + currency, currency % 2 == 0 ? 'A' : 'B',
+						CurrencyCodes.pack(createAbbreviation(currency)), rates[currency], rates[currency] + 60_000L,
+						rates[currency] / 2, rates[currency] / 2 + 30_000L);
+			}
+			rateTables.add(builder.build());
+		}
+		return rateTables;
+	}
+
+	/**
+	 * Creates a distinct currency abbreviation for a number.
+	 *
+	 * @param currency
+	 *            The currency number.
+	 * @return The currency abbreviation.
+	 */
+	private static String createAbbreviation(int currency) {
+		return new String(new char[] { (char) ('A' + currency / 676 % 26), (char) ('A' + currency / 26 % 26),
+				(char) ('A' + currency % 26) });
+	}
+
+	/**
+	 * Deletes a directory and its files.
+	 *
+	 * @param directory
+	 *            The directory to be deleted.
+	 */
+	private static void deleteDirectory(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Checks if two tables have the same values.
+	 *
+	 * @param expected
+	 *            The expected table.
+	 * @param actual
+	 *            The actual table.
+	 */
+	private static void assertTableEquals(RateTable expected, RateTable actual) {
+		assertEquals(expected.getQuotationDate(), actual.getQuotationDate());
+		assertEquals(expected.size(), actual.size());
+		for (int slot = 0; slot < expected.size(); slot++) {
+			assertEquals(expected.getCurrencyAbbreviation(slot), actual.getCurrencyAbbreviation(slot));
+			assertEquals(expected.getCurrencyCode(slot), actual.getCurrencyCode(slot));
+			assertEquals(expected.getType(slot), actual.getType(slot));
+			assertEquals(expected.getExchangingEpochDay(slot), actual.getExchangingEpochDay(slot));
+			assertEquals(expected.getBuyingRate(slot), actual.getBuyingRate(slot));
+			assertEquals(expected.getSellingRate(slot), actual.getSellingRate(slot));
+			assertEquals(expected.getBuyingPpp(slot), actual.getBuyingPpp(slot));
+			assertEquals(expected.getSellingPpp(slot), actual.getSellingPpp(slot));
+		}
+	}
+}
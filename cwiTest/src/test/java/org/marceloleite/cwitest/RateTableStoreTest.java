@@ -0,0 +1,296 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTableStore} and
+ * {@link PersistentRateTableLoader} classes.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableStoreTest {
+
+	/**
+	 * The directory of the store files.
+	 */
+	private Path directory;
+
+	/**
+	 * Creates the directory of the store files.
+	 */
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("rate-table-store");
+	}
+
+	/**
+	 * Deletes the directory of the store files.
+	 */
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Tests if a table written on the store is read with the same values, even
+	 * after the store is opened again.
+	 */
+	@Test
+	public void testGetReturnsTablePutOnStore() throws IOException {
+		RateTable rateTable = parseFixture("20141120.csv", LocalDate.of(2014, 11, 20));
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			assertTrue(rateTableStore.put(rateTable));
+			assertFalse(rateTableStore.put(rateTable));
+			assertNull(rateTableStore.get(LocalDate.of(2014, 11, 21)));
+			assertTableEquals(rateTable, rateTableStore.get(LocalDate.of(2014, 11, 20)));
+		}
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			rateTableStore.put(parseFixture("20141121.csv", LocalDate.of(2014, 11, 21)));
+
+			assertEquals(2, rateTableStore.size());
+			assertTableEquals(rateTable, rateTableStore.get(LocalDate.of(2014, 11, 20)));
+			assertTrue(rateTableStore.contains(LocalDate.of(2014, 11, 21)));
+		}
+	}
+
+	/**
+	 * Tests if tables are read while other tables are written.
+	 */
+	@Test
+	public void testGetWhilePutting() throws Exception {
+		RateTable rateTable = parseFixture("20141120.csv", LocalDate.of(2014, 11, 20));
+		LocalDate firstDate = LocalDate.of(2014, 1, 1);
+		int tables = 200;
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			rateTableStore.put(parseFixture("20141120.csv", firstDate));
+			AtomicInteger written = new AtomicInteger(1);
+			Thread writer = new Thread(() -> {
+				try {
+					for (int table = 1; table < tables; table++) {
+						rateTableStore.put(parseFixture("20141120.csv", firstDate.plusDays(table)));
+						written.incrementAndGet();
+					}
+				} catch (IOException ioException) {
+					throw new IllegalStateException(ioException);
+				}
+			});
+			writer.start();
+
+			int reads = 0;
+			while (writer.isAlive() || reads == 0) {
+				RateTable storedRateTable = rateTableStore.get(firstDate.plusDays(reads++ % written.get()));
+				assertEquals(rateTable.size(), storedRateTable.size());
+				assertEquals(rateTable.getBuyingRate(0), storedRateTable.getBuyingRate(0));
+			}
+			writer.join();
+
+			assertEquals(tables, rateTableStore.size());
+			assertEquals(rateTable.getSellingPpp(rateTable.size() - 1),
+					rateTableStore.get(firstDate.plusDays(tables - 1)).getSellingPpp(rateTable.size() - 1));
+		}
+	}
+
+	/**
+	 * Tests if a data file larger than {@link RateTableStore#MAX_DATA_SIZE}
+	 * throws an {@link IOException} instead of being read with truncated
+	 * positions.
+	 */
+	@Test(expected = IOException.class)
+	public void testOpenDataFileTooLargeIOException() throws IOException {
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			rateTableStore.put(parseFixture("20141120.csv", LocalDate.of(2014, 11, 20)));
+		}
+		try (FileChannel dataChannel = FileChannel.open(directory.resolve(RateTableStore.DATA_FILE_NAME),
+				StandardOpenOption.WRITE)) {
+
+			/* Sparse, so the file takes no space. */
+			dataChannel.write(ByteBuffer.wrap(new byte[1]), RateTableStore.MAX_DATA_SIZE);
+		}
+
+		RateTableStore.open(directory).close();
+	}
+
+	/**
+	 * Tests if an incomplete index entry left by an interrupted write is ignored.
+	 */
+	@Test
+	public void testOpenIgnoresIncompleteIndexEntry() throws IOException {
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			rateTableStore.put(parseFixture("20141120.csv", LocalDate.of(2014, 11, 20)));
+			rateTableStore.put(parseFixture("20141121.csv", LocalDate.of(2014, 11, 21)));
+		}
+
+		try (FileChannel indexChannel = FileChannel.open(directory.resolve(RateTableStore.INDEX_FILE_NAME),
+				StandardOpenOption.WRITE)) {
+			indexChannel.truncate(indexChannel.size() - 3);
+		}
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			assertEquals(1, rateTableStore.size());
+			assertNotNull(rateTableStore.get(LocalDate.of(2014, 11, 20)));
+			assertNull(rateTableStore.get(LocalDate.of(2014, 11, 21)));
+
+			rateTableStore.put(parseFixture("20141121.csv", LocalDate.of(2014, 11, 21)));
+			assertNotNull(rateTableStore.get(LocalDate.of(2014, 11, 21)));
+		}
+	}
+
+	/**
+	 * Tests if a file which is not a store file throws an {@link IOException}.
+	 */
+	@Test(expected = IOException.class)
+	public void testOpenInvalidFileIOException() throws IOException {
+		Files.write(directory.resolve(RateTableStore.DATA_FILE_NAME), Fixtures.read("20141120.csv"));
+		RateTableStore.open(directory).close();
+	}
+
+	/**
+	 * Tests if the loader stores only past dates' tables and reads them from the
+	 * store afterwards.
+	 */
+	@Test
+	public void testLoaderStoresOnlyPastDates() throws IOException {
+		AtomicInteger loadCount = new AtomicInteger();
+		RateTableLoader fixtureLoader = new BcbRateTableLoader(Fixtures.getBaseUrl());
+		RateTableLoader countingLoader = quotationDate -> {
+			loadCount.incrementAndGet();
+			return fixtureLoader.load(quotationDate);
+		};
+		Clock clock = Clock.fixed(Instant.parse("2014-11-21T15:00:00Z"), CWITest.BCB_TIME_ZONE);
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			PersistentRateTableLoader persistentRateTableLoader = new PersistentRateTableLoader(rateTableStore,
+					countingLoader, clock, Runnable::run);
+			persistentRateTableLoader.load(LocalDate.of(2014, 11, 20));
+			persistentRateTableLoader.load(LocalDate.of(2014, 11, 21));
+
+			assertTrue(rateTableStore.contains(LocalDate.of(2014, 11, 20)));
+			assertFalse(rateTableStore.contains(LocalDate.of(2014, 11, 21)));
+		}
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			PersistentRateTableLoader persistentRateTableLoader = new PersistentRateTableLoader(rateTableStore,
+					countingLoader, clock);
+			CWITest cwiTest = new CWITest(new RateTableCache(), persistentRateTableLoader);
+
+			assertEquals("79.69", cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014").toString());
+			assertEquals(2, loadCount.get());
+			assertEquals(1, persistentRateTableLoader.getStoreHitCount());
+		}
+	}
+
+	/**
+	 * Tests if a table whose write is rejected by the store executor is still
+	 * returned, counting a store failure.
+	 */
+	@Test
+	public void testLoaderCountsRejectedWrites() throws IOException {
+		Clock clock = Clock.fixed(Instant.parse("2014-11-21T15:00:00Z"), CWITest.BCB_TIME_ZONE);
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			PersistentRateTableLoader persistentRateTableLoader = new PersistentRateTableLoader(rateTableStore,
+					new BcbRateTableLoader(Fixtures.getBaseUrl()), clock, runnable -> {
+						throw new RejectedExecutionException("The store queue is full.");
+					});
+
+			assertEquals(LocalDate.of(2014, 11, 20),
+					persistentRateTableLoader.load(LocalDate.of(2014, 11, 20)).getQuotationDate());
+			assertFalse(rateTableStore.contains(LocalDate.of(2014, 11, 20)));
+			assertEquals(1, persistentRateTableLoader.getStoreFailureCount());
+		}
+	}
+
+	/**
+	 * Tests if a lazily parsed table with an invalid line is not stored but
+	 * still converts its other currencies, while its invalid currency fails
+	 * with an {@link IOException}.
+	 */
+	@Test
+	public void testLoaderSkipsTableWithInvalidLine() throws IOException {
+		byte[] contents = ("20/11/2014;220;A;USD;2,55O20000;2,55080000;1,00000000;1,00000000\n"
+				+ "20/11/2014;978;B;EUR;3,20030000;3,20140000;1,25490000;1,25520000\n"
+				+ "20/11/2014;540;B;GBP;4,00000000;4,00100000;1,56850000;1,56880000\n")
+						.getBytes(StandardCharsets.ISO_8859_1);
+		RateTableLoader lazyLoader = quotationDate -> new BcbCsvParser()
+				.parseLazily(new ByteArrayInputStream(contents), quotationDate);
+		Clock clock = Clock.fixed(Instant.parse("2014-11-21T15:00:00Z"), CWITest.BCB_TIME_ZONE);
+
+		try (RateTableStore rateTableStore = RateTableStore.open(directory)) {
+			PersistentRateTableLoader persistentRateTableLoader = new PersistentRateTableLoader(rateTableStore,
+					lazyLoader, clock, Runnable::run);
+			CWITest cwiTest = new CWITest(new RateTableCache(), persistentRateTableLoader);
+
+			assertEquals("80.01", cwiTest.currencyQuotation("EUR", "GBP", 100.00, "20/11/2014").toString());
+			assertFalse(rateTableStore.contains(LocalDate.of(2014, 11, 20)));
+			assertEquals(1, persistentRateTableLoader.getStoreFailureCount());
+			try {
+				cwiTest.currencyQuotation("USD", "EUR", 100.00, "20/11/2014");
+				fail("The invalid line should not have been parsed.");
+			} catch (IOException ioException) {
+				assertTrue(ioException.getMessage().startsWith("Could not parse line 1 "));
+			}
+		}
+	}
+
+	/**
+	 * Parses a fixture CSV file.
+	 *
+	 * @param fileName
+	 *            The fixture file name.
+	 * @param quotationDate
+	 *            The quotation date of the file.
+	 * @return The table parsed.
+	 * @throws IOException
+	 *             When the fixture could not be read.
+	 */
+	private static RateTable parseFixture(String fileName, LocalDate quotationDate) throws IOException {
+		return new BcbCsvParser().parse(new ByteArrayInputStream(Fixtures.read(fileName)), quotationDate);
+	}
+
+	/**
+	 * Checks if two tables have the same values.
+	 *
+	 * @param expected
+	 *            The expected table.
+	 * @param actual
+	 *            The actual table.
+	 */
+	private static void assertTableEquals(RateTable expected, RateTable actual) {
+		assertEquals(expected.getQuotationDate(), actual.getQuotationDate());
+		assertEquals(expected.size(), actual.size());
+		for (int slot = 0; slot < expected.size(); slot++) {
+			int actualSlot = actual.slotOf(expected.getCurrencyAbbreviation(slot));
+			assertEquals(expected.getCurrencyCode(slot), actual.getCurrencyCode(actualSlot));
+			assertEquals(expected.getType(slot), actual.getType(actualSlot));
+			assertEquals(expected.getExchangingEpochDay(slot), actual.getExchangingEpochDay(actualSlot));
+			assertEquals(expected.getBuyingRate(slot), actual.getBuyingRate(actualSlot));
+			assertEquals(expected.getSellingRate(slot), actual.getSellingRate(actualSlot));
+			assertEquals(expected.getBuyingPpp(slot), actual.getBuyingPpp(actualSlot));
+			assertEquals(expected.getSellingPpp(slot), actual.getSellingPpp(actualSlot));
+		}
+	}
+}
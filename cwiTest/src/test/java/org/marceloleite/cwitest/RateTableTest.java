@@ -0,0 +1,83 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link RateTable} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class RateTableTest {
+
+	/**
+	 * Tests if every currency added to a large table can be found on its slot.
+	 */
+	@Test
+	public void testSlotOfFindsAllCurrencies() {
+		RateTable.Builder builder = new RateTable.Builder(LocalDate.of(2014, 11, 20));
+		for (int code = 0; code < 1000; code++) {
+			builder.handleRow(16394, code, 'A', code, code + 1, code + 2, code + 3, code + 4);
+		}
+		RateTable rateTable = builder.build();
+
+		assertEquals(1000, rateTable.size());
+		for (int code = 0; code < 1000; code++) {
+			int slot = rateTable.slotOf(code);
+			assertEquals(code, rateTable.getCurrencyAbbreviation(slot));
+			assertEquals(code + 1, rateTable.getBuyingRate(slot));
+			assertEquals(code + 4, rateTable.getSellingPpp(slot));
+		}
+		assertEquals(RateTable.NOT_FOUND, rateTable.slotOf(CurrencyCodes.pack("ZZZ")));
+		assertEquals(RateTable.NOT_FOUND, rateTable.slotOf("???"));
+	}
+
+	/**
+	 * Tests if a currency added twice keeps its last values.
+	 */
+	@Test
+	public void testBuilderKeepsLastValues() {
+		RateTable.Builder builder = new RateTable.Builder(LocalDate.of(2014, 11, 20));
+		int dollar = CurrencyCodes.pack("USD");
+		builder.handleRow(16394, 220, 'A', dollar, 1, 1, 1, 1);
+		builder.handleRow(16394, 220, 'A', dollar, 2, 2, 2, 2);
+		RateTable rateTable = builder.build();
+
+		assertEquals(1, rateTable.size());
+		assertEquals(2, rateTable.getBuyingRate(rateTable.slotOf(dollar)));
+	}
+
+	/**
+	 * Tests the primitive conversion and the exchanging information view.
+	 */
+	@Test
+	public void testConvertAndExchangingInformation() {
+		RateTable.Builder builder = new RateTable.Builder(LocalDate.of(2014, 11, 20));
+		builder.handleRow(16394, 220, 'A', CurrencyCodes.pack("USD"), 255020000L, 255080000L, 100000000L,
+				100000000L);
+		builder.handleRow(16394, 978, 'B', CurrencyCodes.pack("EUR"), 320030000L, 320140000L, 125490000L,
+				125520000L);
+		RateTable rateTable = builder.build();
+
+		assertEquals(7969L, rateTable.convert(CurrencyCodes.pack("USD"), CurrencyCodes.pack("EUR"), 10000L));
+
+		CurrencyExchangingInformation euro = rateTable.getExchangingInformation("EUR");
+		assertEquals("978", euro.getCurrencyCode());
+		assertEquals("B", euro.getType());
+		assertEquals(3.2003, euro.getBuyingRate(), 0.0);
+		assertNull(rateTable.getExchangingInformation("GBP"));
+	}
+
+	/**
+	 * Tests if converting an unknown currency throws a {@link RuntimeException}.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testConvertUnknownCurrencyRuntimeException() {
+		new RateTable.Builder(LocalDate.of(2014, 11, 20)).build().convert(CurrencyCodes.pack("USD"),
+				CurrencyCodes.pack("EUR"), 10000L);
+	}
+}
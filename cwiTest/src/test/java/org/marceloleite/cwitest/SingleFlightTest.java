@@ -0,0 +1,88 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link SingleFlight} class.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class SingleFlightTest {
+
+	/**
+	 * The number of threads calling {@link SingleFlight#execute} concurrently.
+	 */
+	private static final int CONCURRENT_CALLERS = 8;
+
+	/**
+	 * Tests if concurrent calls with the same key are executed only once and
+	 * share its result.
+	 */
+	@Test
+	public void testConcurrentCallsAreCoalesced() throws Exception {
+		SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+		AtomicInteger executions = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executorService = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int counter = 0; counter < CONCURRENT_CALLERS; counter++) {
+				futures.add(executorService.submit(() -> singleFlight.execute("20141120", () -> {
+					executions.incrementAndGet();
+					release.await();
+					return 42;
+				})));
+			}
+
+			/* Waits until the first call starts and the others had time to join it. */
+			while (executions.get() == 0) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(100);
+			release.countDown();
+
+			for (Future<Integer> future : futures) {
+				assertEquals(Integer.valueOf(42), future.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		assertEquals(1, executions.get());
+		assertEquals(0, singleFlight.size());
+	}
+
+	/**
+	 * Tests if a failed call is reported to its caller and does not prevent a
+	 * later call with the same key.
+	 */
+	@Test
+	public void testFailureDoesNotPoisonRetries() throws IOException {
+		SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+
+		try {
+			singleFlight.execute("20141120", () -> {
+				throw new IOException("Download failed.");
+			});
+			fail("An IOException must be thrown.");
+		} catch (IOException ioException) {
+			assertEquals("Download failed.", ioException.getMessage());
+		}
+
+		assertEquals(Integer.valueOf(42), singleFlight.execute("20141120", () -> 42));
+	}
+}
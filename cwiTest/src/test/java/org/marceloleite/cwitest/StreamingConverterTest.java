@@ -0,0 +1,124 @@
+package org.marceloleite.cwitest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test cases created to check the {@link StreamingConverter} class, using the
+ * quotation CSV files bundled with the tests.
+ *
+ * @author Marcelo Leite
+ *
+ */
+public class StreamingConverterTest {
+
+	/**
+	 * The loader which reads the quotation CSV files bundled with the tests.
+	 */
+	private static final RateTableLoader FIXTURE_LOADER = new BcbRateTableLoader(Fixtures.getBaseUrl());
+
+	/**
+	 * The quotation dates of the records, including a weekend.
+	 */
+	private static final String[] QUOTATIONS = { "17/11/2014", "18/11/2014", "19/11/2014", "20/11/2014",
+			"21/11/2014", "22/11/2014" };
+
+	/**
+	 * Tests if the records are written on the input order with their converted
+	 * amounts or the reason they were not converted.
+	 */
+	@Test
+	public void testRunConvertsRecordsOnInputOrder() throws IOException {
+		StreamingConverter streamingConverter = new StreamingConverter(
+				new CWITest.Builder().rateTableLoader(FIXTURE_LOADER).build(), 2, 2);
+		String input = "from,to,amount,date\n" + "USD,EUR,100.00,20/11/2014\n" + "EUR;USD;79.69;22/11/2014\n"
+				+ "\n" + "USD,???,100.00,20/11/2014\n" + "USD,EUR,abc,20/11/2014\n" + "USD,EUR,100.00\n"
+				+ "USD,EUR,100.00,01/02/1800\n" + "USD,EUR,-1,20/11/2014\n" + " USD , EUR , 100 , 20/11/2014 \n";
+		StringWriter output = new StringWriter();
+
+		StreamingConverter.Report report = streamingConverter.run(new StringReader(input), output);
+
+		String[] lines = output.toString().split("\n");
+		assertEquals(9, lines.length);
+		assertEquals("from,to,amount,date,converted,error", lines[0]);
+		assertEquals("USD,EUR,100.00,20/11/2014,79.69,", lines[1]);
+		assertTrue(lines[2].startsWith("EUR;USD;79.69;22/11/2014;"));
+		assertTrue(lines[2].endsWith(";"));
+		assertTrue(lines[3].startsWith("USD,???,100.00,20/11/2014,,"));
+		assertEquals("USD,EUR,abc,20/11/2014,,Invalid amount \"abc\".", lines[4]);
+		assertTrue(lines[5].startsWith("USD,EUR,100.00,,"));
+		assertTrue(lines[6].startsWith("USD,EUR,100.00,01/02/1800,,"));
+		assertTrue(lines[7].startsWith("USD,EUR,-1,20/11/2014,,"));
+		assertEquals(" USD , EUR , 100 , 20/11/2014 ,79.69,", lines[8]);
+		assertEquals(8, report.getRecords());
+		assertEquals(3, report.getConverted());
+		assertEquals(5, report.getFailures());
+	}
+
+	/**
+	 * Tests if many records return the same values as
+	 * {@link CWITest#currencyQuotation}, loading each quotation date only once.
+	 */
+	@Test
+	public void testRunMatchesCurrencyQuotation() throws IOException {
+		AtomicInteger loads = new AtomicInteger();
+		CWITest cwiTest = new CWITest.Builder().rateTableLoader(quotationDate -> {
+			loads.incrementAndGet();
+			return FIXTURE_LOADER.load(quotationDate);
+		}).build();
+		StringBuilder input = new StringBuilder();
+		for (int record = 0; record < 20000; record++) {
+			input.append(record % 2 == 0 ? "USD" : "GBP").append(',').append(record % 3 == 0 ? "EUR" : "JPY")
+					.append(',').append(record).append('.').append(record % 100).append(',')
+					.append(QUOTATIONS[record % QUOTATIONS.length]).append('\n');
+		}
+		StringWriter output = new StringWriter();
+
+		StreamingConverter.Report report = new StreamingConverter(cwiTest, 4, 100).run(new StringReader(input
+				.toString()), output);
+
+		assertEquals(20000, report.getRecords());
+		assertEquals(0, report.getFailures());
+		assertEquals(5, loads.get());
+		String[] lines = output.toString().split("\n");
+		assertEquals(20000, lines.length);
+		for (int record = 0; record < lines.length; record += 97) {
+			String[] fields = lines[record].split(",", -1);
+			assertEquals(6, fields.length);
+			assertEquals("", fields[5]);
+			assertEquals(cwiTest.currencyQuotation(fields[0], fields[1], new BigDecimal(fields[2]), fields[3]),
+					new BigDecimal(fields[4]));
+		}
+	}
+
+	/**
+	 * Tests if an empty input writes nothing.
+	 */
+	@Test
+	public void testRunEmptyInput() throws IOException {
+		StringWriter output = new StringWriter();
+
+		StreamingConverter.Report report = new StreamingConverter(
+				new CWITest.Builder().rateTableLoader(FIXTURE_LOADER).build()).run(new StringReader(""), output);
+
+		assertEquals("", output.toString());
+		assertEquals(0, report.getRecords());
+	}
+
+	/**
+	 * Tests if a chunk size which is not positive throws an
+	 * {@link InvalidParameterException}.
+	 */
+	@Test(expected = InvalidParameterException.class)
+	public void testConstructorZeroChunkSizeInvalidParameterException() {
+		new StreamingConverter(new CWITest.Builder().rateTableLoader(FIXTURE_LOADER).build(), 1, 0);
+	}
+}